@@ -0,0 +1,396 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.zeromq;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.zeromq.ZMQ.Socket;
+
+import zmq.PollItem;
+import zmq.Signaler;
+import zmq.ZError;
+
+//  Drives the asynchronous operations of the sockets of a context from a
+//  single thread. The thread polls the sockets with pending operations and
+//  performs the operations once the sockets get ready, which they report
+//  when the activation commands of their pipes arrive. The sockets without
+//  pending operations are not polled and not touched by the thread.
+final class AsyncDriver implements Runnable
+{
+    private static final int RECV  = 0;
+    private static final int SEND  = 1;
+    private static final int CLOSE = 2;
+
+    //  An operation submitted to the thread.
+    private static final class Request
+    {
+        private final int type;
+        private final Socket socket;
+        private final ZMsg msg;
+        private final ZFuture<ZMsg> received;
+        private final ZFuture<Void> sent;
+
+        private Request(int type, Socket socket, ZMsg msg, ZFuture<ZMsg> received, ZFuture<Void> sent)
+        {
+            this.type = type;
+            this.socket = socket;
+            this.msg = msg;
+            this.received = received;
+            this.sent = sent;
+        }
+    }
+
+    //  The pending operations of a socket.
+    private static final class Entry
+    {
+        private final Socket socket;
+        private final PollItem item;
+        private final Deque<ZFuture<ZMsg>> recvs = new ArrayDeque<ZFuture<ZMsg>>();
+        private final Deque<Request> sends = new ArrayDeque<Request>();
+
+        //  A message received for a receive cancelled meanwhile, for the
+        //  next receive.
+        private ZMsg stash;
+
+        private Entry(Socket socket)
+        {
+            this.socket = socket;
+            item = new PollItem(socket.base(), 0);
+        }
+
+        private int events()
+        {
+            int events = 0;
+            if (!recvs.isEmpty()) {
+                events |= ZMQ.Poller.POLLIN;
+            }
+            if (!sends.isEmpty()) {
+                events |= ZMQ.Poller.POLLOUT;
+            }
+            return events;
+        }
+    }
+
+    private final Queue<Request> requests = new ConcurrentLinkedQueue<Request>();
+    private final Map<Socket, Entry> entries = new LinkedHashMap<Socket, Entry>();
+
+    //  Wakes up the thread when requests are submitted.
+    private final Signaler wakeup = new Signaler();
+    private final AtomicBoolean signaled = new AtomicBoolean();
+
+    private final Thread thread;
+    private boolean terminated;
+
+    //  Whether the thread was terminated from one of the listeners it runs.
+    private boolean selfTerminated;
+
+    AsyncDriver()
+    {
+        thread = new Thread(this, "jeromq-async");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    ZFuture<ZMsg> recv(Socket socket)
+    {
+        ZFuture<ZMsg> future = new ZFuture<ZMsg>();
+        if (!submit(new Request(RECV, socket, null, future, null))) {
+            future.completeExceptionally(new ZMQException(ZError.ETERM));
+        }
+        return future;
+    }
+
+    ZFuture<Void> send(Socket socket, ZMsg msg)
+    {
+        ZFuture<Void> future = new ZFuture<Void>();
+        if (!submit(new Request(SEND, socket, msg, null, future))) {
+            future.completeExceptionally(new ZMQException(ZError.ETERM));
+        }
+        return future;
+    }
+
+    //  Cancels the pending operations of the socket and closes it from the
+    //  thread. Returns false if the thread is terminated, in which case the
+    //  socket is to be closed by the caller.
+    boolean close(Socket socket)
+    {
+        return submit(new Request(CLOSE, socket, null, null, null));
+    }
+
+    //  Stops the thread, the pending operations fail with ETERM. Called from
+    //  a listener, the thread can't wait for itself: it stops once the
+    //  listener returns.
+    void terminate()
+    {
+        synchronized (this) {
+            if (terminated) {
+                return;
+            }
+            terminated = true;
+        }
+        if (Thread.currentThread() == thread) {
+            selfTerminated = true;
+            //  The sockets closed so far are closed now, as the context
+            //  waits for them. Their operations fail once the thread stops.
+            Iterator<Request> it = requests.iterator();
+            while (it.hasNext()) {
+                Request request = it.next();
+                if (request.type == CLOSE) {
+                    it.remove();
+                    request.socket.base().close();
+                }
+            }
+            return;
+        }
+        wakeup.send();
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            wakeup.close();
+        }
+        catch (IOException e) {
+        }
+    }
+
+    private synchronized boolean submit(Request request)
+    {
+        if (terminated) {
+            return false;
+        }
+        requests.add(request);
+        if (signaled.compareAndSet(false, true)) {
+            wakeup.send();
+        }
+        return true;
+    }
+
+    private synchronized boolean terminated()
+    {
+        return terminated;
+    }
+
+    @Override
+    public void run()
+    {
+        PollItem wakeupItem = new PollItem(wakeup.getFd(), ZMQ.Poller.POLLIN);
+        PollItem[] items = new PollItem[16];
+        List<Entry> polled = new ArrayList<Entry>();
+
+        while (!terminated()) {
+            processRequests();
+
+            //  Poll the sockets with pending operations.
+            polled.clear();
+            for (Entry entry : entries.values()) {
+                int events = entry.events();
+                if (events != 0) {
+                    if (entry.item.interestOps() != events) {
+                        entry.item.interestOps(events);
+                    }
+                    polled.add(entry);
+                }
+            }
+            if (items.length < polled.size() + 1) {
+                items = new PollItem[(polled.size() + 1) * 2];
+            }
+            items[0] = wakeupItem;
+            for (int i = 0; i < polled.size(); i++) {
+                items[i + 1] = polled.get(i).item;
+            }
+            int rc;
+            try {
+                rc = zmq.ZMQ.poll(items, polled.size() + 1, -1);
+            }
+            catch (RuntimeException e) {
+                rc = -1;
+            }
+
+            if (wakeupItem.isReadable()) {
+                signaled.set(false);
+                wakeup.recv();
+            }
+            for (Entry entry : polled) {
+                //  On error the failing socket is not known, the operations
+                //  of all the sockets are attempted to find it.
+                if (rc < 0 || entry.item.readyOps() != 0) {
+                    process(entry);
+                }
+            }
+            for (int i = 0; i < polled.size() + 1; i++) {
+                items[i] = null;
+            }
+        }
+
+        //  Fail everything left behind.
+        processRequests();
+        for (Entry entry : entries.values()) {
+            fail(entry, new ZMQException(ZError.ETERM));
+        }
+        entries.clear();
+        if (selfTerminated) {
+            try {
+                wakeup.close();
+            }
+            catch (IOException e) {
+            }
+        }
+    }
+
+    private void processRequests()
+    {
+        Request request;
+        while ((request = requests.poll()) != null) {
+            Entry entry = entries.get(request.socket);
+            if (entry == null) {
+                if (request.type == CLOSE) {
+                    request.socket.base().close();
+                    continue;
+                }
+                entry = new Entry(request.socket);
+                entries.put(request.socket, entry);
+            }
+            switch (request.type) {
+            case RECV:
+                entry.recvs.add(request.received);
+                break;
+            case SEND:
+                entry.sends.add(request);
+                break;
+            default:
+                for (ZFuture<ZMsg> future : entry.recvs) {
+                    future.cancel(false);
+                }
+                for (Request send : entry.sends) {
+                    send.sent.cancel(false);
+                }
+                entries.remove(request.socket);
+                request.socket.base().close();
+                continue;
+            }
+            //  The socket may be ready already, with no activation to come.
+            process(entry);
+        }
+    }
+
+    //  Performs the operations the socket is ready for.
+    private void process(Entry entry)
+    {
+        try {
+            receive(entry);
+            send(entry);
+        }
+        catch (RuntimeException e) {
+            //  E.g. a ZMQException, or receiving from a socket that can't.
+            fail(entry, e);
+        }
+        if (entry.recvs.isEmpty() && entry.sends.isEmpty() && entry.stash == null) {
+            entries.remove(entry.socket);
+        }
+    }
+
+    private void receive(Entry entry)
+    {
+        while (pending(entry.recvs)) {
+            ZMsg msg = entry.stash;
+            entry.stash = null;
+            if (msg == null) {
+                msg = ZMsg.recvMsg(entry.socket, ZMQ.DONTWAIT);
+                if (msg == null) {
+                    return;
+                }
+            }
+            entry.stash = msg;
+            while (entry.stash != null && !entry.recvs.isEmpty()) {
+                if (entry.recvs.poll().complete(msg)) {
+                    entry.stash = null;
+                }
+            }
+        }
+    }
+
+    private void send(Entry entry)
+    {
+        while (!entry.sends.isEmpty()) {
+            Request request = entry.sends.peek();
+            if (!request.sent.isDone()) {
+                if (!accept(entry.socket, request.msg)) {
+                    return;
+                }
+                request.sent.complete(null);
+            }
+            entry.sends.poll();
+        }
+    }
+
+    //  Sends the message unless the socket is at its high water mark. Once
+    //  the first frame is accepted, so are the following ones.
+    private boolean accept(Socket socket, ZMsg msg)
+    {
+        int flags = ZMQ.DONTWAIT;
+        Iterator<ZFrame> it = msg.iterator();
+        while (it.hasNext()) {
+            ZFrame frame = it.next();
+            if (!frame.sendAndKeep(socket, it.hasNext() ? flags | ZFrame.MORE : flags)) {
+                if (flags != 0) {
+                    return false;
+                }
+                throw new ZMQException(socket.base().errno());
+            }
+            flags = 0;
+        }
+        msg.destroy();
+        return true;
+    }
+
+    //  Drops the cancelled receives, returns true if any is left.
+    private static boolean pending(Deque<ZFuture<ZMsg>> recvs)
+    {
+        while (!recvs.isEmpty() && recvs.peek().isDone()) {
+            recvs.poll();
+        }
+        return !recvs.isEmpty();
+    }
+
+    private static void fail(Entry entry, RuntimeException error)
+    {
+        ZFuture<ZMsg> recv;
+        while ((recv = entry.recvs.poll()) != null) {
+            recv.completeExceptionally(error);
+        }
+        Request send;
+        while ((send = entry.sends.poll()) != null) {
+            send.sent.completeExceptionally(error);
+        }
+    }
+}
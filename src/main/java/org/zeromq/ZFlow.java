@@ -0,0 +1,422 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.zeromq;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.zeromq.ZMQ.Socket;
+
+/**
+ * Reactive Streams adapters for sockets: a receiving socket as a {@link Publisher}
+ * of messages, and a sending socket as a {@link Subscriber} of messages.
+ * <p>
+ * The interfaces mirror the ones of java.util.concurrent.Flow, method for method,
+ * so that bridging them to Flow or to org.reactivestreams is a matter of a few
+ * lines, while this library keeps running on Java 7.
+ * <p>
+ * The adapters are built on the asynchronous operations of the sockets, see
+ * {@link Socket#recvAsync()}, so that all the streams of a context are served by
+ * its single asynchronous thread, and the signals of the streams come from that
+ * thread. The sockets are not to be used otherwise while streaming.
+ */
+public final class ZFlow
+{
+    /**
+     * Number of messages received ahead of the demand, or sent ahead of the
+     * acceptance by the socket, by default.
+     */
+    public static final int DEFAULT_BATCH = 64;
+
+    /**
+     * @see java.util.concurrent.Flow.Publisher
+     */
+    public interface Publisher<T>
+    {
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * @see java.util.concurrent.Flow.Subscriber
+     */
+    public interface Subscriber<T>
+    {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    /**
+     * @see java.util.concurrent.Flow.Subscription
+     */
+    public interface Subscription
+    {
+        void request(long n);
+
+        void cancel();
+    }
+
+    private ZFlow()
+    {
+    }
+
+    /**
+     * Publishes the messages received on the socket, see {@link #publisher(Socket, int)}.
+     */
+    public static Publisher<ZMsg> publisher(Socket socket)
+    {
+        return publisher(socket, DEFAULT_BATCH);
+    }
+
+    /**
+     * Publishes the messages received on the socket to a single subscriber.
+     * The demand of the subscriber is served by batches of up to the given
+     * number of receives, which are satisfied from the messages readily
+     * available in the pipes of the socket in one go. Closing the socket
+     * completes the stream, a failure to receive fails it.
+     *
+     * @param socket the socket to receive from.
+     * @param batch the maximal number of receives pending at a time.
+     */
+    public static Publisher<ZMsg> publisher(Socket socket, int batch)
+    {
+        if (socket == null) {
+            throw new IllegalArgumentException("socket is null");
+        }
+        if (batch <= 0) {
+            throw new IllegalArgumentException("batch must be positive");
+        }
+        return new SocketPublisher(socket, batch);
+    }
+
+    /**
+     * Sends the messages of a stream to the socket, see {@link #subscriber(Socket, int)}.
+     */
+    public static SocketSubscriber subscriber(Socket socket)
+    {
+        return subscriber(socket, DEFAULT_BATCH);
+    }
+
+    /**
+     * Sends the messages of a stream to the socket. At most the given number of
+     * messages are requested ahead of their acceptance by the socket, so that
+     * the stream is paused while the socket is at its high water mark.
+     *
+     * @param socket the socket to send to.
+     * @param window the maximal number of messages waiting for the socket.
+     */
+    public static SocketSubscriber subscriber(Socket socket, int window)
+    {
+        if (socket == null) {
+            throw new IllegalArgumentException("socket is null");
+        }
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        return new SocketSubscriber(socket, window);
+    }
+
+    private static final class SocketPublisher implements Publisher<ZMsg>
+    {
+        private final Socket socket;
+        private final int batch;
+        private final AtomicBoolean subscribed = new AtomicBoolean();
+
+        private SocketPublisher(Socket socket, int batch)
+        {
+            this.socket = socket;
+            this.batch = batch;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super ZMsg> subscriber)
+        {
+            if (subscriber == null) {
+                throw new NullPointerException("subscriber is null");
+            }
+            if (!subscribed.compareAndSet(false, true)) {
+                subscriber.onSubscribe(new Subscription()
+                {
+                    @Override
+                    public void request(long n)
+                    {
+                    }
+
+                    @Override
+                    public void cancel()
+                    {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("The socket publishes to a single subscriber"));
+                return;
+            }
+            Receiving subscription = new Receiving(socket, subscriber, batch);
+            subscription.signal(Receiving.SUBSCRIBE, null, null);
+        }
+    }
+
+    //  The subscription to a socket publisher. Requests and cancellations
+    //  may come from any thread, the signals to the subscriber are emitted
+    //  one at a time, never while holding the state lock.
+    private static final class Receiving implements Subscription, ZFuture.Listener<ZMsg>
+    {
+        private static final int SUBSCRIBE = 0;
+        private static final int NEXT      = 1;
+        private static final int ERROR     = 2;
+        private static final int COMPLETE  = 3;
+
+        private final Socket socket;
+        private final Subscriber<? super ZMsg> subscriber;
+        private final int batch;
+
+        //  Serializes the signals to the subscriber.
+        private final Object signals = new Object();
+
+        //  The state, guarded by this.
+        private long demand;
+        private final Deque<ZFuture<ZMsg>> pending = new ArrayDeque<ZFuture<ZMsg>>();
+        private boolean cancelled;
+
+        private Receiving(Socket socket, Subscriber<? super ZMsg> subscriber, int batch)
+        {
+            this.socket = socket;
+            this.subscriber = subscriber;
+            this.batch = batch;
+        }
+
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0) {
+                cancel(new IllegalArgumentException("Non-positive request " + n));
+                return;
+            }
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                demand += n;
+                if (demand < 0) {
+                    demand = Long.MAX_VALUE;
+                }
+            }
+            fill();
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancel(null);
+        }
+
+        //  Issues the receives for the demand, up to the batch size.
+        private void fill()
+        {
+            List<ZFuture<ZMsg>> issued = new ArrayList<ZFuture<ZMsg>>();
+            synchronized (this) {
+                while (!cancelled && pending.size() < batch && pending.size() < demand) {
+                    ZFuture<ZMsg> future = socket.recvAsync();
+                    pending.add(future);
+                    issued.add(future);
+                }
+            }
+            for (ZFuture<ZMsg> future : issued) {
+                future.whenComplete(this);
+            }
+        }
+
+        //  The receives complete in order.
+        @Override
+        public void completed(ZMsg msg, Throwable error)
+        {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                pending.poll();
+                if (error == null) {
+                    demand--;
+                }
+            }
+            if (error instanceof CancellationException) {
+                //  The socket was closed.
+                cancel(null);
+                signal(COMPLETE, null, null);
+            }
+            else if (error != null) {
+                cancel(error);
+            }
+            else {
+                signal(NEXT, msg, null);
+                fill();
+            }
+        }
+
+        private void cancel(Throwable error)
+        {
+            List<ZFuture<ZMsg>> cancelling;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                cancelling = new ArrayList<ZFuture<ZMsg>>(pending);
+                pending.clear();
+            }
+            for (ZFuture<ZMsg> future : cancelling) {
+                future.cancel(false);
+            }
+            if (error != null) {
+                signal(ERROR, null, error);
+            }
+        }
+
+        private void signal(int type, ZMsg msg, Throwable error)
+        {
+            synchronized (signals) {
+                switch (type) {
+                case SUBSCRIBE:
+                    subscriber.onSubscribe(this);
+                    break;
+                case NEXT:
+                    if (!isCancelled()) {
+                        subscriber.onNext(msg);
+                    }
+                    break;
+                case ERROR:
+                    subscriber.onError(error);
+                    break;
+                default:
+                    subscriber.onComplete();
+                    break;
+                }
+            }
+        }
+
+        private synchronized boolean isCancelled()
+        {
+            return cancelled;
+        }
+    }
+
+    /**
+     * A subscriber sending the messages it receives to a socket.
+     */
+    public static final class SocketSubscriber implements Subscriber<ZMsg>, ZFuture.Listener<Void>
+    {
+        private final Socket socket;
+        private final int window;
+        private final ZFuture<Void> done = new ZFuture<Void>();
+
+        //  The state, guarded by this.
+        private Subscription subscription;
+        private int sending;
+        private boolean completed;
+
+        private SocketSubscriber(Socket socket, int window)
+        {
+            this.socket = socket;
+            this.window = window;
+        }
+
+        /**
+         * The completion of the stream, once all its messages have been accepted by
+         * the socket, or its failure.
+         */
+        public ZFuture<Void> done()
+        {
+            return done;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription)
+        {
+            synchronized (this) {
+                if (this.subscription != null) {
+                    subscription.cancel();
+                    return;
+                }
+                this.subscription = subscription;
+            }
+            subscription.request(window);
+        }
+
+        @Override
+        public void onNext(ZMsg msg)
+        {
+            if (msg == null) {
+                throw new NullPointerException("msg is null");
+            }
+            synchronized (this) {
+                sending++;
+            }
+            socket.sendAsync(msg).whenComplete(this);
+        }
+
+        @Override
+        public void onError(Throwable throwable)
+        {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete()
+        {
+            synchronized (this) {
+                completed = true;
+                if (sending > 0) {
+                    return;
+                }
+            }
+            done.complete(null);
+        }
+
+        //  A message has been accepted by the socket, the next one can come.
+        @Override
+        public void completed(Void value, Throwable error)
+        {
+            Subscription subscription;
+            boolean finished;
+            synchronized (this) {
+                sending--;
+                subscription = this.subscription;
+                finished = completed && sending == 0;
+            }
+            if (error != null) {
+                subscription.cancel();
+                done.completeExceptionally(error);
+            }
+            else if (finished) {
+                done.complete(null);
+            }
+            else if (!done.isDone()) {
+                subscription.request(1);
+            }
+        }
+    }
+}
@@ -22,7 +22,9 @@ package org.zeromq;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.zeromq.ZMQ.Socket;
 
@@ -393,6 +395,39 @@ public class ZFrame
         return f;
     }
 
+    /**
+     * Receives a batch of frames off the socket: the first one as recvFrame
+     * does, then all the frames readily available, up to max frames.
+     * @param   socket
+     *              Socket to read from
+     * @param   max
+     *              Maximum number of frames to receive
+     * @param   flags
+     *              Pass flags to 0MQ socket.recv call
+     * @return
+     *              received frames, else null
+     */
+    public static List<ZFrame> recvFrames(Socket socket, int max, int flags)
+    {
+        if (socket == null) {
+            throw new IllegalArgumentException("socket parameter must not be null");
+        }
+
+        zmq.Msg[] msgs = new zmq.Msg[max];
+        int count = socket.recvBatch(msgs, max, flags);
+        if (count == 0) {
+            return null;
+        }
+
+        List<ZFrame> frames = new ArrayList<ZFrame>(count);
+        for (int i = 0; i < count; i++) {
+            ZFrame f = new ZFrame(msgs[i].data());
+            f.more = msgs[i].hasMore();
+            frames.add(f);
+        }
+        return frames;
+    }
+
     public void print(String prefix)
     {
         StringWriter sw = new StringWriter();
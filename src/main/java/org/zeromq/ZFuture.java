@@ -0,0 +1,226 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.zeromq;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The result of an asynchronous operation on a socket, see {@link ZMQ.Socket#recvAsync()}
+ * and {@link ZMQ.Socket#sendAsync(ZMsg)}.
+ * <p>
+ * Besides waiting for the result as with any {@link Future}, listeners can be
+ * registered to be called once it is available. They are called by the thread
+ * completing the future, i.e. the asynchronous thread of the context for the
+ * socket operations, or by the registering thread if the future is already
+ * completed. Listeners are not to block, as they hold up the completion of the
+ * other operations of the context.
+ *
+ * @param <V> the type of the result
+ */
+public class ZFuture<V> implements Future<V>
+{
+    /**
+     * Called once a future is completed.
+     * <p>
+     * The listeners of the asynchronous operations run on the asynchronous thread
+     * of the context. They are not to block it: a context terminated from a listener
+     * stops that thread once the listener returns, the operations still pending then
+     * failing with ETERM.
+     *
+     * @param <V> the type of the result
+     */
+    public interface Listener<V>
+    {
+        /**
+         * @param value the result, null if the future failed
+         * @param error the failure cause, null if the future succeeded
+         */
+        void completed(V value, Throwable error);
+    }
+
+    private static final int PENDING   = 0;
+    private static final int SUCCEEDED = 1;
+    private static final int FAILED    = 2;
+    private static final int CANCELLED = 3;
+
+    private int state = PENDING;
+    private V value;
+    private Throwable error;
+
+    //  The listeners to call on completion, null once called.
+    private List<Listener<? super V>> listeners = new ArrayList<Listener<? super V>>(1);
+
+    /**
+     * Completes the future with the given value.
+     *
+     * @return true if the future was completed by this call, false if it was already done.
+     */
+    public boolean complete(V value)
+    {
+        return done(SUCCEEDED, value, null);
+    }
+
+    /**
+     * Completes the future with the given failure.
+     *
+     * @return true if the future was completed by this call, false if it was already done.
+     */
+    public boolean completeExceptionally(Throwable error)
+    {
+        if (error == null) {
+            throw new IllegalArgumentException("error is null");
+        }
+        return done(FAILED, null, error);
+    }
+
+    /**
+     * Cancels the operation if it hasn't completed yet. A cancelled receive
+     * leaves the message to the next one, a cancelled send doesn't send.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+        return done(CANCELLED, null, new CancellationException());
+    }
+
+    /**
+     * Registers a listener to call on completion, right away if the future is done.
+     *
+     * @return this future
+     */
+    public ZFuture<V> whenComplete(Listener<? super V> listener)
+    {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener is null");
+        }
+        synchronized (this) {
+            if (listeners != null) {
+                listeners.add(listener);
+                return this;
+            }
+        }
+        call(listener, value, error);
+        return this;
+    }
+
+    @Override
+    public synchronized boolean isCancelled()
+    {
+        return state == CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone()
+    {
+        return state != PENDING;
+    }
+
+    @Override
+    public synchronized V get() throws InterruptedException, ExecutionException
+    {
+        while (state == PENDING) {
+            wait();
+        }
+        return result();
+    }
+
+    @Override
+    public synchronized V get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException
+    {
+        long end = System.nanoTime() + unit.toNanos(timeout);
+        while (state == PENDING) {
+            long remaining = end - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return result();
+    }
+
+    private V result() throws ExecutionException
+    {
+        switch (state) {
+        case SUCCEEDED:
+            return value;
+        case CANCELLED:
+            throw (CancellationException) error;
+        default:
+            throw new ExecutionException(error);
+        }
+    }
+
+    private boolean done(int state, V value, Throwable error)
+    {
+        List<Listener<? super V>> toCall;
+        synchronized (this) {
+            if (this.state != PENDING) {
+                return false;
+            }
+            this.state = state;
+            this.value = value;
+            this.error = error;
+            toCall = listeners;
+            listeners = null;
+            notifyAll();
+        }
+        for (Listener<? super V> listener : toCall) {
+            call(listener, value, error);
+        }
+        return true;
+    }
+
+    //  A failing listener prevents neither the other listeners from being
+    //  called nor the completing thread from carrying on.
+    private static <V> void call(Listener<? super V> listener, V value, Throwable error)
+    {
+        try {
+            listener.completed(value, error);
+        }
+        catch (RuntimeException e) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        synchronized (this) {
+            switch (state) {
+            case PENDING:
+                return super.toString() + "[pending]";
+            case SUCCEEDED:
+                return super.toString() + "[succeeded " + value + "]";
+            case CANCELLED:
+                return super.toString() + "[cancelled]";
+            default:
+                return super.toString() + "[failed " + error + "]";
+            }
+        }
+    }
+}
@@ -23,6 +23,9 @@ import java.io.Closeable;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectableChannel;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import zmq.Ctx;
@@ -115,6 +118,27 @@ public class ZMQ
      * Flag to specify the receiving part of the PUB or XPUB socket. Allows
      */
     public static final int XSUB = zmq.ZMQ.ZMQ_XSUB;
+    /**
+     * Flag to specify a thread-safe SERVER socket, talking to CLIENT sockets.
+     * Messages are single-part and the routing id of the client they come from,
+     * or go to, is carried by the message itself.
+     */
+    public static final int SERVER = zmq.ZMQ.ZMQ_SERVER;
+    /**
+     * Flag to specify a thread-safe CLIENT socket, talking to SERVER sockets.
+     * Messages are single-part, load-balanced to and fair-queued from the servers.
+     */
+    public static final int CLIENT = zmq.ZMQ.ZMQ_CLIENT;
+    /**
+     * Flag to specify a RADIO socket, publishing single-part messages to the
+     * DISH sockets that joined the group of the message.
+     */
+    public static final int RADIO = zmq.ZMQ.ZMQ_RADIO;
+    /**
+     * Flag to specify a DISH socket, receiving the messages of the groups
+     * it joined from RADIO sockets. Groups are matched exactly.
+     */
+    public static final int DISH = zmq.ZMQ.ZMQ_DISH;
 
     /**
      * Flag to specify a STREAMER device.
@@ -259,6 +283,9 @@ public class ZMQ
     {
         private final Ctx ctx;
 
+        //  Drives the asynchronous operations of the sockets, started on first use.
+        private AsyncDriver async;
+
         /**
          * Class constructor.
          *
@@ -312,6 +339,99 @@ public class ZMQ
             return ctx.set(zmq.ZMQ.ZMQ_BLOCKY, block ? 1 : 0);
         }
 
+        /**
+         * Returns true if the TCP connections of the context are driven by
+         * asynchronous channels instead of the I/O threads' selectors.
+         */
+        public boolean isProactor()
+        {
+            return ctx.get(zmq.ZMQ.ZMQ_PROACTOR) != 0;
+        }
+
+        /**
+         * Drives the TCP connections of the context by asynchronous channels
+         * sharing a single channel group, with their completions handed over
+         * to the I/O threads. Sockets behave the same either way. It has to
+         * be set before the first socket of the context is created.
+         */
+        public boolean setProactor(boolean proactor)
+        {
+            return ctx.set(zmq.ZMQ.ZMQ_PROACTOR, proactor ? 1 : 0);
+        }
+
+        /**
+         * Returns the interval in milliseconds at which the I/O threads hand
+         * their connections over to less busy threads, 0 if they never do.
+         */
+        public int getIoRebalanceIvl()
+        {
+            return ctx.get(zmq.ZMQ.ZMQ_IO_REBALANCE_IVL);
+        }
+
+        /**
+         * Makes the I/O threads measure their traffic, in bytes and I/O events
+         * per second, at the given interval in milliseconds, and hand their
+         * quiet TCP connections over to the threads much less busy. It has to
+         * be set before the first socket of the context is created.
+         */
+        public boolean setIoRebalanceIvl(int ivl)
+        {
+            return ctx.set(zmq.ZMQ.ZMQ_IO_REBALANCE_IVL, ivl);
+        }
+
+        /**
+         * Returns the maximum number of TCP connections being established at once
+         * in the context, 0 if unlimited.
+         */
+        public int getMaxConnecting()
+        {
+            return ctx.get(zmq.ZMQ.ZMQ_MAX_CONNECTING);
+        }
+
+        /**
+         * Limits the number of TCP connections being established at once in the
+         * context, so that a restarted peer is not overwhelmed by the reconnecting
+         * sockets. The connection attempts beyond the limit wait for the pending
+         * ones to succeed or fail.
+         *
+         * @param max the maximum number of connections being established, 0 for no limit.
+         */
+        public boolean setMaxConnecting(int max)
+        {
+            return ctx.set(zmq.ZMQ.ZMQ_MAX_CONNECTING, max);
+        }
+
+        /**
+         * Returns the time in milliseconds the addresses of the host names
+         * looked up in the context are cached for.
+         */
+        public int getDnsTtl()
+        {
+            return ctx.get(zmq.ZMQ.ZMQ_DNS_TTL);
+        }
+
+        /**
+         * Sets the time the addresses of the host names looked up in the context
+         * are cached for. The host names are looked up in the background, and
+         * the connecting and reconnecting sockets share the cached addresses.
+         *
+         * @param ttl the time to live of the cached addresses in milliseconds,
+         *            0 to look the host names up on every connection attempt.
+         */
+        public boolean setDnsTtl(int ttl)
+        {
+            return ctx.set(zmq.ZMQ.ZMQ_DNS_TTL, ttl);
+        }
+
+        /**
+         * Returns the number of TCP connection attempts per second made in the
+         * context over the last second.
+         */
+        public long getConnectAttemptsPerSecond()
+        {
+            return ctx.getConnectAttemptsPerSecond();
+        }
+
         /**
          * This is an explicit "destructor". It can be called to ensure the corresponding 0MQ
          * Context has been disposed of.
@@ -319,9 +439,24 @@ public class ZMQ
 
         public void term()
         {
+            AsyncDriver driver;
+            synchronized (this) {
+                driver = async;
+            }
+            if (driver != null) {
+                driver.terminate();
+            }
             ctx.terminate();
         }
 
+        synchronized AsyncDriver async()
+        {
+            if (async == null) {
+                async = new AsyncDriver();
+            }
+            return async;
+        }
+
         /**
          * Create a new Socket within this context.
          *
@@ -361,7 +496,7 @@ public class ZMQ
         @Override
         public void close()
         {
-            ctx.terminate();
+            term();
         }
     }
 
@@ -373,9 +508,13 @@ public class ZMQ
         private static final int DYNTO = 0xffff;
 
         private final Ctx ctx;
+        private final Context context;
         private final SocketBase base;
         private final AtomicBoolean isClosed = new AtomicBoolean(false);
 
+        //  Drives the asynchronous operations, once one has been made.
+        private volatile AsyncDriver async;
+
         /**
          * Class constructor.
          *
@@ -387,12 +526,14 @@ public class ZMQ
         protected Socket(Context context, int type)
         {
             ctx = context.ctx;
+            this.context = context;
             base = ctx.createSocket(type);
         }
 
         protected Socket(SocketBase base)
         {
             ctx = null;
+            context = null;
             this.base = base;
         }
 
@@ -414,10 +555,65 @@ public class ZMQ
         public void close()
         {
             if (isClosed.compareAndSet(false, true)) {
-                base.close();
+                //  With asynchronous operations, the socket may be in use
+                //  by the asynchronous thread, which closes it then.
+                AsyncDriver driver = async;
+                if (driver == null || !driver.close(this)) {
+                    base.close();
+                }
             }
         }
 
+        /**
+         * Receives a message asynchronously. The returned future completes with the
+         * next message once it arrives, without any thread waiting for it: the
+         * operation is carried out by the asynchronous thread of the context when
+         * the socket gets readable. Several receives complete in order.
+         * <p>
+         * While asynchronous operations are pending, the socket is driven by the
+         * asynchronous thread and is not to be used otherwise, except from the
+         * listeners of the futures, which run on that thread.
+         * Pending operations fail with ETERM when the context is terminated and
+         * are cancelled when the socket is closed.
+         *
+         * @return the future message.
+         * @throws UnsupportedOperationException if the socket was not created by a Context.
+         */
+        public ZFuture<ZMsg> recvAsync()
+        {
+            return async().recv(this);
+        }
+
+        /**
+         * Sends a message asynchronously. The returned future completes once the
+         * message is accepted by the socket, i.e. as soon as the socket is below
+         * its high water mark, and the message is destroyed then. Several sends
+         * are accepted in order. See {@link #recvAsync()} for the use of the socket
+         * while operations are pending.
+         *
+         * @param msg the message to send.
+         * @return the future completion of the send.
+         * @throws UnsupportedOperationException if the socket was not created by a Context.
+         */
+        public ZFuture<Void> sendAsync(ZMsg msg)
+        {
+            if (msg == null) {
+                throw new IllegalArgumentException("msg is null");
+            }
+            return async().send(this, msg);
+        }
+
+        private AsyncDriver async()
+        {
+            if (context == null) {
+                throw new UnsupportedOperationException("Asynchronous operations need a socket created by a Context");
+            }
+            if (async == null) {
+                async = context.async();
+            }
+            return async;
+        }
+
         /**
          * The 'ZMQ_TYPE option shall retrieve the socket type for the specified
          * 'socket'.  The socket type is specified at socket creation time and
@@ -1038,6 +1234,39 @@ public class ZMQ
             setsockopt(zmq.ZMQ.ZMQ_UNSUBSCRIBE, topic);
         }
 
+        /**
+         * Join a group, so that a 'ZMQ_DISH' socket receives the messages sent
+         * to that group. Unlike subscriptions, groups are matched exactly.
+         *
+         * @param group the group to join, at most 255 bytes long once UTF-8 encoded
+         * @return true if the group was joined, false otherwise
+         */
+        public final boolean join(String group)
+        {
+            if (base.join(group)) {
+                return true;
+            }
+
+            mayRaise();
+            return false;
+        }
+
+        /**
+         * Leave a group previously joined by a 'ZMQ_DISH' socket.
+         *
+         * @param group the group to leave
+         * @return true if the group was left, false otherwise
+         */
+        public final boolean leave(String group)
+        {
+            if (base.leave(group)) {
+                return true;
+            }
+
+            mayRaise();
+            return false;
+        }
+
         /**
          * Set custom Encoder
          * @param cls
@@ -1156,6 +1385,212 @@ public class ZMQ
             setsockopt(zmq.ZMQ.ZMQ_DELAY_ATTACH_ON_CONNECT, value ? 1 : 0);
         }
 
+        /**
+         * @see #setReadBudgetBytes(int)
+         *
+         * @return the read budget in bytes.
+         */
+        public int getReadBudgetBytes()
+        {
+            return base.getSocketOpt(zmq.ZMQ.ZMQ_READ_BUDGET_BYTES);
+        }
+
+        /**
+         * Sets the maximum number of bytes a connection of this socket reads in a single
+         * I/O event before giving way to the other connections served by the same I/O thread.
+         * A value of 0 reads once per event.
+         *
+         * @param value The value of 'ZMQ_READ_BUDGET_BYTES'. Default 262144.
+         */
+        public void setReadBudgetBytes(int value)
+        {
+            setsockopt(zmq.ZMQ.ZMQ_READ_BUDGET_BYTES, value);
+        }
+
+        /**
+         * @see #setReadBudgetMsgs(int)
+         *
+         * @return the read budget in messages.
+         */
+        public int getReadBudgetMsgs()
+        {
+            return base.getSocketOpt(zmq.ZMQ.ZMQ_READ_BUDGET_MSGS);
+        }
+
+        /**
+         * Sets the maximum number of message parts a connection of this socket decodes in a
+         * single I/O event before giving way to the other connections served by the same I/O thread.
+         *
+         * @param value The value of 'ZMQ_READ_BUDGET_MSGS'. Default 1000.
+         */
+        public void setReadBudgetMsgs(int value)
+        {
+            setsockopt(zmq.ZMQ.ZMQ_READ_BUDGET_MSGS, value);
+        }
+
+        /**
+         * @see #setCorkInterval(int)
+         *
+         * @return the write coalescing interval in microseconds.
+         */
+        public int getCorkInterval()
+        {
+            return base.getSocketOpt(zmq.ZMQ.ZMQ_CORK_IVL);
+        }
+
+        /**
+         * Enables coalescing of small outbound messages on TCP connections. When an idle
+         * connection gets a new message to send, the write is delayed by up to the given
+         * interval so that the messages queued in the meantime are written as one larger
+         * batch. Connections with a full batch pending are written without delay.
+         * The interval is rounded up to milliseconds.
+         *
+         * @param value The value of 'ZMQ_CORK_IVL' in microseconds. Default 0 (disabled).
+         */
+        public void setCorkInterval(int value)
+        {
+            setsockopt(zmq.ZMQ.ZMQ_CORK_IVL, value);
+        }
+
+        /**
+         * @see #setCompression(boolean)
+         *
+         * @return true if compression is offered to the peers.
+         */
+        public boolean getCompression()
+        {
+            return base.getSocketOpt(zmq.ZMQ.ZMQ_COMPRESSION) == 1;
+        }
+
+        /**
+         * Offers compression to the peers of the TCP and IPC connections made afterwards.
+         * The traffic of a connection is compressed if the peer offers it too and has the
+         * same dictionary, otherwise it flows uncompressed. Data that doesn't compress is
+         * sent as is. Compression can't be combined with heartbeats.
+         *
+         * @param value The value of 'ZMQ_COMPRESSION'. Default false.
+         * @throws IllegalArgumentException if heartbeats are enabled.
+         */
+        public void setCompression(boolean value)
+        {
+            setsockopt(zmq.ZMQ.ZMQ_COMPRESSION, value ? 1 : 0);
+        }
+
+        /**
+         * @see #setCompressionDictionary(byte[])
+         *
+         * @return the compression dictionary, or null.
+         */
+        public byte[] getCompressionDictionary()
+        {
+            return (byte[]) base.getsockoptx(zmq.ZMQ.ZMQ_COMPRESSION_DICT);
+        }
+
+        /**
+         * Sets the dictionary primed on both sides of the compressed connections, typically
+         * a sample of the usual traffic. It improves the compression of small messages.
+         * Only its last 64kB are used.
+         *
+         * @param value The value of 'ZMQ_COMPRESSION_DICT'. Default null.
+         */
+        public void setCompressionDictionary(byte[] value)
+        {
+            setsockopt(zmq.ZMQ.ZMQ_COMPRESSION_DICT, value);
+        }
+
+        /**
+         * @see #setTcpListeners(int)
+         *
+         * @return the number of listeners bound to each TCP endpoint.
+         */
+        public int getTcpListeners()
+        {
+            return base.getSocketOpt(zmq.ZMQ.ZMQ_TCP_LISTENERS);
+        }
+
+        /**
+         * Binds several listeners to each TCP endpoint, sharing the port with
+         * SO_REUSEPORT, each polled by another I/O thread, so that the operating
+         * system spreads the incoming connections over the I/O threads. Where
+         * SO_REUSEPORT is not available (Java 8 and earlier, some platforms),
+         * a single listener is bound. It applies to the subsequent binds.
+         *
+         * @param value The value of 'ZMQ_TCP_LISTENERS', 0 meaning one listener per
+         *              I/O thread. Default 1.
+         */
+        public void setTcpListeners(int value)
+        {
+            setsockopt(zmq.ZMQ.ZMQ_TCP_LISTENERS, value);
+        }
+
+        /**
+         * @see #setHeartbeatInterval(int)
+         *
+         * @return the interval between heartbeats in milliseconds.
+         */
+        public int getHeartbeatInterval()
+        {
+            return base.getSocketOpt(zmq.ZMQ.ZMQ_HEARTBEAT_IVL);
+        }
+
+        /**
+         * Sends a PING command to the peers every given interval. A peer that doesn't send
+         * any traffic within the heartbeat timeout after a PING is disconnected, freeing the
+         * messages queued for it. Only peers speaking ZMTP/3.x get heartbeats, which
+         * rules out compression, custom codecs and the RADIO and DISH sockets.
+         *
+         * @param value The value of 'ZMQ_HEARTBEAT_IVL' in milliseconds. Default 0 (disabled).
+         * @throws IllegalArgumentException if the socket uses compression, custom codecs
+         *         or groups.
+         */
+        public void setHeartbeatInterval(int value)
+        {
+            setsockopt(zmq.ZMQ.ZMQ_HEARTBEAT_IVL, value);
+        }
+
+        /**
+         * @see #setHeartbeatTtl(int)
+         *
+         * @return the time to live sent along with the heartbeats, in milliseconds.
+         */
+        public int getHeartbeatTtl()
+        {
+            return base.getSocketOpt(zmq.ZMQ.ZMQ_HEARTBEAT_TTL);
+        }
+
+        /**
+         * Tells the peers to disconnect if they don't get any traffic within the given time
+         * after a heartbeat. The value is rounded down to deciseconds, up to 6553599.
+         *
+         * @param value The value of 'ZMQ_HEARTBEAT_TTL' in milliseconds. Default 0 (none).
+         */
+        public void setHeartbeatTtl(int value)
+        {
+            setsockopt(zmq.ZMQ.ZMQ_HEARTBEAT_TTL, value);
+        }
+
+        /**
+         * @see #setHeartbeatTimeout(int)
+         *
+         * @return the time to wait for traffic after a heartbeat, in milliseconds.
+         */
+        public int getHeartbeatTimeout()
+        {
+            return base.getSocketOpt(zmq.ZMQ.ZMQ_HEARTBEAT_TIMEOUT);
+        }
+
+        /**
+         * Sets how long to wait for any traffic from a peer after sending it a heartbeat
+         * before disconnecting it.
+         *
+         * @param value The value of 'ZMQ_HEARTBEAT_TIMEOUT' in milliseconds. Default -1
+         *              (the heartbeat interval).
+         */
+        public void setHeartbeatTimeout(int value)
+        {
+            setsockopt(zmq.ZMQ.ZMQ_HEARTBEAT_TIMEOUT, value);
+        }
+
         /**
          * Bind to network interface. Start listening for new connections.
          *
@@ -1307,6 +1742,24 @@ public class ZMQ
             return false;
         }
 
+        /**
+         * Send a message. Use it with the SERVER socket, to send the message
+         * to the client given by the routing id of the message.
+         *
+         * @param msg the message to send
+         * @param flags the flags to apply to the send operation
+         * @return true if the message was sent, false otherwise
+         */
+        public final boolean sendMsg(zmq.Msg msg, int flags)
+        {
+            if (base.send(msg, flags)) {
+                return true;
+            }
+
+            mayRaise();
+            return false;
+        }
+
         public final boolean send(byte[] data, int off, int length, int flags)
         {
             byte[] copy = new byte[length];
@@ -1337,6 +1790,66 @@ public class ZMQ
             mayRaise();
             return -1;
         }
+
+        /**
+         * Send the same payload to several peers of a ROUTER socket. The
+         * payload is shared by all the peers rather than copied for each.
+         *
+         * @param ids the identities of the peers to send the payload to
+         * @param data the payload, sent as a single frame
+         * @param errors if not null, receives for each peer zero if the payload
+         *        was routed to it, EHOSTUNREACH if the peer is unknown or EAGAIN
+         *        if it reached its high water mark
+         * @return the number of peers the payload was routed to, -1 on error,
+         *         such as ENOTSUP for socket types other than ROUTER
+         */
+        public final int sendTo(byte[][] ids, byte[] data, int[] errors)
+        {
+            zmq.Msg msg = new zmq.Msg(data);
+            int sent = base.sendTo(ids, msg, errors);
+            if (sent < 0) {
+                mayRaise();
+            }
+            return sent;
+        }
+
+        /**
+         * Send a batch of messages. All the frames are written before the
+         * underlying pipes get flushed, so the peers are woken up once per
+         * batch instead of once per message. Empty messages are skipped.
+         *
+         * @param msgs the messages to send; they are not destroyed
+         * @param flags the flags to apply to the send operation
+         * @return the number of complete messages sent
+         */
+        public final int sendBatch(List<ZMsg> msgs, int flags)
+        {
+            List<zmq.Msg> batch = new ArrayList<zmq.Msg>();
+            List<Integer> ends = new ArrayList<Integer>(msgs.size());
+            for (ZMsg zmsg : msgs) {
+                Iterator<ZFrame> it = zmsg.iterator();
+                while (it.hasNext()) {
+                    zmq.Msg msg = new zmq.Msg(it.next().getData());
+                    if (it.hasNext()) {
+                        msg.setFlags(zmq.Msg.MORE);
+                    }
+                    batch.add(msg);
+                }
+                ends.add(batch.size());
+            }
+
+            int sent = base.sendBatch(batch.toArray(new zmq.Msg[batch.size()]), flags);
+            if (sent < batch.size()) {
+                mayRaise();
+            }
+
+            int count = 0;
+            while (count < ends.size() && ends.get(count) <= sent) {
+                count++;
+            }
+            return count;
+        }
+
         /**
          * Receive a message.
          *
@@ -1366,6 +1879,45 @@ public class ZMQ
             return null;
         }
 
+        /**
+         * Receive a message. With the SERVER socket, the routing id of the
+         * message tells the client the message comes from.
+         *
+         * @param flags
+         *            the flags to apply to the receive operation.
+         * @return the message received; null on error.
+         */
+        public final zmq.Msg recvMsg(int flags)
+        {
+            zmq.Msg msg = base.recv(flags);
+
+            if (msg != null) {
+                return msg;
+            }
+
+            mayRaise();
+            return null;
+        }
+
+        /**
+         * Receive a batch of messages: the first one as by {@link #recv(int)},
+         * then whatever is readily available, up to max messages.
+         * Multi-part boundaries are kept in the MORE flag of each message.
+         *
+         * @param out the array to receive the messages into
+         * @param max the maximum number of messages to receive
+         * @param flags the flags to apply to the receive operation
+         * @return the number of messages received, 0 on no message
+         */
+        public final int recvBatch(zmq.Msg[] out, int max, int flags)
+        {
+            int count = base.recvBatch(out, max, flags);
+            if (count == 0) {
+                mayRaise();
+            }
+            return count;
+        }
+
         /**
          * Receive a message in to a specified buffer.
          *
@@ -1471,6 +2023,9 @@ public class ZMQ
         private static final int SIZE_INCREMENT = 16;
 
         private PollItem[] items;
+        //  The base items of the registered ones, kept in sync so that
+        //  the poll set doesn't need to be rebuilt on every poll.
+        private zmq.PollItem[] pollItems;
         private long timeout;
         private int next;
 
@@ -1490,6 +2045,7 @@ public class ZMQ
         protected Poller(Context context, int size)
         {
             items = new PollItem[size];
+            pollItems = new zmq.PollItem[size];
             timeout = -1L;
             next = 0;
         }
@@ -1570,8 +2126,12 @@ public class ZMQ
                 PollItem[] nitems = new PollItem[items.length + SIZE_INCREMENT];
                 System.arraycopy(items, 0, nitems, 0, items.length);
                 items = nitems;
+                zmq.PollItem[] npollItems = new zmq.PollItem[nitems.length];
+                System.arraycopy(pollItems, 0, npollItems, 0, pollItems.length);
+                pollItems = npollItems;
             }
             items[pos] = item;
+            pollItems[pos] = item.base();
             return pos;
         }
 
@@ -1583,7 +2143,7 @@ public class ZMQ
          */
         public void unregister(Socket socket)
         {
-            for (int pos = 0; pos < items.length; pos++) {
+            for (int pos = 0; pos < next; pos++) {
                 PollItem item = items[pos];
                 if (item.getSocket() == socket) {
                     remove(pos);
@@ -1600,7 +2160,7 @@ public class ZMQ
          */
         public void unregister(SelectableChannel channel)
         {
-            for (int pos = 0; pos < items.length; pos++) {
+            for (int pos = 0; pos < next; pos++) {
                 PollItem item = items[pos];
                 if (item.getRawSocket() == channel) {
                     remove(pos);
@@ -1614,8 +2174,10 @@ public class ZMQ
             next--;
             if (pos != next) {
                 items[pos] = items[next];
+                pollItems[pos] = pollItems[next];
             }
             items [next] = null;
+            pollItems[next] = null;
         }
 
         /**
@@ -1730,11 +2292,6 @@ public class ZMQ
          */
         public int poll(long tout)
         {
-            zmq.PollItem[] pollItems = new zmq.PollItem[next];
-            for (int i = 0; i < next; i++) {
-                pollItems[i] = items[i].base();
-            }
-
             return zmq.ZMQ.poll(pollItems, next, tout);
         }
 
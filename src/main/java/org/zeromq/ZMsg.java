@@ -25,9 +25,11 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import org.zeromq.ZMQ.Socket;
@@ -263,6 +265,53 @@ public class ZMsg implements Iterable<ZFrame>, Deque<ZFrame>
         return msg;
     }
 
+    /**
+     * Receives a batch of complete messages from socket. The first message is
+     * received as by recvMsg, the following ones are those readily available,
+     * up to max messages. A message is never split between two batches.
+     * @param   socket
+     * @param   max maximum number of messages to receive
+     * @param   flag see ZMQ constants
+     * @return
+     *          list of ZMsg objects, null if interrupted
+     */
+    public static List<ZMsg> recvMsgs(Socket socket, int max, int flag)
+    {
+        if (socket == null) {
+            throw new IllegalArgumentException("socket is null");
+        }
+
+        List<ZMsg> msgs = new ArrayList<ZMsg>();
+        ZMsg msg = new ZMsg();
+
+        //  Every message has at least one frame, so asking for no more frames
+        //  than messages still wanted never reads past the last message.
+        while (msgs.size() < max) {
+            int wanted = max - msgs.size();
+            List<ZFrame> frames = ZFrame.recvFrames(socket, wanted, flag);
+            if (frames == null) {
+                if (msgs.isEmpty() || !msg.isEmpty()) {
+                    //  If receive failed or was interrupted
+                    return null;
+                }
+                break;
+            }
+            for (ZFrame f : frames) {
+                msg.add(f);
+                if (!f.hasMore()) {
+                    msgs.add(msg);
+                    msg = new ZMsg();
+                }
+            }
+            if (frames.size() < wanted && msg.isEmpty()) {
+                break;
+            }
+            //  Later batches only pick what is already there.
+            flag |= ZMQ.DONTWAIT;
+        }
+        return msgs;
+    }
+
     /**
      * Save message to an open data output stream.
      *
@@ -0,0 +1,94 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+//  Tracks the batch size of a single engine direction. The batch grows
+//  towards the ceiling while transfers keep filling it up and shrinks
+//  back towards the floor once the traffic turns sparse, so that bulk
+//  transfers get large batches and idle connections don't hold on to
+//  large buffers.
+final class AdaptiveBatch
+{
+    //  Number of consecutive sparse transfers before the batch shrinks.
+    private static final int SHRINK_THRESHOLD = 16;
+
+    //  Lower and upper bounds of the batch size.
+    private final int min;
+    private final int max;
+
+    //  Current batch size.
+    private int size;
+
+    //  Number of consecutive transfers that used less than a quarter
+    //  of the batch.
+    private int sparse;
+
+    public AdaptiveBatch(int initial, int min, int max)
+    {
+        assert (min > 0 && min <= max);
+        this.min = min;
+        this.max = max;
+        size = Math.max(min, Math.min(initial, max));
+        sparse = 0;
+    }
+
+    //  Accounts for a transfer of the given number of bytes. Returns true
+    //  if the batch size has changed as a result.
+    public boolean update(int used)
+    {
+        if (used >= size) {
+            sparse = 0;
+            if (size < max) {
+                size = Math.min(size * 2, max);
+                return true;
+            }
+            return false;
+        }
+
+        if (used >= size / 4) {
+            sparse = 0;
+            return false;
+        }
+
+        if (++sparse < SHRINK_THRESHOLD || size == min) {
+            return false;
+        }
+
+        sparse = 0;
+        size = Math.max(size / 2, min);
+        return true;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    //  Computes the ceiling for a batch given the size of the
+    //  corresponding OS socket buffer.
+    public static int ceiling(int initial, int socketBufferSize)
+    {
+        int ceiling = Config.MAX_BATCH_SIZE.getValue();
+        if (socketBufferSize > 0) {
+            ceiling = Math.min(ceiling, socketBufferSize);
+        }
+        return Math.max(ceiling, initial);
+    }
+}
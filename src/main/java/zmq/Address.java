@@ -19,8 +19,10 @@
 package zmq;
 
 import java.net.Inet6Address;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.List;
 
 public class Address
 {
@@ -63,6 +65,9 @@ public class Address
         else if (protocol.equals("ipc") && isResolved()) {
             return resolved.toString();
         }
+        else if (protocol.equals("udp") && isResolved()) {
+            return resolved.toString();
+        }
         else if (!protocol.isEmpty() && !address.isEmpty()) {
             return protocol + "://" + address;
         }
@@ -91,6 +96,42 @@ public class Address
         return resolved != null;
     }
 
+    public boolean ipv4only()
+    {
+        return ipv4only;
+    }
+
+    //  Replaces the resolved address, e.g. by the one a connection has
+    //  been established to.
+    void resolved(IZAddress resolved)
+    {
+        this.resolved = resolved;
+    }
+
+    //  Resolves the address without waiting for the host name to be looked
+    //  up, from the addresses cached by the resolver. Returns false if the
+    //  host name has still to be looked up.
+    boolean resolve(Resolver resolver)
+    {
+        if (!protocol.equals("tcp")) {
+            return resolve();
+        }
+
+        //  Validate the port right away.
+        int port = TcpAddress.port(address);
+        InetAddress[] addresses = resolver.cached(TcpAddress.host(address));
+        if (addresses == null) {
+            return false;
+        }
+
+        List<InetSocketAddress> candidates = TcpAddress.addresses(addresses, port, ipv4only);
+        if (candidates.isEmpty()) {
+            throw new IllegalArgumentException(address);
+        }
+        resolved = new TcpAddress(candidates.get(0));
+        return true;
+    }
+
     public boolean resolve()
     {
        if (protocol.equals("tcp")) {
@@ -103,6 +144,16 @@ public class Address
             resolved.resolve(address, true);
             return true;
         }
+        else if (protocol.equals("udp")) {
+            resolved = new UdpAddress();
+            resolved.resolve(address, ipv4only);
+            return true;
+        }
+        else if (protocol.equals("pgm") || protocol.equals("epgm")) {
+            resolved = new PgmAddress();
+            resolved.resolve(address, ipv4only);
+            return true;
+        }
         else {
             return false;
         }
@@ -0,0 +1,451 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.WritableByteChannel;
+
+//  Connection driven by an asynchronous channel, presented to the engine
+//  as if it was polled by the I/O thread. Reads are made ahead into a
+//  buffer and writes are copied into a buffer before they are started.
+//  The read buffer follows the engine's read batch size, and the write
+//  buffer is borrowed from the I/O thread for the time of the write only,
+//  so that idle connections hold little memory.
+//  Completions are handed over to the I/O thread, which then gets the in
+//  and out events for as long as the engine polls for them and the
+//  channel is readable or writable, exactly as with a selector.
+//
+//  Apart from the completion handlers, all the methods are called from
+//  the I/O thread the channel is started in.
+final class AsyncChannel
+{
+    private final AsynchronousSocketChannel channel;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    //  Data read ahead, kept ready for reading between the reads, and
+    //  data being written, null while not writing.
+    private ByteBuffer inbuf;
+    private ByteBuffer outbuf;
+
+    //  Current sizes of the engine's read and write batches.
+    private int inSize;
+    private int outSize;
+
+    //  Poller the completions are handed over to, and the handler
+    //  of the events. The handler is null while stopped.
+    private volatile Poller poller;
+    private IPollEvents handler;
+
+    //  Events the handler polls for.
+    private boolean pollIn;
+    private boolean pollOut;
+
+    //  True iff a read or a write is in progress.
+    private boolean reading;
+    private boolean writing;
+
+    //  True once the end of the stream has been read or a read or
+    //  a write has failed.
+    private boolean eof;
+    private boolean failed;
+
+    //  True iff the events have been already handed over to the poller.
+    private boolean scheduled;
+
+    //  True once the channel is closed by the engine. The write in progress,
+    //  if any, is completed before the channel is actually closed, as the
+    //  data would have been already passed to the OS with a selector.
+    private boolean closed;
+
+    private final Reader reader;
+    private final Writer writer;
+    private final Runnable dispatcher;
+    private final WritableByteChannel sink;
+
+    public AsyncChannel(AsynchronousSocketChannel channel)
+    {
+        this.channel = channel;
+        reader = new Reader();
+        writer = new Writer();
+        dispatcher = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                scheduled = false;
+                dispatch();
+            }
+        };
+        sink = new Sink();
+        inbuf = EMPTY;
+    }
+
+    //  Sets the OS socket buffer sizes, leaving the defaults for zeros.
+    public void setBufferSizes(int sndbuf, int rcvbuf) throws IOException
+    {
+        if (sndbuf != 0) {
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, sndbuf);
+        }
+        if (rcvbuf != 0) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, rcvbuf);
+        }
+    }
+
+    public int getSendBufferSize() throws IOException
+    {
+        return channel.getOption(StandardSocketOptions.SO_SNDBUF);
+    }
+
+    public int getReceiveBufferSize() throws IOException
+    {
+        return channel.getOption(StandardSocketOptions.SO_RCVBUF);
+    }
+
+    //  Sizes the buffers to the engine's batches. The read buffer is
+    //  reallocated at the next read ahead if its size has changed.
+    public void resize(int inSize, int outSize)
+    {
+        this.inSize = inSize;
+        this.outSize = outSize;
+    }
+
+    //  Starts delivering the events to the handler in the I/O thread.
+    public void start(IOThread ioThread, IPollEvents handler)
+    {
+        assert (this.handler == null);
+        poller = ioThread.getPoller();
+        poller.adjustLoad(1);
+        this.handler = handler;
+        fill();
+    }
+
+    //  Stops delivering the events. The completions still in progress
+    //  are dropped once they reach the I/O thread.
+    public void stop()
+    {
+        assert (handler != null);
+        handler = null;
+        pollIn = false;
+        pollOut = false;
+        poller.adjustLoad(-1);
+    }
+
+    public void setPollIn()
+    {
+        pollIn = true;
+        schedule();
+    }
+
+    public void resetPollIn()
+    {
+        pollIn = false;
+    }
+
+    public void setPollOut()
+    {
+        pollOut = true;
+        schedule();
+    }
+
+    public void resetPollOut()
+    {
+        pollOut = false;
+    }
+
+    //  Reads the data read ahead. Returns 0 if there's nothing to read
+    //  right now and -1 once the stream is over.
+    public int read(ByteBuffer buf)
+    {
+        //  The buffer is being filled.
+        if (reading) {
+            return 0;
+        }
+        if (!inbuf.hasRemaining()) {
+            if (eof) {
+                return -1;
+            }
+            fill();
+            return 0;
+        }
+
+        int nbytes = Math.min(buf.remaining(), inbuf.remaining());
+        int limit = inbuf.limit();
+        inbuf.limit(inbuf.position() + nbytes);
+        buf.put(inbuf);
+        inbuf.limit(limit);
+
+        //  Read ahead as soon as the buffer is drained.
+        if (!inbuf.hasRemaining()) {
+            fill();
+        }
+        return nbytes;
+    }
+
+    //  Starts writing the data. Returns 0 while the previous write is
+    //  still in progress and -1 once a write has failed.
+    public int write(Transfer buf) throws IOException
+    {
+        if (failed) {
+            return -1;
+        }
+        if (writing) {
+            return 0;
+        }
+
+        outbuf = poller.takeBuffer(outSize);
+        int nbytes = buf.transferTo(sink);
+        outbuf.flip();
+        if (nbytes > 0) {
+            writing = true;
+            flush();
+        }
+        else {
+            release();
+        }
+        return nbytes;
+    }
+
+    public void close() throws IOException
+    {
+        synchronized (this) {
+            closed = true;
+            if (writing) {
+                return;
+            }
+        }
+        channel.close();
+    }
+
+    private void fill()
+    {
+        if (reading || eof) {
+            return;
+        }
+        reading = true;
+        if (inbuf.capacity() != inSize) {
+            inbuf = ByteBuffer.allocateDirect(inSize);
+        }
+        inbuf.clear();
+        try {
+            channel.read(inbuf, null, reader);
+        }
+        catch (RuntimeException e) {
+            //  The channel is closed or its group is shut down.
+            reader.failed(e, null);
+        }
+    }
+
+    private void flush()
+    {
+        try {
+            channel.write(outbuf, null, writer);
+        }
+        catch (RuntimeException e) {
+            writer.failed(e, null);
+        }
+    }
+
+    private void readDone(int nbytes)
+    {
+        reading = false;
+        if (nbytes < 0) {
+            inbuf.limit(0);
+            eof = true;
+        }
+        else {
+            inbuf.flip();
+        }
+        dispatch();
+    }
+
+    private void writeDone(int nbytes)
+    {
+        if (closed) {
+            finish(nbytes);
+            return;
+        }
+        if (nbytes < 0) {
+            writing = false;
+            failed = true;
+        }
+        else if (outbuf.hasRemaining()) {
+            flush();
+            return;
+        }
+        else {
+            writing = false;
+        }
+        release();
+        dispatch();
+    }
+
+    //  Gives the write buffer back to the I/O thread.
+    private void release()
+    {
+        poller.giveBuffer(outbuf);
+        outbuf = null;
+    }
+
+    //  Completes the write in progress once the channel is closed,
+    //  then closes the channel.
+    private void finish(int nbytes)
+    {
+        if (nbytes >= 0 && outbuf.hasRemaining()) {
+            flush();
+            return;
+        }
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+        }
+    }
+
+    private boolean readable()
+    {
+        return !reading && (inbuf.hasRemaining() || eof);
+    }
+
+    private boolean writable()
+    {
+        return !writing || failed;
+    }
+
+    //  Delivers the events the handler polls for, as a selector would,
+    //  and keeps delivering them for as long as they are due.
+    private void dispatch()
+    {
+        if (handler != null && pollIn && readable()) {
+            handler.inEvent();
+        }
+        if (handler != null && pollOut && writable()) {
+            handler.outEvent();
+        }
+        schedule();
+    }
+
+    private void schedule()
+    {
+        if (scheduled || handler == null) {
+            return;
+        }
+        if ((pollIn && readable()) || (pollOut && writable())) {
+            scheduled = true;
+            poller.post(dispatcher);
+        }
+    }
+
+    //  Hands the completions of the reads over to the I/O thread. At most
+    //  one read is in progress at any time.
+    private final class Reader implements CompletionHandler<Integer, Void>, Runnable
+    {
+        private volatile int result;
+
+        @Override
+        public void completed(Integer nbytes, Void attachment)
+        {
+            result = nbytes;
+            poller.post(this);
+        }
+
+        @Override
+        public void failed(Throwable exc, Void attachment)
+        {
+            result = -1;
+            poller.post(this);
+        }
+
+        @Override
+        public void run()
+        {
+            readDone(result);
+        }
+    }
+
+    //  Hands the completions of the writes over to the I/O thread. At most
+    //  one write is in progress at any time.
+    private final class Writer implements CompletionHandler<Integer, Void>, Runnable
+    {
+        private volatile int result;
+
+        @Override
+        public void completed(Integer nbytes, Void attachment)
+        {
+            done(nbytes);
+        }
+
+        @Override
+        public void failed(Throwable exc, Void attachment)
+        {
+            done(-1);
+        }
+
+        //  Once the channel is closed, the I/O thread is done with it and
+        //  the write is completed right away.
+        private void done(int nbytes)
+        {
+            synchronized (AsyncChannel.this) {
+                if (closed) {
+                    finish(nbytes);
+                    return;
+                }
+                result = nbytes;
+            }
+            poller.post(this);
+        }
+
+        @Override
+        public void run()
+        {
+            writeDone(result);
+        }
+    }
+
+    //  Copies the data to be written into the write buffer.
+    private final class Sink implements WritableByteChannel
+    {
+        @Override
+        public int write(ByteBuffer src)
+        {
+            int nbytes = Math.min(src.remaining(), outbuf.remaining());
+            int limit = src.limit();
+            src.limit(src.position() + nbytes);
+            outbuf.put(src);
+            src.limit(limit);
+            return nbytes;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return true;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
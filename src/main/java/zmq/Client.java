@@ -0,0 +1,119 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+//  Thread-safe counterpart of the DEALER socket. Messages are single-part,
+//  load-balanced to the outbound pipes and fair-queued from the inbound ones.
+public class Client extends SocketBase
+{
+    public static class ClientSession extends SessionBase
+    {
+        public ClientSession(IOThread ioThread, boolean connect,
+            SocketBase socket, final Options options,
+            final Address addr)
+        {
+            super(ioThread, connect, socket, options, addr);
+        }
+    }
+
+    private final FQ fq;
+    private final LB lb;
+
+    public Client(Ctx parent, int tid, int sid)
+    {
+        super(parent, tid, sid, true);
+
+        options.type = ZMQ.ZMQ_CLIENT;
+
+        fq = new FQ();
+        lb = new LB();
+    }
+
+    @Override
+    protected void xattachPipe(Pipe pipe, boolean icanhasall)
+    {
+        assert (pipe != null);
+        fq.attach(pipe);
+        lb.attach(pipe);
+    }
+
+    @Override
+    protected boolean xsend(Msg msg)
+    {
+        //  CLIENT sockets do not allow multipart data (ZMQ_SNDMORE).
+        if (msg.hasMore()) {
+            errno.set(ZError.EINVAL);
+            return false;
+        }
+        return lb.send(msg, errno);
+    }
+
+    @Override
+    protected Msg xrecv()
+    {
+        Msg msg = fq.recv(errno);
+
+        //  Drop any messages with more flag.
+        while (msg != null && msg.hasMore()) {
+            //  Drop all the frames of the current multi-frame message.
+            msg = fq.recv(errno);
+            while (msg != null && msg.hasMore()) {
+                msg = fq.recv(errno);
+            }
+
+            //  Get the new message.
+            if (msg != null) {
+                msg = fq.recv(errno);
+            }
+        }
+        return msg;
+    }
+
+    @Override
+    protected boolean xhasIn()
+    {
+        return fq.hasIn();
+    }
+
+    @Override
+    protected boolean xhasOut()
+    {
+        return lb.hasOut();
+    }
+
+    @Override
+    protected void xreadActivated(Pipe pipe)
+    {
+        fq.activated(pipe);
+    }
+
+    @Override
+    protected void xwriteActivated(Pipe pipe)
+    {
+        lb.activated(pipe);
+    }
+
+    @Override
+    protected void xpipeTerminated(Pipe pipe)
+    {
+        fq.terminated(pipe);
+        lb.terminated(pipe);
+    }
+}
@@ -70,7 +70,13 @@ class Command
         REAPED,
         //  Sent by reaper thread to the term thread when all the sockets
         //  are successfully deallocated.
-        DONE
+        DONE,
+        //  Sent by I/O thread to itself, after the last command for the
+        //  session it hands over to another I/O thread.
+        MIGRATE,
+        //  Sent by I/O thread to the I/O thread it hands the session over
+        //  to, once the session is unplugged.
+        ADOPT
     }
 
     Object arg;
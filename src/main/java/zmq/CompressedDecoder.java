@@ -0,0 +1,182 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.nio.ByteBuffer;
+
+//  Wraps a decoder to decompress the blocks sent by CompressedEncoder.
+public class CompressedDecoder extends DecoderBase
+{
+    private final DecoderBase decoder;
+
+    //  The dictionary followed by the content of the last block, the part
+    //  not handed to the decoder yet between position and limit.
+    private final int dictSize;
+    private final byte[] plain;
+    private final ByteBuffer plainBuf;
+
+    //  The block being received.
+    private final byte[] block;
+    private final ByteBuffer blockBuf;
+    private int blockPos;
+    private int blockSize;
+
+    //  The buffer to read the data from the wire into.
+    private ByteBuffer inbuf;
+    private int bufsize;
+
+    private boolean error;
+
+    public CompressedDecoder(DecoderBase decoder, byte[] dictionary, int bufsize)
+    {
+        super(0);
+        this.decoder = decoder;
+
+        byte[] dict = CompressedEncoder.dictionary(dictionary);
+        dictSize = dict.length;
+        plain = new byte[dictSize + CompressedEncoder.BLOCK_SIZE];
+        System.arraycopy(dict, 0, plain, 0, dictSize);
+        plainBuf = ByteBuffer.wrap(plain);
+        plainBuf.position(dictSize).limit(dictSize);
+
+        block = new byte[CompressedEncoder.HEADER_SIZE + CompressedEncoder.BLOCK_SIZE];
+        blockBuf = ByteBuffer.wrap(block);
+        blockPos = 0;
+        blockSize = CompressedEncoder.HEADER_SIZE;
+
+        this.bufsize = bufsize;
+        inbuf = ByteBuffer.allocateDirect(bufsize);
+        error = false;
+    }
+
+    @Override
+    public void setMsgSink(IMsgSink msgSink)
+    {
+        decoder.setMsgSink(msgSink);
+    }
+
+    @Override
+    public ByteBuffer getBuffer()
+    {
+        inbuf.clear();
+        return inbuf;
+    }
+
+    @Override
+    public void resize(int bufsize)
+    {
+        if (bufsize == this.bufsize) {
+            return;
+        }
+        this.bufsize = bufsize;
+        inbuf = ByteBuffer.allocateDirect(bufsize);
+    }
+
+    @Override
+    public int bufferSize()
+    {
+        return bufsize;
+    }
+
+    @Override
+    public int processBuffer(ByteBuffer buf, int size)
+    {
+        if (error) {
+            return -1;
+        }
+
+        int consumed = 0;
+        while (true) {
+            //  Hand the content of the last block to the decoder. Stop
+            //  reading the blocks if it gets stuck.
+            if (decoder.processBuffer(plainBuf, plainBuf.remaining()) < 0) {
+                error = true;
+                return -1;
+            }
+            if (plainBuf.hasRemaining() || consumed == size) {
+                return consumed;
+            }
+
+            int toCopy = Math.min(blockSize - blockPos, size - consumed);
+            buf.get(block, blockPos, toCopy);
+            blockPos += toCopy;
+            consumed += toCopy;
+
+            if (blockSize == CompressedEncoder.HEADER_SIZE && blockPos == blockSize) {
+                int payloadSize = blockBuf.getInt(5);
+                if (payloadSize <= 0 || payloadSize > CompressedEncoder.BLOCK_SIZE) {
+                    error = true;
+                    return -1;
+                }
+                blockSize += payloadSize;
+            }
+            else if (blockPos == blockSize) {
+                if (!decompress()) {
+                    error = true;
+                    return -1;
+                }
+                blockPos = 0;
+                blockSize = CompressedEncoder.HEADER_SIZE;
+            }
+        }
+    }
+
+    //  Decompresses the received block after the dictionary.
+    private boolean decompress()
+    {
+        int rawSize = blockBuf.getInt(1);
+        int payloadSize = blockSize - CompressedEncoder.HEADER_SIZE;
+        if (rawSize <= 0 || rawSize > CompressedEncoder.BLOCK_SIZE) {
+            return false;
+        }
+
+        if (block[0] == CompressedEncoder.STORED) {
+            if (payloadSize != rawSize) {
+                return false;
+            }
+            System.arraycopy(block, CompressedEncoder.HEADER_SIZE, plain, dictSize, rawSize);
+        }
+        else if (block[0] == CompressedEncoder.COMPRESSED) {
+            int n = Lz4.decompress(block, CompressedEncoder.HEADER_SIZE, payloadSize,
+                    plain, dictSize, rawSize);
+            if (n != rawSize) {
+                return false;
+            }
+        }
+        else {
+            return false;
+        }
+
+        plainBuf.limit(dictSize + rawSize).position(dictSize);
+        return true;
+    }
+
+    @Override
+    public boolean stalled()
+    {
+        return plainBuf.hasRemaining() || decoder.stalled();
+    }
+
+    @Override
+    protected boolean next()
+    {
+        return false;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+//  Wraps an encoder to compress its output. The batches of the encoder
+//  are gathered into blocks of up to BLOCK_SIZE bytes, sent as:
+//
+//    type (1 byte) | raw size (4 bytes) | payload size (4 bytes) | payload
+//
+//  The payload is the block compressed by Lz4, or the block itself if it
+//  doesn't get any smaller. Incompressible traffic is detected that way,
+//  and the next blocks are then stored without trying to compress them,
+//  for a number of blocks doubling as long as the traffic stays so.
+public class CompressedEncoder extends EncoderBase
+{
+    static final int BLOCK_SIZE = 65536;
+    static final int HEADER_SIZE = 9;
+
+    static final byte STORED = 0;
+    static final byte COMPRESSED = 1;
+
+    //  Blocks smaller than that are not worth compressing.
+    private static final int MIN_COMPRESS_SIZE = 64;
+
+    //  Maximum number of blocks stored without trying to compress them.
+    private static final int MAX_BYPASS = 64;
+
+    private final EncoderBase encoder;
+    private final Lz4 lz4;
+
+    //  The dictionary followed by the block being gathered.
+    private final int dictSize;
+    private final byte[] raw;
+    private final ByteBuffer rawBuf;
+
+    //  The block encoded for the wire.
+    private final byte[] block;
+    private final ByteBuffer blockBuf;
+
+    //  The batch of the encoder not completely gathered yet.
+    private Transfer pending;
+    private final WritableByteChannel sink;
+
+    private final Transfer.ByteBufferTransfer transfer;
+
+    //  Number of blocks left to store without trying to compress them,
+    //  and the number of blocks skipped the last time.
+    private int bypass;
+    private int bypassLength;
+
+    public CompressedEncoder(EncoderBase encoder, byte[] dictionary)
+    {
+        super(0);
+        this.encoder = encoder;
+
+        byte[] dict = dictionary(dictionary);
+        dictSize = dict.length;
+        raw = new byte[dictSize + BLOCK_SIZE];
+        System.arraycopy(dict, 0, raw, 0, dictSize);
+        rawBuf = ByteBuffer.wrap(raw);
+        lz4 = new Lz4(raw, dictSize);
+
+        block = new byte[HEADER_SIZE + BLOCK_SIZE];
+        blockBuf = ByteBuffer.wrap(block);
+
+        pending = null;
+        sink = new WritableByteChannel()
+        {
+            @Override
+            public int write(ByteBuffer src)
+            {
+                int n = Math.min(src.remaining(), rawBuf.remaining());
+                int limit = src.limit();
+                src.limit(src.position() + n);
+                rawBuf.put(src);
+                src.limit(limit);
+                return n;
+            }
+
+            @Override
+            public boolean isOpen()
+            {
+                return true;
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+
+        transfer = new Transfer.ByteBufferTransfer(null);
+        bypass = 0;
+        bypassLength = 0;
+    }
+
+    //  Returns the part of the dictionary the blocks can refer to, the
+    //  last 64kB of it.
+    static byte[] dictionary(byte[] dictionary)
+    {
+        if (dictionary == null) {
+            return new byte[0];
+        }
+        return Arrays.copyOfRange(dictionary, Math.max(0, dictionary.length - 65536), dictionary.length);
+    }
+
+    //  Identifies the dictionary in the handshake, so that peers with
+    //  different dictionaries don't compress.
+    static int dictionaryId(byte[] dictionary)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(dictionary(dictionary));
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public void setMsgSource(IMsgSource msgSource)
+    {
+        encoder.setMsgSource(msgSource);
+    }
+
+    @Override
+    public void resize(int bufferSize)
+    {
+        encoder.resize(bufferSize);
+    }
+
+    @Override
+    public int bufferSize()
+    {
+        return encoder.bufferSize();
+    }
+
+    @Override
+    public boolean hasData()
+    {
+        return (pending != null && pending.remaining() > 0) || encoder.hasData();
+    }
+
+    @Override
+    protected boolean next()
+    {
+        return false;
+    }
+
+    @Override
+    public Transfer getData(ByteBuffer buffer)
+    {
+        //  Gather the batches of the encoder until the block is full or
+        //  there's nothing more to send.
+        rawBuf.limit(raw.length).position(dictSize);
+        try {
+            while (rawBuf.hasRemaining()) {
+                if (pending == null || pending.remaining() == 0) {
+                    pending = encoder.getData(null);
+                    if (encoder.isError()) {
+                        encodingError();
+                    }
+                    if (pending.remaining() == 0) {
+                        break;
+                    }
+                }
+                pending.transferTo(sink);
+            }
+        }
+        catch (IOException e) {
+            throw new ZError.IOException(e);
+        }
+
+        int rawSize = rawBuf.position() - dictSize;
+        blockBuf.clear();
+        if (rawSize == 0) {
+            blockBuf.flip();
+            return transfer.reset(blockBuf);
+        }
+
+        int size = -1;
+        if (bypass > 0) {
+            bypass--;
+        }
+        else if (rawSize >= MIN_COMPRESS_SIZE) {
+            size = lz4.compress(raw, dictSize, rawSize, block, HEADER_SIZE, rawSize - 1);
+            if (size < 0) {
+                bypassLength = Math.min(Math.max(1, bypassLength * 2), MAX_BYPASS);
+                bypass = bypassLength;
+            }
+            else {
+                bypassLength = 0;
+            }
+        }
+
+        if (size < 0) {
+            System.arraycopy(raw, dictSize, block, HEADER_SIZE, rawSize);
+            size = rawSize;
+            block[0] = STORED;
+        }
+        else {
+            block[0] = COMPRESSED;
+        }
+        blockBuf.putInt(1, rawSize);
+        blockBuf.putInt(5, size);
+        blockBuf.limit(HEADER_SIZE + size);
+
+        return transfer.reset(blockBuf);
+    }
+}
@@ -49,6 +49,14 @@ public enum Config
     //  unnecessary network stack traversals.
     OUT_BATCH_SIZE (8192),
 
+    //  Engines adapt their batch sizes to the traffic, starting with the
+    //  sizes above. Batches grow up to the maximal size (bounded further
+    //  by the OS socket buffers) while reads fill the buffer and writes
+    //  drain fully, and shrink down to the minimal size when the traffic
+    //  is sparse.
+    MIN_BATCH_SIZE (1024),
+    MAX_BATCH_SIZE (262144),
+
     //  Maximal delta between high and low watermark.
     MAX_WM_DELTA (1024),
 
@@ -71,6 +79,46 @@ public enum Config
     //  Maximum transport data unit size for PGM (TPDU).
     PGM_MAX_TPDU  (1500),
 
+    //  Size the UDP engine packs the messages up to in a single datagram,
+    //  i.e. Ethernet MTU less the IP and UDP headers. Larger messages are
+    //  sent on their own, in a datagram of up to 64kB.
+    UDP_MAX_DATAGRAM (1472),
+
+    //  Maximum number of datagrams the UDP and PGM engines read on a single
+    //  wakeup before returning to the other connections of the I/O thread.
+    UDP_IN_BATCH (64),
+
+    //  Maximum number of connections the TCP listener accepts on a single
+    //  wakeup before returning to the other connections of the I/O thread.
+    TCP_ACCEPT_BATCH (64),
+
+    //  Number of write buffers each I/O thread keeps for the connections
+    //  driven by the proactor.
+    POLLER_BUFFERS (16),
+
+    //  Period in milliseconds over which the I/O threads measure their
+    //  traffic, in bytes and I/O events per second.
+    LOAD_SAMPLE_IVL (1000),
+
+    //  Number of bytes an I/O event is worth when comparing the load of
+    //  the I/O threads, i.e. the cost of a wakeup relative to a copy.
+    IO_EVENT_WEIGHT (1024),
+
+    //  Load of an I/O thread, in bytes per second, below which it never
+    //  hands its sessions over to other I/O threads.
+    REBALANCE_MIN_LOAD (65536),
+
+    //  Default time in milliseconds the addresses of the host names
+    //  looked up are cached for.
+    DNS_TTL (30000),
+
+    //  Number of threads looking the host names up, per context.
+    RESOLVER_THREADS (4),
+
+    //  Delay in milliseconds before the connecter tries the next address
+    //  of the host while the previous attempts are still pending.
+    CONNECT_ATTEMPT_DELAY (250),
+
     //  On some OSes the signaler has to be emulated using a TCP
     //  connection. In such cases following port is used.
     SIGNALER_PORT (5905);
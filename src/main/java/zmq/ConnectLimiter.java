@@ -0,0 +1,138 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
+//  Limits the number of connections being established at once in the
+//  context. The connecters take a token before connecting and give it
+//  back once the connection is established or has failed. The connecters
+//  finding no token left wait in line, and the first one in line gets the
+//  token given back next. The limiter also counts the connect attempts.
+final class ConnectLimiter
+{
+    //  Maximum number of connections being established at once,
+    //  0 meaning no limit.
+    private int limit;
+
+    //  Number of tokens taken.
+    private int taken;
+
+    //  Connecters waiting for a token, notified on getting one.
+    private final Deque<Runnable> waiting;
+
+    //  Number of connect attempts so far.
+    private final AtomicLong attempts;
+
+    //  Connect attempts over the last sampling period.
+    private long sampledAt;
+    private long sampledAttempts;
+    private long attemptsPerSecond;
+
+    ConnectLimiter()
+    {
+        waiting = new ArrayDeque<Runnable>();
+        attempts = new AtomicLong();
+    }
+
+    synchronized int getLimit()
+    {
+        return limit;
+    }
+
+    void setLimit(int limit)
+    {
+        Runnable granted;
+        synchronized (this) {
+            this.limit = limit;
+        }
+        //  Let the connecters in line take the new tokens.
+        while ((granted = grant()) != null) {
+            granted.run();
+        }
+    }
+
+    //  Takes a token, returning true, or gets in line for one. The waiter
+    //  is run once it gets the token, from any thread.
+    synchronized boolean acquire(Runnable waiter)
+    {
+        if (limit > 0 && taken >= limit) {
+            waiting.add(waiter);
+            return false;
+        }
+        taken++;
+        attempts.incrementAndGet();
+        return true;
+    }
+
+    //  Gives the token back, handing it over to the first one in line.
+    void release()
+    {
+        Runnable granted;
+        synchronized (this) {
+            taken--;
+            granted = grant();
+        }
+        if (granted != null) {
+            granted.run();
+        }
+    }
+
+    //  Removes the waiter from the line. Returns false if the waiter
+    //  has got a token in the meantime.
+    synchronized boolean cancel(Runnable waiter)
+    {
+        return waiting.remove(waiter);
+    }
+
+    private synchronized Runnable grant()
+    {
+        if (waiting.isEmpty() || (limit > 0 && taken >= limit)) {
+            return null;
+        }
+        taken++;
+        attempts.incrementAndGet();
+        return waiting.poll();
+    }
+
+    //  Returns the number of connect attempts so far.
+    long getAttempts()
+    {
+        return attempts.get();
+    }
+
+    //  Returns the connect attempts per second over the last sampling period.
+    synchronized long getAttemptsPerSecond()
+    {
+        long now = Clock.nowMS();
+        long elapsed = now - sampledAt;
+        if (elapsed >= Config.LOAD_SAMPLE_IVL.getValue()) {
+            long count = attempts.get();
+            if (sampledAt > 0) {
+                attemptsPerSecond = (count - sampledAttempts) * 1000 / elapsed;
+            }
+            sampledAt = now;
+            sampledAttempts = count;
+        }
+        return attemptsPerSecond;
+    }
+}
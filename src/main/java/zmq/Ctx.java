@@ -20,14 +20,18 @@
 package zmq;
 
 import java.io.IOException;
+import java.nio.channels.AsynchronousChannelGroup;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
@@ -109,6 +113,22 @@ public class Ctx
     //  Does context wait (possibly forever) on termination?
     private boolean blocky;
 
+    //  Are TCP connections driven by asynchronous channels?
+    private boolean proactor;
+
+    //  The channel group shared by the asynchronous channels, if any.
+    private volatile AsynchronousChannelGroup group;
+
+    //  Interval in milliseconds at which the I/O threads hand their
+    //  sessions over to less busy threads, 0 if they never do.
+    private int rebalanceIvl;
+
+    //  Limits the number of connections being established at once.
+    private final ConnectLimiter connectLimiter;
+
+    //  Looks the host names up and caches their addresses.
+    private final Resolver resolver;
+
     //  Synchronisation of access to context options.
     private final Lock optSync;
 
@@ -125,6 +145,10 @@ public class Ctx
         maxSockets = ZMQ.ZMQ_MAX_SOCKETS_DFLT;
         ioThreadCount = ZMQ.ZMQ_IO_THREADS_DFLT;
         blocky = true;
+        proactor = false;
+        rebalanceIvl = 0;
+        connectLimiter = new ConnectLimiter();
+        resolver = new Resolver(Config.DNS_TTL.getValue());
         slotSync = new ReentrantLock();
         endpointsSync = new ReentrantLock();
         optSync = new ReentrantLock();
@@ -145,11 +169,25 @@ public class Ctx
         for (IOThread it : ioThreads) {
             it.close();
         }
+        if (group != null) {
+            //  Let the writes still in progress complete, as they would
+            //  have with the data already passed to the OS.
+            group.shutdown();
+            try {
+                if (!group.awaitTermination(1, TimeUnit.SECONDS)) {
+                    group.shutdownNow();
+                }
+            }
+            catch (InterruptedException e) {
+                group.shutdownNow();
+            }
+        }
 
         if (reaper != null) {
             reaper.close();
         }
         termMailbox.close();
+        resolver.close();
 
         tag = 0xdeadbeef;
     }
@@ -248,6 +286,34 @@ public class Ctx
                 optSync.unlock();
             }
         }
+        else
+        if (option == ZMQ.ZMQ_PROACTOR && optval >= 0) {
+            optSync.lock();
+            try {
+                proactor = (optval != 0);
+            }
+            finally {
+                optSync.unlock();
+            }
+        }
+        else
+        if (option == ZMQ.ZMQ_MAX_CONNECTING && optval >= 0) {
+            connectLimiter.setLimit(optval);
+        }
+        else
+        if (option == ZMQ.ZMQ_DNS_TTL && optval >= 0) {
+            resolver.setTtl(optval);
+        }
+        else
+        if (option == ZMQ.ZMQ_IO_REBALANCE_IVL && optval >= 0) {
+            optSync.lock();
+            try {
+                rebalanceIvl = optval;
+            }
+            finally {
+                optSync.unlock();
+            }
+        }
         else {
             return false;
         }
@@ -266,6 +332,18 @@ public class Ctx
         else if (option == ZMQ.ZMQ_BLOCKY) {
             rc = blocky ? 1 : 0;
         }
+        else if (option == ZMQ.ZMQ_PROACTOR) {
+            rc = proactor ? 1 : 0;
+        }
+        else if (option == ZMQ.ZMQ_IO_REBALANCE_IVL) {
+            rc = rebalanceIvl;
+        }
+        else if (option == ZMQ.ZMQ_MAX_CONNECTING) {
+            rc = connectLimiter.getLimit();
+        }
+        else if (option == ZMQ.ZMQ_DNS_TTL) {
+            rc = resolver.getTtl();
+        }
         else {
             throw new IllegalArgumentException("option = " + option);
         }
@@ -282,10 +360,14 @@ public class Ctx
                 //  zmq_term thread and reaper thread.
                 int mazmq;
                 int ios;
+                boolean async;
+                int rebalance;
                 optSync.lock();
                 try {
                     mazmq = maxSockets;
                     ios = ioThreadCount;
+                    async = proactor;
+                    rebalance = rebalanceIvl;
                 }
                 finally {
                     optSync.unlock();
@@ -305,13 +387,20 @@ public class Ctx
 
                 //  Create I/O thread objects and launch them.
                 for (int i = 2; i != ios + 2; i++) {
-                    IOThread ioThread = new IOThread(this, i);
+                    IOThread ioThread = new IOThread(this, i, rebalance);
                     //alloc_assert (io_thread);
                     ioThreads.add(ioThread);
                     slots[i] = ioThread.getMailbox();
                     ioThread.start();
                 }
 
+                //  Create the channel group completing the asynchronous I/O.
+                //  Completions are handed over to the I/O threads, so the
+                //  group needs no more threads than there are I/O threads.
+                if (async && ios > 0) {
+                    group = openGroup(ios);
+                }
+
                 //  In the unused part of the slot array, create a list of empty slots.
                 for (int i = (int) slotCount - 1;
                       i >= (int) ios + 2; i--) {
@@ -376,6 +465,61 @@ public class Ctx
         }
     }
 
+    //  Returns the I/O threads of the context, e.g. to inspect their metrics.
+    public List<IOThread> getIoThreads()
+    {
+        return Collections.unmodifiableList(ioThreads);
+    }
+
+    //  Returns the number of TCP connect attempts made in the context.
+    public long getConnectAttempts()
+    {
+        return connectLimiter.getAttempts();
+    }
+
+    //  Returns the TCP connect attempts per second over the last second.
+    public long getConnectAttemptsPerSecond()
+    {
+        return connectLimiter.getAttemptsPerSecond();
+    }
+
+    ConnectLimiter getConnectLimiter()
+    {
+        return connectLimiter;
+    }
+
+    Resolver getResolver()
+    {
+        return resolver;
+    }
+
+    //  Returns the channel group driving the TCP connections, or null
+    //  if the connections are polled by the I/O threads.
+    AsynchronousChannelGroup getProactor()
+    {
+        return group;
+    }
+
+    private static AsynchronousChannelGroup openGroup(int threads)
+    {
+        final AtomicInteger count = new AtomicInteger(0);
+        try {
+            return AsynchronousChannelGroup.withFixedThreadPool(threads, new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "proactor-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        catch (IOException e) {
+            throw new ZError.IOException(e);
+        }
+    }
+
     //  Returns reaper thread object.
     ZObject getReaper()
     {
@@ -385,10 +529,14 @@ public class Ctx
     //  Send command to the destination thread.
     void sendCommand(int tid, final Command command)
     {
-        slots[tid].send(command);
+        //  Follow the destination if it has moved to another I/O thread.
+        while (!slots[tid].send(command, tid)) {
+            tid = command.destination().getTid();
+        }
     }
 
-    //  Returns the I/O thread that is the least busy at the moment.
+    //  Returns the I/O thread that is the least busy at the moment, i.e.
+    //  with the least traffic or, when equally busy, with the least handles.
     //  Affinity specifies which I/O threads are eligible (0 = all).
     //  Returns NULL if no I/O thread is available.
     IOThread chooseIoThread(long affinity)
@@ -398,13 +546,17 @@ public class Ctx
         }
 
         //  Find the I/O thread with minimum load.
+        long minActivity = -1;
         int minLoad = -1;
         IOThread selectedIoThread = null;
 
         for (int i = 0; i != ioThreads.size(); i++) {
             if (affinity == 0 || (affinity & (1L << i)) > 0) {
+                long activity = ioThreads.get(i).getActivity();
                 int load = ioThreads.get(i).getLoad();
-                if (selectedIoThread == null || load < minLoad) {
+                if (selectedIoThread == null || activity < minActivity
+                        || (activity == minActivity && load < minLoad)) {
+                    minActivity = activity;
                     minLoad = load;
                     selectedIoThread = ioThreads.get(i);
                 }
@@ -34,8 +34,12 @@ import java.nio.ByteBuffer;
 
 public abstract class DecoderBase implements IDecoder
 {
-    //  Where to store the read data.
+    //  Where to store the read data. Messages backed by an array are
+    //  filled straight into it rather than through a wrapping buffer.
     private ByteBuffer readBuf;
+    private byte[] readArray;
+    private int readPos;
+    private int readEnd;
     private MsgAllocator msgAllocator = new MsgAllocatorHeap();
 
     //  The buffer for data to decode.
@@ -69,8 +73,11 @@ public abstract class DecoderBase implements IDecoder
         //  other engines running in the same I/O thread for excessive
         //  amounts of time.
 
-        if (readBuf.remaining() >= bufsize) {
+        if (toRead() >= bufsize) {
             zeroCopy = true;
+            if (readArray != null) {
+                return ByteBuffer.wrap(readArray, readPos, readEnd - readPos);
+            }
             return readBuf.duplicate();
         }
         else {
@@ -80,6 +87,23 @@ public abstract class DecoderBase implements IDecoder
         }
     }
 
+    //  Changes the size of the buffer returned by getBuffer. The data
+    //  previously read into the buffer must have been completely
+    //  processed before the buffer can be replaced.
+    public void resize(int bufsize)
+    {
+        if (buf == null || bufsize == this.bufsize) {
+            return;
+        }
+        this.bufsize = bufsize;
+        buf = ByteBuffer.allocateDirect(bufsize);
+    }
+
+    public int bufferSize()
+    {
+        return bufsize;
+    }
+
     //  Processes the data in the buffer previously allocated using
     //  get_buffer function. size_ argument specifies nemuber of bytes
     //  actually filled into the buffer. Function returns number of
@@ -95,9 +119,14 @@ public abstract class DecoderBase implements IDecoder
         //  is required. Also, run the state machine in case all the data
         //  were processed.
         if (zeroCopy) {
-            readBuf.position(readBuf.position() + size);
+            if (readArray != null) {
+                readPos += size;
+            }
+            else {
+                readBuf.position(readBuf.position() + size);
+            }
 
-            while (readBuf.remaining() == 0) {
+            while (toRead() == 0) {
                 if (!next()) {
                     if (state() < 0) {
                         return -1;
@@ -112,7 +141,7 @@ public abstract class DecoderBase implements IDecoder
         while (true) {
             //  Try to get more space in the message to fill in.
             //  If none is available, return.
-            while (readBuf.remaining() == 0) {
+            while (toRead() == 0) {
                 if (!next()) {
                     if (state() < 0) {
                         return -1;
@@ -128,30 +157,59 @@ public abstract class DecoderBase implements IDecoder
             }
 
             //  Copy the data from buffer to the message.
-            int toCopy = Math.min(readBuf.remaining(), size - pos);
-            int limit = buf.limit();
-            buf.limit(buf.position() + toCopy);
-            readBuf.put(buf);
-            buf.limit(limit);
+            int toCopy = Math.min(toRead(), size - pos);
+            if (readArray != null) {
+                buf.get(readArray, readPos, toCopy);
+                readPos += toCopy;
+            }
+            else {
+                int limit = buf.limit();
+                buf.limit(buf.position() + toCopy);
+                readBuf.put(buf);
+                buf.limit(limit);
+            }
             pos += toCopy;
         }
     }
 
+    //  Returns the number of bytes still to be read in the current step.
+    protected int toRead()
+    {
+        if (readArray != null) {
+            return readEnd - readPos;
+        }
+        return readBuf.remaining();
+    }
+
     protected void nextStep(Msg msg, int state)
     {
-        nextStep(msg.buf(), state);
+        if (msg.array() != null) {
+            nextStep(msg.array(), msg.size(), state);
+        }
+        else {
+            nextStep(msg.buf(), state);
+        }
     }
 
     protected void nextStep(byte[] buf, int toRead, int state)
     {
-        readBuf = ByteBuffer.wrap(buf);
-        readBuf.limit(toRead);
+        nextStep(buf, 0, toRead, state);
+    }
+
+    //  Reads the data into buf, starting at pos and ending at end.
+    protected void nextStep(byte[] buf, int pos, int end, int state)
+    {
+        readBuf = null;
+        readArray = buf;
+        readPos = pos;
+        readEnd = end;
         this.state = state;
     }
 
     protected void nextStep(ByteBuffer buf, int state)
     {
         readBuf = buf;
+        readArray = null;
         this.state = state;
     }
 
@@ -181,7 +239,7 @@ public abstract class DecoderBase implements IDecoder
             return false;
         }
 
-        while (readBuf.remaining() == 0) {
+        while (toRead() == 0) {
             if (!next()) {
                 return next();
             }
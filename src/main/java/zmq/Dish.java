@@ -0,0 +1,213 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.util.HashSet;
+import java.util.Set;
+
+//  Receives the messages of the groups it joined from RADIO sockets.
+//  Groups are matched exactly, there's no prefix matching as with SUB.
+public class Dish extends SocketBase
+{
+    public static class DishSession extends SessionBase
+    {
+        public DishSession(IOThread ioThread, boolean connect,
+            SocketBase socket, final Options options,
+            final Address addr)
+        {
+            super(ioThread, connect, socket, options, addr);
+        }
+    }
+
+    //  Fair queueing object for inbound pipes.
+    private final FQ fq;
+
+    //  Object for distributing the joins and leaves upstream.
+    private final Dist dist;
+
+    //  The groups joined.
+    private final Set<String> subscriptions;
+
+    //  If true, 'message' contains a matching message to return on the
+    //  next recv call.
+    private boolean hasMessage;
+    private Msg message;
+
+    public Dish(Ctx parent, int tid, int sid)
+    {
+        super(parent, tid, sid, true);
+
+        options.type = ZMQ.ZMQ_DISH;
+
+        //  When socket is being closed down we don't want to wait till pending
+        //  join commands are sent to the wire.
+        options.linger = 0;
+
+        fq = new FQ();
+        dist = new Dist();
+        subscriptions = new HashSet<String>();
+        hasMessage = false;
+    }
+
+    @Override
+    protected void xattachPipe(Pipe pipe, boolean icanhasall)
+    {
+        assert (pipe != null);
+        fq.attach(pipe);
+        dist.attach(pipe);
+
+        //  Send all the cached subscriptions to the new upstream peer.
+        sendSubscriptions(pipe);
+    }
+
+    @Override
+    protected void xreadActivated(Pipe pipe)
+    {
+        fq.activated(pipe);
+    }
+
+    @Override
+    protected void xwriteActivated(Pipe pipe)
+    {
+        dist.activated(pipe);
+    }
+
+    @Override
+    protected void xpipeTerminated(Pipe pipe)
+    {
+        fq.terminated(pipe);
+        dist.terminated(pipe);
+    }
+
+    @Override
+    protected void xhiccuped(Pipe pipe)
+    {
+        //  Send all the cached subscriptions to the hiccuped pipe.
+        sendSubscriptions(pipe);
+    }
+
+    @Override
+    protected boolean xjoin(String group)
+    {
+        if (!validGroup(group) || !subscriptions.add(group)) {
+            errno.set(ZError.EINVAL);
+            return false;
+        }
+
+        Msg msg = new Msg();
+        msg.initJoin();
+        msg.setGroup(group);
+        return dist.sendToAll(msg);
+    }
+
+    @Override
+    protected boolean xleave(String group)
+    {
+        if (!validGroup(group) || !subscriptions.remove(group)) {
+            errno.set(ZError.EINVAL);
+            return false;
+        }
+
+        Msg msg = new Msg();
+        msg.initLeave();
+        msg.setGroup(group);
+        return dist.sendToAll(msg);
+    }
+
+    private static boolean validGroup(String group)
+    {
+        return group != null && group.getBytes(ZMQ.CHARSET).length <= ZMQ.ZMQ_GROUP_MAX_LENGTH;
+    }
+
+    @Override
+    protected boolean xsend(Msg msg)
+    {
+        //  Messages cannot be sent from DISH socket.
+        errno.set(ZError.ENOTSUP);
+        return false;
+    }
+
+    @Override
+    protected boolean xhasOut()
+    {
+        return false;
+    }
+
+    @Override
+    protected Msg xrecv()
+    {
+        //  If there's already a message prepared by a previous call to poll,
+        //  return it straight ahead.
+        if (hasMessage) {
+            Msg msg = message;
+            hasMessage = false;
+            message = null;
+            return msg;
+        }
+        return xxrecv();
+    }
+
+    private Msg xxrecv()
+    {
+        //  Get a message from the fair queue, dropping the ones of the groups
+        //  left meanwhile.
+        while (true) {
+            Msg msg = fq.recv(errno);
+            if (msg == null) {
+                return null;
+            }
+            String group = msg.getGroup();
+            if (subscriptions.contains(group == null ? "" : group)) {
+                return msg;
+            }
+        }
+    }
+
+    @Override
+    protected boolean xhasIn()
+    {
+        //  If there's already a message prepared by a previous call to poll,
+        //  return straight ahead.
+        if (hasMessage) {
+            return true;
+        }
+
+        message = xxrecv();
+        if (message == null) {
+            return false;
+        }
+        hasMessage = true;
+        return true;
+    }
+
+    private void sendSubscriptions(Pipe pipe)
+    {
+        for (String group : subscriptions) {
+            Msg msg = new Msg();
+            msg.initJoin();
+            msg.setGroup(group);
+
+            //  If we reached the SNDHWM, the join is dropped, the same way
+            //  as the subscriptions of the SUB socket are.
+            pipe.write(msg);
+        }
+        pipe.flush();
+    }
+}
@@ -62,7 +62,7 @@ public class Encoder extends EncoderBase
     private boolean sizeReady()
     {
         //  Write message body into the buffer.
-        nextStep(inProgress.buf(),
+        nextStep(inProgress,
                 MESSAGE_READY, !inProgress.hasMore());
         return true;
     }
@@ -24,8 +24,10 @@ import java.nio.channels.FileChannel;
 
 public abstract class EncoderBase implements IEncoder
 {
-    //  Where to get the data to write from.
+    //  Where to get the data to write from. Data held in an array are
+    //  copied straight from it rather than through a wrapping buffer.
     private ByteBuffer writeBuf;
+    private byte[] writeArray;
     private FileChannel writeChannel;
     private int writePos;
 
@@ -47,11 +49,31 @@ public abstract class EncoderBase implements IEncoder
 
     private boolean error;
 
+    //  Returned by getData, reused for every batch.
+    private final Transfer.ByteBufferTransfer transfer;
+
     protected EncoderBase(int bufferSize)
     {
         this.bufferSize = bufferSize;
         buffer = ByteBuffer.allocateDirect(bufferSize);
         error = false;
+        transfer = new Transfer.ByteBufferTransfer(null);
+    }
+
+    //  Changes the size of the batch buffer. The current batch must have
+    //  been completely written before the buffer can be replaced.
+    public void resize(int bufferSize)
+    {
+        if (bufferSize == this.bufferSize) {
+            return;
+        }
+        this.bufferSize = bufferSize;
+        buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    public int bufferSize()
+    {
+        return bufferSize;
     }
 
     //  The function returns a batch of binary data. The data
@@ -103,7 +125,11 @@ public abstract class EncoderBase implements IEncoder
             //  other engines running in the same I/O thread for excessive
             //  amounts of time.
             if (this.buffer.position() == 0 && toWrite >= bufferSize) {
-                Transfer t = new Transfer.ByteBufferTransfer(writeBuf);
+                if (writeArray != null) {
+                    writeBuf = ByteBuffer.wrap(writeArray, writePos, toWrite);
+                    writeArray = null;
+                }
+                Transfer t = transfer.reset(writeBuf);
                 writePos = 0;
                 toWrite = 0;
 
@@ -112,7 +138,13 @@ public abstract class EncoderBase implements IEncoder
 
             //  Copy data to the buffer. If the buffer is full, return.
             int remaining = buffer.remaining();
-            if (toWrite <= remaining) {
+            if (writeArray != null) {
+                int toCopy = Math.min(toWrite, remaining);
+                buffer.put(writeArray, writePos, toCopy);
+                writePos += toCopy;
+                toWrite -= toCopy;
+            }
+            else if (toWrite <= remaining) {
                 buffer.put(writeBuf);
                 writePos = 0;
                 toWrite = 0;
@@ -127,7 +159,7 @@ public abstract class EncoderBase implements IEncoder
         }
 
         buffer.flip();
-        return new Transfer.ByteBufferTransfer(buffer);
+        return transfer.reset(buffer);
     }
 
     @Override
@@ -163,6 +195,9 @@ public abstract class EncoderBase implements IEncoder
         if (msg == null) {
             nextStep(null, 0, state, beginning);
         }
+        else if (msg.array() != null) {
+            nextStep(msg.array(), msg.size(), state, beginning);
+        }
         else {
             nextStep(msg.buf(), state, beginning);
         }
@@ -171,13 +206,8 @@ public abstract class EncoderBase implements IEncoder
     protected void nextStep(byte[] buf, int toWrite,
                             int next, boolean beginning)
     {
-        if (buf != null) {
-            writeBuf = ByteBuffer.wrap(buf);
-            writeBuf.limit(toWrite);
-        }
-        else {
-            writeBuf = null;
-        }
+        writeBuf = null;
+        writeArray = buf;
         writeChannel = null;
         writePos = 0;
         this.toWrite = toWrite;
@@ -189,6 +219,7 @@ public abstract class EncoderBase implements IEncoder
           int next, boolean beginning)
     {
        writeBuf = buf;
+       writeArray = null;
        writeChannel = null;
        writePos = buf.position();
        this.toWrite = buf.remaining();
@@ -200,6 +231,7 @@ public abstract class EncoderBase implements IEncoder
                             int next, boolean beginning)
     {
         writeBuf = null;
+        writeArray = null;
         writeChannel = ch;
         writePos = (int) pos;
         this.toWrite = (int) toWrite;
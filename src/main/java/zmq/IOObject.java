@@ -20,6 +20,7 @@
 package zmq;
 
 import java.nio.channels.SelectableChannel;
+import java.util.Map;
 
 //  Simple base class for objects that live in I/O threads.
 //  It makes communication with the poller object easier and
@@ -30,6 +31,9 @@ public class IOObject implements IPollEvents
     private Poller poller;
     private IPollEvents handler;
 
+    //  Timers carried over to the next thread the object is plugged to.
+    private Map<Integer, Long> timers;
+
     public IOObject(IOThread ioThread)
     {
         if (ioThread != null) {
@@ -47,6 +51,11 @@ public class IOObject implements IPollEvents
 
         //  Retrieve the poller from the thread we are running in.
         poller = ioThread.getPoller();
+
+        if (timers != null) {
+            poller.addTimers(this, timers);
+            timers = null;
+        }
     }
 
     public void unplug()
@@ -59,6 +68,16 @@ public class IOObject implements IPollEvents
         handler = null;
     }
 
+    //  Unplugs the object taking its timers along, so that they keep
+    //  running once the object is plugged to a different I/O thread.
+    public void suspend()
+    {
+        assert (poller != null);
+
+        timers = poller.removeTimers(this);
+        unplug();
+    }
+
     public final void addHandle(SelectableChannel handle)
     {
         poller.addHandle(handle, this);
@@ -99,6 +118,18 @@ public class IOObject implements IPollEvents
         poller.resetPollOut(handle);
     }
 
+    //  Accounts for the bytes transferred by the object.
+    public final void countBytes(int n)
+    {
+        poller.countBytes(n);
+    }
+
+    //  Runs the task in the I/O thread. May be called from any thread.
+    public final void post(Runnable task)
+    {
+        poller.post(task);
+    }
+
     @Override
     public final void inEvent()
     {
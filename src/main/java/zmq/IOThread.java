@@ -22,6 +22,13 @@ package zmq;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.channels.SelectableChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class IOThread extends ZObject implements IPollEvents, Closeable
 {
@@ -36,7 +43,57 @@ public class IOThread extends ZObject implements IPollEvents, Closeable
 
     final String name;
 
+    //  A session handed over to another I/O thread, along with the objects
+    //  moving with it.
+    static final class Migration
+    {
+        private final SessionBase session;
+        private final List<ZObject> objects;
+        private final IOThread target;
+
+        private Migration(SessionBase session, IOThread target)
+        {
+            this.session = session;
+            this.objects = session.migrants();
+            this.target = target;
+        }
+    }
+
+    //  ID of the timer rebalancing the load of the I/O threads.
+    private static final int REBALANCE_TIMER_ID = 0x40;
+
+    //  Interval in milliseconds at which the I/O thread hands sessions
+    //  over to less busy threads, 0 if it never does.
+    private final int rebalanceIvl;
+
+    //  Time of the last rebalancing.
+    private long rebalancedAt;
+
+    //  Sessions with an engine plugged to the I/O thread. Accessed from
+    //  the I/O thread only.
+    private final Set<SessionBase> sessions;
+
+    //  Objects handed over to the I/O thread that it hasn't adopted yet,
+    //  and the commands sent to them in the meantime.
+    private final Set<ZObject> arriving;
+    private final List<Command> held;
+
+    //  Number of sessions handed over to other I/O threads so far.
+    private volatile long migrations;
+
+    //  Traffic of the I/O thread over the last sampling period.
+    private long sampledAt;
+    private long sampledBytes;
+    private long sampledEvents;
+    private volatile long bytesPerSecond;
+    private volatile long eventsPerSecond;
+
     public IOThread(Ctx ctx, int tid)
+    {
+        this(ctx, tid, 0);
+    }
+
+    public IOThread(Ctx ctx, int tid, int rebalanceIvl)
     {
         super(ctx, tid);
         name = "iothread-" + tid;
@@ -46,10 +103,19 @@ public class IOThread extends ZObject implements IPollEvents, Closeable
         mailboxHandle = mailbox.getFd();
         poller.addHandle(mailboxHandle, this);
         poller.setPollIn(mailboxHandle);
+
+        this.rebalanceIvl = rebalanceIvl;
+        sessions = new LinkedHashSet<SessionBase>();
+        arriving = Collections.newSetFromMap(new ConcurrentHashMap<ZObject, Boolean>());
+        held = new ArrayList<Command>();
     }
 
     public void start()
     {
+        if (rebalanceIvl > 0) {
+            rebalancedAt = Clock.nowMS();
+            poller.addTimer(rebalanceIvl, this, REBALANCE_TIMER_ID);
+        }
         poller.start();
     }
 
@@ -75,6 +141,91 @@ public class IOThread extends ZObject implements IPollEvents, Closeable
         return poller.getLoad();
     }
 
+    //  Number of select calls made by the I/O thread so far. Together with
+    //  getEvents it tells how many I/O events are handled per wakeup.
+    //  Can be invoked from a different thread.
+    public long getSelects()
+    {
+        return poller.getSelects();
+    }
+
+    //  Number of I/O events handled by the I/O thread so far.
+    //  Can be invoked from a different thread.
+    public long getEvents()
+    {
+        return poller.getEvents();
+    }
+
+    //  Number of bytes transferred by the I/O thread so far.
+    //  Can be invoked from a different thread.
+    public long getBytes()
+    {
+        return poller.getBytes();
+    }
+
+    //  Bytes transferred per second over the last sampling period.
+    //  Can be invoked from a different thread.
+    public long getBytesPerSecond()
+    {
+        sample();
+        return bytesPerSecond;
+    }
+
+    //  I/O events handled per second over the last sampling period.
+    //  Can be invoked from a different thread.
+    public long getEventsPerSecond()
+    {
+        sample();
+        return eventsPerSecond;
+    }
+
+    //  Number of sessions handed over to less busy I/O threads so far.
+    //  Can be invoked from a different thread.
+    public long getMigrations()
+    {
+        return migrations;
+    }
+
+    //  Returns the traffic of the I/O thread, in bytes per second with
+    //  each I/O event worth Config.IO_EVENT_WEIGHT bytes.
+    long getActivity()
+    {
+        sample();
+        return bytesPerSecond + eventsPerSecond * Config.IO_EVENT_WEIGHT.getValue();
+    }
+
+    //  Updates the traffic rates once the sampling period is over.
+    private synchronized void sample()
+    {
+        long now = Clock.nowMS();
+        long elapsed = now - sampledAt;
+        if (elapsed < Config.LOAD_SAMPLE_IVL.getValue()) {
+            return;
+        }
+
+        long bytes = poller.getBytes();
+        long events = poller.getEvents();
+        if (sampledAt > 0) {
+            bytesPerSecond = (bytes - sampledBytes) * 1000 / elapsed;
+            eventsPerSecond = (events - sampledEvents) * 1000 / elapsed;
+        }
+        sampledAt = now;
+        sampledBytes = bytes;
+        sampledEvents = events;
+    }
+
+    //  Registers the session whose engine has been plugged to the thread.
+    void attached(SessionBase session)
+    {
+        sessions.add(session);
+    }
+
+    //  Unregisters the session whose engine has gone.
+    void detached(SessionBase session)
+    {
+        sessions.remove(session);
+    }
+
     @Override
     public void inEvent()
     {
@@ -88,6 +239,13 @@ public class IOThread extends ZObject implements IPollEvents, Closeable
                 break;
             }
 
+            //  Commands for the objects still on their way to the thread
+            //  wait for the objects to be adopted.
+            if (!arriving.isEmpty() && arriving.contains(cmd.destination())) {
+                held.add(cmd);
+                continue;
+            }
+
             //  Process the command.
 
             cmd.destination().processCommand(cmd);
@@ -115,7 +273,110 @@ public class IOThread extends ZObject implements IPollEvents, Closeable
     @Override
     public void timerEvent(int id)
     {
-        throw new UnsupportedOperationException();
+        assert (id == REBALANCE_TIMER_ID);
+        rebalance();
+        poller.addTimer(rebalanceIvl, this, REBALANCE_TIMER_ID);
+    }
+
+    //  Hands the session helping the most to balance the load over to the
+    //  least busy I/O thread, if much less busy than this one.
+    private void rebalance()
+    {
+        long now = Clock.nowMS();
+        long elapsed = Math.max(now - rebalancedAt, 1);
+        rebalancedAt = now;
+
+        long activity = getActivity();
+        SessionBase candidate = null;
+        IOThread target = null;
+        long best = 0;
+
+        for (SessionBase session : sessions) {
+            long rate = session.sampleBytes() * 1000 / elapsed;
+            if (rate <= best || activity < Config.REBALANCE_MIN_LOAD.getValue() || !session.isQuiet()) {
+                continue;
+            }
+            IOThread ioThread = chooseIoThread(session.options.affinity);
+            if (ioThread == this) {
+                continue;
+            }
+
+            //  Moving the session must leave the target thread less busy
+            //  than this one, so that it never moves back.
+            long other = ioThread.getActivity();
+            if (activity > 2 * other && 2 * rate <= activity - other) {
+                candidate = session;
+                target = ioThread;
+                best = rate;
+            }
+        }
+
+        if (candidate != null) {
+            migrate(candidate, target);
+        }
+    }
+
+    //  Hands the session over to the target thread. The commands sent to
+    //  the session and its pipes are delivered to this thread up to the
+    //  point the objects switch threads, under the lock of the mailbox.
+    //  The MIGRATE command follows them, after which the session gets
+    //  unplugged and the target thread adopts it, delivering the commands
+    //  it has held for the session in the meantime.
+    private void migrate(SessionBase session, final IOThread target)
+    {
+        final Migration migration = new Migration(session, target);
+        sessions.remove(session);
+        target.arriving.addAll(migration.objects);
+
+        mailbox.handOver(new Command(this, Command.Type.MIGRATE, migration), new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (ZObject object : migration.objects) {
+                    object.setTid(target.getTid());
+                }
+            }
+        });
+        migrations++;
+    }
+
+    @Override
+    protected void processMigrate(final Migration migration)
+    {
+        //  The I/O events of the current round may still be due to the
+        //  engine, so unplug it after the round.
+        poller.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                migration.session.unplugIo();
+                getCtx().sendCommand(migration.target.getTid(),
+                        new Command(migration.target, Command.Type.ADOPT, migration));
+            }
+        });
+    }
+
+    @Override
+    protected void processAdopt(Migration migration)
+    {
+        migration.session.plugIo(this);
+        arriving.removeAll(migration.objects);
+
+        //  Deliver the commands held for the objects, in order.
+        List<Command> replay = new ArrayList<Command>();
+        Iterator<Command> it = held.iterator();
+        while (it.hasNext()) {
+            Command cmd = it.next();
+            if (migration.objects.contains(cmd.destination())) {
+                replay.add(cmd);
+                it.remove();
+            }
+        }
+        for (Command cmd : replay) {
+            cmd.destination().processCommand(cmd);
+        }
     }
 
     public Poller getPoller()
@@ -0,0 +1,245 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.util.Arrays;
+
+//  Block compressor producing the LZ4 block format: a sequence of
+//  literals and back references of at most 64kB, found with a single
+//  hash table probe per position. It favours speed over ratio, which
+//  suits compressing the batches of an engine on the I/O thread.
+//
+//  The bytes preceding the block in the array are its history: a block
+//  can refer to them, which is how a preset dictionary is used.
+final class Lz4
+{
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_DISTANCE = 65535;
+
+    //  The last literals and the limit of the last match, as required by
+    //  the format.
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+
+    private static final int HASH_LOG = 14;
+
+    //  Positions of the last occurrences of the 4-byte sequences by their
+    //  hash, and the same for the dictionary only.
+    private final int[] table;
+    private final int[] dictTable;
+
+    //  Creates a compressor using the first 'dictSize' bytes of the arrays
+    //  it will compress as the dictionary.
+    Lz4(byte[] dict, int dictSize)
+    {
+        table = new int[1 << HASH_LOG];
+        dictTable = new int[1 << HASH_LOG];
+        Arrays.fill(dictTable, -1);
+        for (int i = 0; i + MIN_MATCH <= dictSize; i++) {
+            dictTable[hash(dict, i)] = i;
+        }
+    }
+
+    private static int readInt(byte[] buf, int pos)
+    {
+        return (buf[pos] & 0xff) | (buf[pos + 1] & 0xff) << 8
+               | (buf[pos + 2] & 0xff) << 16 | (buf[pos + 3] & 0xff) << 24;
+    }
+
+    private static int hash(byte[] buf, int pos)
+    {
+        return (readInt(buf, pos) * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    //  Compresses src[srcOff, srcOff + srcLen) into dst[dstOff, dstOff + dstLen),
+    //  src[0, srcOff) being the history. Returns the compressed size, or -1
+    //  if it doesn't fit into dst.
+    int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen)
+    {
+        System.arraycopy(dictTable, 0, table, 0, table.length);
+
+        int end = srcOff + srcLen;
+        int matchLimit = end - LAST_LITERALS;
+        int mfLimit = end - MF_LIMIT;
+        int dstEnd = dstOff + dstLen;
+        int anchor = srcOff;
+        int ip = srcOff;
+        int dp = dstOff;
+
+        while (ip < mfLimit) {
+            int h = hash(src, ip);
+            int ref = table[h];
+            table[h] = ip;
+            if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != readInt(src, ip)) {
+                ip++;
+                continue;
+            }
+
+            //  Extend the match backwards over the pending literals,
+            //  then forwards.
+            while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+                ip--;
+                ref--;
+            }
+            int len = MIN_MATCH;
+            while (ip + len < matchLimit && src[ref + len] == src[ip + len]) {
+                len++;
+            }
+
+            dp = writeSequence(src, anchor, ip - anchor, ip - ref, len, dst, dp, dstEnd);
+            if (dp < 0) {
+                return -1;
+            }
+
+            ip += len;
+            anchor = ip;
+            if (ip < mfLimit) {
+                table[hash(src, ip - 2)] = ip - 2;
+            }
+        }
+
+        dp = writeSequence(src, anchor, end - anchor, 0, 0, dst, dp, dstEnd);
+        if (dp < 0) {
+            return -1;
+        }
+        return dp - dstOff;
+    }
+
+    //  Writes the literals and the match that follows them, if any. Returns
+    //  the position after the sequence, or -1 if it doesn't fit.
+    private static int writeSequence(byte[] src, int lit, int litLen, int offset, int matchLen,
+                                     byte[] dst, int dp, int dstEnd)
+    {
+        if (dp + 1 + litLen + litLen / 255 + 1 + 2 + matchLen / 255 + 1 > dstEnd) {
+            return -1;
+        }
+
+        int token = dp++;
+        int litToken = Math.min(litLen, 15);
+        if (litLen >= 15) {
+            dp = writeLength(litLen - 15, dst, dp);
+        }
+        System.arraycopy(src, lit, dst, dp, litLen);
+        dp += litLen;
+
+        if (matchLen == 0) {
+            dst[token] = (byte) (litToken << 4);
+            return dp;
+        }
+
+        dst[dp++] = (byte) offset;
+        dst[dp++] = (byte) (offset >>> 8);
+        int extra = matchLen - MIN_MATCH;
+        if (extra >= 15) {
+            dp = writeLength(extra - 15, dst, dp);
+        }
+        dst[token] = (byte) (litToken << 4 | Math.min(extra, 15));
+        return dp;
+    }
+
+    private static int writeLength(int len, byte[] dst, int dp)
+    {
+        while (len >= 255) {
+            dst[dp++] = (byte) 255;
+            len -= 255;
+        }
+        dst[dp++] = (byte) len;
+        return dp;
+    }
+
+    //  Decompresses src[srcOff, srcOff + srcLen) into dst from dstOff on,
+    //  dst[0, dstOff) being the history. Returns the decompressed size,
+    //  or -1 if the data is malformed or doesn't fit into dstLen bytes.
+    static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen)
+    {
+        int sp = srcOff;
+        int srcEnd = srcOff + srcLen;
+        int dp = dstOff;
+        int dstEnd = dstOff + dstLen;
+
+        while (sp < srcEnd) {
+            int token = src[sp++] & 0xff;
+
+            int litLen = token >>> 4;
+            if (litLen == 15) {
+                int b;
+                do {
+                    if (sp == srcEnd) {
+                        return -1;
+                    }
+                    b = src[sp++] & 0xff;
+                    litLen += b;
+                }
+                while (b == 255);
+            }
+            if (litLen > srcEnd - sp || litLen > dstEnd - dp) {
+                return -1;
+            }
+            System.arraycopy(src, sp, dst, dp, litLen);
+            sp += litLen;
+            dp += litLen;
+
+            //  The last sequence has no match.
+            if (sp == srcEnd) {
+                break;
+            }
+
+            if (srcEnd - sp < 2) {
+                return -1;
+            }
+            int offset = (src[sp] & 0xff) | (src[sp + 1] & 0xff) << 8;
+            sp += 2;
+            int ref = dp - offset;
+            if (offset == 0 || ref < 0) {
+                return -1;
+            }
+
+            int matchLen = token & 15;
+            if (matchLen == 15) {
+                int b;
+                do {
+                    if (sp == srcEnd) {
+                        return -1;
+                    }
+                    b = src[sp++] & 0xff;
+                    matchLen += b;
+                }
+                while (b == 255);
+            }
+            matchLen += MIN_MATCH;
+            if (matchLen > dstEnd - dp) {
+                return -1;
+            }
+
+            //  The match may overlap the bytes it produces.
+            if (offset >= matchLen) {
+                System.arraycopy(dst, ref, dst, dp, matchLen);
+            }
+            else {
+                for (int i = 0; i < matchLen; i++) {
+                    dst[dp + i] = dst[ref + i];
+                }
+            }
+            dp += matchLen;
+        }
+
+        return dp - dstOff;
+    }
+}
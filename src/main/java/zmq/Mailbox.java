@@ -22,6 +22,7 @@ package zmq;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.channels.SelectableChannel;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -44,6 +45,10 @@ public class Mailbox
     //  read commands from it.
     private boolean active;
 
+    //  The poll item to report the commands arriving while nobody reads
+    //  them for, when the socket is polled through a ready list.
+    private final AtomicReference<PollItem> observer;
+
     // mailbox name, for better debugging
     private final String name;
 
@@ -60,6 +65,7 @@ public class Mailbox
         Command cmd = cpipe.read();
         assert (cmd == null);
         active = false;
+        observer = new AtomicReference<PollItem>();
 
         this.name = name;
     }
@@ -70,10 +76,37 @@ public class Mailbox
     }
 
     public void send(final Command cmd)
+    {
+        send(cmd, -1, null);
+    }
+
+    //  Sends the command unless its destination has moved away from the
+    //  thread of the given ID, in which case false is returned.
+    boolean send(final Command cmd, int tid)
+    {
+        return send(cmd, tid, null);
+    }
+
+    //  Sends the command right after running the action, with no other
+    //  command sent to the mailbox in between.
+    void handOver(final Command cmd, Runnable action)
+    {
+        send(cmd, -1, action);
+    }
+
+    private boolean send(final Command cmd, int tid, Runnable action)
     {
         boolean ok = false;
         sync.lock();
         try {
+            //  The objects move between threads under the lock of the
+            //  mailbox of the thread they are leaving.
+            if (tid >= 0 && cmd.destination() != null && cmd.destination().getTid() != tid) {
+                return false;
+            }
+            if (action != null) {
+                action.run();
+            }
             cpipe.write(cmd, false);
             ok = cpipe.flush();
         }
@@ -83,6 +116,42 @@ public class Mailbox
 
         if (!ok) {
             signaler.send();
+
+            PollItem item = observer.get();
+            if (item != null) {
+                item.readyList().add(item);
+            }
+        }
+        return true;
+    }
+
+    //  Makes the poll item report the commands to its ready list from now
+    //  on. The item takes over from an item of the same list polled before,
+    //  but not from an item of another list or from another item of the
+    //  current poll, in which case false is returned and the item has to
+    //  watch the mailbox channel itself.
+    boolean observe(PollItem item, ReadyList list)
+    {
+        int round = list.round();
+        while (true) {
+            PollItem current = observer.get();
+            if (current == item) {
+                if (item.readyList() != list) {
+                    return false;
+                }
+                item.round = round;
+                return true;
+            }
+            if (current != null && (current.readyList() != list || current.round == round)) {
+                return false;
+            }
+            item.readyList(list);
+            if (observer.compareAndSet(current, item)) {
+                //  Commands may have arrived unreported so far.
+                item.round = round;
+                item.candidate = true;
+                return true;
+            }
         }
     }
 
@@ -117,6 +186,20 @@ public class Mailbox
         return cmd;
     }
 
+    //  Waits for a command to arrive without reading it, the command is to be
+    //  read by recv(0) then. Unlike recv, this can be called concurrently with
+    //  the other methods, but by a single thread at a time.
+    public boolean waitEvent(long timeout)
+    {
+        return signaler.waitEvent(timeout);
+    }
+
+    //  Makes the thread in waitEvent, or the next one to call it, return.
+    public void wakeup()
+    {
+        signaler.wakeup();
+    }
+
     @Override
     public void close() throws IOException
     {
@@ -26,7 +26,9 @@ public class Msg
 {
     enum Type {
         DATA,
-        DELIMITER
+        DELIMITER,
+        JOIN,
+        LEAVE
     }
 
     public static final int MORE = 1;
@@ -34,12 +36,24 @@ public class Msg
     public static final int IDENTITY = 64;
     public static final int SHARED = 128;
 
+    private static final byte[] EMPTY = new byte[0];
+
     private int flags;
     private Type type;
 
+    //  Routing id of the peer the message comes from or goes to,
+    //  used by the SERVER socket. Zero means no routing id.
+    private int routingId;
+
+    //  Group of the message, used by the RADIO and DISH sockets, along
+    //  with its encoded form. Null means no group.
+    private String group;
+    private byte[] groupBytes;
+
     private int size;
     private byte[] data;
-    private final ByteBuffer buf;
+    //  Created lazily for the messages backed by an array.
+    private ByteBuffer buf;
     // keep track of relative write position
     private int writeIndex = 0;
     // keep track of relative read position
@@ -50,8 +64,8 @@ public class Msg
         this.type = Type.DATA;
         this.flags = 0;
         this.size = 0;
-        this.buf = ByteBuffer.wrap(new byte[0]).order(ByteOrder.BIG_ENDIAN);
-        this.data = buf.array();
+        this.buf = null;
+        this.data = EMPTY;
     }
 
     public Msg(int capacity)
@@ -59,8 +73,8 @@ public class Msg
         this.type = Type.DATA;
         this.flags = 0;
         this.size = capacity;
-        this.buf = ByteBuffer.wrap(new byte[capacity]).order(ByteOrder.BIG_ENDIAN);
-        this.data = buf.array();
+        this.buf = null;
+        this.data = new byte[capacity];
     }
 
     public Msg(byte[] src)
@@ -72,7 +86,7 @@ public class Msg
         this.flags = 0;
         this.size = src.length;
         this.data = src;
-        this.buf = ByteBuffer.wrap(src).order(ByteOrder.BIG_ENDIAN);
+        this.buf = null;
     }
 
     public Msg(final ByteBuffer src)
@@ -99,6 +113,9 @@ public class Msg
         }
         this.type = m.type;
         this.flags = m.flags;
+        this.routingId = m.routingId;
+        this.group = m.group;
+        this.groupBytes = m.groupBytes;
         this.size = m.size;
         this.buf = m.buf != null ? m.buf.duplicate() : null;
         if (m.data != null) {
@@ -137,12 +154,74 @@ public class Msg
         this.flags |= flags;
     }
 
+    public int getRoutingId()
+    {
+        return routingId;
+    }
+
+    public void setRoutingId(int routingId)
+    {
+        this.routingId = routingId;
+    }
+
+    public String getGroup()
+    {
+        return group;
+    }
+
+    //  Sets the group of the message. Its encoded form can be at most
+    //  ZMQ_GROUP_MAX_LENGTH bytes long.
+    public void setGroup(String group)
+    {
+        if (group == null) {
+            this.group = null;
+            this.groupBytes = null;
+            return;
+        }
+        byte[] bytes = group.getBytes(ZMQ.CHARSET);
+        if (bytes.length > ZMQ.ZMQ_GROUP_MAX_LENGTH) {
+            throw new IllegalArgumentException("group too long: " + group);
+        }
+        this.group = group;
+        this.groupBytes = bytes;
+    }
+
+    //  Returns the group encoded as in UTF-8, or null.
+    byte[] groupBytes()
+    {
+        return groupBytes;
+    }
+
     public void initDelimiter()
     {
         type = Type.DELIMITER;
         flags = 0;
     }
 
+    //  Turns the message into the request to join the group.
+    public void initJoin()
+    {
+        type = Type.JOIN;
+        flags = 0;
+    }
+
+    //  Turns the message into the request to leave the group.
+    public void initLeave()
+    {
+        type = Type.LEAVE;
+        flags = 0;
+    }
+
+    public boolean isJoin()
+    {
+        return type == Type.JOIN;
+    }
+
+    public boolean isLeave()
+    {
+        return type == Type.LEAVE;
+    }
+
     public byte[] data()
     {
         if (data == null) {
@@ -154,7 +233,25 @@ public class Msg
 
     public ByteBuffer buf()
     {
-        return buf.duplicate();
+        return getBuf().duplicate();
+    }
+
+    private ByteBuffer getBuf()
+    {
+        if (buf == null) {
+            buf = ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN);
+        }
+        return buf;
+    }
+
+    //  Returns the array holding exactly the content of the message,
+    //  or null if the content is not backed by such an array.
+    byte[] array()
+    {
+        if (data != null && data.length == size) {
+            return data;
+        }
+        return null;
     }
 
     public int size()
@@ -174,6 +271,9 @@ public class Msg
 
     public byte get(int index)
     {
+        if (buf == null) {
+            return data[index];
+        }
         return buf.get(index);
     }
 
@@ -184,7 +284,7 @@ public class Msg
 
     public Msg put(int index, byte b)
     {
-        buf.put(index, b);
+        getBuf().put(index, b);
         return this;
     }
 
@@ -198,7 +298,7 @@ public class Msg
         if (src == null) {
             return this;
         }
-        ByteBuffer dup = buf.duplicate();
+        ByteBuffer dup = getBuf().duplicate();
         dup.position(writeIndex);
         writeIndex += len;
         dup.put(src, off, len);
@@ -207,7 +307,7 @@ public class Msg
 
     public Msg put(ByteBuffer src)
     {
-        ByteBuffer dup = buf.duplicate();
+        ByteBuffer dup = getBuf().duplicate();
         dup.position(writeIndex);
         writeIndex += Math.min(dup.remaining(), src.remaining());
         dup.put(src);
@@ -231,7 +331,7 @@ public class Msg
 
     public int getBytes(int index, ByteBuffer bb, int len)
     {
-        ByteBuffer dup = buf.duplicate();
+        ByteBuffer dup = getBuf().duplicate();
         dup.position(index);
         int count = Math.min(bb.remaining(), dup.remaining());
         count = Math.min(count, len);
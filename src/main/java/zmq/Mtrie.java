@@ -28,6 +28,10 @@ public class Mtrie
 {
     private Set<Pipe> pipes;
 
+    //  Snapshot of the pipes used by match, rebuilt after modifications
+    //  so that matching does not need to create iterators.
+    private Pipe[] matching;
+
     private int min;
     private int count;
     private int liveNodes;
@@ -69,6 +73,7 @@ public class Mtrie
                 pipes = new HashSet<Pipe>();
             }
             pipes.add(pipe);
+            matching = null;
             return result;
         }
 
@@ -140,6 +145,7 @@ public class Mtrie
     {
         //  Remove the subscription from this node.
         if (pipes != null && pipes.remove(pipe)) {
+            matching = null;
             if (!callOnUniq || pipes.isEmpty()) {
                 func.invoke(null, buff, buffsize, arg);
             }
@@ -265,6 +271,7 @@ public class Mtrie
         if (prefix == null || prefix.length == start) {
             if (pipes != null) {
                 boolean erased = pipes.remove(pipe);
+                matching = null;
                 assert (erased);
                 if (pipes.isEmpty()) {
                     pipes = null;
@@ -352,6 +359,11 @@ public class Mtrie
 
     //  Signal all the matching pipes.
     public void match(ByteBuffer data, int size, IMtrieHandler func, Object arg)
+    {
+        match(new Msg(data), size, func, arg);
+    }
+
+    public void match(Msg data, int size, IMtrieHandler func, Object arg)
     {
         Mtrie current = this;
         int idx = 0;
@@ -359,7 +371,10 @@ public class Mtrie
         while (true) {
             //  Signal the pipes attached to this node.
             if (current.pipes != null) {
-                for (Pipe it : current.pipes) {
+                if (current.matching == null) {
+                    current.matching = current.pipes.toArray(new Pipe[current.pipes.size()]);
+                }
+                for (Pipe it : current.matching) {
                     func.invoke(it, null, 0, arg);
                 }
             }
@@ -111,6 +111,37 @@ public class Options
     //typedef std::vector <tcp_address_mask_t> tcp_accept_filters_t;
     final List<TcpAddress.TcpAddressMask> tcpAcceptFilters;
 
+    //  Maximum number of bytes and messages an engine reads from its
+    //  connection in a single I/O event before giving way to the other
+    //  connections handled by the same I/O thread.
+    int readBudgetBytes;
+    int readBudgetMsgs;
+
+    //  Maximum delay of outbound data on an idle connection, in microseconds,
+    //  used to coalesce small messages into larger writes. The delay is
+    //  rounded up to the millisecond resolution of the I/O thread timers.
+    //  Default 0 (write immediately).
+    int corkIvl;
+
+    //  If 1, the connections compress their traffic when the peer agrees
+    //  to, using the optional dictionary primed on both sides.
+    int compression;
+    byte[] compressionDict;
+
+    //  Number of listeners bound to a TCP endpoint with SO_REUSEPORT,
+    //  each in another I/O thread, 0 meaning one per I/O thread.
+    //  Default 1 (a single listener).
+    int tcpListeners;
+
+    //  Interval between the PING commands sent to ZMTP/3.x peers, the time
+    //  to live the peers are told to wait for any traffic, and the time
+    //  to wait for any traffic from them after a PING, all in milliseconds.
+    //  A heartbeat timeout of -1 means the heartbeat interval.
+    //  Default 0 (no heartbeats).
+    int heartbeatInterval;
+    int heartbeatTtl;
+    int heartbeatTimeout;
+
     //  ID of the socket.
     int socketId;
     Class<? extends DecoderBase> decoder;
@@ -146,6 +177,15 @@ public class Options
         tcpKeepAliveCnt = -1;
         tcpKeepAliveIdle = -1;
         tcpKeepAliveIntvl = -1;
+        readBudgetBytes = 262144;
+        readBudgetMsgs = 1000;
+        corkIvl = 0;
+        compression = 0;
+        compressionDict = null;
+        tcpListeners = 1;
+        heartbeatInterval = 0;
+        heartbeatTtl = 0;
+        heartbeatTimeout = -1;
         socketId = 0;
 
         identity = null;
@@ -285,6 +325,85 @@ public class Options
             // not supported
             return;
 
+        case ZMQ.ZMQ_READ_BUDGET_BYTES:
+            readBudgetBytes = (Integer) optval;
+            if (readBudgetBytes < 0) {
+                throw new IllegalArgumentException("readBudgetBytes " + optval);
+            }
+            return;
+
+        case ZMQ.ZMQ_READ_BUDGET_MSGS:
+            readBudgetMsgs = (Integer) optval;
+            if (readBudgetMsgs < 0) {
+                throw new IllegalArgumentException("readBudgetMsgs " + optval);
+            }
+            return;
+
+        case ZMQ.ZMQ_CORK_IVL:
+            corkIvl = (Integer) optval;
+            if (corkIvl < 0) {
+                throw new IllegalArgumentException("corkIvl " + optval);
+            }
+            return;
+
+        case ZMQ.ZMQ_COMPRESSION:
+            if ((Integer) optval == 1) {
+                checkHeartbeats();
+            }
+            compression = (Integer) optval;
+            if (compression != 0 && compression != 1) {
+                throw new IllegalArgumentException("compression only accept 0 or 1 " + optval);
+            }
+            return;
+
+        case ZMQ.ZMQ_HEARTBEAT_IVL:
+            if ((Integer) optval > 0 && v1Framing()) {
+                throw new IllegalArgumentException("heartbeatInterval " + optval
+                        + " needs ZMTP/3.x, not used with compression, custom codecs or groups");
+            }
+            heartbeatInterval = (Integer) optval;
+            if (heartbeatInterval < 0) {
+                throw new IllegalArgumentException("heartbeatInterval " + optval);
+            }
+            return;
+
+        case ZMQ.ZMQ_HEARTBEAT_TTL:
+            //  The TTL goes on the wire in deciseconds, on 16 bits.
+            heartbeatTtl = (Integer) optval;
+            if (heartbeatTtl < 0 || heartbeatTtl / 100 > 0xffff) {
+                throw new IllegalArgumentException("heartbeatTtl " + optval);
+            }
+            return;
+
+        case ZMQ.ZMQ_HEARTBEAT_TIMEOUT:
+            heartbeatTimeout = (Integer) optval;
+            if (heartbeatTimeout < -1) {
+                throw new IllegalArgumentException("heartbeatTimeout " + optval);
+            }
+            return;
+
+        case ZMQ.ZMQ_TCP_LISTENERS:
+            tcpListeners = (Integer) optval;
+            if (tcpListeners < 0) {
+                throw new IllegalArgumentException("tcpListeners " + optval);
+            }
+            return;
+
+        case ZMQ.ZMQ_COMPRESSION_DICT:
+            if (optval == null) {
+                compressionDict = null;
+            }
+            else if (optval instanceof String) {
+                compressionDict = ((String) optval).getBytes(ZMQ.CHARSET);
+            }
+            else if (optval instanceof byte[]) {
+                compressionDict = (byte[]) optval;
+            }
+            else {
+                throw new IllegalArgumentException("compressionDict " + optval);
+            }
+            return;
+
         case ZMQ.ZMQ_TCP_ACCEPT_FILTER:
             String filterStr = (String) optval;
             if (filterStr == null) {
@@ -301,6 +420,7 @@ public class Options
             return;
 
         case ZMQ.ZMQ_ENCODER:
+            checkHeartbeats();
             if (optval instanceof String) {
                 try {
                     encoder = Class.forName((String) optval).asSubclass(EncoderBase.class);
@@ -318,6 +438,7 @@ public class Options
             return;
 
         case ZMQ.ZMQ_DECODER:
+            checkHeartbeats();
             if (optval instanceof String) {
                 try {
                     decoder = Class.forName((String) optval).asSubclass(DecoderBase.class);
@@ -374,6 +495,23 @@ public class Options
         }
     }
 
+    //  Returns true if the connections use the v1 framing, as is the case
+    //  with compression, custom codecs and groups.
+    private boolean v1Framing()
+    {
+        return compression == 1 || encoder != null || decoder != null
+                || type == ZMQ.ZMQ_RADIO || type == ZMQ.ZMQ_DISH;
+    }
+
+    //  The heartbeats are commands of ZMTP/3.x, which the v1 framing lacks.
+    private void checkHeartbeats()
+    {
+        if (heartbeatInterval > 0) {
+            throw new IllegalArgumentException("heartbeats need ZMTP/3.x, not used with "
+                    + "compression, custom codecs or groups");
+        }
+    }
+
     public Object getsockopt(int option)
     {
         switch (option) {
@@ -446,6 +584,33 @@ public class Options
         case ZMQ.ZMQ_LAST_ENDPOINT:
             return lastEndpoint;
 
+        case ZMQ.ZMQ_READ_BUDGET_BYTES:
+            return readBudgetBytes;
+
+        case ZMQ.ZMQ_READ_BUDGET_MSGS:
+            return readBudgetMsgs;
+
+        case ZMQ.ZMQ_CORK_IVL:
+            return corkIvl;
+
+        case ZMQ.ZMQ_COMPRESSION:
+            return compression;
+
+        case ZMQ.ZMQ_COMPRESSION_DICT:
+            return compressionDict;
+
+        case ZMQ.ZMQ_TCP_LISTENERS:
+            return tcpListeners;
+
+        case ZMQ.ZMQ_HEARTBEAT_IVL:
+            return heartbeatInterval;
+
+        case ZMQ.ZMQ_HEARTBEAT_TTL:
+            return heartbeatTtl;
+
+        case ZMQ.ZMQ_HEARTBEAT_TIMEOUT:
+            return heartbeatTimeout;
+
         default:
             throw new IllegalArgumentException("option=" + option);
         }
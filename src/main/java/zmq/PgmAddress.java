@@ -0,0 +1,139 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.Enumeration;
+
+//  The address of a multicast endpoint, in the form of
+//  'interface;group:port'. The interface is given either by its name
+//  or by one of its addresses.
+public class PgmAddress implements Address.IZAddress
+{
+    private String name;
+
+    //  The multicast group and port.
+    private InetSocketAddress address;
+
+    //  The interface to send and receive the multicast packets on,
+    //  and its address of the same family as the group.
+    private NetworkInterface networkInterface;
+    private InetAddress interfaceAddress;
+
+    public PgmAddress()
+    {
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+
+    @Override
+    public void resolve(String name, boolean ipv4only)
+    {
+        //  Find the ';' that separates the interface from the group.
+        int semicolon = name.indexOf(';');
+        if (semicolon < 0) {
+            throw new IllegalArgumentException(name);
+        }
+        String ifaceStr = name.substring(0, semicolon);
+        String groupStr = name.substring(semicolon + 1);
+
+        //  Find the ':' at end that separates the group from the port number.
+        int delimiter = groupStr.lastIndexOf(':');
+        if (delimiter < 0) {
+            throw new IllegalArgumentException(name);
+        }
+        String addrStr = groupStr.substring(0, delimiter);
+        String portStr = groupStr.substring(delimiter + 1);
+
+        //  Remove square brackets around the address, if any.
+        if (addrStr.length() >= 2 && addrStr.charAt(0) == '[' &&
+              addrStr.charAt(addrStr.length() - 1) == ']') {
+            addrStr = addrStr.substring(1, addrStr.length() - 1);
+        }
+
+        //  Parse the port number (0 is not a valid port).
+        int port = Integer.parseInt(portStr);
+        if (port == 0) {
+            throw new IllegalArgumentException(name);
+        }
+
+        try {
+            InetAddress group = InetAddress.getByName(addrStr);
+            if (!group.isMulticastAddress() || (ipv4only && group instanceof Inet6Address)) {
+                throw new IllegalArgumentException(name);
+            }
+
+            networkInterface = NetworkInterface.getByName(ifaceStr);
+            if (networkInterface == null) {
+                interfaceAddress = InetAddress.getByName(ifaceStr);
+                networkInterface = NetworkInterface.getByInetAddress(interfaceAddress);
+            }
+            else {
+                interfaceAddress = null;
+                Enumeration<InetAddress> addrs = networkInterface.getInetAddresses();
+                while (addrs.hasMoreElements()) {
+                    InetAddress ia = addrs.nextElement();
+                    if ((ia instanceof Inet6Address) == (group instanceof Inet6Address)) {
+                        interfaceAddress = ia;
+                        break;
+                    }
+                }
+            }
+            if (networkInterface == null || interfaceAddress == null) {
+                throw new IllegalArgumentException(name);
+            }
+
+            address = new InetSocketAddress(group, port);
+        }
+        catch (UnknownHostException e) {
+            throw new IllegalArgumentException(name, e);
+        }
+        catch (SocketException e) {
+            throw new IllegalArgumentException(name, e);
+        }
+
+        this.name = name;
+    }
+
+    @Override
+    public InetSocketAddress address()
+    {
+        return address;
+    }
+
+    public NetworkInterface networkInterface()
+    {
+        return networkInterface;
+    }
+
+    public InetAddress interfaceAddress()
+    {
+        return interfaceAddress;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+//  Wire format of the multicast transport. It follows PGM (RFC 3208) in
+//  spirit, encapsulated in UDP: the sender numbers its packets and keeps
+//  them for the recovery interval, the receivers ask for the packets they
+//  missed by unicasting NAKs to the sender. Every packet has the header:
+//
+//    type (1 byte) | TSI (8 bytes) | sequence number (8 bytes) |
+//    trail (8 bytes) | offset of the first message (2 bytes)
+//
+//  The TSI (transport session identifier) tells the senders apart. The
+//  trail is the oldest sequence number the sender can still repair. The
+//  data packets carry a V1 encoded message stream, a message may span
+//  several packets. The offset tells where the first message starting in
+//  the packet begins, so that a receiver can join the stream at any
+//  packet.
+class PgmProtocol
+{
+    private PgmProtocol()
+    {
+    }
+
+    //  Original data.
+    public static final byte ODATA = 1;
+
+    //  Repair data, sent in reply to a NAK.
+    public static final byte RDATA = 2;
+
+    //  Negative acknowledgement, asking for the packet of the sequence
+    //  number.
+    public static final byte NAK = 3;
+
+    //  Source path message, announcing the sequence number of the next
+    //  packet to send. Lets the receivers detect the loss of the last
+    //  packets sent.
+    public static final byte SPM = 4;
+
+    public static final int HEADER_SIZE = 27;
+
+    //  Offset of the first message when no message starts in the packet.
+    public static final int NO_MESSAGE = 0xffff;
+
+    //  Size of the IP and UDP headers accounted for in the TPDU.
+    public static final int UDP_HEADER_SIZE = 28;
+
+    //  Interval of the SPM heartbeats and NAK retries, in milliseconds.
+    public static final int SPM_IVL = 100;
+    public static final int NAK_IVL = 100;
+
+    //  Maximum number of packets requested at once. Larger gaps are
+    //  considered lost rather than flooding the sender with NAKs.
+    public static final int MAX_NAKS = 1024;
+
+    //  Maximum payload of an UDP datagram.
+    public static final int MAX_DATAGRAM = 65507;
+}
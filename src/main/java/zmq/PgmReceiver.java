@@ -0,0 +1,538 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+//  Receiving side of the multicast transport. The packets of every sender
+//  are put back in sequence, the missing ones are asked for with NAKs
+//  until repaired or until ZMQ_RECOVERY_IVL has passed. An unrecoverable
+//  loss drops the messages it affects and the stream resumes at the next
+//  message starting in a packet.
+public class PgmReceiver implements IEngine, IPollEvents, IMsgSink
+{
+    //  ID of the timer used to retry the NAKs.
+    private static final int NAK_TIMER_ID = 0xa2;
+
+    //  Stands for a packet given up in the packets kept out of order.
+    private static final ByteBuffer LOST = ByteBuffer.allocate(0);
+
+    //  A packet asked for.
+    private static final class Nak
+    {
+        private final long firstSent;
+        private long lastSent;
+
+        private Nak(long now)
+        {
+            firstSent = now;
+            lastSent = now;
+        }
+    }
+
+    //  The state of the stream of a sender.
+    private static final class Peer
+    {
+        private final long tsi;
+
+        //  The address to send the NAKs to.
+        private SocketAddress source;
+
+        //  Sequence number of the next packet to decode.
+        private long expected;
+
+        //  False until the decoder is at the beginning of a message.
+        private boolean joined;
+
+        private V1Decoder decoder;
+
+        //  The packets received out of order, by sequence number.
+        private final TreeMap<Long, ByteBuffer> pending;
+
+        //  The packets missing, by sequence number.
+        private final TreeMap<Long, Nak> naks;
+
+        private Peer(long tsi, long expected)
+        {
+            this.tsi = tsi;
+            this.expected = expected;
+            joined = false;
+            decoder = null;
+            pending = new TreeMap<Long, ByteBuffer>();
+            naks = new TreeMap<Long, Nak>();
+        }
+    }
+
+    private DatagramChannel handle;
+
+    private final PgmAddress address;
+
+    private final Options options;
+
+    //  The senders, by TSI.
+    private final Map<Long, Peer> peers;
+
+    private final ByteBuffer inbuf;
+    private final ByteBuffer nakbuf;
+
+    //  True if the session refused the last message decoded. The rest of
+    //  the packet being decoded is kept until the session makes room.
+    private boolean stalled;
+    private Peer stalledPeer;
+    private ByteBuffer stalledData;
+
+    //  The session this engine is attached to.
+    private SessionBase session;
+
+    private boolean plugged;
+
+    private IOObject ioObject;
+
+    private boolean hasNakTimer;
+
+    public PgmReceiver(final Options options, final Address addr)
+    {
+        this.options = options;
+        address = (PgmAddress) addr.resolved();
+        peers = new HashMap<Long, Peer>();
+        inbuf = ByteBuffer.allocate(PgmProtocol.MAX_DATAGRAM).order(ByteOrder.BIG_ENDIAN);
+        nakbuf = ByteBuffer.allocate(PgmProtocol.HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        stalled = false;
+        stalledPeer = null;
+        stalledData = null;
+        session = null;
+        plugged = false;
+        hasNakTimer = false;
+
+        try {
+            InetSocketAddress group = address.address();
+            if (group.getAddress() instanceof Inet6Address) {
+                handle = DatagramChannel.open(StandardProtocolFamily.INET6);
+            }
+            else {
+                handle = DatagramChannel.open(StandardProtocolFamily.INET);
+            }
+            Utils.unblockSocket(handle);
+
+            if (options.rcvbuf != 0) {
+                handle.setOption(StandardSocketOptions.SO_RCVBUF, options.rcvbuf);
+            }
+
+            //  Several receivers may listen to the same group.
+            handle.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            handle.bind(new InetSocketAddress(group.getPort()));
+            handle.join(group.getAddress(), address.networkInterface());
+        }
+        catch (IOException e) {
+            destroy();
+            throw new ZError.IOException(e);
+        }
+    }
+
+    private void destroy()
+    {
+        assert (!plugged);
+
+        if (handle != null) {
+            try {
+                handle.close();
+            }
+            catch (IOException e) {
+            }
+            handle = null;
+        }
+    }
+
+    @Override
+    public void plug(IOThread ioThread, SessionBase session)
+    {
+        assert (!plugged);
+        plugged = true;
+
+        //  Connect to session object.
+        assert (this.session == null);
+        assert (session != null);
+        this.session = session;
+
+        ioObject = new IOObject(null);
+        ioObject.setHandler(this);
+        //  Connect to I/O threads poller object.
+        ioObject.plug(ioThread);
+        ioObject.addHandle(handle);
+
+        //  There's no identity exchange over multicast.
+        session.pushMsg(new Msg());
+        dropOutbound();
+
+        ioObject.setPollIn(handle);
+    }
+
+    private void unplug()
+    {
+        assert (plugged);
+        plugged = false;
+
+        if (hasNakTimer) {
+            ioObject.cancelTimer(NAK_TIMER_ID);
+            hasNakTimer = false;
+        }
+
+        //  Cancel all fd subscriptions.
+        ioObject.removeHandle(handle);
+
+        //  Disconnect from I/O threads poller object.
+        ioObject.unplug();
+
+        //  Disconnect from session object.
+        session = null;
+    }
+
+    @Override
+    public void terminate()
+    {
+        unplug();
+        destroy();
+    }
+
+    @Override
+    public void activateOut()
+    {
+        dropOutbound();
+    }
+
+    //  The subscriptions can't be sent upstream, the messages are filtered
+    //  by the socket. Drop them.
+    private void dropOutbound()
+    {
+        Msg msg = session.pullMsg();
+        while (msg != null) {
+            msg = session.pullMsg();
+        }
+    }
+
+    @Override
+    public void activateIn()
+    {
+        if (stalledData == null) {
+            return;
+        }
+
+        //  The session has room again. Finish the packet that stalled,
+        //  then the packets that arrived in sequence meanwhile.
+        Peer peer = stalledPeer;
+        ByteBuffer data = stalledData;
+        stalledPeer = null;
+        stalledData = null;
+        if (!decode(peer, data)) {
+            session.flush();
+            return;
+        }
+        for (Peer p : peers.values()) {
+            if (!drain(p)) {
+                session.flush();
+                return;
+            }
+        }
+        session.flush();
+
+        ioObject.setPollIn(handle);
+        inEvent();
+    }
+
+    @Override
+    public void inEvent()
+    {
+        int batch = Config.UDP_IN_BATCH.getValue();
+        for (int i = 0; i < batch && stalledData == null; i++) {
+            inbuf.clear();
+            SocketAddress from;
+            try {
+                from = handle.receive(inbuf);
+            }
+            catch (IOException e) {
+                break;
+            }
+            if (from == null) {
+                break;
+            }
+            inbuf.flip();
+            if (inbuf.remaining() >= PgmProtocol.HEADER_SIZE) {
+                process(from, inbuf);
+            }
+        }
+        session.flush();
+
+        //  Leave the datagrams in the socket buffer until the session
+        //  makes room.
+        if (stalledData != null) {
+            ioObject.resetPollIn(handle);
+        }
+    }
+
+    private void process(SocketAddress from, ByteBuffer packet)
+    {
+        byte type = packet.get();
+        long tsi = packet.getLong();
+        long seq = packet.getLong();
+        long trail = packet.getLong();
+        packet.getShort();
+
+        if (type != PgmProtocol.ODATA && type != PgmProtocol.RDATA && type != PgmProtocol.SPM) {
+            return;
+        }
+
+        Peer peer = peers.get(tsi);
+        if (peer == null) {
+            //  Join the stream with the packet, or with the next packet
+            //  sent if it's a heartbeat.
+            peer = new Peer(tsi, seq);
+            peers.put(tsi, peer);
+        }
+        peer.source = from;
+
+        //  The packets up to the trail can't be repaired anymore.
+        if (trail > peer.expected) {
+            lost(peer, trail);
+        }
+
+        if (type == PgmProtocol.SPM) {
+            requestRepairs(peer, seq);
+        }
+        else if (seq >= peer.expected && !peer.pending.containsKey(seq)) {
+            peer.naks.remove(seq);
+
+            if (seq == peer.expected && stalledData == null) {
+                peer.expected++;
+                if (!decode(peer, packet)) {
+                    return;
+                }
+            }
+            else {
+                //  Keep the packet until the ones before it are received.
+                packet.position(0);
+                ByteBuffer copy = ByteBuffer.allocate(packet.remaining());
+                copy.put(packet);
+                copy.flip();
+                peer.pending.put(seq, copy);
+                requestRepairs(peer, seq);
+            }
+        }
+
+        if (stalledData == null) {
+            drain(peer);
+        }
+    }
+
+    //  Decodes the packets following in sequence. Returns false if the
+    //  session can't take more messages.
+    private boolean drain(Peer peer)
+    {
+        ByteBuffer packet = peer.pending.remove(peer.expected);
+        while (packet != null) {
+            peer.expected++;
+            if (packet == LOST) {
+                resync(peer);
+            }
+            else {
+                packet.position(PgmProtocol.HEADER_SIZE);
+                if (!decode(peer, packet)) {
+                    return false;
+                }
+            }
+            packet = peer.pending.remove(peer.expected);
+        }
+        return true;
+    }
+
+    //  Decodes the messages of the packet, positioned after the header.
+    //  Returns false if the session can't take more messages.
+    private boolean decode(Peer peer, ByteBuffer packet)
+    {
+        if (!peer.joined) {
+            int first = packet.getShort(25) & 0xffff;
+            if (first == PgmProtocol.NO_MESSAGE) {
+                return true;
+            }
+            packet.position(PgmProtocol.HEADER_SIZE + first);
+            peer.decoder = new V1Decoder(0, options.maxMsgSize, this);
+            peer.joined = true;
+        }
+
+        stalled = false;
+        int size = packet.remaining();
+        int processed = peer.decoder.processBuffer(packet, size);
+        if (processed < 0) {
+            //  Malformed stream, resume at the next message.
+            resync(peer);
+            return true;
+        }
+        if (stalled) {
+            stalledPeer = peer;
+            stalledData = ByteBuffer.allocate(packet.remaining());
+            stalledData.put(packet);
+            stalledData.flip();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int pushMsg(Msg msg)
+    {
+        int rc = session.pushMsg(msg);
+        stalled = rc == ZError.EAGAIN;
+        return rc;
+    }
+
+    //  Gives up the packets missing before the sequence number. The packets
+    //  received before the gaps are still decoded.
+    private void lost(Peer peer, long seq)
+    {
+        peer.naks.headMap(seq).clear();
+
+        if (peer.pending.headMap(seq).isEmpty() && stalledPeer != peer) {
+            peer.expected = seq;
+            resync(peer);
+            return;
+        }
+
+        for (long missing = peer.expected; missing < seq; missing++) {
+            if (!peer.pending.containsKey(missing)) {
+                peer.pending.put(missing, LOST);
+            }
+        }
+    }
+
+    //  Drops the message being decoded, decoding resumes at the next
+    //  message starting in a packet.
+    private void resync(Peer peer)
+    {
+        peer.joined = false;
+        session.rollback();
+    }
+
+    //  Asks for the packets missing before the sequence number.
+    private void requestRepairs(Peer peer, long seq)
+    {
+        if (seq - peer.expected > PgmProtocol.MAX_NAKS) {
+            lost(peer, seq - PgmProtocol.MAX_NAKS);
+        }
+
+        long now = Clock.nowMS();
+        for (long missing = peer.expected; missing < seq; missing++) {
+            if (!peer.pending.containsKey(missing) && !peer.naks.containsKey(missing)) {
+                peer.naks.put(missing, new Nak(now));
+                sendNak(peer, missing);
+            }
+        }
+
+        if (!hasNakTimer && !peer.naks.isEmpty()) {
+            ioObject.addTimer(PgmProtocol.NAK_IVL, NAK_TIMER_ID);
+            hasNakTimer = true;
+        }
+    }
+
+    private void sendNak(Peer peer, long seq)
+    {
+        nakbuf.clear();
+        nakbuf.put(PgmProtocol.NAK);
+        nakbuf.putLong(peer.tsi);
+        nakbuf.putLong(seq);
+        nakbuf.putLong(0);
+        nakbuf.putShort((short) PgmProtocol.NO_MESSAGE);
+        nakbuf.flip();
+        try {
+            handle.send(nakbuf, peer.source);
+        }
+        catch (IOException e) {
+            //  Retried with the next timer.
+        }
+    }
+
+    @Override
+    public void timerEvent(int id)
+    {
+        assert (id == NAK_TIMER_ID);
+        hasNakTimer = false;
+
+        long now = Clock.nowMS();
+        boolean waiting = false;
+        for (Peer peer : peers.values()) {
+            //  Give up the packets not repaired in the recovery interval,
+            //  ask again for the others.
+            long lostUpTo = -1;
+            Iterator<Map.Entry<Long, Nak>> it = peer.naks.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, Nak> entry = it.next();
+                Nak nak = entry.getValue();
+                if (now - nak.firstSent >= options.recoveryIvl) {
+                    lostUpTo = entry.getKey() + 1;
+                }
+                else if (now - nak.lastSent >= PgmProtocol.NAK_IVL) {
+                    nak.lastSent = now;
+                    sendNak(peer, entry.getKey());
+                }
+            }
+            if (lostUpTo >= 0) {
+                lost(peer, lostUpTo);
+                if (stalledData == null) {
+                    drain(peer);
+                }
+            }
+            waiting |= !peer.naks.isEmpty();
+        }
+        session.flush();
+
+        if (waiting) {
+            ioObject.addTimer(PgmProtocol.NAK_IVL, NAK_TIMER_ID);
+            hasNakTimer = true;
+        }
+    }
+
+    @Override
+    public void outEvent()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void connectEvent()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void acceptEvent()
+    {
+        throw new UnsupportedOperationException();
+    }
+}
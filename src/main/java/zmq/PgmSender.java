@@ -0,0 +1,513 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+//  Sending side of the multicast transport. The messages are encoded
+//  into numbered packets of at most PGM_MAX_TPDU bytes, sent no faster
+//  than ZMQ_RATE allows and kept for ZMQ_RECOVERY_IVL to repair the
+//  losses reported by the receivers.
+public class PgmSender implements IEngine, IPollEvents
+{
+    //  IDs of the timers used by the engine.
+    private static final int SPM_TIMER_ID = 0xa0;
+    private static final int RATE_TIMER_ID = 0xa1;
+
+    //  A packet sent, kept for repairs.
+    private static final class Packet
+    {
+        private final long seq;
+        private final byte[] data;
+        private final long sentAt;
+        private long repairedAt;
+
+        private Packet(long seq, byte[] data, long sentAt)
+        {
+            this.seq = seq;
+            this.data = data;
+            this.sentAt = sentAt;
+            repairedAt = -PgmProtocol.NAK_IVL;
+        }
+    }
+
+    private DatagramChannel handle;
+
+    private final PgmAddress address;
+
+    private final Options options;
+
+    //  Transport session identifier.
+    private final long tsi;
+
+    //  Sequence number of the next packet to send.
+    private long lead;
+
+    //  The packets sent in the recovery interval, oldest first.
+    private final Deque<Packet> window;
+
+    //  Packet being filled, or sent if outReady is true.
+    private final ByteBuffer outbuf;
+    private boolean outReady;
+
+    //  Encoding of the message part being written to the packets.
+    private final byte[] frameHeader;
+    private final ByteBuffer frameHeaderBuf;
+    private ByteBuffer frameBody;
+
+    //  True if the next part to encode begins a message.
+    private boolean beginning;
+
+    //  Token bucket limiting the rate, in thousandths of bytes to count
+    //  every millisecond exactly. Unlimited if bytesPerSec is 0.
+    private final long bytesPerSec;
+    private final long bucketSize;
+    private long tokens;
+    private long lastRefill;
+
+    private final ByteBuffer ctlbuf;
+
+    //  The session this engine is attached to.
+    private SessionBase session;
+
+    private boolean plugged;
+
+    private IOObject ioObject;
+
+    private boolean hasSpmTimer;
+    private boolean hasRateTimer;
+
+    public PgmSender(final Options options, final Address addr)
+    {
+        this.options = options;
+        address = (PgmAddress) addr.resolved();
+        tsi = Utils.generateRandom() & 0xffffffffL | ((long) Utils.generateRandom() << 32);
+        lead = 0;
+        window = new ArrayDeque<Packet>();
+        outbuf = ByteBuffer.allocate(Config.PGM_MAX_TPDU.getValue() - PgmProtocol.UDP_HEADER_SIZE)
+                .order(ByteOrder.BIG_ENDIAN);
+        outReady = false;
+        frameHeader = new byte[9];
+        frameHeaderBuf = ByteBuffer.wrap(frameHeader).order(ByteOrder.BIG_ENDIAN);
+        frameHeaderBuf.limit(0);
+        frameBody = null;
+        beginning = true;
+        ctlbuf = ByteBuffer.allocate(PgmProtocol.MAX_DATAGRAM).order(ByteOrder.BIG_ENDIAN);
+        session = null;
+        plugged = false;
+        hasSpmTimer = false;
+        hasRateTimer = false;
+
+        //  ZMQ_RATE is in kilobits per second. A burst of 100ms is allowed,
+        //  but at least a full packet.
+        bytesPerSec = options.rate > 0 ? options.rate * 1000L / 8 : 0;
+        bucketSize = Math.max(bytesPerSec / 10, outbuf.capacity()) * 1000;
+        tokens = bucketSize;
+        lastRefill = Clock.nowMS();
+
+        try {
+            if (address.address().getAddress() instanceof Inet6Address) {
+                handle = DatagramChannel.open(StandardProtocolFamily.INET6);
+            }
+            else {
+                handle = DatagramChannel.open(StandardProtocolFamily.INET);
+            }
+            Utils.unblockSocket(handle);
+
+            if (options.sndbuf != 0) {
+                handle.setOption(StandardSocketOptions.SO_SNDBUF, options.sndbuf);
+            }
+            if (options.rcvbuf != 0) {
+                handle.setOption(StandardSocketOptions.SO_RCVBUF, options.rcvbuf);
+            }
+            handle.setOption(StandardSocketOptions.IP_MULTICAST_IF, address.networkInterface());
+            handle.setOption(StandardSocketOptions.IP_MULTICAST_TTL, options.multicastHops);
+            handle.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+
+            //  The receivers send their NAKs to the address of the sender.
+            handle.bind(new InetSocketAddress(address.interfaceAddress(), 0));
+        }
+        catch (IOException e) {
+            destroy();
+            throw new ZError.IOException(e);
+        }
+    }
+
+    private void destroy()
+    {
+        assert (!plugged);
+
+        if (handle != null) {
+            try {
+                handle.close();
+            }
+            catch (IOException e) {
+            }
+            handle = null;
+        }
+    }
+
+    @Override
+    public void plug(IOThread ioThread, SessionBase session)
+    {
+        assert (!plugged);
+        plugged = true;
+
+        //  Connect to session object.
+        assert (this.session == null);
+        assert (session != null);
+        this.session = session;
+
+        ioObject = new IOObject(null);
+        ioObject.setHandler(this);
+        //  Connect to I/O threads poller object.
+        ioObject.plug(ioThread);
+        ioObject.addHandle(handle);
+
+        //  There's no identity exchange over multicast.
+        Msg identity = session.pullMsg();
+        assert (identity != null);
+
+        ioObject.setPollIn(handle);
+        ioObject.setPollOut(handle);
+    }
+
+    private void unplug()
+    {
+        assert (plugged);
+        plugged = false;
+
+        if (hasSpmTimer) {
+            ioObject.cancelTimer(SPM_TIMER_ID);
+            hasSpmTimer = false;
+        }
+        if (hasRateTimer) {
+            ioObject.cancelTimer(RATE_TIMER_ID);
+            hasRateTimer = false;
+        }
+
+        //  Cancel all fd subscriptions.
+        ioObject.removeHandle(handle);
+
+        //  Disconnect from I/O threads poller object.
+        ioObject.unplug();
+
+        //  Disconnect from session object.
+        session = null;
+    }
+
+    @Override
+    public void terminate()
+    {
+        unplug();
+        destroy();
+    }
+
+    @Override
+    public void activateOut()
+    {
+        //  While over the rate, the timer resumes the sending.
+        if (hasRateTimer) {
+            return;
+        }
+
+        ioObject.setPollOut(handle);
+
+        //  Speculative write, as with the stream engine.
+        outEvent();
+    }
+
+    @Override
+    public void activateIn()
+    {
+        //  The sender doesn't receive any messages.
+    }
+
+    @Override
+    public void outEvent()
+    {
+        while (true) {
+            if (!outReady && !pack()) {
+                //  Nothing more to send, stop polling for output.
+                ioObject.resetPollOut(handle);
+                return;
+            }
+
+            //  Wait for the bucket to refill when over the rate.
+            int size = outbuf.remaining();
+            long missing = size * 1000L - refill();
+            if (bytesPerSec > 0 && missing > 0) {
+                ioObject.resetPollOut(handle);
+                ioObject.addTimer(Math.max(1, missing / bytesPerSec), RATE_TIMER_ID);
+                hasRateTimer = true;
+                return;
+            }
+
+            if (send(outbuf, address.address()) == 0) {
+                //  The socket buffer is full. Try again once the socket
+                //  becomes writable.
+                return;
+            }
+            outReady = false;
+            if (bytesPerSec > 0) {
+                tokens -= size * 1000L;
+            }
+
+            if (!hasSpmTimer) {
+                ioObject.addTimer(PgmProtocol.SPM_IVL, SPM_TIMER_ID);
+                hasSpmTimer = true;
+            }
+        }
+    }
+
+    //  Adds the tokens gained since the last refill to the bucket and
+    //  returns the current amount.
+    private long refill()
+    {
+        long now = Clock.nowMS();
+        tokens = Math.min(bucketSize, tokens + (now - lastRefill) * bytesPerSec);
+        lastRefill = now;
+        return tokens;
+    }
+
+    //  Encodes the messages from the session into the next packet and
+    //  keeps it in the window. Returns false if there's nothing to send.
+    private boolean pack()
+    {
+        int first = PgmProtocol.NO_MESSAGE;
+        outbuf.clear();
+        outbuf.position(PgmProtocol.HEADER_SIZE);
+
+        while (outbuf.hasRemaining()) {
+            if (frameBody == null) {
+                Msg msg = session.pullMsg();
+                if (msg == null) {
+                    break;
+                }
+                if (beginning && first == PgmProtocol.NO_MESSAGE) {
+                    first = outbuf.position() - PgmProtocol.HEADER_SIZE;
+                }
+                beginning = !msg.hasMore();
+                encodeHeader(msg);
+                frameBody = msg.buf();
+            }
+
+            //  Copy as much of the header and the body as fits.
+            if (frameHeaderBuf.remaining() > outbuf.remaining()) {
+                int limit = frameHeaderBuf.limit();
+                frameHeaderBuf.limit(frameHeaderBuf.position() + outbuf.remaining());
+                outbuf.put(frameHeaderBuf);
+                frameHeaderBuf.limit(limit);
+                break;
+            }
+            outbuf.put(frameHeaderBuf);
+
+            if (frameBody.remaining() <= outbuf.remaining()) {
+                outbuf.put(frameBody);
+                frameBody = null;
+            }
+            else {
+                int limit = frameBody.limit();
+                frameBody.limit(frameBody.position() + outbuf.remaining());
+                outbuf.put(frameBody);
+                frameBody.limit(limit);
+            }
+        }
+
+        if (outbuf.position() == PgmProtocol.HEADER_SIZE) {
+            return false;
+        }
+
+        long now = Clock.nowMS();
+        trimWindow(now);
+
+        outbuf.put(0, PgmProtocol.ODATA);
+        outbuf.putLong(1, tsi);
+        outbuf.putLong(9, lead);
+        outbuf.putLong(17, trail());
+        outbuf.putShort(25, (short) first);
+        outbuf.flip();
+
+        byte[] data = new byte[outbuf.remaining()];
+        System.arraycopy(outbuf.array(), 0, data, 0, data.length);
+        window.addLast(new Packet(lead, data, now));
+        lead++;
+
+        outReady = true;
+        return true;
+    }
+
+    //  Encodes the flags and the size of the message part as V1 does.
+    private void encodeHeader(Msg msg)
+    {
+        int flags = msg.hasMore() ? V1Protocol.MORE_FLAG : 0;
+        frameHeaderBuf.clear();
+        if (msg.size() > 255) {
+            frameHeaderBuf.put((byte) (flags | V1Protocol.LARGE_FLAG));
+            frameHeaderBuf.putLong(msg.size());
+        }
+        else {
+            frameHeaderBuf.put((byte) flags);
+            frameHeaderBuf.put((byte) msg.size());
+        }
+        frameHeaderBuf.flip();
+    }
+
+    //  Forgets the packets older than the recovery interval.
+    private void trimWindow(long now)
+    {
+        while (!window.isEmpty() && now - window.peekFirst().sentAt > options.recoveryIvl) {
+            window.removeFirst();
+        }
+    }
+
+    //  Returns the oldest sequence number that can still be repaired.
+    private long trail()
+    {
+        return window.isEmpty() ? lead : window.peekFirst().seq;
+    }
+
+    @Override
+    public void inEvent()
+    {
+        //  Serve the NAKs of the receivers.
+        int batch = Config.UDP_IN_BATCH.getValue();
+        for (int i = 0; i < batch; i++) {
+            ctlbuf.clear();
+            SocketAddress from;
+            try {
+                from = handle.receive(ctlbuf);
+            }
+            catch (IOException e) {
+                break;
+            }
+            if (from == null) {
+                break;
+            }
+            ctlbuf.flip();
+            if (ctlbuf.remaining() >= PgmProtocol.HEADER_SIZE && ctlbuf.get(0) == PgmProtocol.NAK
+                    && ctlbuf.getLong(1) == tsi) {
+                repair(ctlbuf.getLong(9));
+            }
+        }
+    }
+
+    //  Sends the packet again, unless it has just been repaired for
+    //  another receiver. Repairs are not delayed by the rate limit, but
+    //  they count in it.
+    private void repair(long seq)
+    {
+        long now = Clock.nowMS();
+        trimWindow(now);
+        if (window.isEmpty() || seq < trail() || seq >= lead) {
+            return;
+        }
+
+        for (Packet packet : window) {
+            if (packet.seq != seq) {
+                continue;
+            }
+            if (now - packet.repairedAt < PgmProtocol.NAK_IVL) {
+                return;
+            }
+            packet.repairedAt = now;
+
+            ByteBuffer buf = ByteBuffer.wrap(packet.data.clone());
+            buf.put(0, PgmProtocol.RDATA);
+            buf.putLong(17, trail());
+            if (bytesPerSec > 0) {
+                refill();
+                tokens -= buf.remaining() * 1000L;
+            }
+            send(buf, address.address());
+            return;
+        }
+    }
+
+    //  Sends a heartbeat announcing the next sequence number, so that the
+    //  receivers notice if the last packets were lost.
+    private void sendSpm()
+    {
+        ctlbuf.clear();
+        ctlbuf.put(PgmProtocol.SPM);
+        ctlbuf.putLong(tsi);
+        ctlbuf.putLong(lead);
+        ctlbuf.putLong(trail());
+        ctlbuf.putShort((short) PgmProtocol.NO_MESSAGE);
+        ctlbuf.flip();
+        send(ctlbuf, address.address());
+    }
+
+    private int send(ByteBuffer buf, SocketAddress target)
+    {
+        try {
+            return handle.send(buf, target);
+        }
+        catch (IOException e) {
+            //  The packet is lost, as if it was dropped on the way.
+            return -1;
+        }
+    }
+
+    @Override
+    public void timerEvent(int id)
+    {
+        if (id == RATE_TIMER_ID) {
+            hasRateTimer = false;
+            ioObject.setPollOut(handle);
+            outEvent();
+            return;
+        }
+
+        assert (id == SPM_TIMER_ID);
+        hasSpmTimer = false;
+
+        //  Keep sending the heartbeats as long as there are packets the
+        //  receivers may ask for.
+        trimWindow(Clock.nowMS());
+        if (!window.isEmpty()) {
+            sendSpm();
+            ioObject.addTimer(PgmProtocol.SPM_IVL, SPM_TIMER_ID);
+            hasSpmTimer = true;
+        }
+    }
+
+    @Override
+    public void connectEvent()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void acceptEvent()
+    {
+        throw new UnsupportedOperationException();
+    }
+}
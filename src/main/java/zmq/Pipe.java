@@ -87,9 +87,18 @@ class Pipe extends ZObject
     //  Identity of the writer. Used uniquely by the reader side.
     private Blob identity;
 
+    //  Routing id of the peer, assigned by the SERVER socket.
+    private int routingId;
+
     // JeroMQ only
     private ZObject parent;
 
+    //  If true, flushes are postponed until the batch of writes is done.
+    private boolean deferFlush;
+
+    //  True if a flush was requested while flushes were deferred.
+    private boolean flushPending;
+
     //  Constructor is private. Pipe can only be created using
     //  pipepair function.
     private Pipe(ZObject parent, YPipe<Msg> inpipe, YPipe<Msg> outpipe,
@@ -109,6 +118,8 @@ class Pipe extends ZObject
         sink = null;
         state = State.ACTIVE;
         this.delay = delay;
+        deferFlush = false;
+        flushPending = false;
 
         this.parent = parent;
     }
@@ -165,6 +176,16 @@ class Pipe extends ZObject
         return identity;
     }
 
+    public void setRoutingId(int routingId)
+    {
+        this.routingId = routingId;
+    }
+
+    public int getRoutingId()
+    {
+        return routingId;
+    }
+
     //  Returns true if there is at least one message to read in the pipe.
     public boolean checkRead()
     {
@@ -277,11 +298,28 @@ class Pipe extends ZObject
             return;
         }
 
+        if (deferFlush) {
+            flushPending = true;
+            return;
+        }
+
         if (outpipe != null && !outpipe.flush()) {
             sendActivateRead(peer);
         }
     }
 
+    //  Postpones the flushes requested by the writer until the deferral
+    //  is switched off again, at which point a single flush is done
+    //  for all the messages written in the meantime.
+    public void deferFlush(boolean defer)
+    {
+        deferFlush = defer;
+        if (!defer && flushPending) {
+            flushPending = false;
+            flush();
+        }
+    }
+
     @Override
     protected void processActivateRead()
     {
@@ -462,6 +500,8 @@ class Pipe extends ZObject
             Msg msg = new Msg();
             msg.initDelimiter();
             outpipe.write(msg, false);
+            deferFlush = false;
+            flushPending = false;
             flush();
         }
     }
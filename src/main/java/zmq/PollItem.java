@@ -21,6 +21,7 @@ package zmq;
 
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 
 public class PollItem
 {
@@ -30,6 +31,18 @@ public class PollItem
     private int interest;
     private int ready;
 
+    //  The registration of the channel with the selector it was last
+    //  polled with, so that it doesn't have to be looked up on every poll.
+    private SelectionKey key;
+
+    //  The ready list the socket reports its readiness to, the poll the
+    //  item last observed the socket in, whether the socket has to be
+    //  checked in the current poll, and whether the item is in the list.
+    private volatile ReadyList readyList;
+    int round;
+    boolean candidate;
+    boolean queued;
+
     public PollItem(SocketBase socket)
     {
         this.socket = socket;
@@ -106,6 +119,34 @@ public class PollItem
         }
     }
 
+    //  Returns the registration of the channel with the selector, or null
+    //  if it is not registered.
+    final SelectionKey key(Selector selector)
+    {
+        if (key == null || key.selector() != selector || !key.isValid()) {
+            key = getChannel().keyFor(selector);
+            if (key != null && !key.isValid()) {
+                key = null;
+            }
+        }
+        return key;
+    }
+
+    final void key(SelectionKey key)
+    {
+        this.key = key;
+    }
+
+    final ReadyList readyList()
+    {
+        return readyList;
+    }
+
+    final void readyList(ReadyList readyList)
+    {
+        this.readyList = readyList;
+    }
+
     public final int interestOps()
     {
         return interest;
@@ -20,14 +20,19 @@
 package zmq;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Poller extends PollerBase implements Runnable
@@ -53,6 +58,11 @@ public class Poller extends PollerBase implements Runnable
     //  If true, there's at least one retired event source.
     private final AtomicBoolean retired = new AtomicBoolean(false);
 
+    //  Tasks handed over to the poller thread by other threads, and
+    //  whether the poller has already been woken up to run them.
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicBoolean woken = new AtomicBoolean(false);
+
     //  If true, thread is in the process of shutting down.
     private volatile boolean stopping;
     private volatile boolean stopped;
@@ -61,6 +71,17 @@ public class Poller extends PollerBase implements Runnable
     private Selector selector;
     private final String name;
 
+    //  Number of select calls, of I/O events dispatched and of bytes
+    //  transferred so far. Written by the poller thread only, may be read
+    //  from any thread.
+    private volatile long selects;
+    private volatile long events;
+    private volatile long bytes;
+
+    //  Direct buffers lent to the asynchronous channels of the thread for
+    //  the time of their writes.
+    private final Deque<ByteBuffer> buffers = new ArrayDeque<ByteBuffer>();
+
     public Poller()
     {
         this("poller");
@@ -164,6 +185,29 @@ public class Poller extends PollerBase implements Runnable
         }
     }
 
+    //  Runs the task in the poller thread. May be called from any thread.
+    public final void post(Runnable task)
+    {
+        tasks.add(task);
+        if (woken.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    private void runTasks()
+    {
+        woken.set(false);
+        Runnable task;
+        long dispatched = 0;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+            dispatched++;
+        }
+        if (dispatched > 0) {
+            events += dispatched;
+        }
+    }
+
     public void start()
     {
         worker = new Thread(this, name);
@@ -183,6 +227,9 @@ public class Poller extends PollerBase implements Runnable
         int returnsImmediately = 0;
 
         while (!stopping) {
+            //  Run the tasks handed over by other threads.
+            runTasks();
+
             //  Execute any due timers.
             long timeout = executeTimers();
 
@@ -218,10 +265,15 @@ public class Poller extends PollerBase implements Runnable
             catch (IOException e) {
                 throw new ZError.IOException(e);
             }
+            selects++;
 
             if (rc == 0) {
-                //  Guess JDK epoll bug
-                if (timeout == 0 ||
+                //  Guess JDK epoll bug. Wakeups to run the posted tasks
+                //  are no sign of it.
+                if (woken.get()) {
+                    returnsImmediately = 0;
+                }
+                else if (timeout == 0 ||
                         System.currentTimeMillis() - start < timeout / 2) {
                     returnsImmediately++;
                 }
@@ -236,6 +288,7 @@ public class Poller extends PollerBase implements Runnable
                 continue;
             }
 
+            long dispatched = 0;
             Iterator<SelectionKey> it = selector.selectedKeys().iterator();
             while (it.hasNext()) {
                 SelectionKey key = it.next();
@@ -259,12 +312,70 @@ public class Poller extends PollerBase implements Runnable
                 catch (CancelledKeyException e) {
                     // channel might have been closed
                 }
+                dispatched++;
             }
+            events += dispatched;
 
         }
         stopped = true;
     }
 
+    //  Returns the number of times the poller has waited for events.
+    public final long getSelects()
+    {
+        return selects;
+    }
+
+    //  Returns the number of I/O events the poller has dispatched.
+    public final long getEvents()
+    {
+        return events;
+    }
+
+    //  Accounts for the bytes transferred by the handlers of the poller.
+    //  To be called from the poller thread only.
+    public final void countBytes(int n)
+    {
+        bytes += n;
+    }
+
+    //  Returns the number of bytes the handlers of the poller have transferred.
+    public final long getBytes()
+    {
+        return bytes;
+    }
+
+    //  Lends a direct buffer of the given size. To be called from the
+    //  poller thread only.
+    public final ByteBuffer takeBuffer(int size)
+    {
+        ByteBuffer buf = null;
+        Iterator<ByteBuffer> it = buffers.iterator();
+        while (it.hasNext()) {
+            ByteBuffer candidate = it.next();
+            if (candidate.capacity() >= size) {
+                it.remove();
+                buf = candidate;
+                break;
+            }
+        }
+        if (buf == null) {
+            buf = ByteBuffer.allocateDirect(size);
+        }
+        buf.clear();
+        buf.limit(size);
+        return buf;
+    }
+
+    //  Takes the lent buffer back, keeping a few of them for the next
+    //  writes. To be called from the poller thread only.
+    public final void giveBuffer(ByteBuffer buf)
+    {
+        if (buffers.size() < Config.POLLER_BUFFERS.getValue()) {
+            buffers.addFirst(buf);
+        }
+    }
+
     private void rebuildSelector()
     {
         Selector newSelector;
@@ -19,7 +19,10 @@
 
 package zmq;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -34,6 +37,8 @@ abstract class PollerBase
     {
         IPollEvents sink;
         int id;
+        //  True if cancelled while due, before its event was triggered.
+        boolean cancelled;
 
         public TimerInfo(IPollEvents sink, int id)
         {
@@ -50,11 +55,15 @@ abstract class PollerBase
     private final Map<Long, TimerInfo> timers;
     private final Map<Long, TimerInfo> addingTimers;
 
+    //  The timers being triggered by executeTimers.
+    private final List<TimerInfo> dueTimers;
+
     protected PollerBase()
     {
         load = new AtomicInteger(0);
         timers = new MultiMap<Long, TimerInfo>();
         addingTimers = new MultiMap<Long, TimerInfo>();
+        dueTimers = new ArrayList<TimerInfo>();
     }
 
     //  Returns load of the poller. Note that this function can be
@@ -100,10 +109,57 @@ abstract class PollerBase
             }
         }
 
+        //  The timer may be due, and not triggered yet.
+        for (TimerInfo v : dueTimers) {
+            if (v.sink == sink && v.id == id && !v.cancelled) {
+                v.cancelled = true;
+                return;
+            }
+        }
+
         //  Timer not found.
         assert (false);
     }
 
+    //  Removes all the timers of the sink, returning their IDs along with
+    //  their expiration times, so that they can be carried over to the
+    //  poller of another thread.
+    Map<Integer, Long> removeTimers(IPollEvents sink)
+    {
+        Map<Integer, Long> removed = new HashMap<Integer, Long>();
+        if (!addingTimers.isEmpty()) {
+            timers.putAll(addingTimers);
+            addingTimers.clear();
+        }
+
+        Iterator<Entry<Long, TimerInfo>> it = timers.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry<Long, TimerInfo> o = it.next();
+            if (o.getValue().sink == sink) {
+                removed.put(o.getValue().id, o.getKey());
+                it.remove();
+            }
+        }
+
+        //  The timers due and not triggered yet are due on the other poller.
+        for (TimerInfo v : dueTimers) {
+            if (v.sink == sink && !v.cancelled) {
+                v.cancelled = true;
+                removed.put(v.id, 0L);
+            }
+        }
+        return removed;
+    }
+
+    //  Adds the timers removed from another poller, keeping their
+    //  expiration times.
+    void addTimers(IPollEvents sink, Map<Integer, Long> expirations)
+    {
+        for (Entry<Integer, Long> e : expirations.entrySet()) {
+            addingTimers.put(e.getValue(), new TimerInfo(sink, e.getKey()));
+        }
+    }
+
     //  Executes any timers that are due. Returns number of milliseconds
     //  to wait to match the next timer or 0 meaning "no timers".
     protected long executeTimers()
@@ -120,7 +176,9 @@ abstract class PollerBase
         //  Get the current time.
         long current = Clock.nowMS();
 
-        //   Execute the timers that are already due.
+        //  Remove the timers that are already due from the list of active
+        //  timers first, so that their sinks can add and cancel timers.
+        long wait = 0L;
         Iterator<Entry<Long, TimerInfo>> it = timers.entrySet().iterator();
         while (it.hasNext()) {
             Entry<Long, TimerInfo> o = it.next();
@@ -130,20 +188,28 @@ abstract class PollerBase
             //  the next timer (at least 1ms).
 
             if (o.getKey() > current) {
-                return o.getKey() - current;
+                wait = o.getKey() - current;
+                break;
             }
 
-            //  Trigger the timer.
-            o.getValue().sink.timerEvent(o.getValue().id);
-            //  Remove it from the list of active timers.
+            dueTimers.add(o.getValue());
             it.remove();
         }
 
+        //  Trigger the timers.
+        for (int i = 0; i < dueTimers.size(); i++) {
+            TimerInfo info = dueTimers.get(i);
+            if (!info.cancelled) {
+                info.sink.timerEvent(info.id);
+            }
+        }
+        dueTimers.clear();
+
         if (!addingTimers.isEmpty()) {
             return executeTimers();
         }
 
-        //  There are no more timers.
-        return 0L;
+        //  Return the time to wait for the next timer, if any.
+        return wait;
     }
 }
@@ -0,0 +1,169 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+//  Publishes single-part messages to the groups they belong to. Unlike
+//  PUB, the peers join the groups by their exact name, so distributing
+//  a message costs a single map lookup rather than a trie traversal.
+public class Radio extends SocketBase
+{
+    public static class RadioSession extends SessionBase
+    {
+        public RadioSession(IOThread ioThread, boolean connect,
+            SocketBase socket, final Options options,
+            final Address addr)
+        {
+            super(ioThread, connect, socket, options, addr);
+        }
+    }
+
+    //  Pipes of the peers that joined the group, by group.
+    private final Map<String, List<Pipe>> subscriptions;
+
+    //  Pipes that get all the messages, whatever their group.
+    private final List<Pipe> allPipes;
+
+    public Radio(Ctx parent, int tid, int sid)
+    {
+        super(parent, tid, sid, true);
+
+        options.type = ZMQ.ZMQ_RADIO;
+
+        subscriptions = new HashMap<String, List<Pipe>>();
+        allPipes = new ArrayList<Pipe>();
+    }
+
+    @Override
+    protected void xattachPipe(Pipe pipe, boolean icanhasall)
+    {
+        assert (pipe != null);
+
+        if (icanhasall) {
+            allPipes.add(pipe);
+        }
+
+        //  The pipe is active when attached. Let's read the joins from it, if any.
+        xreadActivated(pipe);
+    }
+
+    @Override
+    protected void xreadActivated(Pipe pipe)
+    {
+        //  There are some joins or leaves waiting. Let's process them.
+        Msg msg = pipe.read();
+        while (msg != null) {
+            String group = msg.getGroup();
+            if (group != null) {
+                if (msg.isJoin()) {
+                    List<Pipe> pipes = subscriptions.get(group);
+                    if (pipes == null) {
+                        pipes = new ArrayList<Pipe>();
+                        subscriptions.put(group, pipes);
+                    }
+                    if (!pipes.contains(pipe)) {
+                        pipes.add(pipe);
+                    }
+                }
+                else if (msg.isLeave()) {
+                    List<Pipe> pipes = subscriptions.get(group);
+                    if (pipes != null && pipes.remove(pipe) && pipes.isEmpty()) {
+                        subscriptions.remove(group);
+                    }
+                }
+            }
+            msg = pipe.read();
+        }
+    }
+
+    @Override
+    protected void xwriteActivated(Pipe pipe)
+    {
+        //  Messages are dropped rather than waiting for the pipes to free up,
+        //  there's nothing to resume.
+    }
+
+    @Override
+    protected void xpipeTerminated(Pipe pipe)
+    {
+        Iterator<List<Pipe>> it = subscriptions.values().iterator();
+        while (it.hasNext()) {
+            List<Pipe> pipes = it.next();
+            if (pipes.remove(pipe) && pipes.isEmpty()) {
+                it.remove();
+            }
+        }
+        allPipes.remove(pipe);
+    }
+
+    @Override
+    protected boolean xsend(Msg msg)
+    {
+        //  RADIO sockets do not allow multipart data (ZMQ_SNDMORE).
+        if (msg.hasMore()) {
+            errno.set(ZError.EINVAL);
+            return false;
+        }
+
+        String group = msg.getGroup();
+        List<Pipe> pipes = subscriptions.get(group == null ? "" : group);
+        if (pipes != null) {
+            distribute(pipes, msg);
+        }
+        distribute(allPipes, msg);
+        return true;
+    }
+
+    //  Writes the message to the pipes. The peers that reached their
+    //  high water mark don't get the message.
+    private void distribute(List<Pipe> pipes, Msg msg)
+    {
+        for (int i = 0; i < pipes.size(); i++) {
+            Pipe pipe = pipes.get(i);
+            if (pipe.write(msg)) {
+                pipe.flush();
+            }
+        }
+    }
+
+    @Override
+    protected boolean xhasOut()
+    {
+        return true;
+    }
+
+    @Override
+    protected Msg xrecv()
+    {
+        //  Messages cannot be received from RADIO socket.
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected boolean xhasIn()
+    {
+        return false;
+    }
+}
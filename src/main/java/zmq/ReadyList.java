@@ -0,0 +1,136 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+//  Aggregates the readiness of the sockets polled together. Instead of
+//  waking up the poller through its own mailbox channel, a polled socket
+//  reports the commands it gets while nobody reads them into the list,
+//  which wakes up the poller through a single signaler. The poller thus
+//  watches one channel whatever the number of sockets, and only checks
+//  the sockets reported since the last poll.
+final class ReadyList
+        implements Closeable
+{
+    //  Signaler to wake up the poller when the list gets non-empty.
+    private final Signaler signaler;
+
+    //  The list is filled by any thread sending commands to the sockets
+    //  and drained by the polling thread.
+    private final Lock sync;
+
+    //  The items reported since the last drain, and the items drained
+    //  last, swapped at every drain to avoid allocations.
+    private List<PollItem> pending;
+    private List<PollItem> drained;
+
+    //  True if the signaler has been sent a signal not yet received.
+    private boolean signaled;
+
+    //  Incremented at every poll, to tell whether an item has already
+    //  claimed its socket in the current poll.
+    private int round;
+
+    ReadyList()
+    {
+        signaler = new Signaler();
+        sync = new ReentrantLock();
+        pending = new ArrayList<PollItem>();
+        drained = new ArrayList<PollItem>();
+        signaled = false;
+        round = 0;
+    }
+
+    SelectableChannel getFd()
+    {
+        return signaler.getFd();
+    }
+
+    //  Reports the socket of the item as possibly ready.
+    void add(PollItem item)
+    {
+        sync.lock();
+        try {
+            if (item.queued) {
+                return;
+            }
+            item.queued = true;
+            pending.add(item);
+
+            //  Signal only the first item, the poller drains all of them
+            //  once woken up.
+            if (!signaled) {
+                signaled = true;
+                signaler.send();
+            }
+        }
+        finally {
+            sync.unlock();
+        }
+    }
+
+    //  Returns the items reported since the last call. The returned list
+    //  is only valid until the next call.
+    List<PollItem> drain()
+    {
+        sync.lock();
+        try {
+            List<PollItem> items = pending;
+            pending = drained;
+            pending.clear();
+            drained = items;
+            for (PollItem item : items) {
+                item.queued = false;
+            }
+            if (signaled) {
+                signaled = false;
+                signaler.recv();
+            }
+            return items;
+        }
+        finally {
+            sync.unlock();
+        }
+    }
+
+    //  Starts a new poll.
+    int nextRound()
+    {
+        return ++round;
+    }
+
+    int round()
+    {
+        return round;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        signaler.close();
+    }
+}
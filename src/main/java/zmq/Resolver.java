@@ -0,0 +1,229 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//  Looks the host names up in threads of its own, so that a slow name
+//  service holds up neither the application threads nor the I/O threads.
+//  The addresses are cached per host name for their time to live, shared
+//  by the connecters of the context. Concurrent lookups of the same host
+//  name are coalesced into one.
+final class Resolver
+{
+    //  Notified of the addresses of the host name looked up, or of null
+    //  if the lookup failed. Called from a thread of the resolver.
+    interface Callback
+    {
+        void resolved(InetAddress[] addresses);
+    }
+
+    private static final class Entry
+    {
+        //  Addresses of the host, null while being looked up.
+        private InetAddress[] addresses;
+
+        //  Time the addresses expire at.
+        private long expiration;
+
+        //  Callbacks waiting for the lookup in progress.
+        private final List<Callback> callbacks = new ArrayList<Callback>();
+    }
+
+    //  Time to live of the cached addresses, in milliseconds.
+    private volatile int ttl;
+
+    private final Map<String, Entry> cache;
+
+    private ThreadPoolExecutor executor;
+
+    Resolver(int ttl)
+    {
+        this.ttl = ttl;
+        cache = new HashMap<String, Entry>();
+    }
+
+    int getTtl()
+    {
+        return ttl;
+    }
+
+    void setTtl(int ttl)
+    {
+        this.ttl = ttl;
+    }
+
+    //  Returns the cached addresses of the host, or of the IP address
+    //  literal, or null if they have to be looked up.
+    InetAddress[] cached(String host)
+    {
+        if (isLiteral(host)) {
+            try {
+                return InetAddress.getAllByName(host);
+            }
+            catch (UnknownHostException e) {
+                return null;
+            }
+        }
+
+        synchronized (this) {
+            Entry entry = cache.get(host);
+            if (entry == null || entry.addresses == null || entry.expiration <= Clock.nowMS()) {
+                return null;
+            }
+            return entry.addresses;
+        }
+    }
+
+    //  Returns the cached addresses of the host. Otherwise looks the host
+    //  up, returning null, and passes its addresses to the callback.
+    InetAddress[] resolve(final String host, Callback callback)
+    {
+        if (isLiteral(host)) {
+            return cached(host);
+        }
+
+        synchronized (this) {
+            Entry entry = cache.get(host);
+            if (entry != null && entry.addresses == null) {
+                //  Already being looked up.
+                entry.callbacks.add(callback);
+                return null;
+            }
+            if (entry != null && entry.expiration > Clock.nowMS()) {
+                return entry.addresses;
+            }
+
+            final Entry pending = new Entry();
+            pending.callbacks.add(callback);
+            cache.put(host, pending);
+
+            try {
+                executor().execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        lookup(host, pending);
+                    }
+                });
+            }
+            catch (RejectedExecutionException e) {
+                //  The context is being terminated.
+                cache.remove(host);
+            }
+        }
+        return null;
+    }
+
+    //  Caches the addresses of the host, as if it has been looked up.
+    synchronized void cache(String host, InetAddress[] addresses)
+    {
+        Entry entry = new Entry();
+        entry.addresses = addresses;
+        entry.expiration = Clock.nowMS() + ttl;
+        cache.put(host, entry);
+    }
+
+    private void lookup(String host, Entry pending)
+    {
+        InetAddress[] addresses;
+        try {
+            addresses = InetAddress.getAllByName(host);
+        }
+        catch (UnknownHostException e) {
+            addresses = null;
+        }
+
+        synchronized (this) {
+            if (cache.get(host) == pending) {
+                //  Failures are not cached, so that the next attempt retries.
+                if (addresses == null || ttl <= 0) {
+                    cache.remove(host);
+                }
+                else {
+                    Entry entry = new Entry();
+                    entry.addresses = addresses;
+                    entry.expiration = Clock.nowMS() + ttl;
+                    cache.put(host, entry);
+                }
+            }
+        }
+        for (Callback callback : pending.callbacks) {
+            callback.resolved(addresses);
+        }
+    }
+
+    private ThreadPoolExecutor executor()
+    {
+        if (executor == null) {
+            final AtomicInteger count = new AtomicInteger(0);
+            int threads = Config.RESOLVER_THREADS.getValue();
+            executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+                    {
+                        @Override
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread thread = new Thread(r, "resolver-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    //  Stops the lookups. The callbacks waiting for them are not notified.
+    synchronized void close()
+    {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    //  Returns true if the host is an IP address, or the wildcard address,
+    //  which needs no lookup.
+    private static boolean isLiteral(String host)
+    {
+        if (host.indexOf(':') >= 0) {
+            return true;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -19,10 +19,7 @@
 
 package zmq;
 
-import java.nio.ByteBuffer;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 //TODO: This class uses O(n) scheduling. Rewrite it to use O(1) algorithm.
@@ -57,6 +54,9 @@ public class Router extends SocketBase
     //  If true, more incoming message parts are expected.
     private boolean moreIn;
 
+    //  Receives the pipe a message was read from.
+    private final ValueReference<Pipe> inPipe;
+
     class Outpipe
     {
         private Pipe pipe;
@@ -72,8 +72,9 @@ public class Router extends SocketBase
     //  We keep a set of pipes that have not been identified yet.
     private final Set<Pipe> anonymousPipes;
 
-    //  Outbound pipes indexed by the peer IDs.
-    private final Map<Blob, Outpipe> outpipes;
+    //  Outbound pipes indexed by the peer IDs. Peer IDs are generated by
+    //  the table when the peer does not provide its own.
+    private final RoutingTable<Outpipe> outpipes;
 
     //  The pipe we are currently writing to.
     private Pipe currentOut;
@@ -81,10 +82,6 @@ public class Router extends SocketBase
     //  If true, more outgoing message parts are expected.
     private boolean moreOut;
 
-    //  Peer ID are generated. It's a simple increment and wrap-over
-    //  algorithm. This value is the next ID to use (if not used already).
-    private int nextPeerId;
-
     // If true, report EHOSTUNREACH to the caller instead of silently dropping
     // the message targeting an unknown peer.
     private boolean mandatory;
@@ -99,7 +96,6 @@ public class Router extends SocketBase
         moreIn = false;
         currentOut = null;
         moreOut = false;
-        nextPeerId = Utils.generateRandom();
         mandatory = false;
         handover = false;
 
@@ -108,9 +104,10 @@ public class Router extends SocketBase
         fq = new FQ();
         prefetchedId = new Msg();
         prefetchedMsg = new Msg();
+        inPipe = new ValueReference<Pipe>();
 
         anonymousPipes = new HashSet<Pipe>();
-        outpipes = new HashMap<Blob, Outpipe>();
+        outpipes = new RoutingTable<Outpipe>(Utils.generateRandom());
 
         //  TODO: Uncomment the following line when ROUTER will become true ROUTER
         //  rather than generic router socket.
@@ -153,7 +150,7 @@ public class Router extends SocketBase
     public void xpipeTerminated(Pipe pipe)
     {
         if (!anonymousPipes.remove(pipe)) {
-            Outpipe old = outpipes.remove(pipe.getIdentity());
+            Outpipe old = outpipes.remove(pipe.getIdentity().data());
             assert (old != null);
 
             fq.terminated(pipe);
@@ -181,14 +178,10 @@ public class Router extends SocketBase
     @Override
     public void xwriteActivated(Pipe pipe)
     {
-        for (Map.Entry<Blob, Outpipe> it : outpipes.entrySet()) {
-            if (it.getValue().pipe == pipe) {
-                assert (!it.getValue().active);
-                it.getValue().active = true;
-                return;
-            }
-        }
-        assert (false);
+        Outpipe op = outpipes.get(pipe.getIdentity().data());
+        assert (op != null && op.pipe == pipe);
+        assert (!op.active);
+        op.active = true;
     }
 
     @Override
@@ -208,8 +201,7 @@ public class Router extends SocketBase
                 //  Find the pipe associated with the identity stored in the prefix.
                 //  If there's no such pipe just silently ignore the message, unless
                 //  mandatory is set.
-                Blob identity = Blob.createBlob(msg.data(), true);
-                Outpipe op = outpipes.get(identity);
+                Outpipe op = outpipes.get(msg.data());
 
                 if (op != null) {
                     currentOut = op.pipe;
@@ -251,6 +243,37 @@ public class Router extends SocketBase
         return true;
     }
 
+    @Override
+    protected int xsendTo(byte[][] ids, Msg msg, int[] errors)
+    {
+        //  Can't interleave with a multi-part message being sent.
+        if (moreOut) {
+            errno.set(ZError.EFSM);
+            return -1;
+        }
+
+        int sent = 0;
+        for (int i = 0; i < ids.length; i++) {
+            int rc = 0;
+            Outpipe op = outpipes.get(ids[i]);
+            if (op == null) {
+                rc = ZError.EHOSTUNREACH;
+            }
+            else if (!op.pipe.write(msg)) {
+                op.active = false;
+                rc = ZError.EAGAIN;
+            }
+            else {
+                op.pipe.flush();
+                sent++;
+            }
+            if (errors != null) {
+                errors[i] = rc;
+            }
+        }
+        return sent;
+    }
+
     @Override
     protected Msg xrecv()
     {
@@ -270,7 +293,7 @@ public class Router extends SocketBase
             return msg;
         }
 
-        ValueReference<Pipe> pipe = new ValueReference<Pipe>();
+        ValueReference<Pipe> pipe = inPipe;
         msg = fq.recvPipe(errno, pipe);
 
         //  It's possible that we receive peer's identity. That happens
@@ -298,9 +321,7 @@ public class Router extends SocketBase
             prefetchedMsg = msg;
             prefetched = true;
 
-            Blob identity = pipe.get().getIdentity();
-            msg = new Msg(identity.data());
-            msg.setFlags(Msg.MORE);
+            msg = identityMsg(pipe.get());
             identitySent = true;
         }
 
@@ -333,7 +354,7 @@ public class Router extends SocketBase
 
         //  Try to read the next message.
         //  The message, if read, is kept in the pre-fetch buffer.
-        ValueReference<Pipe> pipe = new ValueReference<Pipe>();
+        ValueReference<Pipe> pipe = inPipe;
         prefetchedMsg = fq.recvPipe(errno, pipe);
 
         //  It's possible that we receive peer's identity. That happens
@@ -350,9 +371,7 @@ public class Router extends SocketBase
 
         assert (pipe.get() != null);
 
-        Blob identity = pipe.get().getIdentity();
-        prefetchedId = new Msg(identity.data());
-        prefetchedId.setFlags(Msg.MORE);
+        prefetchedId = identityMsg(pipe.get());
 
         prefetched = true;
         identitySent = false;
@@ -369,6 +388,16 @@ public class Router extends SocketBase
         return true;
     }
 
+    //  Returns the message carrying the identity of the pipe's peer. The
+    //  message is new for every inbound message, as the caller may change
+    //  its flags or pass it on, but it shares the identity's bytes.
+    private Msg identityMsg(Pipe pipe)
+    {
+        Msg msg = new Msg(pipe.getIdentity().data());
+        msg.setFlags(Msg.MORE);
+        return msg;
+    }
+
     private boolean identifyPeer(Pipe pipe)
     {
         Blob identity;
@@ -380,32 +409,26 @@ public class Router extends SocketBase
 
         if (msg.size() == 0) {
             //  Fall back on the auto-generation
-            ByteBuffer buf = ByteBuffer.allocate(5);
-            buf.put((byte) 0);
-            buf.putInt(nextPeerId++);
-            identity = Blob.createBlob(buf.array(), false);
+            identity = Blob.createBlob(outpipes.generateKey(), false);
         }
         else {
             identity = Blob.createBlob(msg.data(), true);
 
-            if (outpipes.containsKey(identity)) {
+            if (outpipes.containsKey(identity.data())) {
                 if (!handover) {
                     return false;
                 }
                 //  We will allow the new connection to take over this
                 //  identity. Temporarily assign a new identity to the
                 //  existing pipe so we can terminate it asynchronously.
-                ByteBuffer buf = ByteBuffer.allocate(5);
-                buf.put((byte) 0);
-                buf.putInt(nextPeerId++);
-                Blob newIdentity = Blob.createBlob(buf.array(), false);
+                Blob newIdentity = Blob.createBlob(outpipes.generateKey(), false);
 
                 //  Remove the existing identity entry to allow the new
                 //  connection to take the identity.
-                Outpipe existingOutpipe = outpipes.remove(identity);
+                Outpipe existingOutpipe = outpipes.remove(identity.data());
                 existingOutpipe.pipe.setIdentity(newIdentity);
 
-                outpipes.put(newIdentity, existingOutpipe);
+                outpipes.put(newIdentity.data(), existingOutpipe);
 
                 existingOutpipe.pipe.terminate(true);
             }
@@ -414,7 +437,7 @@ public class Router extends SocketBase
         pipe.setIdentity(identity);
         //  Add the record into output pipes lookup table
         Outpipe outpipe = new Outpipe(pipe, true);
-        outpipes.put(identity, outpipe);
+        outpipes.put(identity.data(), outpipe);
 
         return true;
     }
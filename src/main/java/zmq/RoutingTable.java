@@ -0,0 +1,349 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.util.Arrays;
+
+//  Maps peer identities to values.
+//
+//  Identities set by the peers are kept in an open-addressing hash table
+//  with linear probing, which caches the hash of every key so that probing
+//  and growing never rehash the stored identities.
+//
+//  Identities generated by the table itself (a zero byte followed by
+//  a 32-bit id) are decoded and used as an index into an array instead.
+//  Ids are handed out only for free slots of that array, so it needs
+//  no probing at all. They can also be used directly as int keys,
+//  without encoding them into an identity.
+public class RoutingTable<T>
+{
+    public static final int AUTO_ID_SIZE = 5;
+
+    private static final int MIN_CAPACITY = 16;
+
+    //  Identities set by the peers.
+    private byte[][] keys;
+    private int[] hashes;
+    private Object[] values;
+    private int count;
+
+    //  Generated identities, stored at id & (autoValues.length - 1).
+    private int[] autoIds;
+    private Object[] autoValues;
+    private int autoCount;
+
+    //  Next id to try when generating an identity.
+    private int nextAutoId;
+
+    public RoutingTable(int firstAutoId)
+    {
+        keys = new byte[MIN_CAPACITY][];
+        hashes = new int[MIN_CAPACITY];
+        values = new Object[MIN_CAPACITY];
+        count = 0;
+
+        autoIds = new int[MIN_CAPACITY];
+        autoValues = new Object[MIN_CAPACITY];
+        autoCount = 0;
+
+        nextAutoId = firstAutoId;
+    }
+
+    public int size()
+    {
+        return count + autoCount;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(byte[] key)
+    {
+        if (isAuto(key)) {
+            int id = decode(key);
+            int slot = id & (autoValues.length - 1);
+            if (autoValues[slot] != null && autoIds[slot] == id) {
+                return (T) autoValues[slot];
+            }
+        }
+        int idx = find(key, hash(key));
+        if (idx < 0) {
+            return null;
+        }
+        return (T) values[idx];
+    }
+
+    public boolean containsKey(byte[] key)
+    {
+        return get(key) != null;
+    }
+
+    //  Adds the value under the key, replacing the previous value if any.
+    //  The key must not be modified afterwards.
+    public void put(byte[] key, T value)
+    {
+        if (value == null) {
+            throw new IllegalArgumentException("value must not be null");
+        }
+
+        if (isAuto(key)) {
+            int id = decode(key);
+            int slot = id & (autoValues.length - 1);
+            if (autoValues[slot] != null && autoIds[slot] == id) {
+                autoValues[slot] = value;
+                return;
+            }
+            //  Unless the key is already stored among the regular ones.
+            if (autoValues[slot] == null && find(key, hash(key)) < 0) {
+                autoIds[slot] = id;
+                autoValues[slot] = value;
+                autoCount++;
+                if (autoCount * 2 > autoValues.length) {
+                    growAuto();
+                }
+                return;
+            }
+        }
+
+        int hash = hash(key);
+        int idx = find(key, hash);
+        if (idx >= 0) {
+            values[idx] = value;
+            return;
+        }
+
+        int mask = keys.length - 1;
+        idx = hash & mask;
+        while (keys[idx] != null) {
+            idx = (idx + 1) & mask;
+        }
+        keys[idx] = key;
+        hashes[idx] = hash;
+        values[idx] = value;
+        count++;
+        if (count * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    //  Removes the key, returning the value it was mapped to, or null.
+    @SuppressWarnings("unchecked")
+    public T remove(byte[] key)
+    {
+        if (isAuto(key)) {
+            int id = decode(key);
+            int slot = id & (autoValues.length - 1);
+            if (autoValues[slot] != null && autoIds[slot] == id) {
+                T old = (T) autoValues[slot];
+                autoValues[slot] = null;
+                autoCount--;
+                return old;
+            }
+        }
+
+        int idx = find(key, hash(key));
+        if (idx < 0) {
+            return null;
+        }
+        T old = (T) values[idx];
+        delete(idx);
+        count--;
+        return old;
+    }
+
+    //  Returns the value of the generated id, or null.
+    @SuppressWarnings("unchecked")
+    public T get(int id)
+    {
+        int slot = id & (autoValues.length - 1);
+        if (autoValues[slot] != null && autoIds[slot] == id) {
+            return (T) autoValues[slot];
+        }
+        return null;
+    }
+
+    //  Adds the value under an id returned by generateId.
+    public void put(int id, T value)
+    {
+        if (value == null) {
+            throw new IllegalArgumentException("value must not be null");
+        }
+
+        int slot = id & (autoValues.length - 1);
+        if (autoValues[slot] != null && autoIds[slot] == id) {
+            autoValues[slot] = value;
+            return;
+        }
+        //  Distinct ids end up in distinct slots once the array is large enough.
+        while (autoValues[slot] != null) {
+            growAuto();
+            slot = id & (autoValues.length - 1);
+        }
+        autoIds[slot] = id;
+        autoValues[slot] = value;
+        autoCount++;
+        if (autoCount * 2 > autoValues.length) {
+            growAuto();
+        }
+    }
+
+    //  Removes the generated id, returning the value it was mapped to, or null.
+    @SuppressWarnings("unchecked")
+    public T remove(int id)
+    {
+        int slot = id & (autoValues.length - 1);
+        if (autoValues[slot] != null && autoIds[slot] == id) {
+            T old = (T) autoValues[slot];
+            autoValues[slot] = null;
+            autoCount--;
+            return old;
+        }
+        return null;
+    }
+
+    //  Generates a non-zero id that is not in the table yet.
+    public int generateId()
+    {
+        while (true) {
+            int id = nextAutoId++;
+            if (id != 0 && autoValues[id & (autoValues.length - 1)] == null) {
+                return id;
+            }
+        }
+    }
+
+    //  Generates an identity that is not in the table yet. Its value
+    //  will be found without any hashing once it is put in the table.
+    public byte[] generateKey()
+    {
+        while (true) {
+            int id = generateId();
+            byte[] key = new byte[AUTO_ID_SIZE];
+            key[0] = 0;
+            key[1] = (byte) (id >>> 24);
+            key[2] = (byte) (id >>> 16);
+            key[3] = (byte) (id >>> 8);
+            key[4] = (byte) id;
+            if (count > 0 && find(key, hash(key)) >= 0) {
+                continue;
+            }
+            return key;
+        }
+    }
+
+    private static boolean isAuto(byte[] key)
+    {
+        return key.length == AUTO_ID_SIZE && key[0] == 0;
+    }
+
+    private static int decode(byte[] key)
+    {
+        return (key[1] & 0xff) << 24 | (key[2] & 0xff) << 16
+                | (key[3] & 0xff) << 8 | (key[4] & 0xff);
+    }
+
+    private static int hash(byte[] key)
+    {
+        int h = Arrays.hashCode(key);
+        //  Spread the bits as the table index uses the low ones only.
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private int find(byte[] key, int hash)
+    {
+        int mask = keys.length - 1;
+        int idx = hash & mask;
+        while (keys[idx] != null) {
+            if (hashes[idx] == hash && Arrays.equals(keys[idx], key)) {
+                return idx;
+            }
+            idx = (idx + 1) & mask;
+        }
+        return -1;
+    }
+
+    //  Empties the slot and shifts back the following entries of the
+    //  probe sequence, so that no tombstones are needed.
+    private void delete(int idx)
+    {
+        int mask = keys.length - 1;
+        int hole = idx;
+        int next = (hole + 1) & mask;
+        while (keys[next] != null) {
+            int home = hashes[next] & mask;
+            //  The entry can fill the hole if its home slot is not
+            //  cyclically between the hole and itself.
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                hashes[hole] = hashes[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = null;
+        hashes[hole] = 0;
+        values[hole] = null;
+    }
+
+    private void grow()
+    {
+        byte[][] oldKeys = keys;
+        int[] oldHashes = hashes;
+        Object[] oldValues = values;
+
+        int capacity = oldKeys.length * 2;
+        keys = new byte[capacity][];
+        hashes = new int[capacity];
+        values = new Object[capacity];
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int idx = oldHashes[i] & mask;
+                while (keys[idx] != null) {
+                    idx = (idx + 1) & mask;
+                }
+                keys[idx] = oldKeys[i];
+                hashes[idx] = oldHashes[i];
+                values[idx] = oldValues[i];
+            }
+        }
+    }
+
+    //  Ids distinct modulo the old size are distinct modulo the new one
+    //  as well, so the generated identities never collide after growing.
+    private void growAuto()
+    {
+        int[] oldIds = autoIds;
+        Object[] oldValues = autoValues;
+
+        int capacity = oldValues.length * 2;
+        autoIds = new int[capacity];
+        autoValues = new Object[capacity];
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = oldIds[i] & (capacity - 1);
+                autoIds[slot] = oldIds[i];
+                autoValues[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+//  Thread-safe counterpart of the ROUTER socket. Messages are single-part.
+//  Each connected peer gets a routing id, which is set on the messages
+//  received from it and tells where the messages sent are to be routed.
+public class Server extends SocketBase
+{
+    public static class ServerSession extends SessionBase
+    {
+        public ServerSession(IOThread ioThread, boolean connect,
+            SocketBase socket, final Options options,
+            final Address addr)
+        {
+            super(ioThread, connect, socket, options, addr);
+        }
+    }
+
+    private static class Outpipe
+    {
+        private final Pipe pipe;
+        private boolean active;
+
+        public Outpipe(Pipe pipe, boolean active)
+        {
+            this.pipe = pipe;
+            this.active = active;
+        }
+    }
+
+    //  Fair queueing object for inbound pipes.
+    private final FQ fq;
+
+    //  The pipe the last message was received from.
+    private final ValueReference<Pipe> inPipe;
+
+    //  Outbound pipes indexed by the routing ids.
+    private final RoutingTable<Outpipe> outpipes;
+
+    public Server(Ctx parent, int tid, int sid)
+    {
+        super(parent, tid, sid, true);
+
+        options.type = ZMQ.ZMQ_SERVER;
+
+        fq = new FQ();
+        inPipe = new ValueReference<Pipe>();
+        outpipes = new RoutingTable<Outpipe>(Utils.generateRandom());
+    }
+
+    @Override
+    protected void xattachPipe(Pipe pipe, boolean icanhasall)
+    {
+        assert (pipe != null);
+
+        int routingId = outpipes.generateId();
+        pipe.setRoutingId(routingId);
+        outpipes.put(routingId, new Outpipe(pipe, true));
+
+        fq.attach(pipe);
+    }
+
+    @Override
+    protected void xpipeTerminated(Pipe pipe)
+    {
+        Outpipe old = outpipes.remove(pipe.getRoutingId());
+        assert (old != null);
+
+        fq.terminated(pipe);
+    }
+
+    @Override
+    protected void xreadActivated(Pipe pipe)
+    {
+        fq.activated(pipe);
+    }
+
+    @Override
+    protected void xwriteActivated(Pipe pipe)
+    {
+        Outpipe op = outpipes.get(pipe.getRoutingId());
+        assert (op != null);
+        assert (!op.active);
+        op.active = true;
+    }
+
+    @Override
+    protected boolean xsend(Msg msg)
+    {
+        //  SERVER sockets do not allow multipart data (ZMQ_SNDMORE).
+        if (msg.hasMore()) {
+            errno.set(ZError.EINVAL);
+            return false;
+        }
+
+        //  Find the pipe associated with the routing id stored in the message.
+        Outpipe op = outpipes.get(msg.getRoutingId());
+        if (op == null) {
+            errno.set(ZError.EHOSTUNREACH);
+            return false;
+        }
+
+        if (!op.pipe.checkWrite()) {
+            op.active = false;
+            errno.set(ZError.EAGAIN);
+            return false;
+        }
+
+        //  Message might be delivered over inproc, so we reset the routing id.
+        msg.setRoutingId(0);
+
+        boolean ok = op.pipe.write(msg);
+        assert (ok);
+        op.pipe.flush();
+        return true;
+    }
+
+    @Override
+    protected Msg xrecv()
+    {
+        Msg msg = fq.recvPipe(errno, inPipe);
+
+        //  Drop any messages with more flag.
+        while (msg != null && msg.hasMore()) {
+            //  Drop all the frames of the current multi-frame message.
+            msg = fq.recv(errno);
+            while (msg != null && msg.hasMore()) {
+                msg = fq.recv(errno);
+            }
+
+            //  Get the new message.
+            if (msg != null) {
+                msg = fq.recvPipe(errno, inPipe);
+            }
+        }
+
+        if (msg == null) {
+            return null;
+        }
+
+        msg.setRoutingId(inPipe.get().getRoutingId());
+        return msg;
+    }
+
+    @Override
+    protected boolean xhasIn()
+    {
+        return fq.hasIn();
+    }
+
+    @Override
+    protected boolean xhasOut()
+    {
+        //  In theory, SERVER socket is always ready for writing. Whether actual
+        //  attempt to write succeeds depends on which pipe the message is going
+        //  to be routed to.
+        return true;
+    }
+}
@@ -19,7 +19,9 @@
 
 package zmq;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 class SessionBase extends Own implements
@@ -47,6 +49,10 @@ class SessionBase extends Own implements
     //  The protocol I/O engine connected to the session.
     private IEngine engine;
 
+    //  Engine of a connectionless transport set up by the socket, to be
+    //  attached once the session is plugged.
+    private IEngine preparedEngine;
+
     //  The socket the session belongs to.
     protected SocketBase socket;
 
@@ -69,6 +75,14 @@ class SessionBase extends Own implements
 
     private IOObject ioObject;
 
+    //  Number of messages pushed to the socket so far.
+    private long msgsPushed;
+
+    //  Number of bytes transferred by the engines so far, and when the
+    //  I/O thread last sampled it.
+    private long bytes;
+    private long sampledBytes;
+
     public static SessionBase create(IOThread ioThread, boolean connect,
             SocketBase socket, Options options, Address addr)
     {
@@ -118,6 +132,22 @@ class SessionBase extends Own implements
             s = new Pair.PairSession(ioThread, connect,
                 socket, options, addr);
             break;
+        case ZMQ.ZMQ_SERVER:
+            s = new Server.ServerSession(ioThread, connect,
+                socket, options, addr);
+            break;
+        case ZMQ.ZMQ_CLIENT:
+            s = new Client.ClientSession(ioThread, connect,
+                socket, options, addr);
+            break;
+        case ZMQ.ZMQ_RADIO:
+            s = new Radio.RadioSession(ioThread, connect,
+                socket, options, addr);
+            break;
+        case ZMQ.ZMQ_DISH:
+            s = new Dish.DishSession(ioThread, connect,
+                socket, options, addr);
+            break;
         default:
             throw new IllegalArgumentException("type=" + options.type);
         }
@@ -141,6 +171,7 @@ class SessionBase extends Own implements
         identitySent = false;
         identityReceived = false;
         this.addr = addr;
+        msgsPushed = 0;
 
         terminatingPipes = new HashSet<Pipe>();
     }
@@ -158,6 +189,7 @@ class SessionBase extends Own implements
 
         //  Close the engine.
         if (engine != null) {
+            ioThread.detached(this);
             engine.terminate();
         }
     }
@@ -212,12 +244,79 @@ class SessionBase extends Own implements
         }
 
         if (pipe != null && pipe.write(msg)) {
+            msgsPushed++;
             return 0;
         }
 
         return ZError.EAGAIN;
     }
 
+    //  Returns the number of message parts pushed to the socket so far.
+    //  Used by the engines to account for their read budget.
+    public long msgsPushed()
+    {
+        return msgsPushed;
+    }
+
+    //  Accounts for the bytes transferred by the engine, which make up
+    //  the load of the I/O thread.
+    void countBytes(int n)
+    {
+        bytes += n;
+        ioObject.countBytes(n);
+    }
+
+    //  Returns the number of bytes transferred since the previous call.
+    long sampleBytes()
+    {
+        long delta = bytes - sampledBytes;
+        sampledBytes = bytes;
+        return delta;
+    }
+
+    //  Returns true if the session can be handed over to another I/O
+    //  thread right now, i.e. if it is up and running and its engine
+    //  has no data half-way through.
+    boolean isQuiet()
+    {
+        return engine instanceof StreamEngine && ((StreamEngine) engine).isQuiet()
+                && pipe != null && !pending && !hasLingerTimer && !isTerminating();
+    }
+
+    //  Returns the objects living in the I/O thread along with the session.
+    List<ZObject> migrants()
+    {
+        List<ZObject> objects = new ArrayList<ZObject>(terminatingPipes.size() + 2);
+        objects.add(this);
+        if (pipe != null) {
+            objects.add(pipe);
+        }
+        objects.addAll(terminatingPipes);
+        return objects;
+    }
+
+    //  Unplugs the session and its engine from the I/O thread, to be
+    //  plugged to another I/O thread by plugIo.
+    void unplugIo()
+    {
+        if (engine != null) {
+            ((StreamEngine) engine).unplugIo();
+        }
+        ioObject.suspend();
+    }
+
+    //  Resumes the session unplugged by unplugIo in the given I/O thread.
+    void plugIo(IOThread ioThread)
+    {
+        this.ioThread = ioThread;
+        ioObject.plug(ioThread);
+        ioObject.setHandler(this);
+        if (engine != null) {
+            ((StreamEngine) engine).plugIo(ioThread);
+            ioThread.attached(this);
+        }
+    }
+
     protected void reset()
     {
         //  Restore identity flags.
@@ -232,6 +331,15 @@ class SessionBase extends Own implements
         }
     }
 
+    //  Removes the parts of the message being pushed, for the engines that
+    //  find out the rest of the message is lost.
+    public void rollback()
+    {
+        if (pipe != null) {
+            pipe.rollback();
+        }
+    }
+
     //  Remove any half processed messages. Flush unflushed messages.
     //  Call this function when engine disconnect to get rid of leftovers.
     private void cleanPipes()
@@ -363,6 +471,7 @@ class SessionBase extends Own implements
         //  Plug in the engine.
         assert (this.engine == null);
         this.engine = engine;
+        ioThread.attached(this);
         this.engine.plug(ioThread, this);
     }
 
@@ -370,6 +479,7 @@ class SessionBase extends Own implements
     {
         //  Engine is dead. Let's forget about it.
         engine = null;
+        ioThread.detached(this);
 
         //  Remove any half-done messages from the pipes.
         cleanPipes();
@@ -488,9 +598,53 @@ class SessionBase extends Own implements
             return;
         }
 
+        if (addr.protocol().equals("pgm") || addr.protocol().equals("epgm")
+                || addr.protocol().equals("udp")) {
+            //  There's no connection to establish, the engine is attached
+            //  straight away. Its channel has been set up by the socket,
+            //  which reported the failure to do so to the caller.
+            IEngine engine = preparedEngine;
+            preparedEngine = null;
+            if (engine == null) {
+                try {
+                    engine = createEngine(options, addr);
+                }
+                catch (ZError.IOException e) {
+                    socket.eventBindFailed(addr.toString(),
+                            ZError.exccode((java.io.IOException) e.getCause()));
+                    return;
+                }
+            }
+            sendAttach(this, engine);
+            return;
+        }
+
         assert (false);
     }
 
+    //  Creates the engine of a connectionless transport, setting its channel
+    //  up. Throws ZError.IOException if the channel cannot be bound.
+    static IEngine createEngine(Options options, Address addr)
+    {
+        if (addr.protocol().equals("udp")) {
+            //  RADIO only sends, DISH only receives.
+            boolean send = options.type == ZMQ.ZMQ_RADIO;
+            return new UdpEngine(options, addr, send, !send);
+        }
+
+        //  Multicast is one-way: publishers send, subscribers receive.
+        if (options.type == ZMQ.ZMQ_PUB || options.type == ZMQ.ZMQ_XPUB) {
+            return new PgmSender(options, addr);
+        }
+        return new PgmReceiver(options, addr);
+    }
+
+    //  Hands the engine set up by the socket over to the session.
+    void prepareEngine(IEngine engine)
+    {
+        preparedEngine = engine;
+    }
+
     @Override
     public String toString()
     {
@@ -21,12 +21,15 @@ package zmq;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.channels.Pipe;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 //  This is a cross-platform equivalent to signal_fd. However, as opposed
 //  to signal_fd there can be at most one signal in the signaler at any
@@ -45,6 +48,18 @@ public class Signaler
     private final AtomicInteger wcursor = new AtomicInteger(0);
     private int rcursor = 0;
 
+    //  Buffer for receiving the signal byte. Only the owner of the
+    //  signaler reads from it, unlike writes that may come concurrently.
+    private final ByteBuffer rdummy = ByteBuffer.allocate(1);
+
+    //  Thread.isVirtual, on Java 21 and later.
+    private static final Method IS_VIRTUAL = isVirtualMethod();
+
+    //  The thread parked in waitEvent if any, and whether wakeup has been
+    //  called since the last parked wait.
+    private volatile Thread waiter;
+    private volatile boolean woken;
+
     public Signaler()
     {
         //  Create the socketpair for signaling.
@@ -130,6 +145,11 @@ public class Signaler
             wcursor.incrementAndGet();
             break;
         }
+
+        Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
     }
 
     public boolean waitEvent(long timeout)
@@ -144,6 +164,9 @@ public class Signaler
                 return rcursor < wcursor.get();
 
             }
+            else if (parks()) {
+                return park(timeout);
+            }
             else if (timeout < 0) {
                 rc = selector.select(0);
             }
@@ -164,12 +187,93 @@ public class Signaler
         return true;
     }
 
+    //  Interrupts waitEvent, or the next call to it if none is in progress.
+    public void wakeup()
+    {
+        woken = true;
+        Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        selector.wakeup();
+    }
+
+    //  Waits for a signal by parking the thread, to be unparked by send or
+    //  wakeup, rather than by blocking in the selector. Like the selector,
+    //  it returns early if the thread is interrupted.
+    private boolean park(long timeout)
+    {
+        Thread thread = Thread.currentThread();
+        long end = timeout < 0 ? 0 : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+        //  The waiter is published before checking for the signal, and the
+        //  senders signal before looking for the waiter, so that either the
+        //  signal is seen here or the waiter is unparked.
+        waiter = thread;
+        try {
+            while (true) {
+                if (rcursor < wcursor.get()) {
+                    return true;
+                }
+                if (woken) {
+                    woken = false;
+                    return false;
+                }
+                if (thread.isInterrupted()) {
+                    return false;
+                }
+                if (timeout < 0) {
+                    LockSupport.park(this);
+                }
+                else {
+                    long remaining = end - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+        }
+        finally {
+            waiter = null;
+        }
+    }
+
+    //  Virtual threads park rather than block in the selector, which would
+    //  pin their carrier thread. Setting the zmq.park system property makes
+    //  all the threads park.
+    private static boolean parks()
+    {
+        if (Boolean.getBoolean("zmq.park")) {
+            return true;
+        }
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (Boolean) IS_VIRTUAL.invoke(Thread.currentThread());
+        }
+        catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    private static Method isVirtualMethod()
+    {
+        try {
+            return Thread.class.getMethod("isVirtual");
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
     public void recv()
     {
         int nbytes = 0;
         try {
-            ByteBuffer dummy = ByteBuffer.allocate(1);
-            nbytes = r.read(dummy);
+            rdummy.clear();
+            nbytes = r.read(rdummy);
             assert nbytes == 1;
         }
         catch (IOException e) {
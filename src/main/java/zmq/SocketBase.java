@@ -20,12 +20,18 @@
 package zmq;
 
 import java.io.IOException;
+import java.net.BindException;
 import java.nio.channels.SelectableChannel;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 public abstract class SocketBase extends Own
     implements IPollEvents, Pipe.IPipeEvents
@@ -74,7 +80,50 @@ public abstract class SocketBase extends Own
 
     protected ValueReference<Integer> errno;
 
+    //  Thread-safe socket types can be used from several threads at once.
+    //  This lock then serialises the access to the socket, it is null for
+    //  the other types.
+    private final ReentrantLock threadSafeSync;
+
+    //  Signalled each time the commands were processed, so that the threads
+    //  blocked on the thread-safe socket check out whether they can proceed.
+    private final Condition commandsProcessed;
+
+    //  The blocked thread that waits for the mailbox with threadSafeSync
+    //  released. Other blocked threads wait for commandsProcessed instead.
+    private Thread mailboxWaiter;
+
+    //  A send handed over by a thread that found the thread-safe socket busy.
+    private static final class Outbound
+    {
+        private final Msg msg;
+        private final Thread sender;
+
+        //  The errno the send ended with, 0 if it succeeded, -1 until done.
+        private volatile int result;
+
+        private Outbound(Msg msg)
+        {
+            this.msg = msg;
+            sender = Thread.currentThread();
+            result = -1;
+        }
+    }
+
+    //  Sends handed over by the threads that found the thread-safe socket
+    //  busy. Rather than queueing for the lock, they wait for the thread
+    //  using the socket at the moment to perform them and report the outcome.
+    private final ConcurrentLinkedQueue<Outbound> outbound;
+
+    //  Error of the last operation, per thread using the thread-safe socket.
+    private final ThreadLocal<Integer> threadErrno;
+
     protected SocketBase(Ctx parent, int tid, int sid)
+    {
+        this(parent, tid, sid, false);
+    }
+
+    protected SocketBase(Ctx parent, int tid, int sid, boolean threadSafe)
     {
         super(parent, tid);
         tag = 0xbaddecaf;
@@ -96,6 +145,26 @@ public abstract class SocketBase extends Own
         mailbox = new Mailbox("socket-" + sid);
 
         errno = new ValueReference<Integer>(0);
+
+        if (threadSafe) {
+            threadSafeSync = new ReentrantLock();
+            commandsProcessed = threadSafeSync.newCondition();
+            outbound = new ConcurrentLinkedQueue<Outbound>();
+            threadErrno = new ThreadLocal<Integer>()
+            {
+                @Override
+                protected Integer initialValue()
+                {
+                    return 0;
+                }
+            };
+        }
+        else {
+            threadSafeSync = null;
+            commandsProcessed = null;
+            outbound = null;
+            threadErrno = null;
+        }
     }
 
     //  Concrete algorithms for the x- methods are to be defined by
@@ -150,6 +219,22 @@ public abstract class SocketBase extends Own
             s = new XSub(parent, tid, sid);
             break;
 
+        case ZMQ.ZMQ_SERVER:
+            s = new Server(parent, tid, sid);
+            break;
+
+        case ZMQ.ZMQ_CLIENT:
+            s = new Client(parent, tid, sid);
+            break;
+
+        case ZMQ.ZMQ_RADIO:
+            s = new Radio(parent, tid, sid);
+            break;
+
+        case ZMQ.ZMQ_DISH:
+            s = new Dish(parent, tid, sid);
+            break;
+
         default:
             throw new IllegalArgumentException("type=" + type);
         }
@@ -190,8 +275,8 @@ public abstract class SocketBase extends Own
     private void checkProtocol(String protocol)
     {
         //  First check out whether the protcol is something we are aware of.
-        if (!protocol.equals("inproc") && !protocol.equals("ipc") && !protocol.equals("tcp") /*&&
-              !protocol.equals("pgm") && !protocol.equals("epgm")*/) {
+        if (!protocol.equals("inproc") && !protocol.equals("ipc") && !protocol.equals("tcp")
+              && !protocol.equals("udp") && !protocol.equals("pgm") && !protocol.equals("epgm")) {
             throw new UnsupportedOperationException(protocol);
         }
 
@@ -204,6 +289,11 @@ public abstract class SocketBase extends Own
             throw new UnsupportedOperationException(protocol + ",type=" + options.type);
         }
 
+        //  UDP carries only the groups of RADIO and DISH sockets.
+        if (protocol.equals("udp") && options.type != ZMQ.ZMQ_RADIO && options.type != ZMQ.ZMQ_DISH) {
+            throw new UnsupportedOperationException(protocol + ",type=" + options.type);
+        }
+
         //  Protocol is available.
     }
 
@@ -232,6 +322,17 @@ public abstract class SocketBase extends Own
     }
 
     public void setSocketOpt(int option, Object optval)
+    {
+        lock();
+        try {
+            doSetSocketOpt(option, optval);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+    private void doSetSocketOpt(int option, Object optval)
     {
         if (ctxTerminated) {
             throw new ZError.CtxTerminatedException();
@@ -248,6 +349,17 @@ public abstract class SocketBase extends Own
     }
 
     public int getSocketOpt(int option)
+    {
+        lock();
+        try {
+            return doGetSocketOpt(option);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+    private int doGetSocketOpt(int option)
     {
         if (option != ZMQ.ZMQ_EVENTS && ctxTerminated) {
             throw new ZError.CtxTerminatedException();
@@ -277,6 +389,17 @@ public abstract class SocketBase extends Own
     }
 
     public Object getsockoptx(int option)
+    {
+        lock();
+        try {
+            return doGetsockoptx(option);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+    private Object doGetsockoptx(int option)
     {
         if (ctxTerminated) {
             throw new ZError.CtxTerminatedException();
@@ -310,7 +433,58 @@ public abstract class SocketBase extends Own
         return options.getsockopt(option);
     }
 
+    public boolean join(String group)
+    {
+        lock();
+        try {
+            return doJoin(group);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+    private boolean doJoin(String group)
+    {
+        if (ctxTerminated) {
+            errno.set(ZError.ETERM);
+            return false;
+        }
+        return xjoin(group);
+    }
+
+    public boolean leave(String group)
+    {
+        lock();
+        try {
+            return doLeave(group);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+    private boolean doLeave(String group)
+    {
+        if (ctxTerminated) {
+            errno.set(ZError.ETERM);
+            return false;
+        }
+        return xleave(group);
+    }
+
     public boolean bind(final String addr)
+    {
+        lock();
+        try {
+            return doBind(addr);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+    private boolean doBind(final String addr)
     {
         if (ctxTerminated) {
             throw new ZError.CtxTerminatedException();
@@ -340,9 +514,9 @@ public abstract class SocketBase extends Own
             }
             return rc;
         }
-        if (protocol.equals("pgm") || protocol.equals("epgm")) {
+        if (protocol.equals("pgm") || protocol.equals("epgm") || protocol.equals("udp")) {
             //  For convenience's sake, bind can be used interchageable with
-            //  connect for PGM and EPGM transports.
+            //  connect for PGM, EPGM and UDP transports.
             return connect(addr);
         }
 
@@ -367,6 +541,11 @@ public abstract class SocketBase extends Own
             options.lastEndpoint = listener.getAddress();
 
             addEndpoint(options.lastEndpoint, listener);
+
+            //  Spread the incoming connections over the I/O threads.
+            if (listener.isReusePort()) {
+                bindListeners(listener, ioThread);
+            }
             return true;
         }
 
@@ -391,6 +570,17 @@ public abstract class SocketBase extends Own
     }
 
     public boolean connect(String addr)
+    {
+        lock();
+        try {
+            return doConnect(addr);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+    private boolean doConnect(String addr)
     {
         if (ctxTerminated) {
             throw new ZError.CtxTerminatedException();
@@ -481,18 +671,38 @@ public abstract class SocketBase extends Own
         boolean ipv4only = options.ipv4only != 0;
         Address paddr = new Address(protocol, address, ipv4only);
 
-        //  Resolve address (if needed by the protocol)
-        paddr.resolve();
+        //  Resolve address (if needed by the protocol). Host names not
+        //  in the cache are looked up by the connecter in the background.
+        paddr.resolve(getCtx().getResolver());
+
+        //  The connectionless transports bind their channel right away,
+        //  so that the failure to do so is reported to the caller.
+        IEngine engine = null;
+        if (protocol.equals("pgm") || protocol.equals("epgm") || protocol.equals("udp")) {
+            try {
+                engine = SessionBase.createEngine(options, paddr);
+            }
+            catch (ZError.IOException e) {
+                IOException cause = (IOException) e.getCause();
+                int rc = cause instanceof BindException ? ZError.EADDRINUSE : ZError.exccode(cause);
+                eventBindFailed(address, rc);
+                errno.set(rc);
+                return false;
+            }
+        }
 
         //  Create session.
         SessionBase session = SessionBase.create(ioThread, true, this,
             options, paddr);
         assert (session != null);
+        if (engine != null) {
+            session.prepareEngine(engine);
+        }
 
-        //  PGM does not support subscription forwarding; ask for all data to be
+        //  PGM and UDP do not support subscription forwarding; ask for all data to be
         //  sent to this pipe.
         boolean icanhasall = false;
-        if (protocol.equals("pgm") || protocol.equals("epgm")) {
+        if (protocol.equals("pgm") || protocol.equals("epgm") || protocol.equals("udp")) {
             icanhasall = true;
         }
 
@@ -518,6 +728,33 @@ public abstract class SocketBase extends Own
         return true;
     }
 
+    //  Binds the listeners sharing the port of the listener by SO_REUSEPORT,
+    //  up to the configured number, each in another I/O thread.
+    private void bindListeners(TcpListener listener, IOThread ioThread)
+    {
+        String address = SimpleURI.create(listener.getAddress()).getAddress();
+        List<IOThread> ioThreads = getCtx().getIoThreads();
+        int listeners = 1;
+        for (int i = 0; i != ioThreads.size(); i++) {
+            if (options.tcpListeners != 0 && listeners >= options.tcpListeners) {
+                return;
+            }
+            IOThread other = ioThreads.get(i);
+            if (other == ioThread || (options.affinity != 0 && (options.affinity & (1L << i)) == 0)) {
+                continue;
+            }
+
+            TcpListener sibling = new TcpListener(other, this, options);
+            int rc = sibling.setAddress(address);
+            if (rc != 0) {
+                sibling.destroy();
+                return;
+            }
+            addEndpoint(options.lastEndpoint, sibling);
+            listeners++;
+        }
+    }
+
     //  Creates new endpoint ID and adds the endpoint to the map.
     private void addEndpoint(String addr, Own endpoint)
     {
@@ -527,6 +764,17 @@ public abstract class SocketBase extends Own
     }
 
     public boolean termEndpoint(String addr)
+    {
+        lock();
+        try {
+            return doTermEndpoint(addr);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+    private boolean doTermEndpoint(String addr)
     {
         if (ctxTerminated) {
             throw new ZError.CtxTerminatedException();
@@ -580,6 +828,30 @@ public abstract class SocketBase extends Own
     }
 
     public boolean send(Msg msg, int flags)
+    {
+        //  If another thread is using the thread-safe socket, let it send
+        //  the message rather than waiting for the lock. A full pipe is
+        //  waited for the regular way.
+        if (threadSafeSync != null && !threadSafeSync.tryLock()) {
+            int rc = sendOutbound(msg, flags);
+            if (rc == 0) {
+                return true;
+            }
+            if (rc > 0 && rc != ZError.EAGAIN) {
+                threadErrno.set(rc);
+                return false;
+            }
+            threadSafeSync.lock();
+        }
+        try {
+            return doSend(msg, flags);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+    private boolean doSend(Msg msg, int flags)
     {
         if (ctxTerminated) {
             errno.set(ZError.ETERM);
@@ -655,7 +927,129 @@ public abstract class SocketBase extends Own
         return true;
     }
 
+    //  Sends the same single-part message to each of the peers identified
+    //  by ids. The message is shared by all the pipes rather than copied.
+    //  If errors is not null, it receives zero for every peer the message
+    //  was routed to and the error code for the others. Returns the number
+    //  of peers the message was routed to, -1 on error.
+    public int sendTo(byte[][] ids, Msg msg, int[] errors)
+    {
+        lock();
+        try {
+            return doSendTo(ids, msg, errors);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+    private int doSendTo(byte[][] ids, Msg msg, int[] errors)
+    {
+        if (ctxTerminated) {
+            errno.set(ZError.ETERM);
+            return -1;
+        }
+
+        if (ids == null || msg == null || (errors != null && errors.length < ids.length)) {
+            throw new IllegalArgumentException();
+        }
+
+        //  Process pending commands, if any.
+        boolean brc = processCommands(0, true);
+        if (!brc) {
+            return -1;
+        }
+
+        msg.resetFlags(Msg.MORE);
+        return xsendTo(ids, msg, errors);
+    }
+
+    //  Sends a batch of messages. Multi-part boundaries are taken from the
+    //  MORE flag of the individual messages. The pipes are flushed once
+    //  the whole batch was written rather than once per message. Returns
+    //  the number of messages sent; if not all of them could be sent,
+    //  errno is set accordingly.
+    public int sendBatch(Msg[] msgs, int flags)
+    {
+        lock();
+        try {
+            return doSendBatch(msgs, flags);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+    private int doSendBatch(Msg[] msgs, int flags)
+    {
+        if (ctxTerminated) {
+            errno.set(ZError.ETERM);
+            return 0;
+        }
+
+        if (msgs == null) {
+            throw new IllegalArgumentException();
+        }
+
+        //  Process pending commands, if any.
+        boolean brc = processCommands(0, true);
+        if (!brc) {
+            return 0;
+        }
+
+        int sent = 0;
+        deferFlushes(true);
+        try {
+            for (; sent < msgs.length; sent++) {
+                Msg msg = msgs[sent];
+                if (msg == null) {
+                    throw new IllegalArgumentException();
+                }
+                if (xsend(msg)) {
+                    continue;
+                }
+                if (errno.get() != ZError.EAGAIN) {
+                    break;
+                }
+
+                //  The pipes are full. Publish what was written so far and
+                //  wait for the peers the same way a plain send does.
+                deferFlushes(false);
+                int sendFlags = flags & ZMQ.ZMQ_DONTWAIT;
+                if (msg.hasMore()) {
+                    sendFlags |= ZMQ.ZMQ_SNDMORE;
+                }
+                if (!send(msg, sendFlags)) {
+                    break;
+                }
+                deferFlushes(true);
+            }
+        }
+        finally {
+            deferFlushes(false);
+        }
+        return sent;
+    }
+
+    private void deferFlushes(boolean defer)
+    {
+        for (Pipe pipe : pipes) {
+            pipe.deferFlush(defer);
+        }
+    }
+
     public Msg recv(int flags)
+    {
+        lock();
+        try {
+            return doRecv(flags);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+    private Msg doRecv(int flags)
     {
         if (ctxTerminated) {
             errno.set(ZError.ETERM);
@@ -670,7 +1064,7 @@ public abstract class SocketBase extends Own
         //  Note that 'recv' uses different command throttling algorithm (the one
         //  described above) from the one used by 'send'. This is because counting
         //  ticks is more efficient than doing RDTSC all the time.
-        if (++ticks == Config.INBOUND_POLL_RATE.getValue()) {
+        if (++ticks >= Config.INBOUND_POLL_RATE.getValue()) {
             if (!processCommands(0, false)) {
                 return null;
             }
@@ -747,6 +1141,22 @@ public abstract class SocketBase extends Own
 
     public void close()
     {
+        lock();
+        try {
+            doClose();
+        }
+        finally {
+            unlock();
+        }
+    }
+
+    private void doClose()
+    {
+        //  Perform the sends handed over so far.
+        if (outbound != null) {
+            flushOutbound();
+        }
+
         //  Mark the socket as dead
         tag = 0xdeadbeef;
 
@@ -756,6 +1166,79 @@ public abstract class SocketBase extends Own
         sendReap(this);
     }
 
+    //  Acquires the lock of the thread-safe socket, if any.
+    private void lock()
+    {
+        if (threadSafeSync != null) {
+            threadSafeSync.lock();
+        }
+    }
+
+    //  Releases the lock of the thread-safe socket, if any, and performs
+    //  the sends other threads have handed over in the meantime.
+    private void unlock()
+    {
+        if (threadSafeSync != null) {
+            threadErrno.set(errno.get());
+            threadSafeSync.unlock();
+            if (checkTag()) {
+                drainOutbound();
+            }
+        }
+    }
+
+    //  Hands the single-part message over to the thread holding the lock
+    //  of the thread-safe socket and waits for it to be sent. Returns 0 if
+    //  it was, the errno the send failed with otherwise, or -1 if it can't
+    //  be handed over, the caller then has to send it itself.
+    private int sendOutbound(Msg msg, int flags)
+    {
+        if (ctxTerminated || msg == null || (flags & ZMQ.ZMQ_SNDMORE) != 0) {
+            return -1;
+        }
+
+        msg.resetFlags(Msg.MORE);
+        Outbound send = new Outbound(msg);
+        outbound.offer(send);
+
+        //  The send is performed by the lock holder once it releases the
+        //  lock, unless this thread gets the lock first.
+        while (send.result < 0) {
+            drainOutbound();
+            if (send.result < 0) {
+                LockSupport.park(this);
+            }
+        }
+        return send.result;
+    }
+
+    //  Performs the sends handed over unless another thread holds the lock,
+    //  which then does so itself once it releases the lock.
+    private void drainOutbound()
+    {
+        while (!outbound.isEmpty() && threadSafeSync.tryLock()) {
+            try {
+                flushOutbound();
+            }
+            finally {
+                threadSafeSync.unlock();
+            }
+        }
+    }
+
+    //  Performs the sends handed over and wakes their threads up. The
+    //  errno of the current operation is left untouched.
+    private void flushOutbound()
+    {
+        int err = errno.get();
+        Outbound send;
+        while ((send = outbound.poll()) != null) {
+            send.result = xsend(send.msg) ? 0 : errno.get();
+            LockSupport.unpark(send.sender);
+        }
+        errno.set(err);
+    }
+
     //  These functions are used by the polling mechanism to determine
     //  which events are to be reported from this socket.
     boolean hasIn()
@@ -791,7 +1274,11 @@ public abstract class SocketBase extends Own
     private boolean processCommands(int timeout, boolean throttle)
     {
         Command cmd;
-        if (timeout != 0) {
+        if (timeout != 0 && threadSafeSync != null) {
+            //  Other threads may use the socket while we are waiting.
+            cmd = waitCommand(timeout);
+        }
+        else if (timeout != 0) {
             //  If we are asked to wait, simply ask mailbox to wait.
             cmd = mailbox.recv(timeout);
         }
@@ -823,6 +1310,7 @@ public abstract class SocketBase extends Own
         }
 
         //  Process all the commands available at the moment.
+        boolean processed = cmd != null;
         while (true) {
             if (cmd == null) {
                 break;
@@ -831,6 +1319,19 @@ public abstract class SocketBase extends Own
             cmd.destination().processCommand(cmd);
             cmd = mailbox.recv(0);
         }
+
+        if (threadSafeSync != null) {
+            if (processed) {
+                //  Let the blocked threads know that the state has changed.
+                commandsProcessed.signalAll();
+                if (mailboxWaiter != null && mailboxWaiter != Thread.currentThread()) {
+                    mailbox.wakeup();
+                }
+            }
+            //  The pipes may have been freed up for the sends handed over.
+            flushOutbound();
+        }
+
         if (ctxTerminated) {
             errno.set(ZError.ETERM); // Do not raise exception at the blocked operation
             return false;
@@ -839,6 +1340,53 @@ public abstract class SocketBase extends Own
         return true;
     }
 
+    //  Waits for a command to arrive at the mailbox of the thread-safe socket,
+    //  with its lock released. One of the blocked threads waits for the mailbox
+    //  itself, the others wait for the commands to be processed, as the Mailbox
+    //  can have a single reader only. Returns null if timed out or if another
+    //  thread processed the commands.
+    private Command waitCommand(int timeout)
+    {
+        Command cmd = mailbox.recv(0);
+        if (cmd != null) {
+            return cmd;
+        }
+
+        if (mailboxWaiter != null) {
+            try {
+                if (timeout < 0) {
+                    commandsProcessed.await();
+                }
+                else {
+                    commandsProcessed.await(timeout, TimeUnit.MILLISECONDS);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+
+        mailboxWaiter = Thread.currentThread();
+        int holds = threadSafeSync.getHoldCount();
+        for (int i = 0; i < holds; i++) {
+            threadSafeSync.unlock();
+        }
+        try {
+            mailbox.waitEvent(timeout);
+        }
+        finally {
+            for (int i = 0; i < holds; i++) {
+                threadSafeSync.lock();
+            }
+            mailboxWaiter = null;
+
+            //  Hand the waiting for the mailbox over to another thread.
+            commandsProcessed.signalAll();
+        }
+        return mailbox.recv(0);
+    }
+
     @Override
     protected void processStop()
     {
@@ -900,11 +1448,31 @@ public abstract class SocketBase extends Own
         throw new UnsupportedOperationException("Must Override");
     }
 
+    //  Only the socket types routing by identity support sending to many peers.
+    protected int xsendTo(byte[][] ids, Msg msg, int[] errors)
+    {
+        errno.set(ZError.ENOTSUP);
+        return -1;
+    }
+
     protected boolean xhasIn()
     {
         return false;
     }
 
+    //  Only the socket types with groups support joining and leaving them.
+    protected boolean xjoin(String group)
+    {
+        errno.set(ZError.ENOTSUP);
+        return false;
+    }
+
+    protected boolean xleave(String group)
+    {
+        errno.set(ZError.ENOTSUP);
+        return false;
+    }
+
     protected Msg xrecv()
     {
         throw new UnsupportedOperationException("Must Override");
@@ -932,11 +1500,15 @@ public abstract class SocketBase extends Own
         //  of the reaper thread. Process any commands from other threads/sockets
         //  that may be available at the moment. Ultimately, the socket will
         //  be destroyed.
+        lock();
         try {
             processCommands(0, false);
         }
         catch (ZError.CtxTerminatedException e) {
         }
+        finally {
+            unlock();
+        }
 
         checkDestroy();
     }
@@ -1031,6 +1603,50 @@ public abstract class SocketBase extends Own
         }
     }
 
+    //  Receives up to max messages into out. The first message is received
+    //  in the same way as by recv, the rest are the ones readily available
+    //  in the pipes at that point. Multi-part boundaries are preserved by
+    //  the MORE flag of the individual messages. Returns the number of
+    //  messages received; zero means that recv failed, errno being set.
+    public int recvBatch(Msg[] out, int max, int flags)
+    {
+        lock();
+        try {
+            return doRecvBatch(out, max, flags);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+    private int doRecvBatch(Msg[] out, int max, int flags)
+    {
+        if (out == null || max < 1 || max > out.length) {
+            throw new IllegalArgumentException();
+        }
+
+        Msg msg = recv(flags);
+        if (msg == null) {
+            return 0;
+        }
+        out[0] = msg;
+
+        int count = 1;
+        while (count < max) {
+            msg = xrecv();
+            if (msg == null) {
+                break;
+            }
+            extractFlags(msg);
+            out[count++] = msg;
+        }
+
+        //  The drained messages count towards the command throttling
+        //  the same way as if they were received one by one.
+        ticks += count - 1;
+        return count;
+    }
+
     //  Moves the flags from the message to local variables,
     //  to be later retrieved by getSocketOpt.
     private void extractFlags(Msg msg)
@@ -1045,6 +1661,17 @@ public abstract class SocketBase extends Own
     }
 
     public boolean monitor(final String addr, int events)
+    {
+        lock();
+        try {
+            return doMonitor(addr, events);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+    private boolean doMonitor(final String addr, int events)
     {
         boolean rc;
         if (ctxTerminated) {
@@ -1237,6 +1864,14 @@ public abstract class SocketBase extends Own
             return "PULL";
         case ZMQ.ZMQ_PUSH:
             return "PUSH";
+        case ZMQ.ZMQ_SERVER:
+            return "SERVER";
+        case ZMQ.ZMQ_CLIENT:
+            return "CLIENT";
+        case ZMQ.ZMQ_RADIO:
+            return "RADIO";
+        case ZMQ.ZMQ_DISH:
+            return "DISH";
         default:
             return "UNKOWN";
         }
@@ -1244,6 +1879,9 @@ public abstract class SocketBase extends Own
 
     public int errno()
     {
+        if (threadSafeSync != null) {
+            return threadErrno.get();
+        }
         return errno.get();
     }
 
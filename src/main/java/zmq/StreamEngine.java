@@ -25,27 +25,56 @@ import java.lang.reflect.InvocationTargetException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
-public class StreamEngine implements IEngine, IPollEvents, IMsgSink
+public class StreamEngine implements IEngine, IPollEvents, IMsgSink, IMsgSource
 {
     //  Size of the greeting message:
     //  Preamble (10 bytes) + version (1 byte) + socket type (1 byte).
     private static final int GREETING_SIZE = 12;
 
+    //  Size of the dictionary ID sent after the greeting by the peers
+    //  offering compression.
+    private static final int DICTIONARY_ID_SIZE = 4;
+
+    //  Position of the version field in the greeting.
+    private static final int VERSION_POS = 10;
+
+    //  ID of the timer used to delay writes when coalescing them.
+    private static final int CORK_TIMER_ID = 0x30;
+
+    //  IDs of the timers sending heartbeats, waiting for the traffic after
+    //  a heartbeat and waiting for the traffic within the TTL of the peer.
+    private static final int HEARTBEAT_IVL_TIMER_ID = 0x80;
+    private static final int HEARTBEAT_TIMEOUT_TIMER_ID = 0x81;
+    private static final int HEARTBEAT_TTL_TIMER_ID = 0x82;
+
     //  True iff we are registered with an I/O poller.
     private boolean ioEnabled;
 
     //final private IOObject ioObject;
     private SocketChannel handle;
 
+    //  The asynchronous channel used instead of the handle when
+    //  the connection is driven by the proactor.
+    private AsyncChannel channel;
+
     private ByteBuffer inbuf;
     private int insize;
     private DecoderBase decoder;
 
     private Transfer outbuf;
     private int outsize;
+    //  Size of the batch being written if it was fetched from the encoder
+    //  and no part of it has been written yet, 0 otherwise.
+    private int outBatchSize;
     private EncoderBase encoder;
 
+    //  Adaptive sizes of the read and write batches.
+    private final AdaptiveBatch inBatch;
+    private final AdaptiveBatch outBatch;
+
     //  When true, we are still trying to determine whether
     //  the peer is using versioned protocol, and if so, which
     //  version.  When false, normal message flow has started.
@@ -77,40 +106,133 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
 
     private IOObject ioObject;
 
+    //  True iff the write coalescing timer is running.
+    private boolean hasCorkTimer;
+
+    //  The messages pulled from the session while coalescing writes,
+    //  to be encoded before the following ones, and their size.
+    private final Deque<Msg> corked;
+    private int corkedSize;
+
+    //  True iff the corresponding heartbeat timer is running.
+    private boolean hasHeartbeatTimer;
+    private boolean hasTimeoutTimer;
+    private boolean hasTtlTimer;
+
+    //  True if the handle is polled for input and for output, so that the
+    //  polling can be resumed by another I/O thread.
+    private boolean pollingIn;
+    private boolean pollingOut;
+
+    //  True if compression is offered to the peer.
+    private final boolean compression;
+
+    //  The protocol revision announced in the greeting.
+    private final int version;
+
+    //  True if ZMTP/3.x framing is used, and if so, whether the peer
+    //  has sent its READY command.
+    private boolean zmtp3;
+    private boolean ready;
+
     public StreamEngine(SocketChannel handle, final Options options, final String endpoint)
+    {
+        this(handle, null, options, endpoint);
+    }
+
+    StreamEngine(AsyncChannel channel, final Options options, final String endpoint)
+    {
+        this(null, channel, options, endpoint);
+    }
+
+    private StreamEngine(SocketChannel handle, AsyncChannel channel, final Options options,
+                         final String endpoint)
     {
         this.handle = handle;
+        this.channel = channel;
         inbuf = null;
         insize = 0;
         ioEnabled = false;
         outbuf = null;
         outsize = 0;
+        outBatchSize = 0;
+        hasCorkTimer = false;
+        corked = new ArrayDeque<Msg>();
+        corkedSize = 0;
+        hasHeartbeatTimer = false;
+        hasTimeoutTimer = false;
+        hasTtlTimer = false;
         handshaking = true;
         session = null;
         this.options = options;
         plugged = false;
         this.endpoint = endpoint;
         socket = null;
-        greeting = ByteBuffer.allocate(GREETING_SIZE).order(ByteOrder.BIG_ENDIAN);
-        greetingOutputBuffer = ByteBuffer.allocate(GREETING_SIZE).order(ByteOrder.BIG_ENDIAN);
+        greeting = ByteBuffer.allocate(V3Protocol.GREETING_SIZE).order(ByteOrder.BIG_ENDIAN);
+        greeting.limit(GREETING_SIZE);
+        greetingOutputBuffer = ByteBuffer.allocate(V3Protocol.GREETING_SIZE).order(ByteOrder.BIG_ENDIAN);
+        compression = options.compression == 1 && options.encoder == null && options.decoder == null;
+
+        //  Custom codecs, compression and groups rely on the v1 framing.
+        if (options.encoder != null || options.decoder != null
+                || options.type == ZMQ.ZMQ_RADIO || options.type == ZMQ.ZMQ_DISH) {
+            version = V1Protocol.VERSION;
+        }
+        else if (compression) {
+            version = V1Protocol.COMPRESSION_VERSION;
+        }
+        else {
+            version = V3Protocol.MAJOR_VERSION;
+        }
+        zmtp3 = false;
+        ready = false;
         encoder = null;
         decoder = null;
 
-        //  Put the socket into non-blocking mode.
+        int rcvbuf;
+        int sndbuf;
+
         try {
-            Utils.unblockSocket(this.handle);
+            if (channel != null) {
+                //  Set the socket buffer limits for the underlying socket.
+                channel.setBufferSizes(this.options.sndbuf, this.options.rcvbuf);
 
-            //  Set the socket buffer limits for the underlying socket.
-            if (this.options.sndbuf != 0) {
-                this.handle.socket().setSendBufferSize(this.options.sndbuf);
+                //  Batches never grow beyond what the OS buffers can hold.
+                rcvbuf = channel.getReceiveBufferSize();
+                sndbuf = channel.getSendBufferSize();
             }
-            if (this.options.rcvbuf != 0) {
-                this.handle.socket().setReceiveBufferSize(this.options.rcvbuf);
+            else {
+                //  Put the socket into non-blocking mode.
+                Utils.unblockSocket(this.handle);
+
+                //  Set the socket buffer limits for the underlying socket.
+                if (this.options.sndbuf != 0) {
+                    this.handle.socket().setSendBufferSize(this.options.sndbuf);
+                }
+                if (this.options.rcvbuf != 0) {
+                    this.handle.socket().setReceiveBufferSize(this.options.rcvbuf);
+                }
+
+                //  Batches never grow beyond what the OS buffers can hold.
+                rcvbuf = this.handle.socket().getReceiveBufferSize();
+                sndbuf = this.handle.socket().getSendBufferSize();
             }
         }
         catch (IOException e) {
             throw new ZError.IOException(e);
         }
+
+        int inSize = Config.IN_BATCH_SIZE.getValue();
+        int outSize = Config.OUT_BATCH_SIZE.getValue();
+        int inMax = AdaptiveBatch.ceiling(inSize, rcvbuf);
+        int outMax = AdaptiveBatch.ceiling(outSize, sndbuf);
+        inBatch = new AdaptiveBatch(inSize, Config.MIN_BATCH_SIZE.getValue(), inMax);
+        outBatch = new AdaptiveBatch(outSize, Config.MIN_BATCH_SIZE.getValue(), outMax);
+
+        //  The asynchronous channel reads and writes whole batches at once.
+        if (channel != null) {
+            channel.resize(inBatch.size(), outBatch.size());
+        }
     }
 
     private DecoderBase newDecoder(int size, long max, SessionBase session, int version)
@@ -210,6 +332,14 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
             }
             handle = null;
         }
+        if (channel != null) {
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+            }
+            channel = null;
+        }
     }
 
     public void plug(IOThread ioThread, SessionBase session)
@@ -227,7 +357,7 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
         ioObject.setHandler(this);
         //  Connect to I/O threads poller object.
         ioObject.plug(ioThread);
-        ioObject.addHandle(handle);
+        addHandle(ioThread);
         ioEnabled = true;
 
         //  Send the 'length' and 'flags' fields of the identity message.
@@ -236,7 +366,7 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
         greetingOutputBuffer.putLong(options.identitySize + 1);
         greetingOutputBuffer.put((byte) 0x7f);
 
-        ioObject.setPollIn(handle);
+        setPollIn();
         //  When there's a raw custom encoder, we don't send 10 bytes frame
         boolean custom = false;
         try {
@@ -251,7 +381,7 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
             outsize = greetingOutputBuffer.position();
             greetingOutputBuffer.flip();
             outbuf = new Transfer.ByteBufferTransfer(greetingOutputBuffer);
-            ioObject.setPollOut(handle);
+            setPollOut();
         }
 
         //  Flush all the data that may have been already received downstream.
@@ -263,9 +393,20 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
         assert (plugged);
         plugged = false;
 
+        //  Cancel the pending coalesced write, if any.
+        if (hasCorkTimer) {
+            ioObject.cancelTimer(CORK_TIMER_ID);
+            hasCorkTimer = false;
+        }
+        if (hasHeartbeatTimer) {
+            ioObject.cancelTimer(HEARTBEAT_IVL_TIMER_ID);
+            hasHeartbeatTimer = false;
+        }
+        cancelHeartbeatTimeouts();
+
         //  Cancel all fd subscriptions.
         if (ioEnabled) {
-            ioObject.removeHandle(handle);
+            removeHandle();
             ioEnabled = false;
         }
 
@@ -279,6 +420,8 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
         if (decoder != null) {
             decoder.setMsgSink(null);
         }
+        corked.clear();
+        corkedSize = 0;
         session = null;
     }
 
@@ -289,6 +432,43 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
         destroy();
     }
 
+    //  Returns true if the engine can be handed over to another I/O thread
+    //  right now, i.e. if it is polled by the I/O thread, done with the
+    //  handshake and with no data half-way through in either direction.
+    boolean isQuiet()
+    {
+        return plugged && channel == null && ioEnabled && !handshaking
+                && insize == 0 && outsize == 0 && !hasCorkTimer && corked.isEmpty();
+    }
+
+    //  Unplugs the engine from its I/O thread, keeping the connection
+    //  and the timers, to be plugged to another I/O thread by plugIo.
+    void unplugIo()
+    {
+        assert (plugged);
+        if (ioEnabled) {
+            removeHandle();
+        }
+        ioObject.suspend();
+    }
+
+    //  Resumes the engine unplugged by unplugIo in the given I/O thread.
+    void plugIo(IOThread ioThread)
+    {
+        assert (plugged);
+        ioObject.plug(ioThread);
+        ioObject.setHandler(this);
+        if (ioEnabled) {
+            addHandle(ioThread);
+            if (pollingIn) {
+                setPollIn();
+            }
+            if (pollingOut) {
+                setPollOut();
+            }
+        }
+    }
+
     @Override
     public void inEvent()
     {
@@ -302,37 +482,72 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
         assert (decoder != null);
         boolean disconnection = false;
 
-        //  If there's no data to process in the buffer...
-        if (insize == 0) {
-            //  Retrieve the buffer and read as much data as possible.
-            //  Note that buffer can be arbitrarily large. However, we assume
-            //  the underlying TCP layer has fixed buffer size and thus the
-            //  number of bytes read will be always limited.
-            inbuf = decoder.getBuffer();
-            insize = read(inbuf);
-            inbuf.flip();
-
-            //  Check whether the peer has closed the connection.
-            if (insize == -1) {
-                insize = 0;
-                disconnection = true;
+        //  Keep reading until the socket would block, the decoder gets stuck
+        //  or the read budget is exhausted. The budget keeps a busy connection
+        //  from starving the other connections of the I/O thread.
+        int bytesRead = 0;
+        long msgsBefore = session.msgsPushed();
+
+        while (true) {
+            //  True if the socket has been drained by the last read.
+            boolean drained = false;
+
+            //  If there's no data to process in the buffer...
+            if (insize == 0) {
+                //  Retrieve the buffer and read as much data as possible.
+                //  Note that buffer can be arbitrarily large. However, we assume
+                //  the underlying TCP layer has fixed buffer size and thus the
+                //  number of bytes read will be always limited.
+                decoder.resize(inBatch.size());
+                inbuf = decoder.getBuffer();
+                int requested = inbuf.remaining();
+                insize = read(inbuf);
+                inbuf.flip();
+
+                //  Check whether the peer has closed the connection.
+                if (insize == -1) {
+                    insize = 0;
+                    disconnection = true;
+                }
+                else if (insize > 0) {
+                    //  Full reads grow the batch, sparse ones shrink it.
+                    if (inBatch.update(insize) && channel != null) {
+                        channel.resize(inBatch.size(), outBatch.size());
+                    }
+                    bytesRead += insize;
+
+                    //  Any traffic proves the peer alive.
+                    if (hasTimeoutTimer || hasTtlTimer) {
+                        cancelHeartbeatTimeouts();
+                    }
+                }
+
+                //  A short read means there's nothing more to read right now.
+                drained = insize < requested;
             }
-        }
 
-        //  Push the data to the decoder.
-        int processed = decoder.processBuffer(inbuf, insize);
+            //  Push the data to the decoder.
+            int processed = decoder.processBuffer(inbuf, insize);
+
+            if (processed == -1) {
+                disconnection = true;
+                break;
+            }
 
-        if (processed == -1) {
-            disconnection = true;
-        }
-        else {
             //  Stop polling for input if we got stuck.
             if (processed < insize) {
-                ioObject.resetPollIn(handle);
+                resetPollIn();
+                insize -= processed;
+                break;
             }
 
             //  Adjust the buffer.
             insize -= processed;
+
+            if (disconnection || drained || bytesRead >= options.readBudgetBytes
+                    || session.msgsPushed() - msgsBefore >= options.readBudgetMsgs) {
+                break;
+            }
         }
 
         //  Flush all messages the decoder may have produced.
@@ -344,7 +559,7 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
         //  the termination until after the message is accepted.
         if (disconnection) {
             if (decoder.stalled()) {
-                ioObject.removeHandle(handle);
+                removeHandle();
                 ioEnabled = false;
             }
             else {
@@ -366,11 +581,13 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
                  return;
             }
 
+            encoder.resize(outBatch.size());
             outbuf = encoder.getData(null);
             outsize = outbuf.remaining();
+            outBatchSize = outsize;
             //  If there is no data to send, stop polling for output.
             if (outbuf.remaining() == 0) {
-                ioObject.resetPollOut(handle);
+                resetPollOut();
 
                 // when we use custom encoder, we might want to close
                 if (encoder.isError()) {
@@ -392,17 +609,26 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
         //  The engine is not terminated until we detect input error;
         //  this is necessary to prevent losing incomming messages.
         if (nbytes == -1) {
-            ioObject.resetPollOut(handle);
+            resetPollOut();
             return;
         }
 
+        //  Batches drained by a single write grow the batch size, sparse
+        //  ones shrink it. Partial writes mean the socket is the bottleneck.
+        if (nbytes == outsize && outBatchSize > 0) {
+            if (outBatch.update(outBatchSize) && channel != null) {
+                channel.resize(inBatch.size(), outBatch.size());
+            }
+        }
+        outBatchSize = 0;
+
         outsize -= nbytes;
 
         //  If we are still handshaking and there are no data
         //  to send, stop polling for output.
         if (handshaking) {
             if (outsize == 0) {
-                ioObject.resetPollOut(handle);
+                resetPollOut();
             }
         }
 
@@ -429,13 +655,58 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
     @Override
     public void timerEvent(int id)
     {
-        throw new UnsupportedOperationException();
+        if (id == HEARTBEAT_IVL_TIMER_ID) {
+            hasHeartbeatTimer = false;
+            heartbeat();
+            return;
+        }
+
+        //  The peer has been silent for too long.
+        if (id == HEARTBEAT_TIMEOUT_TIMER_ID || id == HEARTBEAT_TTL_TIMER_ID) {
+            if (id == HEARTBEAT_TIMEOUT_TIMER_ID) {
+                hasTimeoutTimer = false;
+            }
+            else {
+                hasTtlTimer = false;
+            }
+            error();
+            return;
+        }
+
+        assert (id == CORK_TIMER_ID);
+        hasCorkTimer = false;
+
+        //  The coalescing delay is over. Write whatever has been queued
+        //  in the meantime, unless an input error has already occurred.
+        if (ioEnabled) {
+            setPollOut();
+            outEvent();
+        }
     }
 
     @Override
     public void activateOut()
     {
-        ioObject.setPollOut(handle);
+        //  With write coalescing enabled, an idle connection waits for the
+        //  coalescing interval so that the messages queued in the meantime
+        //  go out in as few batches as possible. A busy connection keeps
+        //  writing full batches without any delay, and so does a connection
+        //  having queued a full batch meanwhile.
+        if (options.corkIvl > 0 && !handshaking && outsize == 0) {
+            if (cork() < outBatch.size()) {
+                if (!hasCorkTimer) {
+                    ioObject.addTimer((options.corkIvl + 999) / 1000, CORK_TIMER_ID);
+                    hasCorkTimer = true;
+                }
+                return;
+            }
+            if (hasCorkTimer) {
+                ioObject.cancelTimer(CORK_TIMER_ID);
+                hasCorkTimer = false;
+            }
+        }
+
+        setPollOut();
 
         //  Speculative write: The assumption is that at the moment new message
         //  was sent by the user the socket is probably available for writing.
@@ -444,6 +715,40 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
         outEvent();
     }
 
+    //  Pulls the messages queued in the session so far, up to a batch,
+    //  and diverts the encoder to take them from here first. Emptying the
+    //  pipe makes the next message queued activate the output again.
+    //  Returns the size of the messages pulled.
+    private int cork()
+    {
+        while (corkedSize < outBatch.size()) {
+            Msg msg = session.pullMsg();
+            if (msg == null) {
+                break;
+            }
+            corked.add(msg);
+            corkedSize += msg.size();
+        }
+        if (!corked.isEmpty()) {
+            encoder.setMsgSource(this);
+        }
+        return corkedSize;
+    }
+
+    @Override
+    public Msg pullMsg()
+    {
+        Msg msg = corked.poll();
+        if (msg == null) {
+            //  Once the coalesced messages are encoded, divert the message
+            //  flow back to the session.
+            encoder.setMsgSource(session);
+            return session.pullMsg();
+        }
+        corkedSize -= msg.size();
+        return msg;
+    }
+
     @Override
     public void activateIn()
     {
@@ -458,7 +763,7 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
             return;
         }
 
-        ioObject.setPollIn(handle);
+        setPollIn();
 
         //  Speculative read.
         ioObject.inEvent();
@@ -469,7 +774,7 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
         assert (handshaking);
 
         //  Receive the greeting.
-        while (greeting.position() < GREETING_SIZE) {
+        while (greeting.position() < greeting.limit()) {
             final int n = read(greeting);
             if (n == -1) {
                 error();
@@ -500,31 +805,48 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
             }
 
             //  The peer is using versioned protocol.
-            //  Send the rest of the greeting, if necessary.
-            if (greetingOutputBuffer.limit() < GREETING_SIZE) {
-                if (outsize == 0) {
-                    ioObject.setPollOut(handle);
+            //  Announce our version, if not done yet.
+            if (greetingOutputBuffer.limit() == VERSION_POS) {
+                sendGreeting(VERSION_POS + 1);
+                greetingOutputBuffer.put(VERSION_POS, (byte) version);
+            }
+
+            //  Send the rest of the greeting once we know the version
+            //  of the peer. Peers older than ZMTP/3.0 get the v1 greeting.
+            if (greeting.position() > VERSION_POS && greetingOutputBuffer.limit() == VERSION_POS + 1) {
+                int peerVersion = greeting.get(VERSION_POS);
+                if (version >= V3Protocol.MAJOR_VERSION && peerVersion >= V3Protocol.MAJOR_VERSION) {
+                    sendGreeting(V3Protocol.GREETING_SIZE);
+                    greetingOutputBuffer.put(VERSION_POS + 1, (byte) V3Protocol.MINOR_VERSION);
+                    for (int i = 0; i < V3Protocol.NULL_MECHANISM.length; i++) {
+                        greetingOutputBuffer.put(V3Protocol.MECHANISM_POS + i, V3Protocol.NULL_MECHANISM[i]);
+                    }
+                    greeting.limit(V3Protocol.GREETING_SIZE);
+                }
+                else {
+                    sendGreeting(GREETING_SIZE);
+                    greetingOutputBuffer.put(VERSION_POS + 1, (byte) options.type);  // Socket type
+
+                    //  If both sides offer compression, they exchange the IDs
+                    //  of their dictionaries after the greeting.
+                    if (compression && peerVersion == V1Protocol.COMPRESSION_VERSION) {
+                        sendGreeting(GREETING_SIZE + DICTIONARY_ID_SIZE);
+                        greetingOutputBuffer.putInt(GREETING_SIZE,
+                                CompressedEncoder.dictionaryId(options.compressionDict));
+                        greeting.limit(GREETING_SIZE + DICTIONARY_ID_SIZE);
+                    }
                 }
-                int pos = greetingOutputBuffer.position();
-                greetingOutputBuffer.position(10).limit(GREETING_SIZE);
-                greetingOutputBuffer.put((byte) 1); // Protocol version
-                greetingOutputBuffer.put((byte) options.type);  // Socket type
-                greetingOutputBuffer.position(pos);
-                outsize += 2;
             }
         }
 
-        //  Position of the version field in the greeting.
-        final int versionPos = 10;
-
         //  Is the peer using the unversioned protocol?
         //  If so, we send and receive rests of identity
         //  messages.
         if ((greeting.get(0) & 0xff) != 0xff || (greeting.get(9) & 0x01) == 0) {
-            encoder = newEncoder(Config.OUT_BATCH_SIZE.getValue(), null, 0);
+            encoder = newEncoder(outBatch.size(), null, 0);
             encoder.setMsgSource(session);
 
-            decoder = newDecoder(Config.IN_BATCH_SIZE.getValue(), options.maxMsgSize, null, 0);
+            decoder = newDecoder(inBatch.size(), options.maxMsgSize, null, 0);
             decoder.setMsgSink(session);
 
             //  We have already sent the message header.
@@ -553,23 +875,58 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
             }
         }
         else
-        if (greeting.get(versionPos) == 0) {
+        if (greeting.get(VERSION_POS) == 0) {
             //  ZMTP/1.0 framing.
-            encoder = newEncoder(Config.OUT_BATCH_SIZE.getValue(), null, 0);
+            encoder = newEncoder(outBatch.size(), null, 0);
             encoder.setMsgSource(session);
 
-            decoder = newDecoder(Config.IN_BATCH_SIZE.getValue(), options.maxMsgSize, null, 0);
+            decoder = newDecoder(inBatch.size(), options.maxMsgSize, null, 0);
             decoder.setMsgSink(session);
         }
-        else {
+        else
+        if (version < V3Protocol.MAJOR_VERSION || greeting.get(VERSION_POS) < V3Protocol.MAJOR_VERSION) {
             //  v1 framing protocol.
-            encoder = newEncoder(Config.OUT_BATCH_SIZE.getValue(), session, V1Protocol.VERSION);
+            encoder = newEncoder(outBatch.size(), session, V1Protocol.VERSION);
 
-            decoder = newDecoder(Config.IN_BATCH_SIZE.getValue(), options.maxMsgSize, session, V1Protocol.VERSION);
+            decoder = newDecoder(inBatch.size(), options.maxMsgSize, session, V1Protocol.VERSION);
+
+            //  Compress if the peer has the same dictionary.
+            if (greeting.limit() > GREETING_SIZE
+                    && greeting.getInt(GREETING_SIZE) == CompressedEncoder.dictionaryId(options.compressionDict)) {
+                encoder = new CompressedEncoder(encoder, options.compressionDict);
+                decoder = new CompressedDecoder(decoder, options.compressionDict, inBatch.size());
+            }
+        }
+        else {
+            //  ZMTP/3.x framing. The NULL mechanism is the only one supported.
+            for (int i = 0; i < V3Protocol.MECHANISM_SIZE; i++) {
+                byte expected = i < V3Protocol.NULL_MECHANISM.length ? V3Protocol.NULL_MECHANISM[i] : 0;
+                if (greeting.get(V3Protocol.MECHANISM_POS + i) != expected) {
+                    error();
+                    return false;
+                }
+            }
+            zmtp3 = true;
+
+            //  The READY command goes first. The messages from the peer are
+            //  passed to the session only after its READY command.
+            V3Encoder v3Encoder = new V3Encoder(outBatch.size(), session);
+            v3Encoder.command(readyCommand());
+            encoder = v3Encoder;
+
+            decoder = new V3Decoder(inBatch.size(), options.maxMsgSize, this, this);
+            if (options.msgAllocator != null) {
+                decoder.setMsgAllocator(options.msgAllocator);
+            }
+
+            if (options.heartbeatInterval > 0) {
+                ioObject.addTimer(options.heartbeatInterval, HEARTBEAT_IVL_TIMER_ID);
+                hasHeartbeatTimer = true;
+            }
         }
         // Start polling for output if necessary.
         if (outsize == 0) {
-            ioObject.setPollOut(handle);
+            setPollOut();
         }
 
         //  Handshaking was successful.
@@ -579,9 +936,159 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
         return true;
     }
 
+    //  Extends the greeting being sent up to the given size.
+    private void sendGreeting(int size)
+    {
+        if (outsize == 0) {
+            setPollOut();
+        }
+        outsize += size - greetingOutputBuffer.limit();
+        greetingOutputBuffer.limit(size);
+    }
+
+    //  Returns the READY command of the NULL mechanism, carrying the socket
+    //  type and, if the peer cares about it, the identity.
+    private Msg readyCommand()
+    {
+        //  The identity is the first message pulled from the session.
+        Msg identity = session.pullMsg();
+        byte[] type = V3Protocol.socketType(options.type).getBytes(ZMQ.CHARSET);
+        boolean sendIdentity = V3Protocol.sendsIdentity(options.type);
+
+        int size = V3Protocol.propertySize(V3Protocol.SOCKET_TYPE, type.length);
+        if (sendIdentity) {
+            size += V3Protocol.propertySize(V3Protocol.IDENTITY, identity.size());
+        }
+        Msg ready = V3Protocol.command(V3Protocol.READY, size);
+        V3Protocol.putProperty(ready, V3Protocol.SOCKET_TYPE, type, type.length);
+        if (sendIdentity) {
+            V3Protocol.putProperty(ready, V3Protocol.IDENTITY, identity.data(), identity.size());
+        }
+        return ready;
+    }
+
+    //  Sends a PING command to the peer and starts waiting for its traffic.
+    private void heartbeat()
+    {
+        //  The TTL goes in deciseconds.
+        Msg ping = V3Protocol.command(V3Protocol.PING, 2);
+        int ttl = options.heartbeatTtl / 100;
+        ping.put((byte) (ttl >>> 8));
+        ping.put((byte) ttl);
+        ((V3Encoder) encoder).command(ping);
+        if (outsize == 0 && ioEnabled) {
+            setPollOut();
+        }
+
+        ioObject.addTimer(options.heartbeatInterval, HEARTBEAT_IVL_TIMER_ID);
+        hasHeartbeatTimer = true;
+
+        int timeout = options.heartbeatTimeout == -1 ? options.heartbeatInterval : options.heartbeatTimeout;
+        if (!hasTimeoutTimer && timeout > 0) {
+            ioObject.addTimer(timeout, HEARTBEAT_TIMEOUT_TIMER_ID);
+            hasTimeoutTimer = true;
+        }
+    }
+
+    private void cancelHeartbeatTimeouts()
+    {
+        if (hasTimeoutTimer) {
+            ioObject.cancelTimer(HEARTBEAT_TIMEOUT_TIMER_ID);
+            hasTimeoutTimer = false;
+        }
+        if (hasTtlTimer) {
+            ioObject.cancelTimer(HEARTBEAT_TTL_TIMER_ID);
+            hasTtlTimer = false;
+        }
+    }
+
+    //  Processes the command received from a ZMTP/3.x peer.
+    private int processCommand(Msg msg)
+    {
+        //  No messages are allowed before the READY command.
+        if ((msg.flags() & Msg.COMMAND) == 0) {
+            return ZError.EFSM;
+        }
+
+        if (V3Protocol.isCommand(msg, V3Protocol.READY)) {
+            if (ready) {
+                return ZError.EFSM;
+            }
+            byte[] type = V3Protocol.property(msg, V3Protocol.SOCKET_TYPE);
+            if (type == null || !V3Protocol.compatible(options.type, new String(type, ZMQ.CHARSET))) {
+                return ZError.EFSM;
+            }
+
+            //  The identity of the peer, if any, is the first message
+            //  for the session.
+            byte[] identity = V3Protocol.property(msg, V3Protocol.IDENTITY);
+            int rc = session.pushMsg(identity == null ? new Msg() : new Msg(identity));
+            if (rc != 0) {
+                return rc;
+            }
+            ready = true;
+            decoder.setMsgSink(session);
+            return 0;
+        }
+
+        if (!ready) {
+            return ZError.EFSM;
+        }
+
+        if (V3Protocol.isCommand(msg, V3Protocol.PING)) {
+            //  Reply with the context of the PING, following its TTL.
+            int offset = 1 + V3Protocol.PING.length() + 2;
+            int contextSize = msg.size() - offset;
+            if (contextSize < 0 || contextSize > V3Protocol.MAX_PING_CONTEXT) {
+                return ZError.EFSM;
+            }
+            Msg pong = V3Protocol.command(V3Protocol.PONG, contextSize);
+            pong.put(msg.data(), offset, contextSize);
+            ((V3Encoder) encoder).command(pong);
+            if (outsize == 0) {
+                setPollOut();
+            }
+
+            //  Disconnect the peer if it gets silent for longer than
+            //  the TTL it asks for, in deciseconds.
+            int ttl = ((msg.get(offset - 2) & 0xff) << 8 | msg.get(offset - 1) & 0xff) * 100;
+            if (ttl > 0 && !hasTtlTimer) {
+                ioObject.addTimer(ttl, HEARTBEAT_TTL_TIMER_ID);
+                hasTtlTimer = true;
+            }
+            return 0;
+        }
+
+        //  ZMTP/3.1 peers send their subscriptions as commands. Turn them
+        //  into the subscription messages the publishers expect.
+        boolean subscribe = V3Protocol.isCommand(msg, V3Protocol.SUBSCRIBE);
+        if (subscribe || V3Protocol.isCommand(msg, V3Protocol.CANCEL)) {
+            if (options.type != ZMQ.ZMQ_PUB && options.type != ZMQ.ZMQ_XPUB) {
+                return 0;
+            }
+            int offset = 1 + (subscribe ? V3Protocol.SUBSCRIBE : V3Protocol.CANCEL).length();
+            Msg subscription = new Msg(1 + msg.size() - offset);
+            subscription.put((byte) (subscribe ? 1 : 0));
+            subscription.put(msg.data(), offset, msg.size() - offset);
+            return session.pushMsg(subscription);
+        }
+
+        //  The peer is going to close the connection.
+        if (V3Protocol.isCommand(msg, V3Protocol.ERROR)) {
+            return ZError.EFSM;
+        }
+
+        //  Other commands, such as PONG, are ignored.
+        return 0;
+    }
+
     @Override
     public int pushMsg(Msg msg)
     {
+        if (zmtp3) {
+            return processCommand(msg);
+        }
+
         assert (options.type == ZMQ.ZMQ_PUB || options.type == ZMQ.ZMQ_XPUB);
 
         //  The first message is identity.
@@ -612,16 +1119,88 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
         destroy();
     }
 
+    private void addHandle(IOThread ioThread)
+    {
+        if (channel != null) {
+            channel.start(ioThread, this);
+        }
+        else {
+            ioObject.addHandle(handle);
+        }
+    }
+
+    private void removeHandle()
+    {
+        if (channel != null) {
+            channel.stop();
+        }
+        else {
+            ioObject.removeHandle(handle);
+        }
+    }
+
+    private void setPollIn()
+    {
+        pollingIn = true;
+        if (channel != null) {
+            channel.setPollIn();
+        }
+        else {
+            ioObject.setPollIn(handle);
+        }
+    }
+
+    private void resetPollIn()
+    {
+        pollingIn = false;
+        if (channel != null) {
+            channel.resetPollIn();
+        }
+        else {
+            ioObject.resetPollIn(handle);
+        }
+    }
+
+    private void setPollOut()
+    {
+        pollingOut = true;
+        if (channel != null) {
+            channel.setPollOut();
+        }
+        else {
+            ioObject.setPollOut(handle);
+        }
+    }
+
+    private void resetPollOut()
+    {
+        pollingOut = false;
+        if (channel != null) {
+            channel.resetPollOut();
+        }
+        else {
+            ioObject.resetPollOut(handle);
+        }
+    }
+
     private int write(Transfer buf)
     {
         int nbytes;
         try {
-            nbytes = buf.transferTo(handle);
+            if (channel != null) {
+                nbytes = channel.write(buf);
+            }
+            else {
+                nbytes = buf.transferTo(handle);
+            }
         }
         catch (IOException e) {
             return -1;
         }
 
+        if (nbytes > 0) {
+            session.countBytes(nbytes);
+        }
         return nbytes;
     }
 
@@ -629,12 +1208,20 @@ public class StreamEngine implements IEngine, IPollEvents, IMsgSink
     {
         int nbytes;
         try {
-            nbytes = handle.read(buf);
+            if (channel != null) {
+                nbytes = channel.read(buf);
+            }
+            else {
+                nbytes = handle.read(buf);
+            }
         }
         catch (IOException e) {
             return -1;
         }
 
+        if (nbytes > 0) {
+            session.countBytes(nbytes);
+        }
         return nbytes;
     }
 }
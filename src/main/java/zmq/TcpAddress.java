@@ -24,6 +24,8 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class TcpAddress implements Address.IZAddress
 {
@@ -46,6 +48,11 @@ public class TcpAddress implements Address.IZAddress
     {
     }
 
+    public TcpAddress(InetSocketAddress address)
+    {
+        this.address = address;
+    }
+
     @Override
     public String toString()
     {
@@ -77,6 +84,29 @@ public class TcpAddress implements Address.IZAddress
 
     @Override
     public void resolve(String name, boolean ipv4only)
+    {
+        String host = host(name);
+        int port = port(name);
+
+        InetAddress[] addresses;
+        try {
+            addresses = InetAddress.getAllByName(host);
+        }
+        catch (UnknownHostException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        List<InetSocketAddress> candidates = addresses(addresses, port, ipv4only);
+        if (candidates.isEmpty()) {
+            throw new IllegalArgumentException(name);
+        }
+
+        address = candidates.get(0);
+    }
+
+    //  Returns the host part of the 'host:port' name, without the square
+    //  brackets around IPv6 addresses.
+    public static String host(String name)
     {
         //  Find the ':' at end that separates address from the port number.
         int delimiter = name.lastIndexOf(':');
@@ -84,9 +114,7 @@ public class TcpAddress implements Address.IZAddress
             throw new IllegalArgumentException(name);
         }
 
-        //  Separate the address/port.
         String addrStr = name.substring(0, delimiter);
-        String portStr = name.substring(delimiter + 1);
 
         //  Remove square brackets around the address, if any.
         if (addrStr.length() >= 2 && addrStr.charAt(0) == '[' &&
@@ -94,43 +122,48 @@ public class TcpAddress implements Address.IZAddress
             addrStr = addrStr.substring(1, addrStr.length() - 1);
         }
 
-        int port;
-        //  Allow 0 specifically, to detect invalid port error in atoi if not
-        if (portStr.equals("*") || portStr.equals("0")) {
-            //  Resolve wildcard to 0 to allow autoselection of port
-            port = 0;
-        }
-        else {
-            //  Parse the port number (0 is not a valid port).
-            port = Integer.parseInt(portStr);
-            if (port == 0) {
-                throw new IllegalArgumentException(name);
-            }
-        }
-
-        InetAddress addrNet = null;
-
         if (addrStr.equals("*")) {
             addrStr = "0.0.0.0";
         }
-        try {
-            for (InetAddress ia : InetAddress.getAllByName(addrStr)) {
-                if (ipv4only && (ia instanceof Inet6Address)) {
-                    continue;
-                }
-                addrNet = ia;
-                break;
-            }
+        return addrStr;
+    }
+
+    //  Returns the port number of the 'host:port' name, 0 for the wildcard.
+    public static int port(String name)
+    {
+        int delimiter = name.lastIndexOf(':');
+        if (delimiter < 0) {
+            throw new IllegalArgumentException(name);
         }
-        catch (UnknownHostException e) {
-            throw new IllegalArgumentException(e);
+
+        String portStr = name.substring(delimiter + 1);
+
+        //  Allow 0 specifically, to detect invalid port error in atoi if not
+        if (portStr.equals("*") || portStr.equals("0")) {
+            //  Resolve wildcard to 0 to allow autoselection of port
+            return 0;
         }
 
-        if (addrNet == null) {
+        //  Parse the port number (0 is not a valid port).
+        int port = Integer.parseInt(portStr);
+        if (port == 0) {
             throw new IllegalArgumentException(name);
         }
+        return port;
+    }
 
-        address = new InetSocketAddress(addrNet, port);
+    //  Returns the socket addresses of the host addresses, in order,
+    //  leaving IPv6 addresses out if required.
+    public static List<InetSocketAddress> addresses(InetAddress[] addresses, int port, boolean ipv4only)
+    {
+        List<InetSocketAddress> candidates = new ArrayList<InetSocketAddress>(addresses.length);
+        for (InetAddress ia : addresses) {
+            if (ipv4only && (ia instanceof Inet6Address)) {
+                continue;
+            }
+            candidates.add(new InetSocketAddress(ia, port));
+        }
+        return candidates;
     }
 
     @Override
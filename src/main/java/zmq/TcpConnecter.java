@@ -20,36 +20,58 @@
 package zmq;
 
 import java.io.IOException;
-import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.SocketException;
-import java.net.SocketTimeoutException;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.SelectableChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 //  If 'delay' is true connecter first waits for a while, then starts
 //  connection process.
+//
+//  The host name is looked up by the resolver of the context, in the
+//  background. When it has several addresses, the connecter tries them
+//  in order, starting the next attempt when the previous one fails or
+//  has not succeeded within a short delay, and keeps the first connection
+//  established.
 public class TcpConnecter extends Own implements IPollEvents
 {
     //  ID of the timer used to delay the reconnection.
     private static final int RECONNECT_TIMER_ID = 1;
 
+    //  ID of the timer used to delay the attempt on the next address.
+    private static final int ATTEMPT_TIMER_ID = 2;
+
+    private final IOThread ioThread;
     private final IOObject ioObject;
 
     //  Address to connect to. Owned by session_base_t.
     private final Address addr;
 
-    //  Underlying socket.
-    private SocketChannel handle;
+    //  Addresses to try, and the index of the next one.
+    private List<SocketAddress> candidates;
+    private int nextCandidate;
 
-    //  If true file descriptor is registered with the poller and 'handle'
-    //  contains valid value.
-    private boolean handleValid;
+    //  Connection attempts in progress.
+    private final List<Attempt> attempts;
 
     //  If true, connecter is waiting a while before trying to connect.
     private final boolean delayedStart;
 
     //  True iff a timer has been started.
     private boolean timerStarted;
+    private boolean attemptTimerStarted;
+
+    //  True if the connecter waits for the host name to be looked up.
+    private boolean resolving;
 
     //  Reference to the session we belong to.
     private final SessionBase session;
@@ -63,15 +85,26 @@ public class TcpConnecter extends Own implements IPollEvents
     // Socket
     private final SocketBase socket;
 
+    //  True if the connecter holds a token of the context's limiter of
+    //  the connections being established, or is waiting for one.
+    private boolean tokenHeld;
+    private boolean waiting;
+
+    //  Notified by the limiter when the connecter gets its token.
+    private final Runnable granted;
+
+    //  Notified by the resolver once the host name has been looked up.
+    private final Resolver.Callback resolved;
+
     public TcpConnecter(IOThread ioThread,
       SessionBase session, final Options options,
       final Address addr, boolean delayedStart)
     {
         super(ioThread, options);
+        this.ioThread = ioThread;
         ioObject = new IOObject(ioThread);
         this.addr = addr;
-        handle = null;
-        handleValid = false;
+        attempts = new ArrayList<Attempt>();
         this.delayedStart = delayedStart;
         timerStarted = false;
         this.session = session;
@@ -80,13 +113,43 @@ public class TcpConnecter extends Own implements IPollEvents
         assert (this.addr != null);
         address = this.addr;
         socket = session.getSocket();
+        granted = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                ioObject.post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        tokenGranted();
+                    }
+                });
+            }
+        };
+        resolved = new Resolver.Callback()
+        {
+            @Override
+            public void resolved(final InetAddress[] addresses)
+            {
+                ioObject.post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        hostResolved(addresses);
+                    }
+                });
+            }
+        };
     }
 
     public void destroy()
     {
         assert (!timerStarted);
-        assert (!handleValid);
-        assert (handle == null);
+        assert (!attemptTimerStarted);
+        assert (attempts.isEmpty());
     }
 
     @Override
@@ -109,14 +172,14 @@ public class TcpConnecter extends Own implements IPollEvents
             timerStarted = false;
         }
 
-        if (handleValid) {
-            ioObject.removeHandle(handle);
-            handleValid = false;
-        }
+        cancelAttemptTimer();
+        closeAttempts(null);
 
-        if (handle != null) {
-            close();
+        //  A token granted in the meantime is given back on arrival.
+        if (waiting && getCtx().getConnectLimiter().cancel(granted)) {
+            waiting = false;
         }
+        releaseToken();
 
         super.processTerm(linger);
     }
@@ -142,54 +205,72 @@ public class TcpConnecter extends Own implements IPollEvents
     @Override
     public void connectEvent()
     {
-        boolean err = false;
-        SocketChannel fd = null;
-        try {
-            fd = connect();
-        }
-        catch (ConnectException e) {
-            err = true;
-        }
-        catch (SocketException e) {
-            err = true;
-        }
-        catch (SocketTimeoutException e) {
-            err = true;
-        }
-        catch (IOException e) {
-            throw new ZError.IOException(e);
-        }
+        throw new UnsupportedOperationException();
+    }
 
-        ioObject.removeHandle(handle);
-        handleValid = false;
+    //  Completes the connection attempt. Called in the I/O thread once
+    //  the connection succeeds or fails.
+    private void attemptDone(Attempt attempt, Throwable error)
+    {
+        //  The attempt has been abandoned in the meantime.
+        if (!attempts.remove(attempt)) {
+            return;
+        }
 
-        if (err) {
-            //  Handle the error condition by attempt to reconnect.
-            close();
-            addreconnectTimer();
+        if (error != null) {
+            //  Try the next address right away. Once all have failed,
+            //  attempt to reconnect.
+            attempt.close();
+            cancelAttemptTimer();
+            startAttempts();
             return;
         }
 
-        handle = null;
+        //  The first connection established wins.
+        cancelAttemptTimer();
+        closeAttempts(attempt);
+
+        //  Report the address actually connected to.
+        if (address.protocol().equals("tcp")) {
+            address.resolved(new TcpAddress((InetSocketAddress) attempt.target));
+        }
 
+        StreamEngine engine = null;
         try {
-            Utils.tuneTcpSocket(fd);
-            Utils.tuneTcpKeepalives(fd, options.tcpKeepAlive, options.tcpKeepAliveCnt, options.tcpKeepAliveIdle, options.tcpKeepAliveIntvl);
+            if (attempt.handle != null) {
+                Utils.tuneTcpSocket(attempt.handle);
+                Utils.tuneTcpKeepalives(attempt.handle, options.tcpKeepAlive, options.tcpKeepAliveCnt, options.tcpKeepAliveIdle, options.tcpKeepAliveIntvl);
+
+                //  Create the engine object for this connection.
+                engine = new StreamEngine(attempt.handle, options, address.toString());
+            }
+            else {
+                Utils.tuneTcpSocket(attempt.asyncHandle);
+                Utils.tuneTcpKeepalives(attempt.asyncHandle, options.tcpKeepAlive, options.tcpKeepAliveCnt, options.tcpKeepAliveIdle, options.tcpKeepAliveIntvl);
+
+                //  Create the engine object for this connection.
+                engine = new StreamEngine(new AsyncChannel(attempt.asyncHandle), options, address.toString());
+            }
         }
         catch (SocketException e) {
             throw new RuntimeException(e);
         }
-
-        //  Create the engine object for this connection.
-        StreamEngine engine = null;
-        try {
-            engine = new StreamEngine(fd, options, address.toString());
+        catch (IOException e) {
+            throw new ZError.IOException(e);
         }
         catch (ZError.InstantiationException e) {
+            releaseToken();
             socket.eventConnectDelayed(address.toString(), -1);
             return;
         }
 
+        attach(engine, attempt.handle);
+    }
+
+    private void attach(StreamEngine engine, SelectableChannel fd)
+    {
+        releaseToken();
+
         //  Attach the engine to the corresponding session object.
         sendAttach(session, engine);
 
@@ -202,6 +283,11 @@ public class TcpConnecter extends Own implements IPollEvents
     @Override
     public void timerEvent(int id)
     {
+        if (id == ATTEMPT_TIMER_ID) {
+            attemptTimerStarted = false;
+            startAttempts();
+            return;
+        }
         timerStarted = false;
         startConnecting();
     }
@@ -209,51 +295,180 @@ public class TcpConnecter extends Own implements IPollEvents
     //  Internal function to start the actual connection establishment.
     private void startConnecting()
     {
-        //  Open the connecting socket.
+        //  Look the host name up first, without holding a token.
+        if (!lookup()) {
+            return;
+        }
 
-        try {
-            boolean rc = open();
+        //  Wait in line if too many connections are being established.
+        if (!getCtx().getConnectLimiter().acquire(granted)) {
+            waiting = true;
+            return;
+        }
+        tokenHeld = true;
+        connecting();
+    }
 
-            //  Connect may succeed in synchronous manner.
-            if (rc) {
-                ioObject.addHandle(handle);
-                handleValid = true;
-                ioObject.connectEvent();
+    //  Finds the addresses to try. Returns false if the host name is
+    //  being looked up, to be continued once it is.
+    private boolean lookup()
+    {
+        if (!address.protocol().equals("tcp")) {
+            //  The address has been resolved beforehand.
+            try {
+                candidates = Collections.singletonList(resolve());
             }
-
-            //  Connection establishment may be delayed. Poll for its completion.
-            else {
-                ioObject.addHandle(handle);
-                handleValid = true;
-                ioObject.setPollConnect(handle);
-                socket.eventConnectDelayed(address.toString(), -1);
+            catch (IOException e) {
+                candidates = Collections.emptyList();
             }
+            return true;
         }
-        catch (IOException e) {
-            //  Handle any other error condition by eventual reconnect.
-            if (handle != null) {
-                close();
+
+        String host = TcpAddress.host(address.address());
+        InetAddress[] addresses = getCtx().getResolver().resolve(host, resolved);
+        if (addresses == null) {
+            resolving = true;
+            return false;
+        }
+        candidates(addresses);
+        return true;
+    }
+
+    //  Called in the I/O thread once the host name has been looked up,
+    //  with null if it could not be.
+    private void hostResolved(InetAddress[] addresses)
+    {
+        assert (resolving);
+        resolving = false;
+        if (isTerminating()) {
+            return;
+        }
+
+        if (addresses == null) {
+            //  Unknown host for now, look it up again later on.
+            addreconnectTimer();
+            return;
+        }
+        candidates(addresses);
+
+        //  Wait in line if too many connections are being established.
+        if (!getCtx().getConnectLimiter().acquire(granted)) {
+            waiting = true;
+            return;
+        }
+        tokenHeld = true;
+        connecting();
+    }
+
+    private void candidates(InetAddress[] addresses)
+    {
+        int port = TcpAddress.port(address.address());
+        candidates = new ArrayList<SocketAddress>(
+                TcpAddress.addresses(addresses, port, address.ipv4only()));
+    }
+
+    //  Called in the I/O thread once the connecter waiting in line gets
+    //  its token.
+    private void tokenGranted()
+    {
+        assert (waiting);
+        waiting = false;
+        tokenHeld = true;
+        if (isTerminating()) {
+            releaseToken();
+            return;
+        }
+        connecting();
+    }
+
+    //  Gives the token back, once the connection is established or has failed.
+    private void releaseToken()
+    {
+        if (tokenHeld) {
+            tokenHeld = false;
+            getCtx().getConnectLimiter().release();
+        }
+    }
+
+    private void connecting()
+    {
+        assert (attempts.isEmpty());
+        nextCandidate = 0;
+        startAttempts();
+    }
+
+    //  Starts the connection attempt on the next address. If attempts
+    //  are still pending, the one after it follows after a delay.
+    //  Once all the attempts have failed, attempts to reconnect.
+    private void startAttempts()
+    {
+        while (nextCandidate < candidates.size()) {
+            Attempt attempt = new Attempt(candidates.get(nextCandidate++));
+            try {
+                boolean pending = attempts.isEmpty();
+                attempts.add(attempt);
+                if (attempt.open()) {
+                    //  Connect succeeded in synchronous manner.
+                    attemptDone(attempt, null);
+                    return;
+                }
+
+                //  Connection establishment may be delayed.
+                if (pending) {
+                    socket.eventConnectDelayed(address.toString(), -1);
+                }
+                if (nextCandidate < candidates.size()) {
+                    ioObject.addTimer(Config.CONNECT_ATTEMPT_DELAY.getValue(), ATTEMPT_TIMER_ID);
+                    attemptTimerStarted = true;
+                }
+                return;
+            }
+            catch (IOException e) {
+                //  Handle any other error condition by trying the next address.
+                attempts.remove(attempt);
+                attempt.close();
+            }
+            catch (RuntimeException e) {
+                //  The address is not supported or the group is shut down.
+                attempts.remove(attempt);
+                attempt.close();
             }
+        }
+
+        if (attempts.isEmpty()) {
             addreconnectTimer();
         }
     }
 
+    private void cancelAttemptTimer()
+    {
+        if (attemptTimerStarted) {
+            ioObject.cancelTimer(ATTEMPT_TIMER_ID);
+            attemptTimerStarted = false;
+        }
+    }
+
+    //  Abandons the attempts in progress, but the given one.
+    private void closeAttempts(Attempt except)
+    {
+        for (Attempt attempt : attempts) {
+            if (attempt != except) {
+                attempt.close();
+            }
+        }
+        attempts.clear();
+    }
+
     //  Internal function to add a reconnect timer
     private void addreconnectTimer()
     {
+        releaseToken();
+
         int rcIvl = getNewReconnectIvl();
         ioObject.addTimer(rcIvl, RECONNECT_TIMER_ID);
 
-        // resolve address again to take into account other addresses
-        // besides the failing one (e.g. multiple dns entries).
-        try {
-            address.resolve();
-        }
-        catch (Exception ignored) {
-            // This will fail if the network goes away and the
-            // address cannot be resolved for some reason. Try
-            // not to fail as the event loop will quit
-        }
+        //  The host name is looked up again on reconnection, once its
+        //  cached addresses expire.
 
         socket.eventConnectRetried(address.toString(), rcIvl);
         timerStarted = true;
@@ -264,14 +479,26 @@ public class TcpConnecter extends Own implements IPollEvents
     //  Returns the currently used interval
     private int getNewReconnectIvl()
     {
-        //  The new interval is the current interval + random value.
-        int thisInterval = currentReconnectIvl +
-            (Utils.generateRandom() % options.reconnectIvl);
+        //  The maximum interval only applies if larger than the interval.
+        boolean backoff = options.reconnectIvlMax > 0
+                && options.reconnectIvlMax > options.reconnectIvl;
+
+        //  The new interval is the current interval + random part of it,
+        //  so that the connecters failing at once retry at different times.
+        //  The maximum interval is never exceeded: past it, the random part
+        //  is taken off the maximum instead.
+        int thisInterval = currentReconnectIvl;
+        if (currentReconnectIvl > 0) {
+            int jitter = ThreadLocalRandom.current().nextInt(currentReconnectIvl);
+            thisInterval += jitter;
+            if (backoff && thisInterval > options.reconnectIvlMax) {
+                thisInterval = options.reconnectIvlMax - jitter / 2;
+            }
+        }
 
         //  Only change the current reconnect interval  if the maximum reconnect
         //  interval was set and if it's larger than the reconnect interval.
-        if (options.reconnectIvlMax > 0 &&
-            options.reconnectIvlMax > options.reconnectIvl) {
+        if (backoff) {
             //  Calculate the next interval
             currentReconnectIvl = currentReconnectIvl * 2;
             if (currentReconnectIvl >= options.reconnectIvlMax) {
@@ -281,20 +508,9 @@ public class TcpConnecter extends Own implements IPollEvents
         return thisInterval;
     }
 
-    //  Open TCP connecting socket. Returns -1 in case of error,
-    //  true if connect was successfull immediately. Returns false with
-    //  if async connect was launched.
-    private boolean open() throws IOException
+    //  Returns the socket address to connect to.
+    private SocketAddress resolve() throws IOException
     {
-        assert (handle == null);
-
-        //  Create the socket.
-        handle = SocketChannel.open();
-
-        // Set the socket to non-blocking mode so that we get async connect().
-        Utils.unblockSocket(handle);
-
-        //  Connect to the remote peer.
         if (addr == null) {
             throw new IOException("Null address");
         }
@@ -308,49 +524,173 @@ public class TcpConnecter extends Own implements IPollEvents
         if (sa == null) {
             throw new IOException("Socket address not resolved");
         }
+        return sa;
+    }
 
-        boolean rc = false;
-        try {
-            rc = handle.connect(sa);
+    @Override
+    public String toString()
+    {
+        return super.toString() + "[" + options.socketId + "]";
+    }
+
+    //  Connection attempt to one of the addresses of the host, either
+    //  polled by the I/O thread or driven by the proactor.
+    private final class Attempt implements IPollEvents
+    {
+        private final SocketAddress target;
+
+        //  Underlying socket.
+        private SocketChannel handle;
+
+        //  Underlying asynchronous socket, being connected when the
+        //  connections are driven by the proactor.
+        private AsynchronousSocketChannel asyncHandle;
+
+        //  Registers the socket with the poller, if any.
+        private IOObject ioObject;
+
+        private Attempt(SocketAddress target)
+        {
+            this.target = target;
         }
-        catch (IllegalArgumentException e) {
-            // this will happen if sa is bad.  Address validation is not documented but
-            // I've found that IAE is thrown in openjdk as well as on android.
-            throw new IOException(e.getMessage(), e);
+
+        //  Starts connecting. Returns true if the connection has been
+        //  established immediately, false if it is in progress.
+        private boolean open() throws IOException
+        {
+            //  Connections driven by the proactor are established asynchronously.
+            AsynchronousChannelGroup group = getCtx().getProactor();
+            if (group != null) {
+                openAsync(group);
+                return false;
+            }
+
+            //  Create the socket.
+            handle = SocketChannel.open();
+
+            // Set the socket to non-blocking mode so that we get async connect().
+            Utils.unblockSocket(handle);
+
+            //  Connect to the remote peer.
+            boolean rc = false;
+            try {
+                rc = handle.connect(target);
+            }
+            catch (IllegalArgumentException e) {
+                // this will happen if sa is bad.  Address validation is not documented but
+                // I've found that IAE is thrown in openjdk as well as on android.
+                throw new IOException(e.getMessage(), e);
+            }
+
+            //  Poll for the completion of the connection establishment.
+            if (!rc) {
+                ioObject = new IOObject(ioThread);
+                ioObject.setHandler(this);
+                ioObject.addHandle(handle);
+                ioObject.setPollConnect(handle);
+            }
+            return rc;
         }
 
-        return rc;
+        //  Starts the connection establishment on a channel of the group.
+        //  The completion is handed over to the I/O thread.
+        private void openAsync(AsynchronousChannelGroup group) throws IOException
+        {
+            asyncHandle = AsynchronousSocketChannel.open(group);
+            asyncHandle.connect(target, null, new CompletionHandler<Void, Void>()
+            {
+                @Override
+                public void completed(Void result, Void attachment)
+                {
+                    done(null);
+                }
+
+                @Override
+                public void failed(Throwable exc, Void attachment)
+                {
+                    done(exc);
+                }
+
+                private void done(final Throwable exc)
+                {
+                    TcpConnecter.this.ioObject.post(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            attemptDone(Attempt.this, exc);
+                        }
+                    });
+                }
+            });
+        }
 
-    }
+        @Override
+        public void connectEvent()
+        {
+            ioObject.removeHandle(handle);
+            ioObject = null;
 
-    //  Get the file descriptor of newly created connection. Returns
-    //  retired_fd if the connection was unsuccessfull.
-    private SocketChannel connect() throws IOException
-    {
-        boolean finished = handle.finishConnect();
-        assert finished;
-        SocketChannel ret = handle;
+            Throwable error = null;
+            try {
+                boolean finished = handle.finishConnect();
+                assert finished;
+            }
+            catch (IOException e) {
+                error = e;
+            }
+            attemptDone(this, error);
+        }
 
-        return ret;
-    }
+        //  Close the connecting socket.
+        private void close()
+        {
+            if (ioObject != null) {
+                ioObject.removeHandle(handle);
+                ioObject = null;
+            }
 
-    //  Close the connecting socket.
-    private void close()
-    {
-        assert (handle != null);
-        try {
-            handle.close();
-            socket.eventClosed(address.toString(), handle);
+            if (handle == null && asyncHandle == null) {
+                return;
+            }
+            try {
+                if (handle != null) {
+                    handle.close();
+                }
+                else {
+                    asyncHandle.close();
+                }
+                socket.eventClosed(address.toString(), handle);
+            }
+            catch (IOException e) {
+                socket.eventCloseFailed(address.toString(), ZError.exccode(e));
+            }
+            handle = null;
+            asyncHandle = null;
         }
-        catch (IOException e) {
-            socket.eventCloseFailed(address.toString(), ZError.exccode(e));
+
+        @Override
+        public void inEvent()
+        {
+            throw new UnsupportedOperationException();
         }
-        handle = null;
-    }
 
-    @Override
-    public String toString()
-    {
-        return super.toString() + "[" + options.socketId + "]";
+        @Override
+        public void outEvent()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void acceptEvent()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void timerEvent(int id)
+        {
+            throw new UnsupportedOperationException();
+        }
     }
 }
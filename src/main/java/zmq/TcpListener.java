@@ -20,7 +20,14 @@
 package zmq;
 
 import java.io.IOException;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.SelectableChannel;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 
@@ -39,12 +46,19 @@ public class TcpListener extends Own implements IPollEvents
     //  Underlying socket.
     private ServerSocketChannel handle;
 
+    //  Underlying asynchronous socket, used instead of the handle
+    //  when the connections are driven by the proactor.
+    private AsynchronousServerSocketChannel asyncHandle;
+
     //  Socket the listerner belongs to.
     private SocketBase socket;
 
     // String representation of endpoint to bind to
     private String endpoint;
 
+    //  True if the port is shared with other listeners by SO_REUSEPORT.
+    private boolean reusePort;
+
     private final IOObject ioObject;
 
     public TcpListener(IOThread ioThread, SocketBase socket, final Options options)
@@ -61,11 +75,18 @@ public class TcpListener extends Own implements IPollEvents
     public void destroy()
     {
         assert (handle == null);
+        assert (asyncHandle == null);
     }
 
     @Override
     protected void processPlug()
     {
+        //  Start accepting the incoming connections asynchronously.
+        if (asyncHandle != null) {
+            acceptAsync();
+            return;
+        }
+
         //  Start polling for incoming connections.
         ioObject.setHandler(this);
         ioObject.addHandle(handle);
@@ -75,8 +96,10 @@ public class TcpListener extends Own implements IPollEvents
     @Override
     protected void processTerm(int linger)
     {
-        ioObject.setHandler(this);
-        ioObject.removeHandle(handle);
+        if (handle != null) {
+            ioObject.setHandler(this);
+            ioObject.removeHandle(handle);
+        }
         close();
         super.processTerm(linger);
     }
@@ -84,45 +107,187 @@ public class TcpListener extends Own implements IPollEvents
     @Override
     public void acceptEvent()
     {
-        SocketChannel fd = null;
+        //  Accept the connections pending in the backlog, up to the batch
+        //  size so as not to starve the other connections of the thread.
+        for (int i = 0; i < Config.TCP_ACCEPT_BATCH.getValue(); i++) {
+            SocketChannel fd = null;
+            try {
+                fd = accept();
+                if (fd == null) {
+                    //  No more connections pending.
+                    return;
+                }
+                Utils.tuneTcpSocket(fd);
+                Utils.tuneTcpKeepalives(fd, options.tcpKeepAlive, options.tcpKeepAliveCnt, options.tcpKeepAliveIdle, options.tcpKeepAliveIntvl);
+            }
+            catch (IOException e) {
+                //  If connection was reset by the peer in the meantime, just ignore it.
+                //  TODO: Handle specific errors like ENFILE/EMFILE etc.
+                close(fd);
+                socket.eventAcceptFailed(endpoint, ZError.exccode(e));
+                return;
+            }
 
+            if (!accepted()) {
+                close(fd);
+                continue;
+            }
+
+            //  Create the engine object for this connection.
+            StreamEngine engine = null;
+            try {
+                engine = new StreamEngine(fd, options, endpoint);
+            }
+            catch (ZError.InstantiationException e) {
+                close(fd);
+                socket.eventAcceptFailed(endpoint, ZError.EINVAL);
+                continue;
+            }
+            attach(engine, fd.socket().getRemoteSocketAddress(), fd);
+        }
+    }
+
+    //  Starts accepting the next connection asynchronously. The completion
+    //  is handed over to the I/O thread.
+    private void acceptAsync()
+    {
+        final AsynchronousServerSocketChannel server = asyncHandle;
         try {
-            fd = accept();
+            server.accept(null, new CompletionHandler<AsynchronousSocketChannel, Void>()
+            {
+                @Override
+                public void completed(AsynchronousSocketChannel fd, Void attachment)
+                {
+                    done(fd, null);
+                }
+
+                @Override
+                public void failed(Throwable exc, Void attachment)
+                {
+                    done(null, exc);
+                }
+
+                private void done(final AsynchronousSocketChannel fd, final Throwable exc)
+                {
+                    ioObject.post(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            acceptEvent(server, fd, exc);
+                        }
+                    });
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            //  The group has been shut down.
+            socket.eventAcceptFailed(endpoint, ZError.ETERM);
+        }
+    }
+
+    //  Completes the asynchronous accept. Called in the I/O thread.
+    private void acceptEvent(AsynchronousServerSocketChannel server,
+                             AsynchronousSocketChannel fd, Throwable error)
+    {
+        //  The listener has been closed in the meantime.
+        if (server != asyncHandle) {
+            if (fd != null) {
+                close(fd);
+            }
+            return;
+        }
+
+        //  Keep accepting, whatever happens to this connection.
+        acceptAsync();
+
+        if (error != null) {
+            socket.eventAcceptFailed(endpoint, error instanceof IOException ?
+                    ZError.exccode((IOException) error) : ZError.EINVAL);
+            return;
+        }
+
+        if (!accepted()) {
+            close(fd);
+            return;
+        }
+
+        SocketAddress peer;
+        StreamEngine engine = null;
+        try {
+            peer = fd.getRemoteAddress();
             Utils.tuneTcpSocket(fd);
             Utils.tuneTcpKeepalives(fd, options.tcpKeepAlive, options.tcpKeepAliveCnt, options.tcpKeepAliveIdle, options.tcpKeepAliveIntvl);
+
+            //  Create the engine object for this connection.
+            engine = new StreamEngine(new AsyncChannel(fd), options, endpoint);
         }
         catch (IOException e) {
             //  If connection was reset by the peer in the meantime, just ignore it.
-            //  TODO: Handle specific errors like ENFILE/EMFILE etc.
+            close(fd);
             socket.eventAcceptFailed(endpoint, ZError.exccode(e));
             return;
         }
-
-        //  Create the engine object for this connection.
-        StreamEngine engine = null;
-        try {
-            engine = new StreamEngine(fd, options, endpoint);
-        }
         catch (ZError.InstantiationException e) {
+            close(fd);
             socket.eventAcceptFailed(endpoint, ZError.EINVAL);
             return;
         }
+
+        attach(engine, peer, null);
+    }
+
+    private void attach(StreamEngine engine, SocketAddress peer, SelectableChannel fd)
+    {
         //  Choose I/O thread to run connecter in. Given that we are already
         //  running in an I/O thread, there must be at least one available.
         IOThread ioThread = chooseIoThread(options.affinity);
 
         //  Create and launch a session object.
         SessionBase session = SessionBase.create(ioThread, false, socket,
-            options, new Address(fd.socket().getRemoteSocketAddress()));
+            options, new Address(peer));
         session.incSeqnum();
         launchChild(session);
         sendAttach(session, engine, false);
         socket.eventAccepted(endpoint, fd);
     }
 
+    private static void close(AsynchronousSocketChannel fd)
+    {
+        try {
+            fd.close();
+        }
+        catch (IOException e) {
+        }
+    }
+
+    private static void close(SocketChannel fd)
+    {
+        if (fd == null) {
+            return;
+        }
+        try {
+            fd.close();
+        }
+        catch (IOException e) {
+        }
+    }
+
     //  Close the listening socket.
     private void close()
     {
+        if (asyncHandle != null) {
+            try {
+                asyncHandle.close();
+                socket.eventClosed(endpoint, null);
+            }
+            catch (IOException e) {
+                socket.eventCloseFailed(endpoint, ZError.exccode(e));
+            }
+            asyncHandle = null;
+            return;
+        }
+
         if (handle == null) {
             return;
         }
@@ -142,17 +307,31 @@ public class TcpListener extends Own implements IPollEvents
         return address.toString();
     }
 
+    //  Returns true if other listeners can bind the same address.
+    public boolean isReusePort()
+    {
+        return reusePort;
+    }
+
     //  Set address to listen on.
     public int setAddress(final String addr)
     {
         address.resolve(addr, options.ipv4only > 0);
 
+        AsynchronousChannelGroup group = getCtx().getProactor();
+        if (group != null) {
+            return setAddress(group);
+        }
+
         try {
             handle = ServerSocketChannel.open();
             handle.configureBlocking(false);
             if (!isWindows) {
                 handle.socket().setReuseAddress(true);
             }
+            if (options.tcpListeners != 1) {
+                reusePort = Utils.setReusePort(handle);
+            }
             handle.socket().bind(address.address(), options.backlog);
             if (address.getPort() == 0) {
                 address.updatePort(handle.socket().getLocalPort());
@@ -167,38 +346,51 @@ public class TcpListener extends Own implements IPollEvents
         return 0;
     }
 
-    //  Accept the new connection. Returns the file descriptor of the
-    //  newly created connection. The function may return retired_fd
-    //  if the connection was dropped while waiting in the listen backlog
-    //  or was denied because of accept filters.
-    private SocketChannel accept()
+    //  Listens on a channel of the group.
+    private int setAddress(AsynchronousChannelGroup group)
     {
-        Socket sock = null;
         try {
-            sock = handle.socket().accept();
+            asyncHandle = AsynchronousServerSocketChannel.open(group);
+            if (!isWindows) {
+                asyncHandle.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            }
+            if (options.tcpListeners != 1) {
+                reusePort = Utils.setReusePort(asyncHandle);
+            }
+            asyncHandle.bind(address.address(), options.backlog);
+            if (address.getPort() == 0) {
+                address.updatePort(((InetSocketAddress) asyncHandle.getLocalAddress()).getPort());
+            }
         }
         catch (IOException e) {
-            return null;
+            close();
+            return ZError.EADDRINUSE;
         }
+        endpoint = address.toString();
+        socket.eventListening(endpoint, null);
+        return 0;
+    }
 
-        if (!options.tcpAcceptFilters.isEmpty()) {
-            boolean matched = false;
-            for (TcpAddress.TcpAddressMask am : options.tcpAcceptFilters) {
-                if (am.matchAddress(address.address())) {
-                    matched = true;
-                    break;
-                }
-            }
-            if (!matched) {
-                try {
-                    sock.close();
-                }
-                catch (IOException e) {
-                }
-                return null;
+    //  Accept the new connection. Returns the file descriptor of the
+    //  newly created connection, or null if there's no connection pending
+    //  in the listen backlog.
+    private SocketChannel accept() throws IOException
+    {
+        return handle.accept();
+    }
+
+    //  Returns true unless the connection is denied by the accept filters.
+    private boolean accepted()
+    {
+        if (options.tcpAcceptFilters.isEmpty()) {
+            return true;
+        }
+        for (TcpAddress.TcpAddressMask am : options.tcpAcceptFilters) {
+            if (am.matchAddress(address.address())) {
+                return true;
             }
         }
-        return sock.getChannel();
+        return false;
     }
 
     @Override
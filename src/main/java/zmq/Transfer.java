@@ -38,6 +38,13 @@ public interface Transfer
             this.buf = buf;
         }
 
+        //  Points the transfer to another buffer so that it can be reused.
+        public final ByteBufferTransfer reset(ByteBuffer buf)
+        {
+            this.buf = buf;
+            return this;
+        }
+
         @Override
         public final int transferTo(WritableByteChannel s) throws IOException
         {
@@ -216,6 +216,11 @@ public class Trie
 
     //  Check whether particular key is in the trie.
     public boolean check(ByteBuffer data)
+    {
+        return check(new Msg(data));
+    }
+
+    public boolean check(Msg data)
     {
         //  This function is on critical path. It deliberately doesn't use
         //  recursion to get a bit better performance.
@@ -228,7 +233,7 @@ public class Trie
             }
 
             //  We've checked all the data and haven't found matching subscription.
-            if (data.remaining() == start) {
+            if (data.size() == start) {
                 return false;
             }
 
@@ -0,0 +1,58 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+
+//  The address of an UDP endpoint. It is resolved the same way as a TCP
+//  address, but the address may also be a multicast group.
+public class UdpAddress extends TcpAddress
+{
+    public UdpAddress()
+    {
+    }
+
+    @Override
+    public String toString()
+    {
+        if (address == null) {
+            return "";
+        }
+
+        if (address.getAddress() instanceof Inet6Address) {
+            return "udp://[" + address.getAddress().getHostAddress() + "]:" + address.getPort();
+        }
+        else {
+            return "udp://" + address.getAddress().getHostAddress() + ":" + address.getPort();
+        }
+    }
+
+    public boolean isMulticast()
+    {
+        return address != null && address.getAddress().isMulticastAddress();
+    }
+
+    @Override
+    public InetSocketAddress address()
+    {
+        return address;
+    }
+}
@@ -0,0 +1,391 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.Enumeration;
+
+//  Engine carrying the messages of RADIO and DISH sockets over UDP.
+//  There's no connection and no handshake: the RADIO side sends the
+//  datagrams to the address, the DISH side receives them on it.
+//
+//  As many messages as fit are packed into a single datagram, each of
+//  them encoded as group size (1 byte), group, body size (2 bytes), body.
+public class UdpEngine implements IEngine, IPollEvents
+{
+    //  Maximum payload of an UDP datagram.
+    private static final int MAX_DATAGRAM = 65507;
+
+    //  Size of the fixed part of an encoded message.
+    private static final int HEADER_SIZE = 3;
+
+    private DatagramChannel handle;
+
+    private final UdpAddress address;
+
+    private final boolean send;
+    private final boolean recv;
+
+    //  Datagram being packed, or sent if outReady is true.
+    private final ByteBuffer outbuf;
+    private boolean outReady;
+
+    //  Message pulled from the session that did not fit into the
+    //  previous datagram.
+    private Msg pending;
+
+    private final ByteBuffer inbuf;
+
+    //  The session this engine is attached to.
+    private SessionBase session;
+
+    private boolean plugged;
+
+    private IOObject ioObject;
+
+    public UdpEngine(final Options options, final Address addr, boolean send, boolean recv)
+    {
+        assert (send != recv);
+
+        this.send = send;
+        this.recv = recv;
+        address = (UdpAddress) addr.resolved();
+        session = null;
+        plugged = false;
+        pending = null;
+        outReady = false;
+        outbuf = ByteBuffer.allocate(send ? MAX_DATAGRAM : 0).order(ByteOrder.BIG_ENDIAN);
+        inbuf = ByteBuffer.allocate(recv ? MAX_DATAGRAM : 0).order(ByteOrder.BIG_ENDIAN);
+
+        InetSocketAddress sa = address.address();
+        try {
+            if (sa.getAddress() instanceof Inet6Address) {
+                handle = DatagramChannel.open(StandardProtocolFamily.INET6);
+            }
+            else {
+                handle = DatagramChannel.open(StandardProtocolFamily.INET);
+            }
+            Utils.unblockSocket(handle);
+
+            //  Set the socket buffer limits for the underlying socket.
+            if (options.sndbuf != 0) {
+                handle.setOption(StandardSocketOptions.SO_SNDBUF, options.sndbuf);
+            }
+            if (options.rcvbuf != 0) {
+                handle.setOption(StandardSocketOptions.SO_RCVBUF, options.rcvbuf);
+            }
+
+            if (send && address.isMulticast()) {
+                handle.setOption(StandardSocketOptions.IP_MULTICAST_TTL, options.multicastHops);
+            }
+
+            if (recv) {
+                if (address.isMulticast()) {
+                    //  Several receivers may listen to the same group.
+                    handle.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                    handle.bind(new InetSocketAddress(sa.getPort()));
+                    joinGroup(sa.getAddress());
+                }
+                else {
+                    handle.bind(sa);
+                }
+            }
+        }
+        catch (IOException e) {
+            destroy();
+            throw new ZError.IOException(e);
+        }
+    }
+
+    //  Joins the multicast group on all the interfaces able to receive it.
+    private void joinGroup(InetAddress group) throws IOException
+    {
+        boolean joined = false;
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        while (interfaces != null && interfaces.hasMoreElements()) {
+            NetworkInterface ni = interfaces.nextElement();
+            if (!ni.isUp() || !ni.supportsMulticast()) {
+                continue;
+            }
+            try {
+                handle.join(group, ni);
+                joined = true;
+            }
+            catch (IOException e) {
+                //  Interface with no address of the group's family.
+            }
+        }
+        if (!joined) {
+            throw new IOException("No interface to join " + group);
+        }
+    }
+
+    private void destroy()
+    {
+        assert (!plugged);
+
+        if (handle != null) {
+            try {
+                handle.close();
+            }
+            catch (IOException e) {
+            }
+            handle = null;
+        }
+    }
+
+    @Override
+    public void plug(IOThread ioThread, SessionBase session)
+    {
+        assert (!plugged);
+        plugged = true;
+
+        //  Connect to session object.
+        assert (this.session == null);
+        assert (session != null);
+        this.session = session;
+
+        ioObject = new IOObject(null);
+        ioObject.setHandler(this);
+        //  Connect to I/O threads poller object.
+        ioObject.plug(ioThread);
+        ioObject.addHandle(handle);
+
+        //  There's no identity exchange over UDP. Drop the identity of the
+        //  local socket and give the session an empty one of the peer.
+        Msg identity = session.pullMsg();
+        assert (identity != null);
+        session.pushMsg(new Msg());
+
+        if (send) {
+            ioObject.setPollOut(handle);
+        }
+        else {
+            dropOutbound();
+        }
+        if (recv) {
+            ioObject.setPollIn(handle);
+        }
+    }
+
+    private void unplug()
+    {
+        assert (plugged);
+        plugged = false;
+
+        //  Cancel all fd subscriptions.
+        ioObject.removeHandle(handle);
+
+        //  Disconnect from I/O threads poller object.
+        ioObject.unplug();
+
+        //  Disconnect from session object.
+        session = null;
+    }
+
+    @Override
+    public void terminate()
+    {
+        unplug();
+        destroy();
+    }
+
+    @Override
+    public void inEvent()
+    {
+        //  Drain several datagrams per wakeup, but not so many that the
+        //  other connections of the I/O thread get starved.
+        int batch = Config.UDP_IN_BATCH.getValue();
+        for (int i = 0; i < batch; i++) {
+            inbuf.clear();
+            SocketAddress from;
+            try {
+                from = handle.receive(inbuf);
+            }
+            catch (IOException e) {
+                break;
+            }
+            if (from == null) {
+                break;
+            }
+            inbuf.flip();
+            decode();
+        }
+
+        session.flush();
+    }
+
+    //  Pushes the messages of the received datagram to the session.
+    //  Truncated messages are dropped, and so are the messages that
+    //  would exceed the high water mark, as is the way of UDP.
+    private void decode()
+    {
+        byte[] data = inbuf.array();
+        while (inbuf.remaining() >= HEADER_SIZE) {
+            int groupSize = inbuf.get() & 0xff;
+            if (inbuf.remaining() < groupSize + 2) {
+                return;
+            }
+            String group = new String(data, inbuf.position(), groupSize, ZMQ.CHARSET);
+            inbuf.position(inbuf.position() + groupSize);
+
+            int size = inbuf.getShort() & 0xffff;
+            if (inbuf.remaining() < size) {
+                return;
+            }
+            Msg msg = new Msg(size);
+            msg.put(data, inbuf.position(), size);
+            inbuf.position(inbuf.position() + size);
+            msg.setGroup(group);
+
+            session.pushMsg(msg);
+        }
+    }
+
+    @Override
+    public void outEvent()
+    {
+        while (true) {
+            if (!outReady && !pack()) {
+                //  Nothing more to send, stop polling for output.
+                ioObject.resetPollOut(handle);
+                return;
+            }
+
+            try {
+                if (handle.send(outbuf, address.address()) == 0) {
+                    //  The socket buffer is full. Try again once the socket
+                    //  becomes writable.
+                    return;
+                }
+            }
+            catch (IOException e) {
+                //  The datagram is lost, as if it was dropped on the way.
+            }
+            outReady = false;
+        }
+    }
+
+    //  Packs the messages from the session into the next datagram.
+    //  Returns false if there's nothing to send.
+    private boolean pack()
+    {
+        int limit = Config.UDP_MAX_DATAGRAM.getValue();
+        outbuf.clear();
+
+        while (outbuf.position() < limit) {
+            Msg msg = pending;
+            pending = null;
+            if (msg == null) {
+                msg = session.pullMsg();
+                if (msg == null) {
+                    break;
+                }
+            }
+
+            byte[] group = msg.groupBytes();
+            int groupSize = group == null ? 0 : group.length;
+            int encodedSize = HEADER_SIZE + groupSize + msg.size();
+
+            //  A message that can't fit even into a datagram of its own
+            //  cannot be delivered at all.
+            if (encodedSize > MAX_DATAGRAM) {
+                continue;
+            }
+
+            //  Leave the message to the next datagram unless this one
+            //  is empty, in which case the message is sent on its own.
+            if (outbuf.position() > 0 && outbuf.position() + encodedSize > limit) {
+                pending = msg;
+                break;
+            }
+
+            outbuf.put((byte) groupSize);
+            if (group != null) {
+                outbuf.put(group);
+            }
+            outbuf.putShort((short) msg.size());
+            outbuf.put(msg.buf());
+        }
+
+        outbuf.flip();
+        outReady = outbuf.hasRemaining();
+        return outReady;
+    }
+
+    @Override
+    public void activateOut()
+    {
+        if (!send) {
+            dropOutbound();
+            return;
+        }
+
+        ioObject.setPollOut(handle);
+
+        //  Speculative write, as with the stream engine.
+        outEvent();
+    }
+
+    //  The receiving side has nowhere to send the joins and leaves of
+    //  the socket, the groups are matched locally. Drop them.
+    private void dropOutbound()
+    {
+        Msg msg = session.pullMsg();
+        while (msg != null) {
+            msg = session.pullMsg();
+        }
+    }
+
+    @Override
+    public void activateIn()
+    {
+        //  Messages are dropped rather than stalled at the high water mark,
+        //  so the engine never stops reading.
+    }
+
+    @Override
+    public void connectEvent()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void acceptEvent()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void timerEvent(int id)
+    {
+        throw new UnsupportedOperationException();
+    }
+}
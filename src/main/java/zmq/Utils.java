@@ -24,7 +24,11 @@ import java.io.IOException;
 import java.lang.reflect.Array;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.NetworkChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SocketChannel;
 import java.security.SecureRandom;
@@ -37,6 +41,9 @@ class Utils
 
     private static SecureRandom random = new SecureRandom();
 
+    //  SO_REUSEPORT socket option, only available as of Java 9.
+    private static final SocketOption<Boolean> SO_REUSEPORT = reusePortOption();
+
     public static int generateRandom()
     {
         return random.nextInt();
@@ -79,6 +86,58 @@ class Utils
         }
     }
 
+    public static void tuneTcpSocket(AsynchronousSocketChannel ch)
+    {
+        try {
+            ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        catch (IOException e) {
+        }
+    }
+
+    public static void tuneTcpKeepalives(AsynchronousSocketChannel ch, int tcpKeepalive,
+            int tcpKeepaliveCnt, int tcpKeepaliveIdle,
+            int tcpKeepaliveIntvl) throws IOException
+    {
+        if (tcpKeepalive == 1) {
+            ch.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+        }
+        else if (tcpKeepalive == 0) {
+            ch.setOption(StandardSocketOptions.SO_KEEPALIVE, false);
+        }
+    }
+
+    //  Lets other sockets bind the same port, for the system to spread
+    //  the incoming connections over them. Returns false if the option
+    //  is not supported by the Java version or the platform.
+    public static boolean setReusePort(NetworkChannel ch)
+    {
+        if (SO_REUSEPORT == null || !ch.supportedOptions().contains(SO_REUSEPORT)) {
+            return false;
+        }
+        try {
+            ch.setOption(SO_REUSEPORT, true);
+            return true;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePortOption()
+    {
+        try {
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        }
+        catch (NoSuchFieldException e) {
+            return null;
+        }
+        catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
     public static void unblockSocket(SelectableChannel s) throws IOException
     {
         s.configureBlocking(false);
@@ -27,6 +27,8 @@ public class V1Decoder extends DecoderBase
     private static final int EIGHT_BYTE_SIZE_READY = 1;
     private static final int FLAGS_READY = 2;
     private static final int MESSAGE_READY = 3;
+    private static final int GROUP_SIZE_READY = 4;
+    private static final int GROUP_READY = 5;
 
     private final byte[] tmpbuf;
     private final ByteBuffer tmpbufWrap;
@@ -34,6 +36,8 @@ public class V1Decoder extends DecoderBase
     private IMsgSink msgSink;
     private final long maxmsgsize;
     private int msgFlags;
+    private int protocolFlags;
+    private final byte[] groupBuf;
 
     public V1Decoder(int bufsize, long maxmsgsize, IMsgSink session)
     {
@@ -43,6 +47,7 @@ public class V1Decoder extends DecoderBase
         msgSink = session;
 
         tmpbuf = new byte[8];
+        groupBuf = new byte[ZMQ.ZMQ_GROUP_MAX_LENGTH];
         tmpbufWrap = ByteBuffer.wrap(tmpbuf);
         tmpbufWrap.limit(1);
 
@@ -69,6 +74,10 @@ public class V1Decoder extends DecoderBase
             return flagsReady();
         case MESSAGE_READY:
             return messageReady();
+        case GROUP_SIZE_READY:
+            return groupSizeReady();
+        case GROUP_READY:
+            return groupReady();
         default:
             return false;
         }
@@ -95,10 +104,7 @@ public class V1Decoder extends DecoderBase
         inProgress = getMsgAllocator().allocate(size);
 
         inProgress.setFlags(msgFlags);
-        nextStep(inProgress,
-                MESSAGE_READY);
-
-        return true;
+        return sizeReady();
     }
 
     private boolean eightByteSizeReady()
@@ -129,9 +135,42 @@ public class V1Decoder extends DecoderBase
         inProgress = getMsgAllocator().allocate((int) msgSize);
 
         inProgress.setFlags(msgFlags);
-        nextStep(inProgress,
-                MESSAGE_READY);
+        return sizeReady();
+    }
+
+    private boolean sizeReady()
+    {
+        //  The group, if any, comes before the message body.
+        if ((protocolFlags & V1Protocol.GROUP_FLAG) > 0) {
+            tmpbufWrap.position(0);
+            tmpbufWrap.limit(1);
+            nextStep(tmpbufWrap, GROUP_SIZE_READY);
+        }
+        else {
+            nextStep(inProgress, MESSAGE_READY);
+        }
+
+        return true;
+    }
+
+    private boolean groupSizeReady()
+    {
+        nextStep(groupBuf, tmpbuf[0] & 0xff, GROUP_READY);
+        return true;
+    }
+
+    private boolean groupReady()
+    {
+        int size = tmpbuf[0] & 0xff;
+        inProgress.setGroup(new String(groupBuf, 0, size, ZMQ.CHARSET));
+        if ((protocolFlags & V1Protocol.JOIN_FLAG) > 0) {
+            inProgress.initJoin();
+        }
+        else if ((protocolFlags & V1Protocol.LEAVE_FLAG) > 0) {
+            inProgress.initLeave();
+        }
 
+        nextStep(inProgress, MESSAGE_READY);
         return true;
     }
 
@@ -140,6 +179,7 @@ public class V1Decoder extends DecoderBase
         //  Store the flags from the wire into the message structure.
         msgFlags = 0;
         int first = tmpbuf[0];
+        protocolFlags = first;
         if ((first & V1Protocol.MORE_FLAG) > 0) {
             msgFlags |= Msg.MORE;
         }
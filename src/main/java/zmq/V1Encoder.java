@@ -36,7 +36,7 @@ public class V1Encoder extends EncoderBase
     public V1Encoder(int bufsize, IMsgSource session)
     {
         super(bufsize);
-        tmpbuf = new byte[9];
+        tmpbuf = new byte[10 + ZMQ.ZMQ_GROUP_MAX_LENGTH];
         tmpbufWrap = ByteBuffer.wrap(tmpbuf);
         msgSource = session;
 
@@ -66,7 +66,7 @@ public class V1Encoder extends EncoderBase
     private boolean sizeReady()
     {
         //  Write message body into the buffer.
-        nextStep(inProgress.buf(), MESSAGE_READY, !inProgress.hasMore());
+        nextStep(inProgress, MESSAGE_READY, !inProgress.hasMore());
         return true;
     }
 
@@ -93,23 +93,43 @@ public class V1Encoder extends EncoderBase
         if (inProgress.size() > 255) {
             protocolFlags |= V1Protocol.LARGE_FLAG;
         }
+        final byte[] group = inProgress.groupBytes();
+        if (group != null) {
+            protocolFlags |= V1Protocol.GROUP_FLAG;
+        }
+        if (inProgress.isJoin()) {
+            protocolFlags |= V1Protocol.JOIN_FLAG;
+        }
+        else if (inProgress.isLeave()) {
+            protocolFlags |= V1Protocol.LEAVE_FLAG;
+        }
         tmpbuf[0] = (byte) protocolFlags;
 
         //  Encode the message length. For messages less then 256 bytes,
         //  the length is encoded as 8-bit unsigned integer. For larger
         //  messages, 64-bit unsigned integer in network byte order is used.
         final int size = inProgress.size();
-        tmpbufWrap.position(0);
+        int pos;
+        tmpbufWrap.clear();
         if (size > 255) {
-            tmpbufWrap.limit(9);
             tmpbufWrap.putLong(1, size);
-            nextStep(tmpbufWrap, SIZE_READY, false);
+            pos = 9;
         }
         else {
-            tmpbufWrap.limit(2);
             tmpbuf[1] = (byte) (size);
-            nextStep(tmpbufWrap, SIZE_READY, false);
+            pos = 2;
         }
+
+        //  The group goes along with the size, so that the receiver gets
+        //  it without having to parse the message body.
+        if (group != null) {
+            tmpbuf[pos++] = (byte) group.length;
+            System.arraycopy(group, 0, tmpbuf, pos, group.length);
+            pos += group.length;
+        }
+
+        tmpbufWrap.limit(pos);
+        nextStep(tmpbufWrap, SIZE_READY, false);
         return true;
     }
 }
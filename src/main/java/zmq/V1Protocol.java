@@ -26,6 +26,18 @@ class V1Protocol
     }
 
     public static final int VERSION = 1;
+
+    //  Announced instead of VERSION by the peers offering compression.
+    //  Older peers take it for VERSION and the offer is ignored.
+    public static final int COMPRESSION_VERSION = 2;
     public static final int MORE_FLAG = 1;
     public static final int LARGE_FLAG = 2;
+
+    //  The size is followed by the group of the message: one byte
+    //  of length and the group itself, UTF-8 encoded.
+    public static final int GROUP_FLAG = 4;
+
+    //  The message asks for joining or leaving its group.
+    public static final int JOIN_FLAG = 8;
+    public static final int LEAVE_FLAG = 16;
 }
@@ -0,0 +1,254 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.nio.ByteBuffer;
+
+//  Decoder for ZMTP/3.1 framing. Frames that are complete in the buffer
+//  are decoded in a single pass, straight from the buffer. Only the frames
+//  split between reads go through the state machine.
+
+public class V3Decoder extends DecoderBase
+{
+    private static final int FLAGS_READY = 0;
+    private static final int EIGHT_BYTE_SIZE_READY = 1;
+    private static final int MESSAGE_READY = 2;
+
+    private final byte[] tmpbuf;
+    private final ByteBuffer tmpbufWrap;
+    private Msg inProgress;
+    private IMsgSink msgSink;
+
+    //  The receiver of the decoded commands.
+    private final IMsgSink commandSink;
+    private final long maxmsgsize;
+
+    public V3Decoder(int bufsize, long maxmsgsize, IMsgSink session, IMsgSink commandSink)
+    {
+        super(bufsize);
+
+        this.maxmsgsize = maxmsgsize;
+        this.commandSink = commandSink;
+        msgSink = session;
+
+        tmpbuf = new byte[V3Protocol.MAX_HEADER_SIZE];
+        tmpbufWrap = ByteBuffer.wrap(tmpbuf);
+
+        //  At the beginning, read the flags and the first byte of the size.
+        nextStep(tmpbuf, 2, FLAGS_READY);
+    }
+
+    //  Set the receiver of decoded messages.
+    @Override
+    public void setMsgSink(IMsgSink msgSink)
+    {
+        this.msgSink = msgSink;
+    }
+
+    @Override
+    public int processBuffer(ByteBuffer buf, int size)
+    {
+        if (zeroCopy) {
+            return super.processBuffer(buf, size);
+        }
+
+        int pos = 0;
+        while (true) {
+            //  Decode the frames that are complete in the buffer.
+            while (state() == FLAGS_READY && toRead() == 2 && pos < size) {
+                int n = decodeFrame(buf, size - pos);
+                if (n < 0) {
+                    return -1;
+                }
+                if (n == 0) {
+                    break;
+                }
+                pos += n;
+            }
+
+            //  Done, or stalled on a message the session did not accept.
+            if (pos > 0 && (pos == size || stalled())) {
+                return pos;
+            }
+
+            //  The rest of the buffer holds a partial frame, or we are in
+            //  the middle of one. Let the state machine read no more than
+            //  the current step, so that the following frames take the
+            //  fast path again.
+            int n = super.processBuffer(buf, Math.min(size - pos, toRead()));
+            if (n < 0) {
+                return -1;
+            }
+            pos += n;
+            if (pos == size || stalled()) {
+                return pos;
+            }
+        }
+    }
+
+    @Override
+    public boolean stalled()
+    {
+        return state() == MESSAGE_READY && toRead() == 0;
+    }
+
+    //  Decodes the frame at the position of the buffer if it's complete.
+    //  Returns the size of the frame, 0 if it is not complete and -1 in
+    //  case of an error.
+    private int decodeFrame(ByteBuffer buf, int available)
+    {
+        if (available < 2) {
+            return 0;
+        }
+
+        final int pos = buf.position();
+        final int flags = buf.get(pos);
+        final int headerSize;
+        final long size;
+        if ((flags & V3Protocol.LARGE_FLAG) != 0) {
+            if (available < V3Protocol.MAX_HEADER_SIZE) {
+                return 0;
+            }
+            headerSize = V3Protocol.MAX_HEADER_SIZE;
+            size = buf.getLong(pos + 1);
+        }
+        else {
+            headerSize = 2;
+            size = buf.get(pos + 1) & 0xff;
+        }
+        if (size < 0 || available - headerSize < size) {
+            return 0;
+        }
+
+        if (!sizeReady(flags, size)) {
+            return -1;
+        }
+
+        //  Copy the body from the buffer.
+        buf.position(pos + headerSize);
+        final byte[] array = inProgress.array();
+        if (array != null) {
+            buf.get(array, 0, (int) size);
+        }
+        else {
+            int limit = buf.limit();
+            buf.limit(pos + headerSize + (int) size);
+            inProgress.buf().put(buf);
+            buf.limit(limit);
+        }
+
+        if (!messageReady()) {
+            if (state() < 0) {
+                return -1;
+            }
+            //  Keep the message until the session accepts it.
+            nextStep(tmpbuf, 0, MESSAGE_READY);
+        }
+        return headerSize + (int) size;
+    }
+
+    @Override
+    protected boolean next()
+    {
+        switch(state()) {
+        case FLAGS_READY:
+            return flagsReady();
+        case EIGHT_BYTE_SIZE_READY:
+            return eightByteSizeReady();
+        case MESSAGE_READY:
+            return messageReady();
+        default:
+            return false;
+        }
+    }
+
+    private boolean flagsReady()
+    {
+        //  The rest of the 64-bit size follows if the 'large' bit is set.
+        if ((tmpbuf[0] & V3Protocol.LARGE_FLAG) != 0) {
+            nextStep(tmpbuf, 2, V3Protocol.MAX_HEADER_SIZE, EIGHT_BYTE_SIZE_READY);
+            return true;
+        }
+        if (!sizeReady(tmpbuf[0], tmpbuf[1] & 0xff)) {
+            return false;
+        }
+        nextStep(inProgress, MESSAGE_READY);
+        return true;
+    }
+
+    private boolean eightByteSizeReady()
+    {
+        if (!sizeReady(tmpbuf[0], tmpbufWrap.getLong(1))) {
+            return false;
+        }
+        nextStep(inProgress, MESSAGE_READY);
+        return true;
+    }
+
+    //  Allocates the message for the frame of the given size.
+    private boolean sizeReady(int flags, long size)
+    {
+        //  Message size must not exceed the maximum allowed size
+        //  and must fit within range of size_t data type.
+        if (size < 0 || size > Integer.MAX_VALUE || maxmsgsize >= 0 && size > maxmsgsize) {
+            decodingError();
+            return false;
+        }
+
+        //  Commands are never multi-part.
+        final boolean command = (flags & V3Protocol.COMMAND_FLAG) != 0;
+        if (command && (flags & V3Protocol.MORE_FLAG) != 0) {
+            decodingError();
+            return false;
+        }
+
+        inProgress = getMsgAllocator().allocate((int) size);
+        if ((flags & V3Protocol.MORE_FLAG) != 0) {
+            inProgress.setFlags(Msg.MORE);
+        }
+        if (command) {
+            inProgress.setFlags(Msg.COMMAND);
+        }
+        return true;
+    }
+
+    private boolean messageReady()
+    {
+        //  Message is completely read. Push it further and start reading
+        //  new message.
+        final boolean command = (inProgress.flags() & Msg.COMMAND) != 0;
+        final IMsgSink sink = command ? commandSink : msgSink;
+        if (sink == null) {
+            return false;
+        }
+
+        int rc = sink.pushMsg(inProgress);
+        if (rc != 0) {
+            if (rc != ZError.EAGAIN) {
+                decodingError();
+            }
+
+            return false;
+        }
+
+        nextStep(tmpbuf, 2, FLAGS_READY);
+        return true;
+    }
+}
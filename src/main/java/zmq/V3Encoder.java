@@ -0,0 +1,138 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+//  Encoder for ZMTP/3.1 framing. Converts messages and commands into
+//  data stream.
+
+public class V3Encoder extends EncoderBase
+{
+    private static final int SIZE_READY = 0;
+    private static final int MESSAGE_READY = 1;
+
+    private Msg inProgress;
+    private final byte[] tmpbuf;
+    private final ByteBuffer tmpbufWrap;
+    private IMsgSource msgSource;
+
+    //  Commands waiting to be sent in between two messages.
+    private final Deque<Msg> commands;
+
+    //  True if the last frame pulled from the source has more frames
+    //  to follow.
+    private boolean more;
+
+    public V3Encoder(int bufsize, IMsgSource session)
+    {
+        super(bufsize);
+        tmpbuf = new byte[V3Protocol.MAX_HEADER_SIZE];
+        tmpbufWrap = ByteBuffer.wrap(tmpbuf);
+        msgSource = session;
+        commands = new ArrayDeque<Msg>();
+        more = false;
+
+        //  Write 0 bytes to the batch and go to messageReady state.
+        nextStep((byte[]) null, 0, MESSAGE_READY, true);
+    }
+
+    @Override
+    public void setMsgSource(IMsgSource msgSource)
+    {
+        this.msgSource = msgSource;
+    }
+
+    //  Sends the command once the message being encoded, including all
+    //  its frames, is done.
+    public void command(Msg command)
+    {
+        assert ((command.flags() & Msg.COMMAND) != 0);
+        commands.add(command);
+    }
+
+    @Override
+    protected boolean next()
+    {
+        switch(state()) {
+        case SIZE_READY:
+            return sizeReady();
+        case MESSAGE_READY:
+            return messageReady();
+        default:
+            return false;
+        }
+    }
+
+    private boolean sizeReady()
+    {
+        //  Write message body into the buffer.
+        nextStep(inProgress, MESSAGE_READY, !inProgress.hasMore());
+        return true;
+    }
+
+    private boolean messageReady()
+    {
+        //  Commands go in between messages, the frames of a multi-part
+        //  message must not be interleaved with them.
+        if (!more && !commands.isEmpty()) {
+            inProgress = commands.poll();
+        }
+        else {
+            if (msgSource == null) {
+                return false;
+            }
+
+            inProgress = msgSource.pullMsg();
+            if (inProgress == null) {
+                return false;
+            }
+            more = inProgress.hasMore();
+        }
+
+        int protocolFlags = 0;
+        if (inProgress.hasMore()) {
+            protocolFlags |= V3Protocol.MORE_FLAG;
+        }
+        if ((inProgress.flags() & Msg.COMMAND) != 0) {
+            protocolFlags |= V3Protocol.COMMAND_FLAG;
+        }
+
+        //  Frames up to 255 bytes have one-byte size, larger ones have
+        //  64-bit size in network byte order.
+        final int size = inProgress.size();
+        tmpbufWrap.clear();
+        if (size > 255) {
+            protocolFlags |= V3Protocol.LARGE_FLAG;
+            tmpbufWrap.putLong(1, size);
+            tmpbufWrap.limit(9);
+        }
+        else {
+            tmpbuf[1] = (byte) size;
+            tmpbufWrap.limit(2);
+        }
+        tmpbuf[0] = (byte) protocolFlags;
+
+        nextStep(tmpbufWrap, SIZE_READY, false);
+        return true;
+    }
+}
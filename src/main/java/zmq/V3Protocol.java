@@ -0,0 +1,191 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.nio.ByteBuffer;
+
+//  ZMTP/3.1 framing, the protocol spoken by libzmq 4.x. The greeting
+//  carries the security mechanism, and the peers exchange READY commands
+//  with the socket metadata before the message flow starts.
+
+class V3Protocol
+{
+    private V3Protocol()
+    {
+    }
+
+    public static final int MAJOR_VERSION = 3;
+    public static final int MINOR_VERSION = 1;
+
+    //  Size of the greeting: signature (10 bytes), version (2 bytes),
+    //  mechanism (20 bytes), as-server (1 byte) and filler (31 bytes).
+    public static final int GREETING_SIZE = 64;
+    public static final int MECHANISM_POS = 12;
+    public static final int MECHANISM_SIZE = 20;
+
+    public static final int MORE_FLAG = 1;
+    public static final int LARGE_FLAG = 2;
+    public static final int COMMAND_FLAG = 4;
+
+    //  The largest frame header: flags and 8-byte size.
+    public static final int MAX_HEADER_SIZE = 9;
+
+    public static final byte[] NULL_MECHANISM = "NULL".getBytes(ZMQ.CHARSET);
+
+    public static final String READY = "READY";
+    public static final String ERROR = "ERROR";
+    public static final String PING = "PING";
+    public static final String PONG = "PONG";
+    public static final String SUBSCRIBE = "SUBSCRIBE";
+    public static final String CANCEL = "CANCEL";
+
+    public static final String SOCKET_TYPE = "Socket-Type";
+    public static final String IDENTITY = "Identity";
+
+    //  Maximum size of the context of PING and PONG commands.
+    public static final int MAX_PING_CONTEXT = 16;
+
+    private static final String[] SOCKET_TYPES = {
+        "PAIR", "PUB", "SUB", "REQ", "REP", "DEALER", "ROUTER", "PULL", "PUSH",
+        "XPUB", "XSUB", "STREAM", "SERVER", "CLIENT", "RADIO", "DISH"
+    };
+
+    public static String socketType(int type)
+    {
+        return SOCKET_TYPES[type];
+    }
+
+    //  Returns true if the socket of the given type can talk to the peer
+    //  socket advertised in its READY command.
+    public static boolean compatible(int type, String peer)
+    {
+        switch (type) {
+        case ZMQ.ZMQ_PAIR:
+            return peer.equals("PAIR");
+        case ZMQ.ZMQ_PUB:
+        case ZMQ.ZMQ_XPUB:
+            return peer.equals("SUB") || peer.equals("XSUB");
+        case ZMQ.ZMQ_SUB:
+        case ZMQ.ZMQ_XSUB:
+            return peer.equals("PUB") || peer.equals("XPUB");
+        case ZMQ.ZMQ_REQ:
+            return peer.equals("REP") || peer.equals("ROUTER");
+        case ZMQ.ZMQ_REP:
+            return peer.equals("REQ") || peer.equals("DEALER");
+        case ZMQ.ZMQ_DEALER:
+            return peer.equals("REP") || peer.equals("DEALER") || peer.equals("ROUTER");
+        case ZMQ.ZMQ_ROUTER:
+            return peer.equals("REQ") || peer.equals("DEALER") || peer.equals("ROUTER");
+        case ZMQ.ZMQ_PULL:
+            return peer.equals("PUSH");
+        case ZMQ.ZMQ_PUSH:
+            return peer.equals("PULL");
+        case ZMQ.ZMQ_SERVER:
+            return peer.equals("CLIENT");
+        case ZMQ.ZMQ_CLIENT:
+            return peer.equals("SERVER");
+        case ZMQ.ZMQ_RADIO:
+            return peer.equals("DISH");
+        case ZMQ.ZMQ_DISH:
+            return peer.equals("RADIO");
+        default:
+            return false;
+        }
+    }
+
+    //  Returns true if the peers of the given socket type expect its
+    //  identity in the READY command.
+    public static boolean sendsIdentity(int type)
+    {
+        return type == ZMQ.ZMQ_REQ || type == ZMQ.ZMQ_DEALER || type == ZMQ.ZMQ_ROUTER;
+    }
+
+    //  Builds a command frame: the name, preceded by its length,
+    //  followed by the command data.
+    public static Msg command(String name, int dataSize)
+    {
+        Msg msg = new Msg(1 + name.length() + dataSize);
+        msg.setFlags(Msg.COMMAND);
+        msg.put((byte) name.length());
+        msg.put(name.getBytes(ZMQ.CHARSET));
+        return msg;
+    }
+
+    //  Returns the size of a metadata property in the READY command.
+    public static int propertySize(String name, int valueSize)
+    {
+        return 1 + name.length() + 4 + valueSize;
+    }
+
+    //  Appends a metadata property: the name, preceded by its one-byte
+    //  length, and the value, preceded by its four-byte length.
+    public static void putProperty(Msg msg, String name, byte[] value, int valueSize)
+    {
+        msg.put((byte) name.length());
+        msg.put(name.getBytes(ZMQ.CHARSET));
+        msg.put((byte) (valueSize >>> 24));
+        msg.put((byte) (valueSize >>> 16));
+        msg.put((byte) (valueSize >>> 8));
+        msg.put((byte) valueSize);
+        msg.put(value, 0, valueSize);
+    }
+
+    //  Returns true if the command frame has the given name.
+    public static boolean isCommand(Msg msg, String name)
+    {
+        int size = msg.size();
+        if (size < 1 + name.length() || (msg.get(0) & 0xff) != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (msg.get(1 + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //  Returns the value of the metadata property of the READY command,
+    //  null if there's no such property or the metadata are malformed.
+    public static byte[] property(Msg msg, String name)
+    {
+        ByteBuffer buf = ByteBuffer.wrap(msg.data());
+        buf.position(1 + READY.length());
+        while (buf.hasRemaining()) {
+            int nameSize = buf.get() & 0xff;
+            if (buf.remaining() < nameSize + 4) {
+                return null;
+            }
+            byte[] propertyName = new byte[nameSize];
+            buf.get(propertyName);
+            int valueSize = buf.getInt();
+            if (valueSize < 0 || buf.remaining() < valueSize) {
+                return null;
+            }
+            if (new String(propertyName, ZMQ.CHARSET).equalsIgnoreCase(name)) {
+                byte[] value = new byte[valueSize];
+                buf.get(value);
+                return value;
+            }
+            buf.position(buf.position() + valueSize);
+        }
+        return null;
+    }
+}
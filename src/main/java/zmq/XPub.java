@@ -204,7 +204,7 @@ class XPub extends SocketBase
 
         //  For the first part of multi-part message, find the matching pipes.
         if (!more) {
-            subscriptions.match(msg.buf(), msg.size(),
+            subscriptions.match(msg, msg.size(),
                     markAsMatching, this);
         }
 
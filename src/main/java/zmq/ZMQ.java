@@ -22,12 +22,13 @@ package zmq;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.charset.Charset;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 
 public class ZMQ
 {
@@ -64,6 +65,13 @@ public class ZMQ
     public static final int ZMQ_PUSH = 8;
     public static final int ZMQ_XPUB = 9;
     public static final int ZMQ_XSUB = 10;
+    public static final int ZMQ_SERVER = 12;
+    public static final int ZMQ_CLIENT = 13;
+    public static final int ZMQ_RADIO = 14;
+    public static final int ZMQ_DISH = 15;
+
+    /*  Maximum length of the RADIO/DISH groups, in bytes.                        */
+    public static final int ZMQ_GROUP_MAX_LENGTH = 255;
 
     /*  Deprecated aliases                                                        */
     @Deprecated
@@ -108,12 +116,25 @@ public class ZMQ
     public static final int ZMQ_ROUTER_HANDOVER = 56;
     public static final int ZMQ_XPUB_NODROP = 69;
     public static final int ZMQ_BLOCKY = 70;
+    public static final int ZMQ_HEARTBEAT_IVL = 75;
+    public static final int ZMQ_HEARTBEAT_TTL = 76;
+    public static final int ZMQ_HEARTBEAT_TIMEOUT = 77;
     public static final int ZMQ_XPUB_VERBOSE_UNSUBSCRIBE = 78;
 
     /* Custom options */
     public static final int ZMQ_ENCODER = 1001;
     public static final int ZMQ_DECODER = 1002;
     public static final int ZMQ_MSG_ALLOCATOR = 1003;
+    public static final int ZMQ_READ_BUDGET_BYTES = 1004;
+    public static final int ZMQ_READ_BUDGET_MSGS = 1005;
+    public static final int ZMQ_CORK_IVL = 1006;
+    public static final int ZMQ_COMPRESSION = 1007;
+    public static final int ZMQ_COMPRESSION_DICT = 1008;
+    public static final int ZMQ_PROACTOR = 1009;
+    public static final int ZMQ_IO_REBALANCE_IVL = 1010;
+    public static final int ZMQ_TCP_LISTENERS = 1011;
+    public static final int ZMQ_MAX_CONNECTING = 1012;
+    public static final int ZMQ_DNS_TTL = 1013;
 
     /*  Message options                                                           */
     public static final int ZMQ_MORE = 1;
@@ -439,6 +460,37 @@ public class ZMQ
 
     }
 
+    // Send a batch of messages, flushing the pipes once at the end.
+    //
+    // Multi-part boundaries are given by the MORE flag of each message.
+    // Returns the number of messages sent.
+    //
+    public static int sendBatch(SocketBase s, Msg[] msgs, int flags)
+    {
+        if (s == null || !s.checkTag()) {
+            throw new IllegalStateException();
+        }
+        return s.sendBatch(msgs, flags);
+    }
+
+    // Join the group, for the DISH socket.
+    public static boolean join(SocketBase s, String group)
+    {
+        if (s == null || !s.checkTag()) {
+            throw new IllegalStateException();
+        }
+        return s.join(group);
+    }
+
+    // Leave the group, for the DISH socket.
+    public static boolean leave(SocketBase s, String group)
+    {
+        if (s == null || !s.checkTag()) {
+            throw new IllegalStateException();
+        }
+        return s.leave(group);
+    }
+
     public static int sendMsg(SocketBase s, Msg msg, int flags)
     {
         int sz = msgSize(msg);
@@ -514,6 +566,19 @@ public class ZMQ
         return nread;
     }
 
+    // Receive a batch of up to max messages.
+    //
+    // Multi-part boundaries are given by the MORE flag of each message.
+    // Returns the number of messages received, 0 on error.
+    //
+    public static int recvBatch(SocketBase s, Msg[] out, int max, int flags)
+    {
+        if (s == null || !s.checkTag()) {
+            throw new IllegalStateException();
+        }
+        return s.recvBatch(out, max, flags);
+    }
+
     public static Msg recvMsg(SocketBase s, int flags)
     {
         return s.recv(flags);
@@ -597,19 +662,16 @@ public class ZMQ
      */
     public static int poll(PollItem[] items, int count, long timeout)
     {
-        Selector selector = null;
+        PollSelector polls = null;
         try {
-            selector = PollSelector.open();
+            polls = PollSelector.open();
         }
         catch (IOException e) {
             throw new ZError.IOException(e);
         }
 
-        int ret = poll(selector, items, count, timeout);
-
         //  Do not close selector
-
-        return ret;
+        return poll(polls.get(), polls.readyList(), items, count, timeout);
     }
 
     /**
@@ -636,6 +698,16 @@ public class ZMQ
      * @return number of events
      */
     public static int poll(Selector selector, PollItem[] items, int count, long timeout)
+    {
+        return poll(selector, null, items, count, timeout);
+    }
+
+    //  With a ready list, the sockets report their readiness to the list
+    //  and the selector only watches the channel of the list besides the
+    //  raw channels. Only the sockets reported, and the ones ready at the
+    //  previous poll, are checked. Without, each socket has its mailbox
+    //  channel registered and is checked at every poll.
+    private static int poll(Selector selector, ReadyList readyList, PollItem[] items, int count, long timeout)
     {
         if (items == null) {
             throw new IllegalArgumentException();
@@ -654,41 +726,54 @@ public class ZMQ
         long now = 0L;
         long end = 0L;
 
-        HashMap<SelectableChannel, SelectionKey> saved = new HashMap<SelectableChannel, SelectionKey>();
-        for (SelectionKey key : selector.keys()) {
-            if (key.isValid()) {
-                saved.put(key.channel(), key);
-            }
+        //  The registrations are kept from one poll to the next. Only the
+        //  new items are registered and only the changed interests updated.
+        int registered = 0;
+        int round = 0;
+        if (readyList != null) {
+            round = readyList.nextRound();
+            registered++;
         }
-
         for (int i = 0; i < count; i++) {
             PollItem item = items[i];
             if (item == null) {
                 continue;
             }
 
-            SelectableChannel ch = item.getChannel(); // mailbox channel if ZMQ socket
-            SelectionKey key = saved.remove(ch);
-
+            if (observes(item, readyList)) {
+                continue;
+            }
+            SelectionKey key = item.key(selector);
             if (key != null) {
                 if (key.interestOps() != item.interestOps()) {
                     key.interestOps(item.interestOps());
                 }
-                key.attach(item);
+                if (key.attachment() != item) {
+                    key.attach(item);
+                }
             }
             else {
-                try {
-                    ch.register(selector, item.interestOps(), item);
-                }
-                catch (ClosedChannelException e) {
-                    throw new ZError.IOException(e);
-                }
+                item.key(register(selector, item));
             }
+            registered++;
         }
 
-        if (!saved.isEmpty()) {
-            for (SelectionKey deprecated : saved.values()) {
-                deprecated.cancel();
+        //  Cancel the registrations of the channels not polled anymore.
+        //  This is needed only when the poll set has changed.
+        if (selector.keys().size() != registered) {
+            Set<SelectableChannel> channels = new HashSet<SelectableChannel>();
+            if (readyList != null) {
+                channels.add(readyList.getFd());
+            }
+            for (int i = 0; i < count; i++) {
+                if (items[i] != null && !observed(items[i], readyList, round)) {
+                    channels.add(items[i].getChannel());
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                if (!channels.contains(key.channel())) {
+                    key.cancel();
+                }
             }
         }
 
@@ -722,9 +807,26 @@ public class ZMQ
                     rc = selector.select(waitMillis);
                 }
 
-                for (SelectionKey key : selector.keys()) {
-                    PollItem item = (PollItem) key.attachment();
-                    ready = item.readyOps(key, rc);
+                if (readyList != null) {
+                    for (PollItem item : readyList.drain()) {
+                        item.candidate = true;
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    PollItem item = items[i];
+                    if (item == null) {
+                        continue;
+                    }
+                    if (observed(item, readyList, round)) {
+                        if (!item.candidate) {
+                            continue;
+                        }
+                        item.candidate = false;
+                        ready = item.readyOps(null, rc);
+                    }
+                    else {
+                        ready = item.readyOps(item.key(selector), rc);
+                    }
                     if (ready < 0) {
                         return -1;
                     }
@@ -780,6 +882,47 @@ public class ZMQ
         return nevents;
     }
 
+    //  Makes the socket of the item report its readiness to the ready list,
+    //  if possible. Returns false if the item has to be registered itself.
+    private static boolean observes(PollItem item, ReadyList readyList)
+    {
+        SocketBase socket = item.getSocket();
+        if (readyList == null || socket == null || !socket.getMailbox().observe(item, readyList)) {
+            return false;
+        }
+        //  Readiness may persist without any command, e.g. with messages
+        //  still queued, so the items ready at the previous poll are
+        //  checked again.
+        if (item.readyOps() != 0) {
+            item.candidate = true;
+        }
+        return true;
+    }
+
+    private static boolean observed(PollItem item, ReadyList readyList, int round)
+    {
+        return readyList != null && item.round == round && item.readyList() == readyList;
+    }
+
+    private static SelectionKey register(Selector selector, PollItem item)
+    {
+        SelectableChannel ch = item.getChannel(); // mailbox channel if ZMQ socket
+        try {
+            try {
+                return ch.register(selector, item.interestOps(), item);
+            }
+            catch (CancelledKeyException e) {
+                //  The channel was polled before, its cancelled registration
+                //  goes away with the next selection.
+                selector.selectNow();
+                return ch.register(selector, item.interestOps(), item);
+            }
+        }
+        catch (IOException e) {
+            throw new ZError.IOException(e);
+        }
+    }
+
     public static long startStopwatch()
     {
         return System.nanoTime();
@@ -806,13 +949,18 @@ public class ZMQ
     private static class PollSelector
     {
         private Selector selector;
+        private ReadyList readyList;
 
-        private PollSelector(Selector selector)
+        private PollSelector(Selector selector) throws IOException
         {
             this.selector = selector;
+
+            //  The polled sockets wake up the selector through the list.
+            readyList = new ReadyList();
+            readyList.getFd().register(selector, SelectionKey.OP_READ, readyList);
         }
 
-        public static Selector open() throws IOException
+        public static PollSelector open() throws IOException
         {
             PollSelector polls = POLL_SELECTOR.get();
             if (polls == null) {
@@ -829,7 +977,7 @@ public class ZMQ
                     }
                 }
             }
-            return polls.get();
+            return polls;
         }
 
         public Selector get()
@@ -839,6 +987,11 @@ public class ZMQ
             return selector;
         }
 
+        public ReadyList readyList()
+        {
+            return readyList;
+        }
+
         @Override
         public void finalize()
         {
@@ -847,6 +1000,11 @@ public class ZMQ
             }
             catch (IOException e) {
             }
+            try {
+                readyList.close();
+            }
+            catch (IOException e) {
+            }
             try {
                 super.finalize();
             }
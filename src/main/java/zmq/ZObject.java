@@ -26,8 +26,9 @@ public abstract class ZObject
     //  Context provides access to the global state.
     private final Ctx ctx;
 
-    //  Thread ID of the thread the object belongs to.
-    private final int tid;
+    //  Thread ID of the thread the object belongs to. Objects living in
+    //  I/O threads may move to another I/O thread, see IOThread.migrate.
+    private volatile int tid;
 
     protected ZObject(Ctx ctx, int tid)
     {
@@ -45,6 +46,13 @@ public abstract class ZObject
         return tid;
     }
 
+    //  Moves the object to another thread. To be called by the thread the
+    //  object is leaving, holding the lock of the thread's mailbox.
+    void setTid(int tid)
+    {
+        this.tid = tid;
+    }
+
     protected Ctx getCtx()
     {
         return ctx;
@@ -117,6 +125,14 @@ public abstract class ZObject
             processReaped();
             break;
 
+        case MIGRATE:
+            processMigrate((IOThread.Migration) cmd.arg);
+            break;
+
+        case ADOPT:
+            processAdopt((IOThread.Migration) cmd.arg);
+            break;
+
         default:
             throw new IllegalArgumentException();
         }
@@ -349,6 +365,16 @@ public abstract class ZObject
         throw new UnsupportedOperationException();
     }
 
+    protected void processMigrate(IOThread.Migration migration)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    protected void processAdopt(IOThread.Migration migration)
+    {
+        throw new UnsupportedOperationException();
+    }
+
     //  Special handler called after a command that requires a seqnum
     //  was processed. The implementation should catch up with its counter
     //  of processed commands here.
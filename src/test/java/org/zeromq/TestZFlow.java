@@ -0,0 +1,270 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.zeromq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.zeromq.ZMQ.Context;
+import org.zeromq.ZMQ.Socket;
+
+public class TestZFlow
+{
+    //  Collects the messages, requesting them by the given amount.
+    private static class Collector implements ZFlow.Subscriber<ZMsg>
+    {
+        private final int request;
+        private final List<String> received = new ArrayList<String>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private ZFlow.Subscription subscription;
+        private Throwable error;
+        private int outstanding;
+
+        private Collector(int request)
+        {
+            this.request = request;
+        }
+
+        @Override
+        public synchronized void onSubscribe(ZFlow.Subscription subscription)
+        {
+            this.subscription = subscription;
+            outstanding = request;
+            subscription.request(request);
+        }
+
+        @Override
+        public synchronized void onNext(ZMsg msg)
+        {
+            assertTrue(outstanding > 0);
+            received.add(msg.popString());
+            if (--outstanding == 0) {
+                outstanding = request;
+                subscription.request(request);
+            }
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void onError(Throwable throwable)
+        {
+            error = throwable;
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete()
+        {
+            completed.countDown();
+        }
+
+        private synchronized void await(int count) throws InterruptedException
+        {
+            long end = System.currentTimeMillis() + 5000;
+            while (received.size() < count && System.currentTimeMillis() < end) {
+                wait(100);
+            }
+            assertEquals(count, received.size());
+        }
+    }
+
+    //  Publishes the given number of messages as they are requested.
+    private static class Generator implements ZFlow.Publisher<ZMsg>
+    {
+        private final int count;
+        private final AtomicLong requested = new AtomicLong();
+
+        private Generator(int count)
+        {
+            this.count = count;
+        }
+
+        @Override
+        public void subscribe(final ZFlow.Subscriber<? super ZMsg> subscriber)
+        {
+            subscriber.onSubscribe(new ZFlow.Subscription()
+            {
+                private int sent;
+                private boolean emitting;
+
+                @Override
+                public void request(long n)
+                {
+                    synchronized (this) {
+                        requested.addAndGet(n);
+                        if (emitting) {
+                            return;
+                        }
+                        emitting = true;
+                    }
+                    while (true) {
+                        synchronized (this) {
+                            if (sent == count) {
+                                break;
+                            }
+                            if (sent == requested.get()) {
+                                emitting = false;
+                                return;
+                            }
+                            sent++;
+                        }
+                        ZMsg msg = new ZMsg();
+                        msg.addString("msg" + (sent - 1));
+                        subscriber.onNext(msg);
+                    }
+                    subscriber.onComplete();
+                }
+
+                @Override
+                public void cancel()
+                {
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testPublisher() throws Exception
+    {
+        Context context = ZMQ.context(1);
+        Socket pull = context.socket(ZMQ.PULL);
+        pull.bind("inproc://flow-publisher");
+        Socket push = context.socket(ZMQ.PUSH);
+        push.connect("inproc://flow-publisher");
+
+        Collector collector = new Collector(10);
+        ZFlow.publisher(pull, 4).subscribe(collector);
+        for (int i = 0; i < 1000; i++) {
+            push.send("msg" + i);
+        }
+        collector.await(1000);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("msg" + i, collector.received.get(i));
+        }
+
+        //  A single subscriber is allowed.
+        Collector second = new Collector(1);
+        ZFlow.Publisher<ZMsg> publisher = ZFlow.publisher(pull);
+        Collector first = new Collector(1);
+        publisher.subscribe(first);
+        publisher.subscribe(second);
+        assertTrue(second.completed.await(5, TimeUnit.SECONDS));
+        assertTrue(second.error instanceof IllegalStateException);
+
+        //  Closing the socket completes the stream.
+        pull.close();
+        assertTrue(collector.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(null, collector.error);
+        assertTrue(first.completed.await(5, TimeUnit.SECONDS));
+
+        push.close();
+        context.term();
+    }
+
+    @Test
+    public void testInvalidRequest() throws Exception
+    {
+        Context context = ZMQ.context(1);
+        Socket pull = context.socket(ZMQ.PULL);
+
+        Collector collector = new Collector(0);
+        ZFlow.publisher(pull).subscribe(collector);
+        assertTrue(collector.completed.await(5, TimeUnit.SECONDS));
+        assertTrue(collector.error instanceof IllegalArgumentException);
+
+        pull.close();
+        context.term();
+    }
+
+    @Test
+    public void testSubscriberBackpressure() throws Exception
+    {
+        Context context = ZMQ.context(1);
+        Socket push = context.socket(ZMQ.PUSH);
+        push.setSndHWM(10);
+        push.connect("tcp://127.0.0.1:6661");
+
+        //  Without a peer the stream is paused once the socket is full.
+        Generator generator = new Generator(1000);
+        ZFlow.SocketSubscriber subscriber = ZFlow.subscriber(push, 5);
+        generator.subscribe(subscriber);
+        Thread.sleep(200);
+        assertTrue(generator.requested.get() < 100);
+        assertFalse(subscriber.done().isDone());
+
+        Socket pull = context.socket(ZMQ.PULL);
+        pull.bind("tcp://127.0.0.1:6661");
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("msg" + i, pull.recvStr());
+        }
+        assertEquals(null, subscriber.done().get(5, TimeUnit.SECONDS));
+
+        push.close();
+        pull.close();
+        context.term();
+    }
+
+    @Test
+    public void testForward() throws Exception
+    {
+        Context context = ZMQ.context(1);
+        Socket in = context.socket(ZMQ.PULL);
+        in.bind("inproc://flow-in");
+        Socket out = context.socket(ZMQ.PUSH);
+        out.bind("inproc://flow-out");
+        final Socket source = context.socket(ZMQ.PUSH);
+        source.connect("inproc://flow-in");
+        Socket sink = context.socket(ZMQ.PULL);
+        sink.connect("inproc://flow-out");
+
+        //  The messages flow from socket to socket without a thread of their
+        //  own, across the high water marks.
+        ZFlow.publisher(in).subscribe(ZFlow.subscriber(out));
+        Thread sender = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < 10000; i++) {
+                    source.send("msg" + i);
+                }
+            }
+        };
+        sender.start();
+        for (int i = 0; i < 10000; i++) {
+            assertEquals("msg" + i, sink.recvStr());
+        }
+        sender.join();
+
+        source.close();
+        sink.close();
+        in.close();
+        out.close();
+        context.term();
+    }
+}
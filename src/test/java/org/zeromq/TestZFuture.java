@@ -0,0 +1,272 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.zeromq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.zeromq.ZMQ.Context;
+import org.zeromq.ZMQ.Socket;
+
+import zmq.ZError;
+
+public class TestZFuture
+{
+    @Test
+    public void testRecvAsync() throws Exception
+    {
+        Context context = ZMQ.context(1);
+        Socket pull = context.socket(ZMQ.PULL);
+        pull.bind("inproc://async-recv");
+        Socket push = context.socket(ZMQ.PUSH);
+        push.connect("inproc://async-recv");
+
+        List<ZFuture<ZMsg>> futures = new ArrayList<ZFuture<ZMsg>>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(pull.recvAsync());
+        }
+        final CountDownLatch called = new CountDownLatch(1);
+        final AtomicReference<String> thread = new AtomicReference<String>();
+        futures.get(0).whenComplete(new ZFuture.Listener<ZMsg>()
+        {
+            @Override
+            public void completed(ZMsg value, Throwable error)
+            {
+                thread.set(Thread.currentThread().getName());
+                called.countDown();
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(futures.get(0).isDone());
+
+        for (int i = 0; i < 10; i++) {
+            push.sendMore("part");
+            push.send("msg" + i);
+        }
+
+        //  The receives complete in order, with whole messages.
+        for (int i = 0; i < 10; i++) {
+            ZMsg msg = futures.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals(2, msg.size());
+            assertEquals("part", msg.popString());
+            assertEquals("msg" + i, msg.popString());
+        }
+        assertTrue(called.await(5, TimeUnit.SECONDS));
+        assertEquals("jeromq-async", thread.get());
+
+        //  A message already there completes the future right away.
+        push.send("ready");
+        Thread.sleep(50);
+        assertEquals("ready", pull.recvAsync().get(5, TimeUnit.SECONDS).popString());
+
+        push.close();
+        pull.close();
+        context.term();
+    }
+
+    @Test
+    public void testSendAsync() throws Exception
+    {
+        Context context = ZMQ.context(1);
+        Socket push = context.socket(ZMQ.PUSH);
+        push.setSndHWM(1);
+        push.connect("tcp://127.0.0.1:6660");
+
+        //  The sends beyond the high water mark wait for the peer.
+        List<ZFuture<Void>> futures = new ArrayList<ZFuture<Void>>();
+        for (int i = 0; i < 100; i++) {
+            ZMsg msg = new ZMsg();
+            msg.addString("msg" + i);
+            futures.add(push.sendAsync(msg));
+        }
+        Thread.sleep(100);
+        assertTrue(futures.get(0).isDone());
+        assertFalse(futures.get(99).isDone());
+
+        Socket pull = context.socket(ZMQ.PULL);
+        pull.bind("tcp://127.0.0.1:6660");
+        for (int i = 0; i < 100; i++) {
+            assertEquals("msg" + i, pull.recvStr());
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(null, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+
+        push.close();
+        pull.close();
+        context.term();
+    }
+
+    @Test
+    public void testRequestReplyChain() throws Exception
+    {
+        Context context = ZMQ.context(1);
+        final Socket rep = context.socket(ZMQ.REP);
+        rep.bind("inproc://async-chain");
+        Socket req = context.socket(ZMQ.REQ);
+        req.connect("inproc://async-chain");
+
+        //  The server replies from the listeners, without a thread of its own.
+        final CountDownLatch served = new CountDownLatch(100);
+        rep.recvAsync().whenComplete(new ZFuture.Listener<ZMsg>()
+        {
+            @Override
+            public void completed(ZMsg request, Throwable error)
+            {
+                if (error != null) {
+                    return;
+                }
+                final ZFuture.Listener<ZMsg> self = this;
+                request.addFirst("re:" + request.popString());
+                rep.sendAsync(request).whenComplete(new ZFuture.Listener<Void>()
+                {
+                    @Override
+                    public void completed(Void value, Throwable error)
+                    {
+                        served.countDown();
+                        rep.recvAsync().whenComplete(self);
+                    }
+                });
+            }
+        });
+
+        for (int i = 0; i < 100; i++) {
+            req.send("hello" + i);
+            assertEquals("re:hello" + i, req.recvStr());
+        }
+        assertTrue(served.await(5, TimeUnit.SECONDS));
+
+        req.close();
+        rep.close();
+        context.term();
+    }
+
+    @Test
+    public void testCancel() throws Exception
+    {
+        Context context = ZMQ.context(1);
+        Socket pull = context.socket(ZMQ.PULL);
+        pull.bind("inproc://async-cancel");
+        Socket push = context.socket(ZMQ.PUSH);
+        push.connect("inproc://async-cancel");
+
+        //  A cancelled receive leaves the message to the next one.
+        ZFuture<ZMsg> cancelled = pull.recvAsync();
+        ZFuture<ZMsg> next = pull.recvAsync();
+        assertTrue(cancelled.cancel(false));
+        assertFalse(cancelled.cancel(false));
+        push.send("hello");
+        assertEquals("hello", next.get(5, TimeUnit.SECONDS).popString());
+        try {
+            cancelled.get();
+            fail("Cancelled future completed");
+        }
+        catch (CancellationException e) {
+        }
+
+        //  Closing the socket cancels the pending operations.
+        ZFuture<ZMsg> pending = pull.recvAsync();
+        pull.close();
+        try {
+            pending.get(5, TimeUnit.SECONDS);
+            fail("Pending future completed");
+        }
+        catch (CancellationException e) {
+        }
+
+        push.close();
+        context.term();
+    }
+
+    @Test
+    public void testFailure() throws Exception
+    {
+        Context context = ZMQ.context(1);
+        Socket pub = context.socket(ZMQ.PUB);
+
+        //  Receiving is not supported by PUB sockets.
+        try {
+            pub.recvAsync().get(5, TimeUnit.SECONDS);
+            fail("Receive on PUB completed");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof UnsupportedOperationException);
+        }
+
+        pub.close();
+        context.term();
+
+        //  The operations fail once the context is terminated.
+        try {
+            pub.recvAsync().get(5, TimeUnit.SECONDS);
+            fail("Receive after termination completed");
+        }
+        catch (ExecutionException e) {
+            assertEquals(ZError.ETERM, ((ZMQException) e.getCause()).getErrorCode());
+        }
+    }
+
+    @Test
+    public void testTermFromListener() throws Exception
+    {
+        final Context context = ZMQ.context(1);
+        final Socket pull = context.socket(ZMQ.PULL);
+        pull.bind("inproc://async-term");
+        final Socket push = context.socket(ZMQ.PUSH);
+        push.connect("inproc://async-term");
+
+        //  The listener runs on the asynchronous thread, which can't wait
+        //  for itself when the context terminates.
+        final CountDownLatch terminated = new CountDownLatch(1);
+        pull.recvAsync().whenComplete(new ZFuture.Listener<ZMsg>()
+        {
+            @Override
+            public void completed(ZMsg value, Throwable error)
+            {
+                pull.close();
+                push.close();
+                context.term();
+                terminated.countDown();
+            }
+        });
+        ZFuture<ZMsg> pending = pull.recvAsync();
+        push.send("term");
+
+        assertTrue(terminated.await(5, TimeUnit.SECONDS));
+        try {
+            pending.get(5, TimeUnit.SECONDS);
+            fail("Receive after termination completed");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ZMQException);
+        }
+    }
+}
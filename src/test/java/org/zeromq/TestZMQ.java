@@ -29,11 +29,15 @@ import static org.junit.Assert.fail;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
 import org.zeromq.ZMQ.Context;
 import org.zeromq.ZMQ.Socket;
 
+import zmq.ZError;
+
 public class TestZMQ
 {
     static class Client extends Thread
@@ -87,6 +91,45 @@ public class TestZMQ
         context.term();
     }
 
+    @Test
+    public void testPollerUnregister()
+    {
+        ZMQ.Context context = ZMQ.context(1);
+        ZMQ.Poller poller = new ZMQ.Poller(2);
+        List<Socket> senders = new ArrayList<Socket>();
+        List<Socket> receivers = new ArrayList<Socket>();
+        for (int i = 0; i < 3; i++) {
+            Socket receiver = context.socket(ZMQ.PAIR);
+            receiver.bind("inproc://poller-" + i);
+            Socket sender = context.socket(ZMQ.PAIR);
+            sender.connect("inproc://poller-" + i);
+            assertEquals(i, poller.register(receiver, ZMQ.Poller.POLLIN));
+            senders.add(sender);
+            receivers.add(receiver);
+        }
+
+        //  The last socket takes the place of the unregistered one.
+        poller.unregister(receivers.get(0));
+        assertEquals(2, poller.getNext());
+        assertEquals(receivers.get(2), poller.getSocket(0));
+
+        senders.get(2).send("hello");
+        assertEquals(1, poller.poll(1000));
+        assertTrue(poller.pollin(0));
+        assertEquals("hello", receivers.get(2).recvStr());
+
+        senders.get(1).send("world");
+        assertEquals(1, poller.poll(1000));
+        assertTrue(poller.pollin(1));
+        assertEquals("world", receivers.get(1).recvStr());
+
+        for (int i = 0; i < 3; i++) {
+            senders.get(i).close();
+            receivers.get(i).close();
+        }
+        context.term();
+    }
+
     @Test
     public void testByteBufferSend() throws InterruptedException
     {
@@ -594,4 +637,112 @@ public class TestZMQ
         socket.close();
         ctx.term();
     }
+
+    @Test
+    public void testSendBatch()
+    {
+        Context context = ZMQ.context(1);
+        Socket push = context.socket(ZMQ.PUSH);
+        Socket pull = context.socket(ZMQ.PULL);
+        pull.bind("inproc://batch");
+        push.connect("inproc://batch");
+
+        List<ZMsg> msgs = new ArrayList<ZMsg>();
+        for (int i = 0; i < 10; i++) {
+            ZMsg msg = new ZMsg();
+            msg.add("part" + i);
+            msg.add("last" + i);
+            msgs.add(msg);
+        }
+        assertEquals(10, push.sendBatch(msgs, 0));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("part" + i, pull.recvStr());
+            assertTrue(pull.hasReceiveMore());
+            assertEquals("last" + i, pull.recvStr());
+            assertTrue(!pull.hasReceiveMore());
+        }
+
+        push.close();
+        pull.close();
+        context.term();
+    }
+
+    @Test
+    public void testSendTo()
+    {
+        Context context = ZMQ.context(1);
+        Socket router = context.socket(ZMQ.ROUTER);
+        Socket a = context.socket(ZMQ.DEALER);
+        Socket b = context.socket(ZMQ.DEALER);
+        a.setIdentity("A".getBytes(ZMQ.CHARSET));
+        b.setIdentity("B".getBytes(ZMQ.CHARSET));
+        router.bind("inproc://sendto");
+        a.connect("inproc://sendto");
+        b.connect("inproc://sendto");
+
+        byte[][] ids = {"A".getBytes(ZMQ.CHARSET), "B".getBytes(ZMQ.CHARSET), "C".getBytes(ZMQ.CHARSET)};
+        int[] errors = new int[ids.length];
+        assertEquals(2, router.sendTo(ids, "hello".getBytes(ZMQ.CHARSET), errors));
+        assertEquals(0, errors[0]);
+        assertEquals(0, errors[1]);
+        assertEquals(ZError.EHOSTUNREACH, errors[2]);
+
+        assertEquals("hello", a.recvStr());
+        assertEquals("hello", b.recvStr());
+
+        a.close();
+        b.close();
+        router.close();
+        context.term();
+    }
+
+    @Test
+    public void testClientServer()
+    {
+        Context context = ZMQ.context(1);
+        Socket server = context.socket(ZMQ.SERVER);
+        Socket client = context.socket(ZMQ.CLIENT);
+        server.bind("inproc://client-server");
+        client.connect("inproc://client-server");
+
+        assertTrue(client.send("request"));
+        zmq.Msg request = server.recvMsg(0);
+        assertEquals("request", new String(request.data(), ZMQ.CHARSET));
+
+        zmq.Msg reply = new zmq.Msg("reply".getBytes(ZMQ.CHARSET));
+        reply.setRoutingId(request.getRoutingId());
+        assertTrue(server.sendMsg(reply, 0));
+        assertEquals("reply", client.recvStr());
+
+        client.close();
+        server.close();
+        context.term();
+    }
+
+    @Test
+    public void testRadioDish()
+    {
+        Context context = ZMQ.context(1);
+        Socket radio = context.socket(ZMQ.RADIO);
+        Socket dish = context.socket(ZMQ.DISH);
+        radio.bind("inproc://radio-dish");
+        assertTrue(dish.join("weather"));
+        dish.connect("inproc://radio-dish");
+
+        zmq.Msg news = new zmq.Msg("news".getBytes(ZMQ.CHARSET));
+        news.setGroup("news");
+        assertTrue(radio.sendMsg(news, 0));
+        zmq.Msg weather = new zmq.Msg("sunny".getBytes(ZMQ.CHARSET));
+        weather.setGroup("weather");
+        assertTrue(radio.sendMsg(weather, 0));
+
+        zmq.Msg msg = dish.recvMsg(0);
+        assertEquals("weather", msg.getGroup());
+        assertEquals("sunny", new String(msg.data(), ZMQ.CHARSET));
+
+        dish.close();
+        radio.close();
+        context.term();
+    }
 }
@@ -19,6 +19,8 @@
 
 package org.zeromq;
 
+import java.util.List;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -71,4 +73,47 @@ public class ZMsgTest
         receiver.close();
         ctx.close();
     }
+
+    @Test
+    public void testRecvMsgs() throws Exception
+    {
+        ZMQ.Context ctx = ZMQ.context(0);
+        ZMQ.Socket sender = ctx.socket(ZMQ.PUSH);
+        ZMQ.Socket receiver = ctx.socket(ZMQ.PULL);
+
+        receiver.bind("inproc://batch-" + this.hashCode());
+        sender.connect("inproc://batch-" + this.hashCode());
+
+        for (int i = 0; i < 5; i++) {
+            sender.sendMore("head" + i);
+            sender.sendMore("body" + i);
+            sender.send("tail" + i);
+        }
+
+        //  Three messages are asked for: the frames of the third one must
+        //  all be read, but nothing of the fourth one.
+        List<ZMsg> msgs = ZMsg.recvMsgs(receiver, 3, 0);
+        Assert.assertNotNull(msgs);
+        Assert.assertEquals(3, msgs.size());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(3, msgs.get(i).size());
+            Assert.assertEquals("head" + i, msgs.get(i).popString());
+            Assert.assertEquals("body" + i, msgs.get(i).popString());
+            Assert.assertEquals("tail" + i, msgs.get(i).popString());
+        }
+
+        msgs = ZMsg.recvMsgs(receiver, 10, 0);
+        Assert.assertNotNull(msgs);
+        Assert.assertEquals(2, msgs.size());
+        Assert.assertEquals("head3", msgs.get(0).popString());
+        Assert.assertEquals("head4", msgs.get(1).popString());
+
+        Assert.assertNull(ZMsg.recvMsgs(receiver, 10, ZMQ.NOBLOCK));
+        List<ZFrame> frames = ZFrame.recvFrames(receiver, 10, ZMQ.NOBLOCK);
+        Assert.assertNull(frames);
+
+        sender.close();
+        receiver.close();
+        ctx.close();
+    }
 }
@@ -0,0 +1,128 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package perf;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import zmq.Blob;
+import zmq.RoutingTable;
+import zmq.ZMQ;
+
+//  Measures the cost of looking up the outbound pipe of a ROUTER socket,
+//  comparing the routing table with the previous HashMap keyed by Blob.
+public class RouterLookup
+{
+    private static final int[] PEERS = {1000, 10000, 100000};
+
+    private RouterLookup()
+    {
+    }
+
+    public static void main(String[] argv)
+    {
+        int lookups = 10000000;
+        if (argv.length > 0) {
+            lookups = Integer.parseInt(argv[0]);
+        }
+
+        for (int peers : PEERS) {
+            byte[][] generated = new byte[peers][];
+            byte[][] explicit = new byte[peers][];
+            RoutingTable<Object> table = new RoutingTable<Object>(new Random().nextInt());
+            Map<Blob, Object> map = new HashMap<Blob, Object>();
+
+            for (int i = 0; i < peers; i++) {
+                generated[i] = table.generateKey();
+                table.put(generated[i], generated[i]);
+                map.put(Blob.createBlob(generated[i], false), generated[i]);
+
+                explicit[i] = ("peer-" + i).getBytes(ZMQ.CHARSET);
+                table.put(explicit[i], explicit[i]);
+                map.put(Blob.createBlob(explicit[i], false), explicit[i]);
+            }
+
+            //  Run twice, the first round being the warm-up.
+            for (int round = 0; round < 2; round++) {
+                printf("%d peers, generated ids: table %.1f ns, map %.1f ns",
+                        peers, table(table, generated, lookups), map(map, generated, lookups));
+                printf("%d peers, explicit ids:  table %.1f ns, map %.1f ns",
+                        peers, table(table, explicit, lookups), map(map, explicit, lookups));
+            }
+        }
+    }
+
+    private static double table(RoutingTable<Object> table, byte[][] keys, int lookups)
+    {
+        int[] order = order(keys.length, lookups);
+        long start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < lookups; i++) {
+            if (table.get(keys[order[i & (order.length - 1)]]) != null) {
+                found++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        check(found, lookups);
+        return (double) elapsed / lookups;
+    }
+
+    private static double map(Map<Blob, Object> map, byte[][] keys, int lookups)
+    {
+        int[] order = order(keys.length, lookups);
+        long start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < lookups; i++) {
+            //  As the ROUTER did, copying the identity frame into a Blob.
+            Blob key = Blob.createBlob(keys[order[i & (order.length - 1)]], true);
+            if (map.get(key) != null) {
+                found++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        check(found, lookups);
+        return (double) elapsed / lookups;
+    }
+
+    //  Random order of the peers, so that lookups do not hit the caches
+    //  more than real traffic would.
+    private static int[] order(int peers, int lookups)
+    {
+        Random random = new Random(peers);
+        int[] order = new int[1 << 16];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = random.nextInt(peers);
+        }
+        return order;
+    }
+
+    private static void check(int found, int lookups)
+    {
+        if (found != lookups) {
+            throw new IllegalStateException("missing peers");
+        }
+    }
+
+    private static void printf(String str, Object ... args)
+    {
+        System.out.println(String.format(str, args));
+    }
+}
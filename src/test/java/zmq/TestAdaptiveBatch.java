@@ -0,0 +1,111 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.CoreMatchers.is;
+
+public class TestAdaptiveBatch
+{
+    @Test
+    public void testGrowOnFullBatches()
+    {
+        AdaptiveBatch batch = new AdaptiveBatch(8192, 1024, 65536);
+
+        assertThat(batch.update(8192), is(true));
+        assertThat(batch.size(), is(16384));
+        assertThat(batch.update(16384), is(true));
+        assertThat(batch.update(32768), is(true));
+        assertThat(batch.size(), is(65536));
+
+        //  Ceiling reached.
+        assertThat(batch.update(65536), is(false));
+        assertThat(batch.size(), is(65536));
+    }
+
+    @Test
+    public void testShrinkOnSparseBatches()
+    {
+        AdaptiveBatch batch = new AdaptiveBatch(8192, 1024, 65536);
+
+        for (int i = 0; i < 15; i++) {
+            assertThat(batch.update(10), is(false));
+        }
+        assertThat(batch.update(10), is(true));
+        assertThat(batch.size(), is(4096));
+
+        //  A moderately used batch resets the sparse counter.
+        for (int i = 0; i < 15; i++) {
+            batch.update(10);
+        }
+        batch.update(2048);
+        assertThat(batch.update(10), is(false));
+        assertThat(batch.size(), is(4096));
+
+        for (int i = 0; i < 100; i++) {
+            batch.update(10);
+        }
+        assertThat(batch.size(), is(1024));
+    }
+
+    @Test
+    public void testCeiling()
+    {
+        assertThat(AdaptiveBatch.ceiling(8192, 0), is(Config.MAX_BATCH_SIZE.getValue()));
+        assertThat(AdaptiveBatch.ceiling(8192, 131072), is(131072));
+        assertThat(AdaptiveBatch.ceiling(8192, 1 << 30), is(Config.MAX_BATCH_SIZE.getValue()));
+        assertThat(AdaptiveBatch.ceiling(8192, 4096), is(8192));
+    }
+
+    @Test
+    public void testDecoderResize()
+    {
+        Decoder decoder = new Decoder(64, 256);
+        decoder.setMsgSink(new Helper.DummySession());
+
+        decoder.resize(128);
+        ByteBuffer in = decoder.getBuffer();
+        assertThat(in.capacity(), is(128));
+        assertThat(decoder.bufferSize(), is(128));
+
+        in.put((byte) 4).put((byte) 0).put("abc".getBytes(ZMQ.CHARSET));
+        in.flip();
+        assertThat(decoder.processBuffer(in, 5), is(5));
+    }
+
+    @Test
+    public void testEncoderResize()
+    {
+        Helper.DummySession session = new Helper.DummySession();
+        Encoder encoder = new Encoder(16);
+        encoder.setMsgSource(session);
+
+        encoder.resize(64);
+        assertThat(encoder.bufferSize(), is(64));
+
+        session.pushMsg(new Msg(new byte[40]));
+        Transfer out = encoder.getData(null);
+        assertThat(out.remaining(), is(42));
+    }
+}
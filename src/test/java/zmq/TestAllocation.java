@@ -0,0 +1,294 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.CoreMatchers.is;
+
+//  Guards the steady-state send/recv path against per-message allocations.
+//  The messages received over TCP and the identity frames of ROUTER are
+//  still allocated, each receiver owning them.
+//  The allocated bytes are measured through the HotSpot ThreadMXBean, the
+//  test is skipped on VMs not supporting it.
+public class TestAllocation
+{
+    private static final int WARMUP = 50000;
+    private static final int COUNT = 200000;
+    private static final int ROUND = 100;
+
+    private static com.sun.management.ThreadMXBean threads()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    //  Bytes allocated by the calling thread and the I/O threads, leaving
+    //  out the unrelated threads of the VM.
+    private static long allocated(com.sun.management.ThreadMXBean threads)
+    {
+        long[] ids = threads.getAllThreadIds();
+        ThreadInfo[] infos = threads.getThreadInfo(ids);
+        long[] sizes = threads.getThreadAllocatedBytes(ids);
+        long total = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (infos[i] == null || sizes[i] < 0) {
+                continue;
+            }
+            if (ids[i] == Thread.currentThread().getId() || infos[i].getThreadName().startsWith("iothread-")) {
+                total += sizes[i];
+            }
+        }
+        return total;
+    }
+
+    //  The outcome is checked once at the end, as the matchers of the
+    //  assertions would allocate by themselves.
+    private static void pushPull(SocketBase push, SocketBase pull, Msg msg, int count)
+    {
+        boolean ok = true;
+        for (int i = 0; i < count; i += ROUND) {
+            for (int j = 0; j < ROUND; j++) {
+                ok &= push.send(msg, 0);
+            }
+            for (int j = 0; j < ROUND; j++) {
+                ok &= pull.recv(0) != null;
+            }
+        }
+        assertThat(ok, is(true));
+    }
+
+    @Test
+    public void testInprocPushPull()
+    {
+        com.sun.management.ThreadMXBean threads = threads();
+        long tid = Thread.currentThread().getId();
+
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        assertThat(ZMQ.bind(pull, "inproc://allocation"), is(true));
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        assertThat(ZMQ.connect(push, "inproc://allocation"), is(true));
+
+        Msg msg = new Msg("0123456789".getBytes(ZMQ.CHARSET));
+        pushPull(push, pull, msg, WARMUP);
+
+        long before = threads.getThreadAllocatedBytes(tid);
+        pushPull(push, pull, msg, COUNT);
+        long perMsg = (threads.getThreadAllocatedBytes(tid) - before) / COUNT;
+        assertThat("bytes per message: " + perMsg, perMsg < 8, is(true));
+
+        ZMQ.close(push);
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testInprocDealerRouter()
+    {
+        com.sun.management.ThreadMXBean threads = threads();
+        long tid = Thread.currentThread().getId();
+
+        Ctx ctx = ZMQ.init(1);
+        SocketBase router = ZMQ.socket(ctx, ZMQ.ZMQ_ROUTER);
+        assertThat(ZMQ.bind(router, "inproc://allocation-router"), is(true));
+        SocketBase dealer = ZMQ.socket(ctx, ZMQ.ZMQ_DEALER);
+        assertThat(ZMQ.connect(dealer, "inproc://allocation-router"), is(true));
+
+        Msg msg = new Msg("0123456789".getBytes(ZMQ.CHARSET));
+        boolean ok = true;
+        long before = 0;
+        for (int i = 0; i < WARMUP + COUNT; i += ROUND) {
+            if (i == WARMUP) {
+                before = threads.getThreadAllocatedBytes(tid);
+            }
+            for (int j = 0; j < ROUND; j++) {
+                ok &= dealer.send(msg, 0);
+            }
+            for (int j = 0; j < ROUND; j++) {
+                Msg identity = router.recv(0);
+                Msg body = router.recv(0);
+                ok &= identity != null && body != null;
+                ok &= router.send(identity, ZMQ.ZMQ_SNDMORE);
+                ok &= router.send(body, 0);
+            }
+            for (int j = 0; j < ROUND; j++) {
+                ok &= dealer.recv(0) != null;
+            }
+        }
+        assertThat(ok, is(true));
+
+        //  Only the identity frame is allocated, the caller owning it.
+        long perMsg = (threads.getThreadAllocatedBytes(tid) - before) / COUNT;
+        assertThat("bytes per message: " + perMsg, perMsg < 64, is(true));
+
+        ZMQ.close(dealer);
+        ZMQ.close(router);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testIdentityNotShared()
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase router = ZMQ.socket(ctx, ZMQ.ZMQ_ROUTER);
+        assertThat(ZMQ.bind(router, "inproc://allocation-identity"), is(true));
+        SocketBase dealer = ZMQ.socket(ctx, ZMQ.ZMQ_DEALER);
+        assertThat(ZMQ.connect(dealer, "inproc://allocation-identity"), is(true));
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        assertThat(ZMQ.bind(pull, "inproc://allocation-forward"), is(true));
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        assertThat(ZMQ.connect(push, "inproc://allocation-forward"), is(true));
+
+        ZMQ.send(dealer, "A", 0);
+        ZMQ.send(dealer, "B", 0);
+
+        //  The identity frame forwarded on its own keeps its flags once
+        //  the next message of the same peer is received.
+        Msg identity = ZMQ.recv(router, 0);
+        assertThat(identity.hasMore(), is(true));
+        assertThat(push.send(identity, 0), is(true));
+        ZMQ.recv(router, 0);
+
+        Msg next = ZMQ.recv(router, 0);
+        assertThat(next == identity, is(false));
+        assertThat(next.hasMore(), is(true));
+
+        Msg forwarded = ZMQ.recv(pull, 0);
+        assertThat(forwarded.hasMore(), is(false));
+        assertThat(ZMQ.recv(router, 0).hasMore(), is(false));
+
+        ZMQ.close(push);
+        ZMQ.close(pull);
+        ZMQ.close(dealer);
+        ZMQ.close(router);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testTcpPubSub()
+    {
+        com.sun.management.ThreadMXBean threads = threads();
+
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pub = ZMQ.socket(ctx, ZMQ.ZMQ_PUB);
+        assertThat(ZMQ.bind(pub, "tcp://127.0.0.1:6602"), is(true));
+        SocketBase sub = ZMQ.socket(ctx, ZMQ.ZMQ_SUB);
+        ZMQ.setSocketOption(sub, ZMQ.ZMQ_SUBSCRIBE, "");
+        assertThat(ZMQ.connect(sub, "tcp://127.0.0.1:6602"), is(true));
+        ZMQ.sleep(1);
+
+        Msg msg = new Msg("0123456789".getBytes(ZMQ.CHARSET));
+        pushPull(pub, sub, msg, WARMUP);
+
+        long before = allocated(threads);
+        pushPull(pub, sub, msg, COUNT);
+        long perMsg = (allocated(threads) - before) / COUNT;
+
+        //  Only the received message itself is allocated: the Msg and
+        //  the array of its data.
+        assertThat("bytes per message: " + perMsg, perMsg < 128, is(true));
+
+        ZMQ.close(pub);
+        ZMQ.close(sub);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testTcpPushPull()
+    {
+        com.sun.management.ThreadMXBean threads = threads();
+
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:6603"), is(true));
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        assertThat(ZMQ.connect(push, "tcp://127.0.0.1:6603"), is(true));
+
+        Msg msg = new Msg("0123456789".getBytes(ZMQ.CHARSET));
+        pushPull(push, pull, msg, WARMUP);
+
+        long before = allocated(threads);
+        pushPull(push, pull, msg, COUNT);
+        long perMsg = (allocated(threads) - before) / COUNT;
+
+        //  Only the received message itself is allocated: the Msg and
+        //  the array of its data, plus the bookkeeping of the selector
+        //  whenever the I/O thread polls.
+        assertThat("bytes per message: " + perMsg, perMsg < 160, is(true));
+
+        ZMQ.close(push);
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testTcpDealerRouter()
+    {
+        com.sun.management.ThreadMXBean threads = threads();
+
+        Ctx ctx = ZMQ.init(1);
+        SocketBase router = ZMQ.socket(ctx, ZMQ.ZMQ_ROUTER);
+        assertThat(ZMQ.bind(router, "tcp://127.0.0.1:6604"), is(true));
+        SocketBase dealer = ZMQ.socket(ctx, ZMQ.ZMQ_DEALER);
+        assertThat(ZMQ.connect(dealer, "tcp://127.0.0.1:6604"), is(true));
+
+        Msg msg = new Msg("0123456789".getBytes(ZMQ.CHARSET));
+        boolean ok = true;
+        long before = 0;
+        for (int i = 0; i < WARMUP + COUNT; i += ROUND) {
+            if (i == WARMUP) {
+                before = allocated(threads);
+            }
+            for (int j = 0; j < ROUND; j++) {
+                ok &= dealer.send(msg, 0);
+            }
+            for (int j = 0; j < ROUND; j++) {
+                Msg identity = router.recv(0);
+                Msg body = router.recv(0);
+                ok &= identity != null && body != null;
+                ok &= router.send(identity, ZMQ.ZMQ_SNDMORE);
+                ok &= router.send(body, 0);
+            }
+            for (int j = 0; j < ROUND; j++) {
+                ok &= dealer.recv(0) != null;
+            }
+        }
+        assertThat(ok, is(true));
+
+        //  Both messages received and the identity frame are allocated,
+        //  plus the bookkeeping of the selector.
+        long perMsg = (allocated(threads) - before) / COUNT;
+        assertThat("bytes per message: " + perMsg, perMsg < 320, is(true));
+
+        ZMQ.close(dealer);
+        ZMQ.close(router);
+        ZMQ.term(ctx);
+    }
+}
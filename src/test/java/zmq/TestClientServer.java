@@ -0,0 +1,292 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+public class TestClientServer
+{
+    @Test
+    public void testRoundtrip() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase server = ZMQ.socket(ctx, ZMQ.ZMQ_SERVER);
+        SocketBase client = ZMQ.socket(ctx, ZMQ.ZMQ_CLIENT);
+        boolean rc = ZMQ.bind(server, "tcp://127.0.0.1:6610");
+        assertThat(rc, is(true));
+        rc = ZMQ.connect(client, "tcp://127.0.0.1:6610");
+        assertThat(rc, is(true));
+
+        int sent = ZMQ.send(client, "hello", 0);
+        assertThat(sent, is(5));
+
+        Msg request = ZMQ.recv(server, 0);
+        assertThat(request, notNullValue());
+        assertThat(new String(request.data(), ZMQ.CHARSET), is("hello"));
+        int routingId = request.getRoutingId();
+        assertThat(routingId, not(0));
+
+        Msg reply = new Msg("world".getBytes(ZMQ.CHARSET));
+        reply.setRoutingId(routingId);
+        sent = ZMQ.send(server, reply, 0);
+        assertThat(sent, is(5));
+
+        Msg msg = ZMQ.recv(client, 0);
+        assertThat(msg, notNullValue());
+        assertThat(new String(msg.data(), ZMQ.CHARSET), is("world"));
+        assertThat(msg.getRoutingId(), is(0));
+
+        ZMQ.close(client);
+        ZMQ.close(server);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testInvalidSends() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase server = ZMQ.socket(ctx, ZMQ.ZMQ_SERVER);
+        SocketBase client = ZMQ.socket(ctx, ZMQ.ZMQ_CLIENT);
+        ZMQ.bind(server, "inproc://client-server-invalid");
+        ZMQ.connect(client, "inproc://client-server-invalid");
+
+        //  Multi-part messages are not allowed.
+        int rc = ZMQ.send(client, "part", ZMQ.ZMQ_SNDMORE);
+        assertThat(rc, is(-1));
+        assertThat(client.errno(), is(ZError.EINVAL));
+
+        //  Neither are unknown routing ids.
+        Msg msg = new Msg("nobody".getBytes(ZMQ.CHARSET));
+        msg.setRoutingId(42);
+        rc = ZMQ.send(server, msg, ZMQ.ZMQ_DONTWAIT);
+        assertThat(rc, is(-1));
+        assertThat(server.errno(), is(ZError.EHOSTUNREACH));
+
+        ZMQ.close(client);
+        ZMQ.close(server);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testUnroutableContended() throws Exception
+    {
+        final int threads = 8;
+        final int messages = 2000;
+
+        Ctx ctx = ZMQ.init(1);
+        final SocketBase server = ZMQ.socket(ctx, ZMQ.ZMQ_SERVER);
+        ZMQ.bind(server, "inproc://client-server-unroutable");
+
+        //  Whether the lock is free or not, sends to unknown routing ids
+        //  fail the same way.
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger unreachable = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            executor.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < messages; j++) {
+                        Msg msg = new Msg("nobody".getBytes(ZMQ.CHARSET));
+                        msg.setRoutingId(42);
+                        if (server.send(msg, ZMQ.ZMQ_DONTWAIT)) {
+                            succeeded.incrementAndGet();
+                        }
+                        else if (server.errno() == ZError.EHOSTUNREACH) {
+                            unreachable.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS), is(true));
+        assertThat(succeeded.get(), is(0));
+        assertThat(unreachable.get(), is(threads * messages));
+
+        ZMQ.close(server);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testContendedSendsAtHwm() throws Exception
+    {
+        final int threads = 8;
+        final int messages = 1000;
+
+        Ctx ctx = ZMQ.init(1);
+        SocketBase server = ZMQ.socket(ctx, ZMQ.ZMQ_SERVER);
+        ZMQ.setSocketOption(server, ZMQ.ZMQ_RCVHWM, 10);
+        ZMQ.bind(server, "inproc://client-server-hwm");
+        final SocketBase client = ZMQ.socket(ctx, ZMQ.ZMQ_CLIENT);
+        ZMQ.setSocketOption(client, ZMQ.ZMQ_SNDHWM, 10);
+        ZMQ.connect(client, "inproc://client-server-hwm");
+
+        //  Whether the lock is free or not, the sends succeed only as long
+        //  as the pipe has room for them.
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final AtomicInteger succeeded = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            executor.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < messages; j++) {
+                        if (client.send(new Msg(new byte[] {(byte) j}), ZMQ.ZMQ_DONTWAIT)) {
+                            succeeded.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS), is(true));
+        assertThat(succeeded.get() < threads * messages, is(true));
+
+        //  Every message reported as sent is in the pipe.
+        int received = 0;
+        while (ZMQ.recv(server, ZMQ.ZMQ_DONTWAIT) != null) {
+            received++;
+        }
+        assertThat(received, is(succeeded.get()));
+
+        ZMQ.close(client);
+        ZMQ.close(server);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testSharedClient() throws Exception
+    {
+        final int threads = 32;
+        final int messages = 1000;
+
+        Ctx ctx = ZMQ.init(1);
+        final SocketBase server = ZMQ.socket(ctx, ZMQ.ZMQ_SERVER);
+        final SocketBase client = ZMQ.socket(ctx, ZMQ.ZMQ_CLIENT);
+        ZMQ.bind(server, "tcp://127.0.0.1:6611");
+        ZMQ.connect(client, "tcp://127.0.0.1:6611");
+
+        //  The server echoes everything back.
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        Future<Integer> echo = executor.submit(new Callable<Integer>()
+        {
+            @Override
+            public Integer call()
+            {
+                int count = 0;
+                while (count < threads * messages) {
+                    Msg msg = server.recv(0);
+                    if (msg == null || !server.send(msg, 0)) {
+                        break;
+                    }
+                    count++;
+                }
+                return count;
+            }
+        });
+
+        //  All the threads send and receive through the same client socket.
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger sent = new AtomicInteger();
+        final AtomicInteger received = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            executor.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < messages; j++) {
+                        if (client.send(new Msg(new byte[] {(byte) j}), 0)) {
+                            sent.incrementAndGet();
+                        }
+                        if (client.recv(0) != null) {
+                            received.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        start.countDown();
+
+        assertThat(echo.get(30, TimeUnit.SECONDS), is(threads * messages));
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS), is(true));
+        assertThat(sent.get(), is(threads * messages));
+        assertThat(received.get(), is(threads * messages));
+
+        ZMQ.close(client);
+        ZMQ.close(server);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testErrnoPerThread() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        final SocketBase client = ZMQ.socket(ctx, ZMQ.ZMQ_CLIENT);
+
+        //  Nothing to receive, so EAGAIN in this thread.
+        Msg msg = ZMQ.recv(client, ZMQ.ZMQ_DONTWAIT);
+        assertThat(msg == null, is(true));
+        assertThat(client.errno(), is(ZError.EAGAIN));
+
+        //  While the other thread gets EINVAL.
+        final AtomicInteger other = new AtomicInteger();
+        Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                ZMQ.send(client, "part", ZMQ.ZMQ_SNDMORE);
+                other.set(client.errno());
+            }
+        };
+        thread.start();
+        thread.join();
+        assertThat(other.get(), is(ZError.EINVAL));
+        assertThat(client.errno(), is(ZError.EAGAIN));
+
+        ZMQ.close(client);
+        ZMQ.term(ctx);
+    }
+}
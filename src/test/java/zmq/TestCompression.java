@@ -0,0 +1,267 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+public class TestCompression
+{
+    private static final byte[] DICTIONARY =
+            "{\"symbol\":\"\",\"side\":\"BUY\",\"price\":,\"quantity\":,\"account\":\"\"}".getBytes(ZMQ.CHARSET);
+
+    private static String order(int i)
+    {
+        return "{\"symbol\":\"EURUSD\",\"side\":\"" + (i % 2 == 0 ? "BUY" : "SELL") + "\",\"price\":1."
+                + (1000 + i % 100) + ",\"quantity\":" + (i * 10) + ",\"account\":\"ACC-" + (i % 7) + "\"}";
+    }
+
+    private static byte[] roundtrip(byte[] data, byte[] dict)
+    {
+        byte[] src = new byte[dict.length + data.length];
+        System.arraycopy(dict, 0, src, 0, dict.length);
+        System.arraycopy(data, 0, src, dict.length, data.length);
+
+        byte[] compressed = new byte[data.length + data.length / 255 + 16];
+        int size = new Lz4(src, dict.length).compress(src, dict.length, data.length, compressed, 0,
+                compressed.length);
+        assertThat(size > 0, is(true));
+
+        byte[] out = new byte[dict.length + data.length];
+        System.arraycopy(dict, 0, out, 0, dict.length);
+        int n = Lz4.decompress(compressed, 0, size, out, dict.length, data.length);
+        assertThat(n, is(data.length));
+        assertThat(Arrays.equals(Arrays.copyOfRange(out, dict.length, out.length), data), is(true));
+        return Arrays.copyOf(compressed, size);
+    }
+
+    @Test
+    public void testLz4()
+    {
+        //  Repetitive data compresses well, with overlapping matches.
+        byte[] zeros = new byte[10000];
+        assertThat(roundtrip(zeros, new byte[0]).length < 100, is(true));
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append(order(i));
+        }
+        byte[] orders = sb.toString().getBytes(ZMQ.CHARSET);
+        assertThat(roundtrip(orders, new byte[0]).length < orders.length / 3, is(true));
+
+        //  A dictionary helps small data.
+        byte[] one = order(1).getBytes(ZMQ.CHARSET);
+        assertThat(roundtrip(one, DICTIONARY).length < roundtrip(one, new byte[0]).length, is(true));
+
+        //  Short and random data round trip too.
+        roundtrip(new byte[0], new byte[0]);
+        roundtrip("abc".getBytes(ZMQ.CHARSET), DICTIONARY);
+        byte[] random = new byte[5000];
+        new Random(42).nextBytes(random);
+        roundtrip(random, new byte[0]);
+
+        //  But random data doesn't get smaller.
+        byte[] out = new byte[random.length - 1];
+        assertThat(new Lz4(random, 0).compress(random, 0, random.length, out, 0, out.length), is(-1));
+
+        //  Malformed data is detected.
+        byte[] bad = new byte[] {0x0f, 1, 2, 3};
+        assertThat(Lz4.decompress(bad, 0, bad.length, new byte[100], 0, 100), is(-1));
+    }
+
+    @Test
+    public void testCodec() throws Exception
+    {
+        final List<Msg> in = new ArrayList<Msg>();
+        for (int i = 0; i < 2000; i++) {
+            in.add(new Msg(order(i).getBytes(ZMQ.CHARSET)));
+        }
+        byte[] random = new byte[100000];
+        new Random(42).nextBytes(random);
+        in.add(new Msg(random));
+        int rawSize = 0;
+        for (Msg msg : in) {
+            rawSize += msg.size();
+        }
+
+        final List<Msg> queue = new ArrayList<Msg>(in);
+        EncoderBase encoder = new CompressedEncoder(new V1Encoder(8192, new IMsgSource()
+        {
+            @Override
+            public Msg pullMsg()
+            {
+                return queue.isEmpty() ? null : queue.remove(0);
+            }
+        }), DICTIONARY);
+
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        WritableByteChannel channel = Channels.newChannel(wire);
+        while (true) {
+            Transfer transfer = encoder.getData(null);
+            if (transfer.remaining() == 0) {
+                break;
+            }
+            while (transfer.remaining() > 0) {
+                transfer.transferTo(channel);
+            }
+        }
+        byte[] data = wire.toByteArray();
+
+        //  The orders compress, the random data is sent as is.
+        assertThat(data.length < rawSize - random.length / 2, is(true));
+        assertThat(data.length > random.length, is(true));
+
+        final List<Msg> out = new ArrayList<Msg>();
+        DecoderBase decoder = new CompressedDecoder(new V1Decoder(8192, -1, new IMsgSink()
+        {
+            @Override
+            public int pushMsg(Msg msg)
+            {
+                out.add(msg);
+                return 0;
+            }
+        }), DICTIONARY, 1000);
+
+        int pos = 0;
+        while (pos < data.length) {
+            ByteBuffer buf = decoder.getBuffer();
+            int n = Math.min(buf.remaining(), data.length - pos);
+            buf.put(data, pos, n);
+            buf.flip();
+            assertThat(decoder.processBuffer(buf, n), is(n));
+            pos += n;
+        }
+
+        assertThat(out.size(), is(in.size()));
+        for (int i = 0; i < in.size(); i++) {
+            assertThat(Arrays.equals(out.get(i).data(), in.get(i).data()), is(true));
+        }
+    }
+
+    private void testPushPull(int port, int pushCompression, byte[] pushDict, int pullCompression,
+                              byte[] pullDict)
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_COMPRESSION, pullCompression);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_COMPRESSION_DICT, pullDict);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_RCVTIMEO, 5000);
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:" + port), is(true));
+
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        ZMQ.setSocketOption(push, ZMQ.ZMQ_COMPRESSION, pushCompression);
+        ZMQ.setSocketOption(push, ZMQ.ZMQ_COMPRESSION_DICT, pushDict);
+        assertThat(ZMQ.connect(push, "tcp://127.0.0.1:" + port), is(true));
+
+        char[] large = new char[300000];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (char) ('a' + i % 26);
+        }
+        for (int i = 0; i < 1000; i++) {
+            ZMQ.send(push, order(i), 0);
+        }
+        ZMQ.send(push, new String(large), 0);
+
+        for (int i = 0; i < 1000; i++) {
+            Msg msg = ZMQ.recv(pull, 0);
+            assertThat(msg, notNullValue());
+            assertThat(new String(msg.data(), ZMQ.CHARSET), is(order(i)));
+        }
+        Msg msg = ZMQ.recv(pull, 0);
+        assertThat(msg, notNullValue());
+        assertThat(new String(msg.data(), ZMQ.CHARSET), is(new String(large)));
+
+        ZMQ.close(push);
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testTcp()
+    {
+        testPushPull(6630, 1, DICTIONARY, 1, DICTIONARY);
+    }
+
+    @Test
+    public void testFallback()
+    {
+        //  Compression is used only if both peers agree, with the same dictionary.
+        testPushPull(6631, 1, null, 0, null);
+        testPushPull(6632, 0, null, 1, DICTIONARY);
+        testPushPull(6633, 1, DICTIONARY, 1, null);
+    }
+
+    @Test
+    public void testGreeting() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_COMPRESSION, 1);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_RCVTIMEO, 5000);
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:6634"), is(true));
+
+        Socket peer = new Socket("127.0.0.1", 6634);
+        OutputStream out = peer.getOutputStream();
+        DataInputStream in = new DataInputStream(peer.getInputStream());
+
+        //  The greeting offers compression, followed by the ID of the
+        //  empty dictionary.
+        ByteBuffer greeting = ByteBuffer.allocate(16);
+        greeting.put((byte) 0xff).putLong(1).put((byte) 0x7f);
+        greeting.put((byte) V1Protocol.COMPRESSION_VERSION).put((byte) ZMQ.ZMQ_PUSH);
+        greeting.putInt(CompressedEncoder.dictionaryId(null));
+        out.write(greeting.array());
+
+        byte[] reply = new byte[16];
+        in.readFully(reply);
+        assertThat(reply[10], is((byte) V1Protocol.COMPRESSION_VERSION));
+        assertThat(reply[11], is((byte) ZMQ.ZMQ_PULL));
+        assertThat(ByteBuffer.wrap(reply).getInt(12), is(CompressedEncoder.dictionaryId(null)));
+
+        //  An empty identity and a message, in a stored block.
+        byte[] frames = new byte[] {0, 0, 0, 5, 'h', 'e', 'l', 'l', 'o'};
+        ByteBuffer block = ByteBuffer.allocate(CompressedEncoder.HEADER_SIZE + frames.length);
+        block.put(CompressedEncoder.STORED).putInt(frames.length).putInt(frames.length).put(frames);
+        out.write(block.array());
+
+        Msg msg = ZMQ.recv(pull, 0);
+        assertThat(msg, notNullValue());
+        assertThat(new String(msg.data(), ZMQ.CHARSET), is("hello"));
+
+        peer.close();
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestConnectLimiter
+{
+    @Test
+    public void testLimit()
+    {
+        final AtomicInteger granted = new AtomicInteger();
+        Runnable waiter = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                granted.incrementAndGet();
+            }
+        };
+
+        ConnectLimiter limiter = new ConnectLimiter();
+        limiter.setLimit(2);
+        assertThat(limiter.acquire(waiter), is(true));
+        assertThat(limiter.acquire(waiter), is(true));
+        assertThat(limiter.acquire(waiter), is(false));
+        assertThat(limiter.getAttempts(), is(2L));
+
+        //  The token given back goes to the one in line.
+        limiter.release();
+        assertThat(granted.get(), is(1));
+        assertThat(limiter.getAttempts(), is(3L));
+
+        //  Those leaving the line get no token.
+        assertThat(limiter.acquire(waiter), is(false));
+        assertThat(limiter.cancel(waiter), is(true));
+        limiter.release();
+        assertThat(granted.get(), is(1));
+
+        //  Raising the limit lets the ones in line in.
+        assertThat(limiter.acquire(waiter), is(true));
+        assertThat(limiter.acquire(waiter), is(false));
+        limiter.setLimit(0);
+        assertThat(granted.get(), is(2));
+        assertThat(limiter.acquire(waiter), is(true));
+    }
+
+    @Test
+    public void testConnectStorm()
+    {
+        Ctx ctx = ZMQ.init(2);
+        assertThat(ctx, notNullValue());
+        ZMQ.setContextOption(ctx, ZMQ.ZMQ_MAX_CONNECTING, 1);
+        assertThat(ZMQ.getContextOption(ctx, ZMQ.ZMQ_MAX_CONNECTING), is(1));
+
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:7705"), is(true));
+
+        int count = 50;
+        List<SocketBase> pushes = new ArrayList<SocketBase>();
+        for (int i = 0; i < count; i++) {
+            SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+            assertThat(ZMQ.connect(push, "tcp://127.0.0.1:7705"), is(true));
+            assertThat(ZMQ.send(push, "hello", 0), is(5));
+            pushes.add(push);
+        }
+        for (int i = 0; i < count; i++) {
+            Msg msg = ZMQ.recv(pull, 0);
+            assertThat(msg, notNullValue());
+        }
+        assertTrue(ctx.getConnectAttempts() >= count);
+
+        for (SocketBase push : pushes) {
+            ZMQ.close(push);
+        }
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testTermWhileWaiting() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        assertThat(ctx, notNullValue());
+        ZMQ.setContextOption(ctx, ZMQ.ZMQ_MAX_CONNECTING, 1);
+
+        //  Nobody listens, the connecters keep retrying and waiting in line.
+        List<SocketBase> pushes = new ArrayList<SocketBase>();
+        for (int i = 0; i < 10; i++) {
+            SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+            ZMQ.setSocketOption(push, ZMQ.ZMQ_RECONNECT_IVL, 10);
+            ZMQ.setSocketOption(push, ZMQ.ZMQ_LINGER, 0);
+            assertThat(ZMQ.connect(push, "tcp://127.0.0.1:7706"), is(true));
+            pushes.add(push);
+        }
+        Thread.sleep(300);
+        assertTrue(ctx.getConnectAttempts() > 10);
+
+        for (SocketBase push : pushes) {
+            ZMQ.close(push);
+        }
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testReconnectIvlMax()
+    {
+        Ctx ctx = ZMQ.init(1);
+        assertThat(ctx, notNullValue());
+
+        //  Nobody listens, the connecter keeps retrying with a growing
+        //  interval, jittered but never beyond the maximum.
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        ZMQ.setSocketOption(push, ZMQ.ZMQ_RECONNECT_IVL, 20);
+        ZMQ.setSocketOption(push, ZMQ.ZMQ_RECONNECT_IVL_MAX, 50);
+        ZMQ.setSocketOption(push, ZMQ.ZMQ_LINGER, 0);
+        assertThat(ZMQ.monitorSocket(push, "inproc://monitor-reconnect", ZMQ.ZMQ_EVENT_CONNECT_RETRIED), is(true));
+        SocketBase monitor = ZMQ.socket(ctx, ZMQ.ZMQ_PAIR);
+        assertThat(ZMQ.connect(monitor, "inproc://monitor-reconnect"), is(true));
+        assertThat(ZMQ.connect(push, "tcp://127.0.0.1:7707"), is(true));
+
+        for (int i = 0; i < 20; i++) {
+            ZMQ.Event event = ZMQ.Event.read(monitor);
+            assertThat(event, notNullValue());
+            assertThat(event.event, is(ZMQ.ZMQ_EVENT_CONNECT_RETRIED));
+            int interval = (Integer) event.arg;
+            assertTrue("interval " + interval, interval > 0 && interval <= 50);
+        }
+
+        ZMQ.close(push);
+        ZMQ.close(monitor);
+        ZMQ.term(ctx);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+
+public class TestCork
+{
+    @Test
+    public void testCorkedPushPull()
+    {
+        Ctx ctx = ZMQ.init(1);
+        assertThat(ctx, notNullValue());
+
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:6590"), is(true));
+
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        ZMQ.setSocketOption(push, ZMQ.ZMQ_CORK_IVL, 2000);
+        assertThat(ZMQ.getSocketOption(push, ZMQ.ZMQ_CORK_IVL), is(2000));
+        assertThat(ZMQ.connect(push, "tcp://127.0.0.1:6590"), is(true));
+
+        //  A lone message still arrives once the interval has elapsed.
+        assertThat(ZMQ.send(push, "first", 0), is(5));
+        Msg msg = ZMQ.recv(pull, 0);
+        assertThat(msg, notNullValue());
+        assertThat(new String(msg.data(), ZMQ.CHARSET), is("first"));
+
+        //  Bursts of small messages are all delivered in order.
+        int count = 10000;
+        for (int i = 0; i < count; i++) {
+            assertThat(ZMQ.send(push, Integer.toString(i), 0) > 0, is(true));
+        }
+        for (int i = 0; i < count; i++) {
+            msg = ZMQ.recv(pull, 0);
+            assertThat(msg, notNullValue());
+            assertThat(new String(msg.data(), ZMQ.CHARSET), is(Integer.toString(i)));
+        }
+
+        ZMQ.close(push);
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testFullBatchNotDelayed() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        assertThat(ctx, notNullValue());
+
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_RCVTIMEO, 2000);
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:6591"), is(true));
+
+        //  The interval is way longer than the receive timeout.
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        ZMQ.setSocketOption(push, ZMQ.ZMQ_CORK_IVL, 10000000);
+        ZMQ.setSocketOption(push, ZMQ.ZMQ_LINGER, 0);
+        assertThat(ZMQ.connect(push, "tcp://127.0.0.1:6591"), is(true));
+        //  Let the handshake complete, the engine writes without any delay
+        //  until then.
+        Thread.sleep(200);
+
+        //  Once a full batch is queued, it goes out right away.
+        int count = 2 * Config.OUT_BATCH_SIZE.getValue() / 100;
+        for (int i = 0; i < count; i++) {
+            assertThat(ZMQ.send(push, new Msg(new byte[100]), 0), is(100));
+        }
+        Msg msg = ZMQ.recv(pull, 0);
+        assertThat(msg, notNullValue());
+        assertThat(msg.size(), is(100));
+
+        ZMQ.close(push);
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeInterval()
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        try {
+            ZMQ.setSocketOption(push, ZMQ.ZMQ_CORK_IVL, -1);
+        }
+        finally {
+            ZMQ.close(push);
+            ZMQ.term(ctx);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestHeartbeat
+{
+    //  ZMTP/3.1 greeting and READY command of a PUSH socket.
+    private static final byte[] PUSH_HANDSHAKE = hex(
+            "ff00000000000000017f03014e554c4c00000000000000000000000000000000"
+          + "0000000000000000000000000000000000000000000000000000000000000000"
+          + "041a0552454144590b536f636b65742d547970650000000450555348");
+
+    private static byte[] hex(String hex)
+    {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    //  Connects a raw ZMTP/3.1 PUSH peer, skipping the greeting and READY
+    //  command of the socket.
+    private static Socket connect(int port) throws IOException
+    {
+        Socket peer = new Socket("127.0.0.1", port);
+        peer.setSoTimeout(5000);
+        peer.getOutputStream().write(PUSH_HANDSHAKE);
+        DataInputStream in = new DataInputStream(peer.getInputStream());
+        in.readFully(new byte[V3Protocol.GREETING_SIZE]);
+        readCommand(in);
+        return peer;
+    }
+
+    private static Msg readCommand(DataInputStream in) throws IOException
+    {
+        int flags = in.readUnsignedByte();
+        assertThat(flags, is(V3Protocol.COMMAND_FLAG));
+        byte[] body = new byte[in.readUnsignedByte()];
+        in.readFully(body);
+        return new Msg(body);
+    }
+
+    //  Returns the time it took the peer to close the connection.
+    private static long waitForClose(Socket peer) throws IOException
+    {
+        long start = System.currentTimeMillis();
+        while (peer.getInputStream().read() != -1) {
+            continue;
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    @Test
+    public void testSilentPeer() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_HEARTBEAT_IVL, 100);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_HEARTBEAT_TTL, 1000);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_HEARTBEAT_TIMEOUT, 300);
+        assertThat(ZMQ.getSocketOption(pull, ZMQ.ZMQ_HEARTBEAT_TIMEOUT), is(300));
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:6650"), is(true));
+
+        Socket peer = connect(6650);
+        DataInputStream in = new DataInputStream(peer.getInputStream());
+
+        //  PING with the TTL in deciseconds and no context.
+        Msg ping = readCommand(in);
+        assertThat(V3Protocol.isCommand(ping, V3Protocol.PING), is(true));
+        assertThat(ping.size(), is(7));
+        assertThat(ping.get(5), is((byte) 0));
+        assertThat(ping.get(6), is((byte) 10));
+
+        //  Not answering gets the peer disconnected.
+        assertThat(waitForClose(peer) < 2000, is(true));
+
+        peer.close();
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testAnsweringPeer() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_HEARTBEAT_IVL, 50);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_RCVTIMEO, 5000);
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:6651"), is(true));
+
+        Socket peer = connect(6651);
+        DataInputStream in = new DataInputStream(peer.getInputStream());
+        OutputStream out = peer.getOutputStream();
+
+        //  Answer the heartbeats for a while.
+        long end = System.currentTimeMillis() + 1000;
+        while (System.currentTimeMillis() < end) {
+            Msg ping = readCommand(in);
+            assertThat(V3Protocol.isCommand(ping, V3Protocol.PING), is(true));
+            out.write(hex("040504504f4e47"));
+        }
+
+        //  The connection is still up.
+        out.write(hex("000548656c6c6f"));
+        Msg msg = ZMQ.recv(pull, 0);
+        assertThat(msg, notNullValue());
+        assertThat(new String(msg.data(), ZMQ.CHARSET), is("Hello"));
+
+        peer.close();
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testPeerTtl() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:6652"), is(true));
+
+        //  A PING asking to be disconnected after 300ms of silence.
+        Socket peer = connect(6652);
+        peer.getOutputStream().write(hex("04070450494e470003"));
+        DataInputStream in = new DataInputStream(peer.getInputStream());
+        Msg pong = readCommand(in);
+        assertThat(V3Protocol.isCommand(pong, V3Protocol.PONG), is(true));
+
+        assertThat(waitForClose(peer) < 2000, is(true));
+
+        peer.close();
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testIdleConnection() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_HEARTBEAT_IVL, 50);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_HEARTBEAT_TTL, 200);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_RCVTIMEO, 5000);
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:6653"), is(true));
+
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        ZMQ.setSocketOption(push, ZMQ.ZMQ_HEARTBEAT_IVL, 50);
+        SocketBase monitor = ZMQ.socket(ctx, ZMQ.ZMQ_PAIR);
+        assertThat(ZMQ.monitorSocket(push, "inproc://heartbeat.monitor", ZMQ.ZMQ_EVENT_DISCONNECTED), is(true));
+        assertThat(ZMQ.connect(monitor, "inproc://heartbeat.monitor"), is(true));
+        ZMQ.setSocketOption(monitor, ZMQ.ZMQ_RCVTIMEO, 1000);
+        assertThat(ZMQ.connect(push, "tcp://127.0.0.1:6653"), is(true));
+
+        //  Heartbeats keep an idle connection up.
+        ZMQ.send(push, "first", 0);
+        assertThat(ZMQ.recv(pull, 0), notNullValue());
+        assertThat(ZMQ.recv(monitor, 0) == null, is(true));
+
+        ZMQ.send(push, "second", 0);
+        Msg msg = ZMQ.recv(pull, 0);
+        assertThat(msg, notNullValue());
+        assertThat(new String(msg.data(), ZMQ.CHARSET), is("second"));
+
+        ZMQ.close(push);
+        ZMQ.close(pull);
+        ZMQ.close(monitor);
+        ZMQ.term(ctx);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTtlTooLarge()
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        try {
+            ZMQ.setSocketOption(pull, ZMQ.ZMQ_HEARTBEAT_TTL, 6553600);
+        }
+        finally {
+            ZMQ.close(pull);
+            ZMQ.term(ctx);
+        }
+    }
+
+    @Test
+    public void testNotWithCompression()
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+
+        //  The framing of the compressed connections has no room for
+        //  heartbeats, whichever option comes first.
+        ZMQ.setSocketOption(push, ZMQ.ZMQ_COMPRESSION, 1);
+        try {
+            ZMQ.setSocketOption(push, ZMQ.ZMQ_HEARTBEAT_IVL, 100);
+            fail("Heartbeats enabled with compression");
+        }
+        catch (IllegalArgumentException e) {
+        }
+        assertThat(ZMQ.getSocketOption(push, ZMQ.ZMQ_HEARTBEAT_IVL), is(0));
+
+        ZMQ.setSocketOption(push, ZMQ.ZMQ_COMPRESSION, 0);
+        ZMQ.setSocketOption(push, ZMQ.ZMQ_HEARTBEAT_IVL, 100);
+        try {
+            ZMQ.setSocketOption(push, ZMQ.ZMQ_COMPRESSION, 1);
+            fail("Compression enabled with heartbeats");
+        }
+        catch (IllegalArgumentException e) {
+        }
+        assertThat(ZMQ.getSocketOption(push, ZMQ.ZMQ_COMPRESSION), is(0));
+
+        ZMQ.close(push);
+        ZMQ.term(ctx);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotWithGroups()
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase radio = ZMQ.socket(ctx, ZMQ.ZMQ_RADIO);
+        try {
+            ZMQ.setSocketOption(radio, ZMQ.ZMQ_HEARTBEAT_IVL, 100);
+        }
+        finally {
+            ZMQ.close(radio);
+            ZMQ.term(ctx);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class TestParking
+{
+    @Before
+    public void setUp()
+    {
+        System.setProperty("zmq.park", "true");
+    }
+
+    @After
+    public void tearDown()
+    {
+        System.clearProperty("zmq.park");
+    }
+
+    @Test
+    public void testBlockedReceivers() throws Exception
+    {
+        final Ctx ctx = ZMQ.init(1);
+        int count = 200;
+        SocketBase router = ZMQ.socket(ctx, ZMQ.ZMQ_ROUTER);
+        assertThat(ZMQ.bind(router, "inproc://parking"), is(true));
+
+        final CountDownLatch received = new CountDownLatch(count);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < count; i++) {
+            final SocketBase dealer = ZMQ.socket(ctx, ZMQ.ZMQ_DEALER);
+            ZMQ.setSocketOption(dealer, ZMQ.ZMQ_IDENTITY, ("D" + i).getBytes(ZMQ.CHARSET));
+            assertThat(ZMQ.connect(dealer, "inproc://parking"), is(true));
+            Thread thread = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    Msg msg = ZMQ.recv(dealer, 0);
+                    if (msg != null && msg.size() == 5) {
+                        received.countDown();
+                    }
+                    ZMQ.close(dealer);
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        //  The blocked receivers are parked rather than in a selector.
+        for (Thread thread : threads) {
+            long end = System.currentTimeMillis() + 5000;
+            while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < end) {
+                Thread.sleep(1);
+            }
+            assertThat(thread.getState(), is(Thread.State.WAITING));
+        }
+
+        //  And unparked by the commands arriving at their mailbox.
+        for (int i = 0; i < count; i++) {
+            ZMQ.send(router, "D" + i, ZMQ.ZMQ_SNDMORE);
+            ZMQ.send(router, "hello", 0);
+        }
+        assertThat(received.await(5, TimeUnit.SECONDS), is(true));
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        ZMQ.close(router);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testTimeout() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        assertThat(ZMQ.bind(pull, "inproc://parking-timeout"), is(true));
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_RCVTIMEO, 100);
+
+        long start = System.currentTimeMillis();
+        assertThat(ZMQ.recv(pull, 0), nullValue());
+        assertThat(pull.errno(), is(ZError.EAGAIN));
+        long elapsed = System.currentTimeMillis() - start;
+        assertThat(elapsed >= 90 && elapsed < 2000, is(true));
+
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        assertThat(ZMQ.connect(push, "inproc://parking-timeout"), is(true));
+        ZMQ.send(push, "hello", 0);
+        assertThat(ZMQ.recv(pull, 0), notNullValue());
+
+        ZMQ.close(push);
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+public class TestPgm
+{
+    private static final String GROUP = "239.192.1.1";
+
+    private static void assertRecv(SocketBase sub, String body)
+    {
+        Msg msg = ZMQ.recv(sub, 0);
+        assertThat(msg, notNullValue());
+        assertThat(new String(msg.data(), ZMQ.CHARSET), is(body));
+    }
+
+    private static MulticastSocket multicastSocket(int port) throws Exception
+    {
+        MulticastSocket socket = new MulticastSocket(port);
+        socket.setNetworkInterface(NetworkInterface.getByName("lo"));
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    //  Builds a data packet of the stream carrying the V1 encoded body.
+    private static byte[] packet(byte type, long seq, long trail, String body)
+    {
+        byte[] data = body.getBytes(ZMQ.CHARSET);
+        ByteBuffer buf = ByteBuffer.allocate(PgmProtocol.HEADER_SIZE + 2 + data.length);
+        buf.put(type).putLong(42).putLong(seq).putLong(trail).putShort((short) 0);
+        buf.put((byte) 0).put((byte) data.length).put(data);
+        return buf.array();
+    }
+
+    @Test
+    public void testPubSub() throws Exception
+    {
+        String address = "epgm://127.0.0.1;" + GROUP + ":6620";
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pub = ZMQ.socket(ctx, ZMQ.ZMQ_PUB);
+        SocketBase sub = ZMQ.socket(ctx, ZMQ.ZMQ_SUB);
+        ZMQ.setSocketOption(sub, ZMQ.ZMQ_RCVTIMEO, 5000);
+        ZMQ.setSocketOption(sub, ZMQ.ZMQ_SUBSCRIBE, "A");
+        ZMQ.setSocketOption(pub, ZMQ.ZMQ_RATE, 10000);
+
+        boolean rc = ZMQ.connect(sub, address);
+        assertThat(rc, is(true));
+        rc = ZMQ.bind(pub, address);
+        assertThat(rc, is(true));
+        Thread.sleep(200);
+
+        //  Messages are filtered by the subscriber, and may span packets.
+        String large = new String(new char[5000]).replace('\0', 'x');
+        ZMQ.send(pub, "B-skipped", 0);
+        ZMQ.send(pub, "A-part", ZMQ.ZMQ_SNDMORE);
+        ZMQ.send(pub, "last", 0);
+        ZMQ.send(pub, "A" + large, 0);
+        for (int i = 0; i < 100; i++) {
+            ZMQ.send(pub, "A-" + i, 0);
+        }
+
+        assertRecv(sub, "A-part");
+        assertThat(ZMQ.getSocketOption(sub, ZMQ.ZMQ_RCVMORE), is(1));
+        assertRecv(sub, "last");
+        assertRecv(sub, "A" + large);
+        for (int i = 0; i < 100; i++) {
+            assertRecv(sub, "A-" + i);
+        }
+
+        ZMQ.close(sub);
+        ZMQ.close(pub);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testRate() throws Exception
+    {
+        String address = "epgm://lo;" + GROUP + ":6621";
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pub = ZMQ.socket(ctx, ZMQ.ZMQ_PUB);
+        SocketBase sub = ZMQ.socket(ctx, ZMQ.ZMQ_SUB);
+        ZMQ.setSocketOption(sub, ZMQ.ZMQ_RCVTIMEO, 5000);
+        ZMQ.setSocketOption(sub, ZMQ.ZMQ_SUBSCRIBE, "");
+
+        //  20kB/s, hence 20kB take about a second less the initial burst.
+        ZMQ.setSocketOption(pub, ZMQ.ZMQ_RATE, 160);
+
+        ZMQ.connect(sub, address);
+        ZMQ.connect(pub, address);
+        Thread.sleep(200);
+
+        String body = new String(new char[1000]).replace('\0', 'x');
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 20; i++) {
+            ZMQ.send(pub, body, 0);
+        }
+        for (int i = 0; i < 20; i++) {
+            assertRecv(sub, body);
+        }
+        assertThat(System.currentTimeMillis() - start >= 700, is(true));
+
+        ZMQ.close(sub);
+        ZMQ.close(pub);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testReceiverRepair() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase sub = ZMQ.socket(ctx, ZMQ.ZMQ_SUB);
+        ZMQ.setSocketOption(sub, ZMQ.ZMQ_RCVTIMEO, 5000);
+        ZMQ.setSocketOption(sub, ZMQ.ZMQ_SUBSCRIBE, "");
+        boolean rc = ZMQ.connect(sub, "epgm://127.0.0.1;" + GROUP + ":6622");
+        assertThat(rc, is(true));
+        Thread.sleep(200);
+
+        MulticastSocket sender = multicastSocket(0);
+        InetSocketAddress group = new InetSocketAddress(GROUP, 6622);
+
+        //  The second packet is lost on the way.
+        byte[] first = packet(PgmProtocol.ODATA, 0, 0, "one");
+        byte[] third = packet(PgmProtocol.ODATA, 2, 0, "three");
+        sender.send(new DatagramPacket(first, first.length, group));
+        sender.send(new DatagramPacket(third, third.length, group));
+        assertRecv(sub, "one");
+
+        //  The subscriber asks for it.
+        DatagramPacket nak = new DatagramPacket(new byte[64], 64);
+        sender.receive(nak);
+        ByteBuffer buf = ByteBuffer.wrap(nak.getData(), 0, nak.getLength());
+        assertThat(buf.get(), is(PgmProtocol.NAK));
+        assertThat(buf.getLong(), is(42L));
+        assertThat(buf.getLong(), is(1L));
+
+        //  Once repaired, the stream is delivered in order.
+        byte[] second = packet(PgmProtocol.RDATA, 1, 0, "two");
+        sender.send(new DatagramPacket(second, second.length, group));
+        assertRecv(sub, "two");
+        assertRecv(sub, "three");
+
+        //  A packet that can't be repaired anymore is given up.
+        byte[] fifth = packet(PgmProtocol.ODATA, 4, 4, "five");
+        sender.send(new DatagramPacket(fifth, fifth.length, group));
+        assertRecv(sub, "five");
+
+        sender.close();
+        ZMQ.close(sub);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testSenderRepair() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pub = ZMQ.socket(ctx, ZMQ.ZMQ_PUB);
+        MulticastSocket receiver = multicastSocket(6623);
+        receiver.joinGroup(InetAddress.getByName(GROUP));
+
+        boolean rc = ZMQ.connect(pub, "epgm://127.0.0.1;" + GROUP + ":6623");
+        assertThat(rc, is(true));
+        Thread.sleep(200);
+        ZMQ.send(pub, "hello", 0);
+
+        //  Skip the heartbeats, if any.
+        DatagramPacket packet = new DatagramPacket(new byte[1500], 1500);
+        do {
+            receiver.receive(packet);
+        }
+        while (packet.getData()[0] != PgmProtocol.ODATA);
+        byte[] original = Arrays.copyOf(packet.getData(), packet.getLength());
+        long seq = ByteBuffer.wrap(original).getLong(9);
+
+        //  Ask for the packet again.
+        ByteBuffer nak = ByteBuffer.allocate(PgmProtocol.HEADER_SIZE);
+        nak.put(PgmProtocol.NAK).put(original, 1, 8).putLong(seq).putLong(0).putShort((short) 0);
+        receiver.send(new DatagramPacket(nak.array(), nak.capacity(), packet.getSocketAddress()));
+
+        do {
+            receiver.receive(packet);
+        }
+        while (packet.getData()[0] != PgmProtocol.RDATA);
+        byte[] repair = Arrays.copyOf(packet.getData(), packet.getLength());
+        assertThat(repair.length, is(original.length));
+        assertThat(ByteBuffer.wrap(repair).getLong(9), is(seq));
+        assertThat(Arrays.equals(Arrays.copyOfRange(repair, 25, repair.length),
+                Arrays.copyOfRange(original, 25, original.length)), is(true));
+
+        receiver.close();
+        ZMQ.close(pub);
+        ZMQ.term(ctx);
+    }
+}
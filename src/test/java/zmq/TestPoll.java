@@ -0,0 +1,171 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class TestPoll
+{
+    @Test
+    public void testPersistentRegistrations() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        int count = 300;
+        SocketBase[] senders = new SocketBase[count];
+        SocketBase[] receivers = new SocketBase[count];
+        PollItem[] items = new PollItem[count];
+        for (int i = 0; i < count; i++) {
+            receivers[i] = ZMQ.socket(ctx, ZMQ.ZMQ_PAIR);
+            assertThat(ZMQ.bind(receivers[i], "inproc://poll-" + i), is(true));
+            senders[i] = ZMQ.socket(ctx, ZMQ.ZMQ_PAIR);
+            assertThat(ZMQ.connect(senders[i], "inproc://poll-" + i), is(true));
+            items[i] = new PollItem(receivers[i], ZMQ.ZMQ_POLLIN);
+        }
+
+        Selector selector = Selector.open();
+        assertThat(ZMQ.poll(selector, items, 0), is(0));
+        assertThat(selector.keys().size(), is(count));
+        SelectionKey key = items[7].key(selector);
+
+        //  Only the sockets with messages are signaled, with the same
+        //  registrations poll after poll.
+        for (int round = 0; round < 100; round++) {
+            int i = round * 7 % count;
+            ZMQ.send(senders[i], "hello", 0);
+            assertThat(ZMQ.poll(selector, items, 1000), is(1));
+            assertThat(items[i].isReadable(), is(true));
+            assertThat(ZMQ.recv(receivers[i], 0).size(), is(5));
+        }
+        assertThat(items[7].key(selector) == key, is(true));
+        assertThat(selector.keys().size(), is(count));
+
+        //  Changed interests update the registration.
+        items[7].interestOps(ZMQ.ZMQ_POLLOUT);
+        assertThat(ZMQ.poll(selector, items, 1000), is(1));
+        assertThat(items[7].isWritable(), is(true));
+        assertThat(items[7].key(selector) == key, is(true));
+        items[7].interestOps(ZMQ.ZMQ_POLLIN);
+
+        //  Items removed from the poll set are unregistered.
+        assertThat(ZMQ.poll(selector, items, count - 1, 0), is(0));
+        assertThat(ZMQ.poll(selector, items, count - 1, 0), is(0));
+        assertThat(selector.keys().size(), is(count - 1));
+        assertThat(items[count - 1].key(selector) == null, is(true));
+
+        //  And registered again when added back.
+        ZMQ.send(senders[count - 1], "hello", 0);
+        assertThat(ZMQ.poll(selector, items, 1000), is(1));
+        assertThat(items[count - 1].isReadable(), is(true));
+        assertThat(items[count - 1].key(selector) == null, is(not(true)));
+
+        selector.close();
+        for (int i = 0; i < count; i++) {
+            ZMQ.close(senders[i]);
+            ZMQ.close(receivers[i]);
+        }
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testReadyList() throws Exception
+    {
+        final Ctx ctx = ZMQ.init(1);
+        int count = 500;
+        final SocketBase[] senders = new SocketBase[count];
+        SocketBase[] receivers = new SocketBase[count];
+        PollItem[] items = new PollItem[count + 1];
+        for (int i = 0; i < count; i++) {
+            receivers[i] = ZMQ.socket(ctx, ZMQ.ZMQ_PAIR);
+            assertThat(ZMQ.bind(receivers[i], "inproc://ready-" + i), is(true));
+            senders[i] = ZMQ.socket(ctx, ZMQ.ZMQ_PAIR);
+            assertThat(ZMQ.connect(senders[i], "inproc://ready-" + i), is(true));
+            items[i] = new PollItem(receivers[i], ZMQ.ZMQ_POLLIN);
+        }
+
+        //  All the sockets report to the same list.
+        assertThat(ZMQ.poll(items, count, 0), is(0));
+        ReadyList list = items[0].readyList();
+        assertThat(list == null, is(false));
+        for (int i = 0; i < count; i++) {
+            assertThat(items[i].readyList() == list, is(true));
+        }
+
+        //  A socket signaled while the poller waits wakes it up.
+        Thread sender = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                ZMQ.sleep(1);
+                ZMQ.send(senders[123], "hello", 0);
+            }
+        };
+        sender.start();
+        assertThat(ZMQ.poll(items, count, 5000), is(1));
+        assertThat(items[123].isReadable(), is(true));
+        sender.join();
+
+        //  Readiness persists until the message is read.
+        assertThat(ZMQ.poll(items, count, 0), is(1));
+        assertThat(items[123].isReadable(), is(true));
+        assertThat(ZMQ.recv(receivers[123], 0).size(), is(5));
+        assertThat(ZMQ.poll(items, count, 0), is(0));
+        assertThat(items[123].isReadable(), is(false));
+
+        for (int round = 0; round < 100; round++) {
+            int i = round * 7 % count;
+            ZMQ.send(senders[i], "hello", 0);
+            assertThat(ZMQ.poll(items, count, 1000), is(1));
+            assertThat(items[i].isReadable(), is(true));
+            assertThat(ZMQ.recv(receivers[i], 0).size(), is(5));
+        }
+
+        //  A socket polled twice in the same set watches its own channel
+        //  for the second item.
+        items[count] = new PollItem(receivers[7], ZMQ.ZMQ_POLLIN);
+        ZMQ.send(senders[7], "hello", 0);
+        assertThat(ZMQ.poll(items, count + 1, 1000), is(2));
+        assertThat(items[7].isReadable(), is(true));
+        assertThat(items[count].isReadable(), is(true));
+        assertThat(ZMQ.recv(receivers[7], 0).size(), is(5));
+        assertThat(ZMQ.poll(items, count + 1, 0), is(0));
+
+        //  New items of the same sockets take over from the previous ones.
+        PollItem[] fresh = new PollItem[] {new PollItem(receivers[9], ZMQ.ZMQ_POLLIN) };
+        assertThat(ZMQ.poll(fresh, 0), is(0));
+        ZMQ.send(senders[9], "hello", 0);
+        assertThat(ZMQ.poll(fresh, 1000), is(1));
+        assertThat(fresh[0].readyList() == list, is(true));
+        assertThat(ZMQ.recv(receivers[9], 0).size(), is(5));
+
+        for (int i = 0; i < count; i++) {
+            ZMQ.close(senders[i]);
+            ZMQ.close(receivers[i]);
+        }
+        ZMQ.term(ctx);
+    }
+}
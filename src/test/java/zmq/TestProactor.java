@@ -0,0 +1,237 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+public class TestProactor
+{
+    private static Ctx proactor(int ioThreads)
+    {
+        Ctx ctx = ZMQ.init(ioThreads);
+        ZMQ.setContextOption(ctx, ZMQ.ZMQ_PROACTOR, 1);
+        assertThat(ZMQ.getContextOption(ctx, ZMQ.ZMQ_PROACTOR), is(1));
+        return ctx;
+    }
+
+    @Test
+    public void testReqrep() throws Exception
+    {
+        Ctx ctx = proactor(1);
+
+        SocketBase sb = ZMQ.socket(ctx, ZMQ.ZMQ_REP);
+        assertThat(sb, notNullValue());
+        boolean rc = ZMQ.bind(sb, "tcp://127.0.0.1:7680");
+        assertThat(rc, is(true));
+
+        SocketBase sc = ZMQ.socket(ctx, ZMQ.ZMQ_REQ);
+        assertThat(sc, notNullValue());
+        rc = ZMQ.connect(sc, "tcp://127.0.0.1:7680");
+        assertThat(rc, is(true));
+
+        for (int i = 0; i < 100; i++) {
+            Helper.bounce(sb, sc);
+        }
+
+        ZMQ.close(sc);
+        ZMQ.close(sb);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testBulk() throws Exception
+    {
+        Ctx ctx = proactor(2);
+
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        boolean rc = ZMQ.bind(pull, "tcp://127.0.0.1:7681");
+        assertThat(rc, is(true));
+
+        final SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        rc = ZMQ.connect(push, "tcp://127.0.0.1:7681");
+        assertThat(rc, is(true));
+
+        //  Messages both much smaller and much larger than the batches,
+        //  so that the writes are both coalesced and split.
+        final int count = 5000;
+        Thread sender = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < count; i++) {
+                    byte[] data = new byte[size(i)];
+                    Arrays.fill(data, (byte) i);
+                    ZMQ.send(push, data, data.length, 0);
+                }
+            }
+        };
+        sender.start();
+
+        for (int i = 0; i < count; i++) {
+            Msg msg = ZMQ.recv(pull, 0);
+            assertThat(msg, notNullValue());
+            byte[] data = msg.data();
+            assertThat(data.length, is(size(i)));
+            for (byte b : data) {
+                assertThat(b, is((byte) i));
+            }
+        }
+
+        sender.join();
+
+        ZMQ.close(push);
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testIdleMemory() throws Exception
+    {
+        Ctx ctx = proactor(1);
+
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        boolean rc = ZMQ.bind(pull, "tcp://127.0.0.1:7684");
+        assertThat(rc, is(true));
+
+        //  Idle connections hold no write buffer and a read buffer of the
+        //  initial batch size only, next to the encoder and decoder buffers
+        //  of both engines. Buffers of the largest batches would take
+        //  hundreds of kilobytes.
+        long before = directMemory();
+        int count = 100;
+        List<SocketBase> pushes = new ArrayList<SocketBase>();
+        for (int i = 0; i < count; i++) {
+            SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+            rc = ZMQ.connect(push, "tcp://127.0.0.1:7684");
+            assertThat(rc, is(true));
+            ZMQ.send(push, "hello", 0);
+            pushes.add(push);
+        }
+        for (int i = 0; i < count; i++) {
+            assertThat(ZMQ.recv(pull, 0), notNullValue());
+        }
+        long perConnection = (directMemory() - before) / count;
+        assertThat("direct bytes per connection: " + perConnection,
+                perConnection < 8 * Config.IN_BATCH_SIZE.getValue(), is(true));
+
+        for (SocketBase push : pushes) {
+            ZMQ.close(push);
+        }
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    private static long directMemory()
+    {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    private static int size(int i)
+    {
+        return i % 7 == 0 ? 100000 : i % 100;
+    }
+
+    @Test
+    public void testInterop() throws Exception
+    {
+        //  The connections driven by the proactor talk to the ones
+        //  polled by the I/O threads.
+        Ctx ctx = proactor(1);
+        Ctx polled = ZMQ.init(1);
+
+        SocketBase sb = ZMQ.socket(ctx, ZMQ.ZMQ_REP);
+        boolean rc = ZMQ.bind(sb, "tcp://127.0.0.1:7682");
+        assertThat(rc, is(true));
+
+        SocketBase sc = ZMQ.socket(polled, ZMQ.ZMQ_REQ);
+        ZMQ.setSocketOption(sc, ZMQ.ZMQ_HEARTBEAT_IVL, 50);
+        rc = ZMQ.connect(sc, "tcp://127.0.0.1:7682");
+        assertThat(rc, is(true));
+
+        Helper.bounce(sb, sc);
+
+        //  Heartbeats keep flowing while the connection is idle.
+        Thread.sleep(300);
+        Helper.bounce(sb, sc);
+
+        ZMQ.close(sc);
+        ZMQ.close(sb);
+        ZMQ.term(polled);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testReconnect() throws Exception
+    {
+        Ctx ctx = proactor(1);
+
+        //  Connect before there's anything to connect to.
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        ZMQ.setSocketOption(push, ZMQ.ZMQ_RECONNECT_IVL, 50);
+        boolean rc = ZMQ.connect(push, "tcp://127.0.0.1:7683");
+        assertThat(rc, is(true));
+        Thread.sleep(200);
+
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_RCVTIMEO, 5000);
+        rc = ZMQ.bind(pull, "tcp://127.0.0.1:7683");
+        assertThat(rc, is(true));
+
+        int sent = ZMQ.send(push, "first", 0);
+        assertThat(sent, is(5));
+        Msg msg = ZMQ.recv(pull, 0);
+        assertThat(msg, notNullValue());
+        assertThat(new String(msg.data(), ZMQ.CHARSET), is("first"));
+
+        //  Replace the peer; the connection is re-established.
+        ZMQ.close(pull);
+        Thread.sleep(200);
+        pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_RCVTIMEO, 5000);
+        rc = ZMQ.bind(pull, "tcp://127.0.0.1:7683");
+        assertThat(rc, is(true));
+
+        sent = ZMQ.send(push, "second", 0);
+        assertThat(sent, is(6));
+        msg = ZMQ.recv(pull, 0);
+        assertThat(msg, notNullValue());
+        assertThat(new String(msg.data(), ZMQ.CHARSET), is("second"));
+
+        ZMQ.close(push);
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+}
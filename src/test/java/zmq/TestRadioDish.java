@@ -0,0 +1,173 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import zmq.Helper.DummySession;
+import zmq.Helper.DummySocketChannel;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class TestRadioDish
+{
+    private static Msg groupMsg(String group, String body)
+    {
+        Msg msg = new Msg(body.getBytes(ZMQ.CHARSET));
+        msg.setGroup(group);
+        return msg;
+    }
+
+    private static void assertRecv(SocketBase dish, String group, String body)
+    {
+        Msg msg = ZMQ.recv(dish, 0);
+        assertThat(msg, notNullValue());
+        assertThat(msg.getGroup(), is(group));
+        assertThat(new String(msg.data(), ZMQ.CHARSET), is(body));
+    }
+
+    private void testGroups(String address, long settle) throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase radio = ZMQ.socket(ctx, ZMQ.ZMQ_RADIO);
+        SocketBase dish = ZMQ.socket(ctx, ZMQ.ZMQ_DISH);
+        ZMQ.setSocketOption(dish, ZMQ.ZMQ_RCVTIMEO, 5000);
+
+        boolean rc = ZMQ.bind(radio, address);
+        assertThat(rc, is(true));
+        rc = ZMQ.join(dish, "Movies");
+        assertThat(rc, is(true));
+        rc = ZMQ.connect(dish, radio.getsockoptx(ZMQ.ZMQ_LAST_ENDPOINT).toString());
+        assertThat(rc, is(true));
+        Thread.sleep(settle);
+
+        //  Only the exact group is received, neither prefixes nor others.
+        ZMQ.send(radio, groupMsg("TV", "Friends"), 0);
+        ZMQ.send(radio, groupMsg("Movie", "Alien"), 0);
+        ZMQ.send(radio, groupMsg("Movies", "Godzilla"), 0);
+        assertRecv(dish, "Movies", "Godzilla");
+
+        rc = ZMQ.join(dish, "TV");
+        assertThat(rc, is(true));
+        rc = ZMQ.leave(dish, "Movies");
+        assertThat(rc, is(true));
+        Thread.sleep(settle);
+
+        ZMQ.send(radio, groupMsg("Movies", "Godzilla"), 0);
+        ZMQ.send(radio, groupMsg("TV", "Friends"), 0);
+        assertRecv(dish, "TV", "Friends");
+
+        ZMQ.close(dish);
+        ZMQ.close(radio);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testInproc() throws Exception
+    {
+        testGroups("inproc://radio-dish", 0);
+    }
+
+    @Test
+    public void testTcp() throws Exception
+    {
+        testGroups("tcp://127.0.0.1:6612", 200);
+    }
+
+    @Test
+    public void testInvalidJoins() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase dish = ZMQ.socket(ctx, ZMQ.ZMQ_DISH);
+        SocketBase radio = ZMQ.socket(ctx, ZMQ.ZMQ_RADIO);
+
+        assertThat(ZMQ.join(dish, "group"), is(true));
+        assertThat(ZMQ.join(dish, "group"), is(false));
+        assertThat(dish.errno(), is(ZError.EINVAL));
+        assertThat(ZMQ.leave(dish, "other"), is(false));
+        assertThat(dish.errno(), is(ZError.EINVAL));
+        assertThat(ZMQ.join(dish, new String(new char[256]).replace('\0', 'x')), is(false));
+        assertThat(dish.errno(), is(ZError.EINVAL));
+
+        //  Only DISH sockets have groups.
+        assertThat(ZMQ.join(radio, "group"), is(false));
+        assertThat(radio.errno(), is(ZError.ENOTSUP));
+
+        //  And multi-part messages are not supported.
+        assertThat(ZMQ.send(radio, "part", ZMQ.ZMQ_SNDMORE), is(-1));
+        assertThat(radio.errno(), is(ZError.EINVAL));
+
+        ZMQ.close(dish);
+        ZMQ.close(radio);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testGroupInFrameHeader() throws IOException
+    {
+        DummySession source = new DummySession();
+        V1Encoder encoder = new V1Encoder(64, source);
+        DummySocketChannel sock = new DummySocketChannel();
+
+        Msg join = new Msg();
+        join.initJoin();
+        join.setGroup("g");
+        source.out.add(join);
+        source.out.add(groupMsg("g", "body"));
+        source.out.add(new Msg("plain".getBytes(ZMQ.CHARSET)));
+        int size = encoder.getData(null).transferTo(sock);
+        assertThat(size, is(4 + 8 + 7));
+
+        byte[] data = sock.data();
+        //  Join: flags, size, group length, group.
+        assertThat(data[0], is((byte) (V1Protocol.GROUP_FLAG | V1Protocol.JOIN_FLAG)));
+        assertThat(data[1], is((byte) 0));
+        assertThat(data[2], is((byte) 1));
+        assertThat(data[3], is((byte) 'g'));
+        //  Message: the group precedes the body.
+        assertThat(data[4], is((byte) V1Protocol.GROUP_FLAG));
+        assertThat(data[5], is((byte) 4));
+        assertThat(data[6], is((byte) 1));
+        assertThat(data[7], is((byte) 'g'));
+        assertThat(new String(data, 8, 4, ZMQ.CHARSET), is("body"));
+
+        DummySession sink = new DummySession();
+        V1Decoder decoder = new V1Decoder(64, 256, sink);
+        ByteBuffer in = decoder.getBuffer();
+        in.put(data, 0, size);
+        in.flip();
+        int processed = decoder.processBuffer(in, size);
+        assertThat(processed, is(size));
+
+        assertThat(sink.out.size(), is(3));
+        assertThat(sink.out.get(0).isJoin(), is(true));
+        assertThat(sink.out.get(0).getGroup(), is("g"));
+        assertThat(sink.out.get(1).isJoin(), is(false));
+        assertThat(sink.out.get(1).getGroup(), is("g"));
+        assertThat(new String(sink.out.get(1).data(), ZMQ.CHARSET), is("body"));
+        assertThat(sink.out.get(2).getGroup(), nullValue());
+        assertThat(new String(sink.out.get(2).data(), ZMQ.CHARSET), is("plain"));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+
+public class TestReadBudget
+{
+    private void pushPull(int budgetBytes, int budgetMsgs, String addr)
+    {
+        Ctx ctx = ZMQ.init(1);
+        assertThat(ctx, notNullValue());
+
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_READ_BUDGET_BYTES, budgetBytes);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_READ_BUDGET_MSGS, budgetMsgs);
+        assertThat(ZMQ.getSocketOption(pull, ZMQ.ZMQ_READ_BUDGET_BYTES), is(budgetBytes));
+        assertThat(ZMQ.getSocketOption(pull, ZMQ.ZMQ_READ_BUDGET_MSGS), is(budgetMsgs));
+        assertThat(ZMQ.bind(pull, addr), is(true));
+
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        assertThat(ZMQ.connect(push, addr), is(true));
+
+        int count = 10000;
+        byte[] data = new byte[100];
+        for (int i = 0; i < count; i++) {
+            data[0] = (byte) i;
+            assertThat(ZMQ.send(push, data, data.length, 0), is(data.length));
+        }
+
+        for (int i = 0; i < count; i++) {
+            Msg msg = ZMQ.recv(pull, 0);
+            assertThat(msg, notNullValue());
+            assertThat(msg.size(), is(data.length));
+            assertThat(msg.data()[0], is((byte) i));
+        }
+
+        IOThread ioThread = ctx.getIoThreads().get(0);
+        assertTrue(ioThread.getSelects() > 0);
+        assertTrue(ioThread.getEvents() > 0);
+
+        ZMQ.close(push);
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testDefaultBudget()
+    {
+        pushPull(262144, 1000, "tcp://127.0.0.1:6580");
+    }
+
+    @Test
+    public void testSingleReadPerEvent()
+    {
+        pushPull(0, 1000, "tcp://127.0.0.1:6581");
+    }
+
+    @Test
+    public void testSmallMessageBudget()
+    {
+        pushPull(262144, 3, "tcp://127.0.0.1:6582");
+    }
+}
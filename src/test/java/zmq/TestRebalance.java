@@ -0,0 +1,154 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestRebalance
+{
+    private static final int SIZE = 1000;
+
+    //  Streams the messages numbered in order from push to pull, checking
+    //  the order, until the condition holds or the time is over.
+    private abstract static class Stream
+    {
+        abstract boolean done(long received);
+
+        long run(final SocketBase push, SocketBase pull, long timeout) throws Exception
+        {
+            final AtomicBoolean stop = new AtomicBoolean(false);
+            Thread sender = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    byte[] data = new byte[SIZE];
+                    int seq = 0;
+                    while (!stop.get()) {
+                        ByteBuffer.wrap(data).putInt(seq++);
+                        ZMQ.send(push, data, data.length, 0);
+                    }
+                    ByteBuffer.wrap(data).putInt(-1);
+                    ZMQ.send(push, data, data.length, 0);
+                }
+            };
+            sender.start();
+
+            long deadline = System.currentTimeMillis() + timeout;
+            long received = 0;
+            while (true) {
+                Msg msg = ZMQ.recv(pull, 0);
+                assertThat(msg, notNullValue());
+                assertThat(msg.size(), is(SIZE));
+                int seq = ByteBuffer.wrap(msg.data()).getInt();
+                if (seq == -1) {
+                    break;
+                }
+                assertThat((long) seq, is(received));
+                received++;
+                if (!stop.get() && (done(received) || System.currentTimeMillis() > deadline)) {
+                    stop.set(true);
+                }
+            }
+            sender.join();
+            return received;
+        }
+    }
+
+    private static long migrations(Ctx ctx)
+    {
+        long migrations = 0;
+        for (IOThread ioThread : ctx.getIoThreads()) {
+            migrations += ioThread.getMigrations();
+        }
+        return migrations;
+    }
+
+    @Test
+    public void testRebalance() throws Exception
+    {
+        final Ctx ctx = ZMQ.init(2);
+        assertThat(ctx, notNullValue());
+        ZMQ.setContextOption(ctx, ZMQ.ZMQ_IO_REBALANCE_IVL, 100);
+        assertThat(ZMQ.getContextOption(ctx, ZMQ.ZMQ_IO_REBALANCE_IVL), is(100));
+
+        //  Keep the second I/O thread busy with a connection bound to it.
+        SocketBase pushA = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        ZMQ.setSocketOption(pushA, ZMQ.ZMQ_AFFINITY, 2L);
+        assertThat(ZMQ.bind(pushA, "tcp://127.0.0.1:7690"), is(true));
+        SocketBase pullA = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        ZMQ.setSocketOption(pullA, ZMQ.ZMQ_AFFINITY, 2L);
+        assertThat(ZMQ.connect(pullA, "tcp://127.0.0.1:7690"), is(true));
+
+        new Stream()
+        {
+            @Override
+            boolean done(long received)
+            {
+                return false;
+            }
+        }.run(pushA, pullA, 1500);
+
+        IOThread busy = ctx.getIoThreads().get(1);
+        assertTrue(busy.getBytes() > 0);
+        assertTrue(busy.getBytesPerSecond() > 0);
+        assertTrue(busy.getEventsPerSecond() > 0);
+
+        //  The new connection goes to the first I/O thread, the least
+        //  busy one, which gets busy in turn and hands over one of its
+        //  sessions to the second thread, idle by now.
+        SocketBase pushB = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        assertThat(ZMQ.bind(pushB, "tcp://127.0.0.1:7691"), is(true));
+        SocketBase pullB = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        assertThat(ZMQ.connect(pullB, "tcp://127.0.0.1:7691"), is(true));
+
+        long received = new Stream()
+        {
+            private long migratedAt = -1;
+
+            @Override
+            boolean done(long received)
+            {
+                if (migratedAt < 0 && migrations(ctx) > 0) {
+                    migratedAt = received;
+                }
+                //  Keep streaming across the migration for a while.
+                return migratedAt >= 0 && received > migratedAt + 20000;
+            }
+        }.run(pushB, pullB, 20000);
+
+        assertTrue(migrations(ctx) > 0);
+        assertTrue(received > 20000);
+
+        ZMQ.close(pushA);
+        ZMQ.close(pullA);
+        ZMQ.close(pushB);
+        ZMQ.close(pullB);
+        ZMQ.term(ctx);
+    }
+}
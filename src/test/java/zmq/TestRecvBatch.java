@@ -0,0 +1,87 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+
+public class TestRecvBatch
+{
+    @Test
+    public void testRecvBatchTcp()
+    {
+        Ctx ctx = ZMQ.init(1);
+        assertThat(ctx, notNullValue());
+
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:6601"), is(true));
+
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        assertThat(ZMQ.connect(push, "tcp://127.0.0.1:6601"), is(true));
+
+        int count = 10000;
+        for (int i = 0; i < count; i++) {
+            assertThat(ZMQ.send(push, "key" + i, ZMQ.ZMQ_SNDMORE) > 0, is(true));
+            assertThat(ZMQ.send(push, "value" + i, 0) > 0, is(true));
+        }
+
+        Msg[] out = new Msg[64];
+        int received = 0;
+        while (received < count * 2) {
+            int n = ZMQ.recvBatch(pull, out, out.length, 0);
+            assertThat(n > 0 && n <= out.length, is(true));
+            for (int i = 0; i < n; i++, received++) {
+                int index = received / 2;
+                boolean key = received % 2 == 0;
+                assertThat(new String(out[i].data(), ZMQ.CHARSET),
+                        is(key ? "key" + index : "value" + index));
+                assertThat(out[i].hasMore(), is(key));
+            }
+            //  The socket reports whether the last frame of the batch
+            //  is followed by more parts.
+            assertThat(ZMQ.getSocketOption(pull, ZMQ.ZMQ_RCVMORE), is(received % 2));
+        }
+
+        //  Nothing left to read.
+        assertThat(ZMQ.recvBatch(pull, out, out.length, ZMQ.ZMQ_DONTWAIT), is(0));
+        assertThat(pull.errno(), is(ZError.EAGAIN));
+
+        ZMQ.close(push);
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMax()
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        try {
+            ZMQ.recvBatch(pull, new Msg[4], 5, 0);
+        }
+        finally {
+            ZMQ.close(pull);
+            ZMQ.term(ctx);
+        }
+    }
+}
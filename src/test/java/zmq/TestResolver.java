@@ -0,0 +1,150 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.net.InetAddress;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestResolver
+{
+    @Test
+    public void testCache() throws Exception
+    {
+        final BlockingQueue<InetAddress[]> results = new ArrayBlockingQueue<InetAddress[]>(4);
+        Resolver.Callback callback = new Resolver.Callback()
+        {
+            @Override
+            public void resolved(InetAddress[] addresses)
+            {
+                results.add(addresses);
+            }
+        };
+
+        Resolver resolver = new Resolver(200);
+        try {
+            //  IP addresses need no lookup.
+            assertThat(resolver.cached("127.0.0.1"), notNullValue());
+            assertThat(resolver.resolve("::1", callback), notNullValue());
+
+            //  Host names are looked up in the background, then cached.
+            assertThat(resolver.cached("localhost"), nullValue());
+            assertThat(resolver.resolve("localhost", callback), nullValue());
+            InetAddress[] addresses = results.poll(5, TimeUnit.SECONDS);
+            assertThat(addresses, notNullValue());
+            assertThat(resolver.cached("localhost"), sameInstance(addresses));
+            assertThat(resolver.resolve("localhost", callback), sameInstance(addresses));
+
+            //  Until they expire.
+            Thread.sleep(300);
+            assertThat(resolver.cached("localhost"), nullValue());
+            assertThat(resolver.resolve("localhost", callback), nullValue());
+            assertThat(results.poll(5, TimeUnit.SECONDS), notNullValue());
+            assertThat(results.isEmpty(), is(true));
+        }
+        finally {
+            resolver.close();
+        }
+    }
+
+    @Test
+    public void testConnectHostName()
+    {
+        Ctx ctx = ZMQ.init(1);
+        assertThat(ctx, notNullValue());
+        ZMQ.setContextOption(ctx, ZMQ.ZMQ_DNS_TTL, 60000);
+        assertThat(ZMQ.getContextOption(ctx, ZMQ.ZMQ_DNS_TTL), is(60000));
+
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:7710"), is(true));
+
+        //  The connecters of the context share the addresses looked up.
+        for (int i = 0; i < 2; i++) {
+            SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+            assertThat(ZMQ.connect(push, "tcp://localhost:7710"), is(true));
+            assertThat(ZMQ.send(push, "hello", 0), is(5));
+            Msg msg = ZMQ.recv(pull, 0);
+            assertThat(msg, notNullValue());
+            assertThat(ctx.getResolver().cached("localhost"), notNullValue());
+            ZMQ.close(push);
+        }
+
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testConnectUnknownHost()
+    {
+        Ctx ctx = ZMQ.init(1);
+        assertThat(ctx, notNullValue());
+
+        //  The host name is looked up, and retried, in the background.
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        ZMQ.setSocketOption(push, ZMQ.ZMQ_LINGER, 0);
+        assertThat(ZMQ.connect(push, "tcp://foobar123xyz.invalid:7711"), is(true));
+        assertThat((String) ZMQ.getSocketOptionExt(push, ZMQ.ZMQ_LAST_ENDPOINT),
+                is("tcp://foobar123xyz.invalid:7711"));
+
+        ZMQ.close(push);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testHappyEyeballs() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        assertThat(ctx, notNullValue());
+
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:7712"), is(true));
+
+        //  Nobody listens on the first address of the host. The next one
+        //  is tried right away, without waiting for a reconnection.
+        InetAddress[] addresses = {
+            InetAddress.getByName("127.0.0.2"), InetAddress.getByName("127.0.0.1")
+        };
+        ctx.getResolver().cache("eyeballs.invalid", addresses);
+
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        ZMQ.setSocketOption(push, ZMQ.ZMQ_LINGER, 0);
+        ZMQ.setSocketOption(push, ZMQ.ZMQ_RECONNECT_IVL, 10000);
+        long start = System.currentTimeMillis();
+        assertThat(ZMQ.connect(push, "tcp://eyeballs.invalid:7712"), is(true));
+        assertThat(ZMQ.send(push, "hello", 0), is(5));
+        Msg msg = ZMQ.recv(pull, 0);
+        assertThat(msg, notNullValue());
+        assertTrue(System.currentTimeMillis() - start < 2000);
+
+        ZMQ.close(push);
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+}
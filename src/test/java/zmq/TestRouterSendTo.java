@@ -0,0 +1,118 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import org.junit.Test;
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+
+public class TestRouterSendTo
+{
+    @Test
+    public void testSendTo() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        assertThat(ctx, notNullValue());
+
+        SocketBase router = ZMQ.socket(ctx, ZMQ.ZMQ_ROUTER);
+        ZMQ.setSocketOption(router, ZMQ.ZMQ_SNDHWM, 1);
+        boolean brc = ZMQ.bind(router, "inproc://sendto");
+        assertThat(brc, is(true));
+
+        SocketBase[] dealers = new SocketBase[3];
+        String[] names = {"A", "B", "C"};
+        for (int i = 0; i < dealers.length; i++) {
+            dealers[i] = ZMQ.socket(ctx, ZMQ.ZMQ_DEALER);
+            ZMQ.setSocketOption(dealers[i], ZMQ.ZMQ_RCVHWM, 1);
+            ZMQ.setSocketOption(dealers[i], ZMQ.ZMQ_IDENTITY, names[i]);
+            brc = ZMQ.connect(dealers[i], "inproc://sendto");
+            assertThat(brc, is(true));
+        }
+
+        byte[][] ids = {"A".getBytes(ZMQ.CHARSET), "X".getBytes(ZMQ.CHARSET), "B".getBytes(ZMQ.CHARSET)};
+        int[] errors = new int[ids.length];
+        int rc = router.sendTo(ids, new Msg("DATA".getBytes(ZMQ.CHARSET)), errors);
+        assertThat(rc, is(2));
+        assertThat(errors[0], is(0));
+        assertThat(errors[1], is(ZError.EHOSTUNREACH));
+        assertThat(errors[2], is(0));
+
+        for (int i = 0; i < 2; i++) {
+            Msg msg = ZMQ.recv(dealers[i], 0);
+            assertThat(msg, notNullValue());
+            assertThat(new String(msg.data(), ZMQ.CHARSET), is("DATA"));
+            assertThat(msg.hasMore(), is(false));
+        }
+
+        //  Fill the pipe to C, which never reads, until it reports EAGAIN.
+        byte[][] c = {"C".getBytes(ZMQ.CHARSET)};
+        boolean full = false;
+        for (int i = 0; i < 100 && !full; i++) {
+            rc = router.sendTo(c, new Msg("FILL".getBytes(ZMQ.CHARSET)), errors);
+            full = rc == 0 && errors[0] == ZError.EAGAIN;
+        }
+        assertThat(full, is(true));
+
+        for (SocketBase dealer : dealers) {
+            ZMQ.close(dealer);
+        }
+        ZMQ.close(router);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testSendToInMultipart() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase router = ZMQ.socket(ctx, ZMQ.ZMQ_ROUTER);
+        ZMQ.setSocketOption(router, ZMQ.ZMQ_ROUTER_MANDATORY, 1);
+        SocketBase dealer = ZMQ.socket(ctx, ZMQ.ZMQ_DEALER);
+        ZMQ.setSocketOption(dealer, ZMQ.ZMQ_IDENTITY, "A");
+        ZMQ.bind(router, "inproc://sendto-fsm");
+        ZMQ.connect(dealer, "inproc://sendto-fsm");
+
+        int rc = ZMQ.send(router, "A", ZMQ.ZMQ_SNDMORE);
+        assertThat(rc, is(1));
+
+        //  A multi-part message is in progress, so it can't be interleaved.
+        rc = router.sendTo(new byte[][] {"A".getBytes(ZMQ.CHARSET)}, new Msg(1), null);
+        assertThat(rc, is(-1));
+        assertThat(router.errno(), is(ZError.EFSM));
+
+        ZMQ.close(dealer);
+        ZMQ.close(router);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testSendToNotSupported() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase dealer = ZMQ.socket(ctx, ZMQ.ZMQ_DEALER);
+
+        int rc = dealer.sendTo(new byte[][] {"A".getBytes(ZMQ.CHARSET)}, new Msg(1), null);
+        assertThat(rc, is(-1));
+        assertThat(dealer.errno(), is(ZError.ENOTSUP));
+
+        ZMQ.close(dealer);
+        ZMQ.term(ctx);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+public class TestRoutingTable
+{
+    @Test
+    public void testExplicitKeys()
+    {
+        RoutingTable<String> table = new RoutingTable<String>(0);
+        for (int i = 0; i < 1000; i++) {
+            table.put(("peer-" + i).getBytes(ZMQ.CHARSET), "value-" + i);
+        }
+        assertThat(table.size(), is(1000));
+        for (int i = 0; i < 1000; i++) {
+            assertThat(table.get(("peer-" + i).getBytes(ZMQ.CHARSET)), is("value-" + i));
+        }
+        assertThat(table.get("peer-1000".getBytes(ZMQ.CHARSET)), nullValue());
+
+        table.put("peer-7".getBytes(ZMQ.CHARSET), "replaced");
+        assertThat(table.get("peer-7".getBytes(ZMQ.CHARSET)), is("replaced"));
+        assertThat(table.size(), is(1000));
+    }
+
+    @Test
+    public void testGeneratedKeys()
+    {
+        //  Start just below the wrap-around of the ids.
+        RoutingTable<Integer> table = new RoutingTable<Integer>(Integer.MAX_VALUE - 10);
+        byte[][] keys = new byte[1000][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = table.generateKey();
+            assertThat(keys[i].length, is(RoutingTable.AUTO_ID_SIZE));
+            assertThat(keys[i][0], is((byte) 0));
+            assertThat(table.containsKey(keys[i]), is(false));
+            table.put(keys[i], i);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            assertThat(table.get(keys[i]), is(i));
+        }
+        for (int i = 0; i < keys.length; i += 2) {
+            assertThat(table.remove(keys[i]), is(i));
+        }
+        for (int i = 0; i < keys.length; i++) {
+            assertThat(table.get(keys[i]), is(i % 2 == 0 ? null : i));
+        }
+        assertThat(table.size(), is(500));
+    }
+
+    @Test
+    public void testKeysLookingGenerated()
+    {
+        RoutingTable<String> table = new RoutingTable<String>(1);
+        byte[] explicit = {0, 0, 0, 0, 1};
+        table.put(explicit, "explicit");
+
+        //  The id of the explicit key is not handed out again.
+        byte[] generated = table.generateKey();
+        assertThat(generated[4], is((byte) 2));
+        table.put(generated, "generated");
+
+        assertThat(table.get(new byte[] {0, 0, 0, 0, 1}), is("explicit"));
+        assertThat(table.get(new byte[] {0, 0, 0, 0, 2}), is("generated"));
+        assertThat(table.remove(explicit), is("explicit"));
+        assertThat(table.get(explicit), nullValue());
+        assertThat(table.size(), is(1));
+    }
+
+    @Test
+    public void testGeneratedIds()
+    {
+        //  Zero is skipped as it stands for no routing id.
+        RoutingTable<String> table = new RoutingTable<String>(-1);
+        int first = table.generateId();
+        table.put(first, "first");
+        int second = table.generateId();
+        table.put(second, "second");
+        assertThat(first, is(-1));
+        assertThat(second, is(1));
+
+        assertThat(table.get(first), is("first"));
+        assertThat(table.get(second), is("second"));
+        assertThat(table.get(0), nullValue());
+        assertThat(table.remove(first), is("first"));
+        assertThat(table.get(first), nullValue());
+        assertThat(table.size(), is(1));
+
+        //  Ids sharing the slot of a stored one still find their own.
+        int other = second + 16;
+        table.put(other, "other");
+        assertThat(table.get(second), is("second"));
+        assertThat(table.get(other), is("other"));
+    }
+
+    @Test
+    public void testRandomOperations()
+    {
+        RoutingTable<Integer> table = new RoutingTable<Integer>(0);
+        Map<Blob, Integer> reference = new HashMap<Blob, Integer>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100000; i++) {
+            byte[] key = new byte[1 + random.nextInt(3)];
+            random.nextBytes(key);
+            Blob blob = Blob.createBlob(key, false);
+            if (random.nextBoolean()) {
+                table.put(key, i);
+                reference.put(blob, i);
+            }
+            else {
+                assertThat(table.remove(key), is(reference.remove(blob)));
+            }
+            assertThat(table.size(), is(reference.size()));
+        }
+        for (Map.Entry<Blob, Integer> entry : reference.entrySet()) {
+            assertThat(table.get(entry.getKey().data()), is(entry.getValue()));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+
+public class TestSendBatch
+{
+    private static Msg[] multipart(int count)
+    {
+        //  Each logical message is made of two frames.
+        Msg[] msgs = new Msg[count * 2];
+        for (int i = 0; i < count; i++) {
+            msgs[2 * i] = new Msg(("key" + i).getBytes(ZMQ.CHARSET));
+            msgs[2 * i].setFlags(Msg.MORE);
+            msgs[2 * i + 1] = new Msg(("value" + i).getBytes(ZMQ.CHARSET));
+        }
+        return msgs;
+    }
+
+    private static void receive(SocketBase pull, int count)
+    {
+        for (int i = 0; i < count; i++) {
+            Msg msg = ZMQ.recv(pull, 0);
+            assertThat(msg, notNullValue());
+            assertThat(new String(msg.data(), ZMQ.CHARSET), is("key" + i));
+            assertThat(msg.hasMore(), is(true));
+            msg = ZMQ.recv(pull, 0);
+            assertThat(msg, notNullValue());
+            assertThat(new String(msg.data(), ZMQ.CHARSET), is("value" + i));
+            assertThat(msg.hasMore(), is(false));
+        }
+    }
+
+    @Test
+    public void testBatchTcp()
+    {
+        Ctx ctx = ZMQ.init(1);
+        assertThat(ctx, notNullValue());
+
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:6600"), is(true));
+
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        assertThat(ZMQ.connect(push, "tcp://127.0.0.1:6600"), is(true));
+
+        int count = 1000;
+        assertThat(ZMQ.sendBatch(push, multipart(count), 0), is(count * 2));
+        receive(pull, count);
+
+        ZMQ.close(push);
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testBatchAboveHwm() throws Exception
+    {
+        final Ctx ctx = ZMQ.init(1);
+        assertThat(ctx, notNullValue());
+
+        final SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_RCVHWM, 10);
+        assertThat(ZMQ.bind(pull, "inproc://batch"), is(true));
+
+        SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+        ZMQ.setSocketOption(push, ZMQ.ZMQ_SNDHWM, 10);
+        assertThat(ZMQ.connect(push, "inproc://batch"), is(true));
+
+        //  Without DONTWAIT the batch blocks until the reader catches up.
+        final int count = 500;
+        Thread reader = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                receive(pull, count);
+            }
+        };
+        reader.start();
+        assertThat(ZMQ.sendBatch(push, multipart(count), 0), is(count * 2));
+        reader.join();
+
+        //  With DONTWAIT the batch stops at the watermark.
+        int sent = ZMQ.sendBatch(push, multipart(count), ZMQ.ZMQ_DONTWAIT);
+        assertThat(sent > 0 && sent < count * 2, is(true));
+        assertThat(push.errno(), is(ZError.EAGAIN));
+
+        ZMQ.close(push);
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+}
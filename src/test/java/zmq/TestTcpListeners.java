@@ -0,0 +1,95 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+public class TestTcpListeners
+{
+    //  Connects many sockets at once to the endpoint of the pull socket,
+    //  each sending a message through its own connection.
+    private void storm(Ctx ctx, SocketBase pull, String addr, int count)
+    {
+        List<SocketBase> pushes = new ArrayList<SocketBase>();
+        for (int i = 0; i < count; i++) {
+            SocketBase push = ZMQ.socket(ctx, ZMQ.ZMQ_PUSH);
+            assertThat(ZMQ.connect(push, addr), is(true));
+            pushes.add(push);
+        }
+        for (SocketBase push : pushes) {
+            assertThat(ZMQ.send(push, "hello", 0), is(5));
+        }
+        for (int i = 0; i < count; i++) {
+            Msg msg = ZMQ.recv(pull, 0);
+            assertThat(msg, notNullValue());
+            assertThat(new String(msg.data(), ZMQ.CHARSET), is("hello"));
+        }
+        for (SocketBase push : pushes) {
+            ZMQ.close(push);
+        }
+    }
+
+    @Test
+    public void testAcceptBatch()
+    {
+        Ctx ctx = ZMQ.init(1);
+        assertThat(ctx, notNullValue());
+
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_BACKLOG, 500);
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:7700"), is(true));
+
+        storm(ctx, pull, "tcp://127.0.0.1:7700", 200);
+
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testListenerPerIoThread()
+    {
+        Ctx ctx = ZMQ.init(4);
+        assertThat(ctx, notNullValue());
+
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_TCP_LISTENERS, 0);
+        assertThat(ZMQ.getSocketOption(pull, ZMQ.ZMQ_TCP_LISTENERS), is(0));
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:7701"), is(true));
+
+        storm(ctx, pull, "tcp://127.0.0.1:7701", 50);
+
+        //  Unbinding closes all the listeners, releasing the port.
+        assertThat(ZMQ.unbind(pull, "tcp://127.0.0.1:7701"), is(true));
+        ZMQ.sleep(1);
+        SocketBase other = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        assertThat(ZMQ.bind(other, "tcp://127.0.0.1:7701"), is(true));
+
+        ZMQ.close(other);
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+public class TestUdp
+{
+    private static Msg groupMsg(String group, String body)
+    {
+        Msg msg = new Msg(body.getBytes(ZMQ.CHARSET));
+        msg.setGroup(group);
+        return msg;
+    }
+
+    private static void assertRecv(SocketBase dish, String group, String body)
+    {
+        Msg msg = ZMQ.recv(dish, 0);
+        assertThat(msg, notNullValue());
+        assertThat(msg.getGroup(), is(group));
+        assertThat(new String(msg.data(), ZMQ.CHARSET), is(body));
+    }
+
+    @Test
+    public void testRadioDish() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase radio = ZMQ.socket(ctx, ZMQ.ZMQ_RADIO);
+        SocketBase dish = ZMQ.socket(ctx, ZMQ.ZMQ_DISH);
+        ZMQ.setSocketOption(dish, ZMQ.ZMQ_RCVTIMEO, 5000);
+
+        boolean rc = ZMQ.bind(dish, "udp://127.0.0.1:6613");
+        assertThat(rc, is(true));
+        rc = ZMQ.join(dish, "Movies");
+        assertThat(rc, is(true));
+        rc = ZMQ.connect(radio, "udp://127.0.0.1:6613");
+        assertThat(rc, is(true));
+        Thread.sleep(200);
+
+        //  The groups are matched by the receiving side.
+        for (int i = 0; i < 100; i++) {
+            ZMQ.send(radio, groupMsg("TV", "Friends " + i), 0);
+            ZMQ.send(radio, groupMsg("Movies", "Godzilla " + i), 0);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertRecv(dish, "Movies", "Godzilla " + i);
+        }
+
+        //  A message larger than the MTU goes in a datagram of its own.
+        String large = new String(new char[4000]).replace('\0', 'x');
+        ZMQ.send(radio, groupMsg("Movies", large), 0);
+        assertRecv(dish, "Movies", large);
+
+        ZMQ.close(dish);
+        ZMQ.close(radio);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testPackedDatagrams() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase radio = ZMQ.socket(ctx, ZMQ.ZMQ_RADIO);
+        DatagramSocket receiver = new DatagramSocket(new InetSocketAddress("127.0.0.1", 6614));
+        receiver.setSoTimeout(5000);
+
+        boolean rc = ZMQ.connect(radio, "udp://127.0.0.1:6614");
+        assertThat(rc, is(true));
+        Thread.sleep(200);
+
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            ZMQ.send(radio, groupMsg("G", "message " + i), 0);
+        }
+
+        //  All the messages arrive in order, several of them per datagram,
+        //  and no datagram exceeds the MTU.
+        DatagramPacket packet = new DatagramPacket(new byte[65536], 65536);
+        int received = 0;
+        int datagrams = 0;
+        while (received < count) {
+            receiver.receive(packet);
+            datagrams++;
+            assertThat(packet.getLength() <= Config.UDP_MAX_DATAGRAM.getValue(), is(true));
+
+            ByteBuffer buf = ByteBuffer.wrap(packet.getData(), 0, packet.getLength());
+            while (buf.hasRemaining()) {
+                assertThat((int) buf.get(), is(1));
+                assertThat(buf.get(), is((byte) 'G'));
+                byte[] body = new byte[buf.getShort()];
+                buf.get(body);
+                assertThat(new String(body, ZMQ.CHARSET), is("message " + received));
+                received++;
+            }
+        }
+        assertThat(datagrams < count, is(true));
+
+        receiver.close();
+        ZMQ.close(radio);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testUnpackedDatagrams() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase dish = ZMQ.socket(ctx, ZMQ.ZMQ_DISH);
+        ZMQ.setSocketOption(dish, ZMQ.ZMQ_RCVTIMEO, 5000);
+
+        boolean rc = ZMQ.bind(dish, "udp://127.0.0.1:6615");
+        assertThat(rc, is(true));
+        rc = ZMQ.join(dish, "A");
+        assertThat(rc, is(true));
+        Thread.sleep(200);
+
+        //  Three messages in a single datagram, followed by a truncated one.
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        buf.put((byte) 1).put((byte) 'A').putShort((short) 3).put("one".getBytes(ZMQ.CHARSET));
+        buf.put((byte) 1).put((byte) 'B').putShort((short) 3).put("two".getBytes(ZMQ.CHARSET));
+        buf.put((byte) 1).put((byte) 'A').putShort((short) 5).put("three".getBytes(ZMQ.CHARSET));
+        buf.put((byte) 1).put((byte) 'A').putShort((short) 10).put("four".getBytes(ZMQ.CHARSET));
+
+        DatagramSocket sender = new DatagramSocket();
+        sender.send(new DatagramPacket(buf.array(), buf.position(),
+                new InetSocketAddress("127.0.0.1", 6615)));
+        sender.close();
+
+        assertRecv(dish, "A", "one");
+        assertRecv(dish, "A", "three");
+
+        ZMQ.setSocketOption(dish, ZMQ.ZMQ_RCVTIMEO, 100);
+        Msg msg = ZMQ.recv(dish, 0);
+        assertThat(msg == null, is(true));
+        assertThat(dish.errno(), is(ZError.EAGAIN));
+
+        ZMQ.close(dish);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testBindInUse() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase radio = ZMQ.socket(ctx, ZMQ.ZMQ_RADIO);
+        SocketBase dish = ZMQ.socket(ctx, ZMQ.ZMQ_DISH);
+        SocketBase other = ZMQ.socket(ctx, ZMQ.ZMQ_DISH);
+        ZMQ.setSocketOption(dish, ZMQ.ZMQ_RCVTIMEO, 5000);
+
+        boolean rc = ZMQ.bind(dish, "udp://127.0.0.1:6617");
+        assertThat(rc, is(true));
+        rc = ZMQ.join(dish, "A");
+        assertThat(rc, is(true));
+
+        //  The port is taken, which is reported to the caller.
+        rc = ZMQ.bind(other, "udp://127.0.0.1:6617");
+        assertThat(rc, is(false));
+        assertThat(other.errno(), is(ZError.EADDRINUSE));
+
+        //  The I/O thread keeps serving the first socket.
+        rc = ZMQ.connect(radio, "udp://127.0.0.1:6617");
+        assertThat(rc, is(true));
+        Thread.sleep(200);
+        ZMQ.send(radio, groupMsg("A", "still there"), 0);
+        assertRecv(dish, "A", "still there");
+
+        ZMQ.close(other);
+        ZMQ.close(dish);
+        ZMQ.close(radio);
+        ZMQ.term(ctx);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testStreamSocket()
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pub = ZMQ.socket(ctx, ZMQ.ZMQ_PUB);
+        try {
+            ZMQ.bind(pub, "udp://127.0.0.1:6616");
+        }
+        finally {
+            ZMQ.close(pub);
+            ZMQ.term(ctx);
+        }
+    }
+}
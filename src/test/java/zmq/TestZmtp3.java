@@ -0,0 +1,405 @@
+/*
+    Copyright (c) 2007-2014 Contributors as noted in the AUTHORS file
+
+    This file is part of 0MQ.
+
+    0MQ is free software; you can redistribute it and/or modify it under
+    the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    0MQ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package zmq;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+public class TestZmtp3
+{
+    //  What a libzmq 4.3 DEALER with identity "A" writes to a ROUTER:
+    //  the greeting, the READY command, the "Hello" message, the "abc",
+    //  "def" message, a PING command without context and an empty message.
+    private static final String DEALER_STREAM =
+            "ff00000000000000027f03014e554c4c00000000000000000000000000000000"
+          + "0000000000000000000000000000000000000000000000000000000000000000"
+          + "042a0552454144590b536f636b65742d54797065000000064445414c45520849"
+          + "64656e746974790000000141000548656c6c6f01036162630003646566040704"
+          + "50494e4700640000";
+
+    private static final int GREETING_SIZE = 64;
+
+    private static byte[] hex(String hex)
+    {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static class Sink implements IMsgSink
+    {
+        final List<Msg> msgs = new ArrayList<Msg>();
+        boolean full;
+
+        @Override
+        public int pushMsg(Msg msg)
+        {
+            if (full) {
+                return ZError.EAGAIN;
+            }
+            msgs.add(msg);
+            return 0;
+        }
+    }
+
+    //  Feeds the data to the decoder in chunks of the given size.
+    private static void decode(DecoderBase decoder, byte[] data, int chunk)
+    {
+        int pos = 0;
+        while (pos < data.length) {
+            ByteBuffer buf = decoder.getBuffer();
+            int n = Math.min(Math.min(buf.remaining(), chunk), data.length - pos);
+            buf.put(data, pos, n);
+            buf.flip();
+            assertThat(decoder.processBuffer(buf, n), is(n));
+            pos += n;
+        }
+    }
+
+    private static String string(Msg msg)
+    {
+        return new String(msg.data(), ZMQ.CHARSET);
+    }
+
+    @Test
+    public void testDecoder()
+    {
+        byte[] stream = hex(DEALER_STREAM);
+        byte[] frames = new byte[stream.length - GREETING_SIZE];
+        System.arraycopy(stream, GREETING_SIZE, frames, 0, frames.length);
+
+        //  Any split of the stream decodes the same.
+        for (int chunk = 1; chunk <= frames.length; chunk++) {
+            Sink msgs = new Sink();
+            Sink commands = new Sink();
+            decode(new V3Decoder(32, -1, msgs, commands), frames, chunk);
+
+            assertThat(commands.msgs.size(), is(2));
+            assertThat(V3Protocol.isCommand(commands.msgs.get(0), V3Protocol.READY), is(true));
+            assertThat(string(new Msg(V3Protocol.property(commands.msgs.get(0), V3Protocol.SOCKET_TYPE))),
+                    is("DEALER"));
+            assertThat(string(new Msg(V3Protocol.property(commands.msgs.get(0), V3Protocol.IDENTITY))), is("A"));
+            assertThat(V3Protocol.isCommand(commands.msgs.get(1), V3Protocol.PING), is(true));
+
+            assertThat(msgs.msgs.size(), is(4));
+            assertThat(string(msgs.msgs.get(0)), is("Hello"));
+            assertThat(msgs.msgs.get(0).hasMore(), is(false));
+            assertThat(string(msgs.msgs.get(1)), is("abc"));
+            assertThat(msgs.msgs.get(1).hasMore(), is(true));
+            assertThat(string(msgs.msgs.get(2)), is("def"));
+            assertThat(msgs.msgs.get(3).size(), is(0));
+        }
+    }
+
+    @Test
+    public void testDecoderStalled()
+    {
+        byte[] frames = hex("000548656c6c6f0005576f726c64");
+        Sink sink = new Sink();
+        DecoderBase decoder = new V3Decoder(64, -1, sink, sink);
+
+        sink.full = true;
+        ByteBuffer buf = decoder.getBuffer();
+        buf.put(frames);
+        buf.flip();
+        assertThat(decoder.processBuffer(buf, frames.length), is(7));
+        assertThat(decoder.stalled(), is(true));
+
+        sink.full = false;
+        assertThat(decoder.processBuffer(buf, frames.length - 7), is(7));
+        assertThat(decoder.stalled(), is(false));
+        assertThat(sink.msgs.size(), is(2));
+        assertThat(string(sink.msgs.get(1)), is("World"));
+    }
+
+    @Test
+    public void testDecoderErrors()
+    {
+        Sink sink = new Sink();
+
+        //  Too large.
+        byte[] frames = hex("000548656c6c6f");
+        DecoderBase decoder = new V3Decoder(64, 4, sink, sink);
+        ByteBuffer buf = decoder.getBuffer();
+        buf.put(frames);
+        buf.flip();
+        assertThat(decoder.processBuffer(buf, frames.length), is(-1));
+
+        //  Multi-part command.
+        frames = hex("0505044e4f4e45");
+        decoder = new V3Decoder(64, -1, sink, sink);
+        buf = decoder.getBuffer();
+        buf.put(frames);
+        buf.flip();
+        assertThat(decoder.processBuffer(buf, frames.length), is(-1));
+    }
+
+    @Test
+    public void testCodec() throws Exception
+    {
+        //  Lots of small frames, a few large ones and commands in between,
+        //  the way a busy connection carries them.
+        final List<Msg> in = new ArrayList<Msg>();
+        for (int i = 0; i < 100000; i++) {
+            Msg msg = new Msg(i % 1000 == 0 ? 70000 : i % 64);
+            if (i % 3 == 0) {
+                msg.setFlags(Msg.MORE);
+            }
+            in.add(msg);
+        }
+
+        final List<Msg> queue = new ArrayList<Msg>(in);
+        V3Encoder encoder = new V3Encoder(8192, new IMsgSource()
+        {
+            int pos = 0;
+
+            @Override
+            public Msg pullMsg()
+            {
+                return pos < queue.size() ? queue.get(pos++) : null;
+            }
+        });
+        encoder.command(V3Protocol.command(V3Protocol.PING, 2));
+
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        WritableByteChannel channel = Channels.newChannel(wire);
+        while (true) {
+            Transfer transfer = encoder.getData(null);
+            if (transfer.remaining() == 0) {
+                break;
+            }
+            while (transfer.remaining() > 0) {
+                transfer.transferTo(channel);
+            }
+        }
+
+        Sink msgs = new Sink();
+        Sink commands = new Sink();
+        decode(new V3Decoder(8192, -1, msgs, commands), wire.toByteArray(), 8192);
+
+        assertThat(commands.msgs.size(), is(1));
+        assertThat(msgs.msgs.size(), is(in.size()));
+        for (int i = 0; i < in.size(); i++) {
+            assertThat(msgs.msgs.get(i).size(), is(in.get(i).size()));
+            assertThat(msgs.msgs.get(i).hasMore(), is(in.get(i).hasMore()));
+        }
+    }
+
+    private static byte[] readFrame(DataInputStream in) throws IOException
+    {
+        int flags = in.readUnsignedByte();
+        long size = (flags & V3Protocol.LARGE_FLAG) != 0 ? in.readLong() : in.readUnsignedByte();
+        byte[] body = new byte[(int) size];
+        in.readFully(body);
+        return body;
+    }
+
+    @Test
+    public void testLibzmqDealer() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase router = ZMQ.socket(ctx, ZMQ.ZMQ_ROUTER);
+        ZMQ.setSocketOption(router, ZMQ.ZMQ_RCVTIMEO, 5000);
+        assertThat(ZMQ.bind(router, "tcp://127.0.0.1:6640"), is(true));
+
+        Socket peer = new Socket("127.0.0.1", 6640);
+        OutputStream out = peer.getOutputStream();
+        DataInputStream in = new DataInputStream(peer.getInputStream());
+        out.write(hex(DEALER_STREAM));
+
+        //  ZMTP/3.1 greeting with the NULL mechanism.
+        byte[] greeting = new byte[GREETING_SIZE];
+        in.readFully(greeting);
+        assertThat(greeting[0], is((byte) 0xff));
+        assertThat(greeting[9], is((byte) 0x7f));
+        assertThat(greeting[10], is((byte) 3));
+        assertThat(greeting[11], is((byte) 1));
+        assertThat(new String(greeting, 12, 4, ZMQ.CHARSET), is("NULL"));
+        assertThat(greeting[16], is((byte) 0));
+
+        Msg ready = new Msg(readFrame(in));
+        assertThat(V3Protocol.isCommand(ready, V3Protocol.READY), is(true));
+        assertThat(string(new Msg(V3Protocol.property(ready, V3Protocol.SOCKET_TYPE))), is("ROUTER"));
+
+        //  The PING is answered.
+        Msg pong = new Msg(readFrame(in));
+        assertThat(V3Protocol.isCommand(pong, V3Protocol.PONG), is(true));
+        assertThat(pong.size(), is(5));
+
+        String[] expected = {"A", "Hello", "A", "abc", "def", "A", ""};
+        for (String part : expected) {
+            Msg msg = ZMQ.recv(router, 0);
+            assertThat(msg, notNullValue());
+            assertThat(string(msg), is(part));
+        }
+
+        ZMQ.send(router, "A", ZMQ.ZMQ_SNDMORE);
+        ZMQ.send(router, "World", 0);
+        assertThat(string(new Msg(readFrame(in))), is("World"));
+
+        peer.close();
+        ZMQ.close(router);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testPingContext() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:6641"), is(true));
+
+        Socket peer = new Socket("127.0.0.1", 6641);
+        OutputStream out = peer.getOutputStream();
+        DataInputStream in = new DataInputStream(peer.getInputStream());
+
+        //  PUSH greeting, READY and a PING with "ctx" context.
+        byte[] greeting = new byte[GREETING_SIZE];
+        System.arraycopy(hex(DEALER_STREAM), 0, greeting, 0, GREETING_SIZE);
+        out.write(greeting);
+        out.write(hex("041a0552454144590b536f636b65742d54797065000000045055534804"
+                + "0a0450494e470064637478"));
+        out.flush();
+
+        in.readFully(new byte[GREETING_SIZE]);
+        readFrame(in);
+        Msg pong = new Msg(readFrame(in));
+        assertThat(V3Protocol.isCommand(pong, V3Protocol.PONG), is(true));
+        assertThat(new String(pong.data(), 5, 3, ZMQ.CHARSET), is("ctx"));
+
+        peer.close();
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testSubscribeCommand() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase xpub = ZMQ.socket(ctx, ZMQ.ZMQ_XPUB);
+        ZMQ.setSocketOption(xpub, ZMQ.ZMQ_RCVTIMEO, 5000);
+        assertThat(ZMQ.bind(xpub, "tcp://127.0.0.1:6644"), is(true));
+
+        Socket peer = new Socket("127.0.0.1", 6644);
+        OutputStream out = peer.getOutputStream();
+        DataInputStream in = new DataInputStream(peer.getInputStream());
+
+        //  What a libzmq 4.3.3 SUB writes: the greeting, the READY command
+        //  and its subscription to "A" as a SUBSCRIBE command.
+        byte[] greeting = new byte[GREETING_SIZE];
+        System.arraycopy(hex(DEALER_STREAM), 0, greeting, 0, GREETING_SIZE);
+        out.write(greeting);
+        out.write(hex("04190552454144590b536f636b65742d5479706500000003535542"
+                + "040b09535542534352494245" + "41"));
+        out.flush();
+
+        in.readFully(new byte[GREETING_SIZE]);
+        readFrame(in);
+
+        //  The XPUB gets the subscription as a message.
+        Msg msg = ZMQ.recv(xpub, 0);
+        assertThat(msg, notNullValue());
+        assertThat(string(msg), is("\u0001A"));
+
+        ZMQ.send(xpub, "Abc", 0);
+        ZMQ.send(xpub, "Bcd", 0);
+        ZMQ.send(xpub, "Ade", 0);
+        assertThat(string(new Msg(readFrame(in))), is("Abc"));
+        assertThat(string(new Msg(readFrame(in))), is("Ade"));
+
+        //  And the CANCEL command as an unsubscription.
+        out.write(hex("04080643414e43454c" + "41"));
+        out.flush();
+        msg = ZMQ.recv(xpub, 0);
+        assertThat(msg, notNullValue());
+        assertThat(string(msg), is("\u0000A"));
+
+        peer.close();
+        ZMQ.close(xpub);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testIncompatibleSocketType() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:6642"), is(true));
+
+        //  A DEALER can't talk to a PULL, the connection is closed.
+        Socket peer = new Socket("127.0.0.1", 6642);
+        peer.setSoTimeout(5000);
+        peer.getOutputStream().write(hex(DEALER_STREAM));
+        InputStream in = peer.getInputStream();
+        while (in.read() != -1) {
+            continue;
+        }
+
+        peer.close();
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+
+    @Test
+    public void testV1Peer() throws Exception
+    {
+        Ctx ctx = ZMQ.init(1);
+        SocketBase pull = ZMQ.socket(ctx, ZMQ.ZMQ_PULL);
+        ZMQ.setSocketOption(pull, ZMQ.ZMQ_RCVTIMEO, 5000);
+        assertThat(ZMQ.bind(pull, "tcp://127.0.0.1:6643"), is(true));
+
+        //  Peers announcing ZMTP/2.0 get the v1 greeting and framing.
+        Socket peer = new Socket("127.0.0.1", 6643);
+        OutputStream out = peer.getOutputStream();
+        DataInputStream in = new DataInputStream(peer.getInputStream());
+        out.write(hex("ff00000000000000017f0108"));
+        out.write(hex("0000000548656c6c6f"));
+
+        byte[] greeting = new byte[12];
+        in.readFully(greeting);
+        assertThat(greeting[10], is((byte) 3));
+        assertThat(greeting[11], is((byte) ZMQ.ZMQ_PULL));
+
+        Msg msg = ZMQ.recv(pull, 0);
+        assertThat(msg, notNullValue());
+        assertThat(string(msg), is("Hello"));
+
+        peer.close();
+        ZMQ.close(pull);
+        ZMQ.term(ctx);
+    }
+}